@@ -11,11 +11,18 @@ public class Block
 
     public enum Type
     {
-        Wood, Blue
+        // seen, but not yet known to be either type
+        Unknown, Wood, Blue
     }
 
     public Type type;
     public Vector2 position;
+    // how sure we are that the block is there, from 0 to 1
+    public float confidence;
+    // the System.nanoTime() at which the block was last seen
+    public long lastSeen;
+    // true once the robot has been up to the block to identify it
+    public boolean visited;
 
     /**
      * Constructor.
@@ -30,4 +37,33 @@ public class Block
         this.type = type;
         this.position = position;
     }
+
+    /**
+     * Constructor.
+     * 
+     * @param type
+     *            The assumed type of the represented block.
+     * @param position
+     *            The assumed position of the represented block.
+     * @param confidence
+     *            How sure we are that the block is there, from 0 to 1.
+     * @param lastSeen
+     *            The System.nanoTime() at which the block was seen.
+     */
+    public Block(Type type, Vector2 position, float confidence, long lastSeen)
+    {
+        this(type, position);
+        this.confidence = confidence;
+        this.lastSeen = lastSeen;
+    }
+
+    /**
+     * Creates a formatted string to represent the block.
+     * 
+     * @return a string with the type, position and confidence.
+     */
+    public String toString()
+    {
+        return String.format("%s block at %s (confidence %.2f%s)", type, position, confidence, visited ? ", visited" : "");
+    }
 }
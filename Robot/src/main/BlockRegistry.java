@@ -0,0 +1,458 @@
+package main;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Remembers the blocks seen over the match so the robot does not search
+ * areas it has already classified. Blocks are indexed in a uniform grid of
+ * buckets over the board, so finding the blocks near a point only looks at
+ * the few buckets around it instead of every block. Each bucket is a linked
+ * list through preallocated index arrays, so nothing is allocated except the
+ * blocks themselves. Not thread safe; meant to be used from the main thread.
+ * 
+ * @author Scott Sewell
+ */
+public class BlockRegistry
+{
+    // the most blocks remembered at once
+    public static final int DEFAULT_CAPACITY = 32;
+    // the width of each bucket of the index in cm
+    public static final float CELL_SIZE = Board.TILE_SIZE;
+    // sightings nearer than this in cm to a known block are of that block
+    public static final float MERGE_DISTANCE = Block.BLUE_BLOCK_WIDTH;
+    // how sure we are of a block seen in a sweep
+    public static final float SIGHTING_CONFIDENCE = 0.5f;
+    // how sure we are of a block that has been identified up close
+    public static final float IDENTIFIED_CONFIDENCE = 1.0f;
+
+    // marks the end of a bucket's list
+    private static final int NONE = -1;
+
+    private float m_minX;
+    private float m_minY;
+    private int m_width;
+    private int m_height;
+
+    // the first block in each bucket, and the next block in the same bucket
+    // as each block
+    private int[] m_heads;
+    private int[] m_next;
+    // the bucket each block is in
+    private int[] m_cells;
+    private Block[] m_blocks;
+    private int m_count;
+
+    /**
+     * Constructor covering the board.
+     */
+    public BlockRegistry()
+    {
+        this(Board.WALL_LOWER, Board.WALL_LOWER, Board.WALL_UPPER - Board.WALL_LOWER, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param minX
+     *            the x coordinate of the lower left corner of the area in cm.
+     * @param minY
+     *            the y coordinate of the lower left corner of the area in cm.
+     * @param size
+     *            the width and height of the area in cm. Blocks outside of it
+     *            are kept in the nearest edge bucket.
+     * @param capacity
+     *            the most blocks remembered at once.
+     */
+    public BlockRegistry(float minX, float minY, float size, int capacity)
+    {
+        if (size <= 0 || capacity <= 0)
+        {
+            throw new InvalidParameterException("Attempted to create a block registry with a non-positive size or capacity!");
+        }
+        m_minX = minX;
+        m_minY = minY;
+        m_width = (int) Math.ceil(size / CELL_SIZE);
+        m_height = m_width;
+        m_heads = new int[m_width * m_height];
+        m_next = new int[capacity];
+        m_cells = new int[capacity];
+        m_blocks = new Block[capacity];
+        clear();
+    }
+
+    /**
+     * Adds a sighting of a block. If a known block is close enough, it is
+     * taken to be the same block, and its position is moved towards the
+     * sighting in proportion to how sure each is.
+     * 
+     * @param type
+     *            the type the block was seen to be, or Unknown if it was not
+     *            identified. Unknown never replaces a known type.
+     * @param x
+     *            the x coordinate of the block in cm.
+     * @param y
+     *            the y coordinate of the block in cm.
+     * @param confidence
+     *            how sure the sighting is, above 0 and at most 1.
+     * @param time
+     *            the System.nanoTime() of the sighting.
+     * @return the block seen, or null if the registry is full of blocks more
+     *         certain than the sighting.
+     */
+    public Block observe(Block.Type type, float x, float y, float confidence, long time)
+    {
+        if (confidence <= 0 || confidence > 1)
+        {
+            throw new InvalidParameterException("Attempted to observe a block with a confidence outside of (0, 1]!");
+        }
+        Block block = findNearest(x, y, MERGE_DISTANCE, null, false);
+        if (block == null)
+        {
+            return add(new Block(type, new Vector2(x, y), confidence, time));
+        }
+
+        float weight = confidence / (block.confidence + confidence);
+        block.position.setX(block.position.getX() + (x - block.position.getX()) * weight);
+        block.position.setY(block.position.getY() + (y - block.position.getY()) * weight);
+        reindex(indexOf(block));
+
+        if (type != Block.Type.Unknown)
+        {
+            block.type = type;
+        }
+        // independent sightings each make it less likely the block is not
+        // there
+        block.confidence = 1 - (1 - block.confidence) * (1 - confidence);
+        block.lastSeen = time;
+        return block;
+    }
+
+    /**
+     * Adds a block, replacing the least certain block if the registry is
+     * full.
+     * 
+     * @return the block, or null if every block is more certain.
+     */
+    private Block add(Block block)
+    {
+        int index = m_count;
+        if (m_count == m_blocks.length)
+        {
+            index = 0;
+            for (int i = 1; i < m_count; i++)
+            {
+                if (m_blocks[i].confidence < m_blocks[index].confidence)
+                {
+                    index = i;
+                }
+            }
+            if (m_blocks[index].confidence > block.confidence)
+            {
+                return null;
+            }
+            unlink(index);
+        }
+        else
+        {
+            m_count++;
+        }
+        m_blocks[index] = block;
+        link(index);
+        return block;
+    }
+
+    /**
+     * Forgets a block, such as once it has been picked up or was not where
+     * it was remembered.
+     * 
+     * @param block
+     *            the block to forget.
+     * @return false if the block was not in the registry.
+     */
+    public boolean remove(Block block)
+    {
+        int index = indexOf(block);
+        if (index == NONE)
+        {
+            return false;
+        }
+        unlink(index);
+
+        // keep the blocks packed by moving the last one into the gap
+        int last = m_count - 1;
+        if (index != last)
+        {
+            unlink(last);
+            m_blocks[index] = m_blocks[last];
+            link(index);
+        }
+        m_blocks[last] = null;
+        m_count--;
+        return true;
+    }
+
+    /**
+     * Marks a block as identified up close, so it is not approached again.
+     * 
+     * @param block
+     *            the block visited.
+     */
+    public void markVisited(Block block)
+    {
+        block.visited = true;
+    }
+
+    /**
+     * Finds the nearest block the robot has not been up to.
+     * 
+     * @param position
+     *            the point to search from.
+     * @param type
+     *            the type of block to find, or null for any type.
+     * @return the nearest unvisited block, or null if there are none.
+     */
+    public Block findNearestUnvisited(Vector2 position, Block.Type type)
+    {
+        return findNearest(position.getX(), position.getY(), Float.POSITIVE_INFINITY, type, true);
+    }
+
+    /**
+     * Finds the nearest block to a point. Buckets are searched in rings
+     * outward from the point's bucket, stopping once no nearer block could
+     * be in the next ring.
+     * 
+     * @param x
+     *            the x coordinate in cm.
+     * @param y
+     *            the y coordinate in cm.
+     * @param maxDistance
+     *            the furthest distance in cm to search.
+     * @param type
+     *            the type of block to find, or null for any type.
+     * @param unvisitedOnly
+     *            if true visited blocks are ignored.
+     * @return the nearest matching block, or null if there are none within
+     *         the distance.
+     */
+    public Block findNearest(float x, float y, float maxDistance, Block.Type type, boolean unvisitedOnly)
+    {
+        int cellX = getCellX(x);
+        int cellY = getCellY(y);
+        int maxRing = Math.max(Math.max(cellX, m_width - 1 - cellX), Math.max(cellY, m_height - 1 - cellY));
+
+        // how far the point is from the nearest edge of its own bucket, as
+        // every bucket in a ring is at least this much further than a whole
+        // number of buckets away
+        float offsetX = x - m_minX - cellX * CELL_SIZE;
+        float offsetY = y - m_minY - cellY * CELL_SIZE;
+        float edgeDistance = Math.max(0, Math.min(Math.min(offsetX, CELL_SIZE - offsetX), Math.min(offsetY, CELL_SIZE - offsetY)));
+
+        Block nearest = null;
+        float nearestDistance = maxDistance;
+        for (int ring = 0; ring <= maxRing; ring++)
+        {
+            if (ring > 0 && (ring - 1) * CELL_SIZE + edgeDistance > nearestDistance)
+            {
+                break;
+            }
+            for (int cy = cellY - ring; cy <= cellY + ring; cy++)
+            {
+                if (cy < 0 || cy >= m_height)
+                {
+                    continue;
+                }
+                // only the edges of the ring are new
+                int step = cy == cellY - ring || cy == cellY + ring ? 1 : Math.max(1, 2 * ring);
+                for (int cx = cellX - ring; cx <= cellX + ring; cx += step)
+                {
+                    if (cx < 0 || cx >= m_width)
+                    {
+                        continue;
+                    }
+                    for (int i = m_heads[cy * m_width + cx]; i != NONE; i = m_next[i])
+                    {
+                        Block block = m_blocks[i];
+                        if ((type != null && block.type != type) || (unvisitedOnly && block.visited))
+                        {
+                            continue;
+                        }
+                        float distance = distance(block, x, y);
+                        if (distance <= nearestDistance)
+                        {
+                            nearest = block;
+                            nearestDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Finds the blocks within some distance of a point.
+     * 
+     * @param x
+     *            the x coordinate in cm.
+     * @param y
+     *            the y coordinate in cm.
+     * @param radius
+     *            the distance in cm to search within.
+     * @param blocks
+     *            the array to fill with the blocks found.
+     * @return the number of blocks found, at most the length of the array.
+     */
+    public int findWithinRadius(float x, float y, float radius, Block[] blocks)
+    {
+        int minCellX = getCellX(x - radius);
+        int maxCellX = getCellX(x + radius);
+        int minCellY = getCellY(y - radius);
+        int maxCellY = getCellY(y + radius);
+
+        int count = 0;
+        for (int cy = minCellY; cy <= maxCellY; cy++)
+        {
+            for (int cx = minCellX; cx <= maxCellX; cx++)
+            {
+                for (int i = m_heads[cy * m_width + cx]; i != NONE && count < blocks.length; i = m_next[i])
+                {
+                    if (distance(m_blocks[i], x, y) <= radius)
+                    {
+                        blocks[count++] = m_blocks[i];
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forgets every block.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < m_heads.length; i++)
+        {
+            m_heads[i] = NONE;
+        }
+        for (int i = 0; i < m_count; i++)
+        {
+            m_blocks[i] = null;
+        }
+        m_count = 0;
+    }
+
+    /**
+     * @return the number of blocks remembered.
+     */
+    public int size()
+    {
+        return m_count;
+    }
+
+    /**
+     * @return the block at an index, from 0 to {@link #size()}. Indices
+     *         change when blocks are removed.
+     */
+    public Block get(int index)
+    {
+        return m_blocks[index];
+    }
+
+    /**
+     * @return the index of a block, or NONE if it is not in the registry.
+     */
+    private int indexOf(Block block)
+    {
+        for (int i = 0; i < m_count; i++)
+        {
+            if (m_blocks[i] == block)
+            {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Moves a block to the bucket its position is now in.
+     */
+    private void reindex(int index)
+    {
+        Block block = m_blocks[index];
+        if (getCell(block.position.getX(), block.position.getY()) != m_cells[index])
+        {
+            unlink(index);
+            link(index);
+        }
+    }
+
+    /**
+     * Adds a block to the front of its bucket's list.
+     */
+    private void link(int index)
+    {
+        Block block = m_blocks[index];
+        int cell = getCell(block.position.getX(), block.position.getY());
+        m_cells[index] = cell;
+        m_next[index] = m_heads[cell];
+        m_heads[cell] = index;
+    }
+
+    /**
+     * Removes a block from its bucket's list.
+     */
+    private void unlink(int index)
+    {
+        int cell = m_cells[index];
+        if (m_heads[cell] == index)
+        {
+            m_heads[cell] = m_next[index];
+            return;
+        }
+        for (int i = m_heads[cell]; i != NONE; i = m_next[i])
+        {
+            if (m_next[i] == index)
+            {
+                m_next[i] = m_next[index];
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the distance in cm from a block to a point.
+     */
+    private static float distance(Block block, float x, float y)
+    {
+        float dx = block.position.getX() - x;
+        float dy = block.position.getY() - y;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @return the bucket containing a point.
+     */
+    private int getCell(float x, float y)
+    {
+        return getCellY(y) * m_width + getCellX(x);
+    }
+
+    /**
+     * @return the column of buckets containing an x coordinate, clamped to
+     *         the grid.
+     */
+    private int getCellX(float x)
+    {
+        return Math.max(0, Math.min(m_width - 1, (int) Math.floor((x - m_minX) / CELL_SIZE)));
+    }
+
+    /**
+     * @return the row of buckets containing a y coordinate, clamped to the
+     *         grid.
+     */
+    private int getCellY(float y)
+    {
+        return Math.max(0, Math.min(m_height - 1, (int) Math.floor((y - m_minY) / CELL_SIZE)));
+    }
+}
@@ -0,0 +1,389 @@
+package main;
+
+/**
+ * Decides where a block is from the readings of a search sweep. Readings are
+ * clamped and held steady through small changes, binned into a
+ * {@link PolarScan}, sanitized, and then the discontinuities are used to pick
+ * a destination. This has no dependence on the robot, so recorded sweeps can
+ * be replayed through exactly the same steps offline. Nothing is allocated
+ * after construction.
+ * 
+ * @author Scott Sewell
+ */
+public class BlockSearch
+{
+    // the angle in degrees covered by each bin of a sweep
+    public static final float BIN_SIZE = 0.5f;
+    // the most directions of known blocks that can be skipped in one sweep
+    public static final int MAX_EXCLUSIONS = 16;
+
+    /**
+     * What was found in a sweep.
+     */
+    public enum Outcome
+    {
+        // no readings were taken
+        Empty,
+        // nothing stands out, so the destination is the mean of the sweep
+        NoDiscontinuities,
+        // the destination is the nearer side of the only discontinuity
+        OneDiscontinuity,
+        // discontinuities are too far apart to be one block
+        MultipleBlocks,
+        // the destination is between two discontinuities
+        BlockPair,
+        // a block was found, but is too close to approach
+        TooClose,
+        // no two discontinuities were close enough to be a block
+        NoBlockPair,
+        // the only blocks found are already known, so the destination is the
+        // mean of the sweep
+        KnownBlock;
+
+        /**
+         * @return true if a block was found to approach.
+         */
+        public boolean isDetection()
+        {
+            return this == OneDiscontinuity || this == BlockPair;
+        }
+    }
+
+    private SearchParameters m_params;
+    private PolarScan m_scan;
+    private float[] m_means;
+    private float[] m_otherMeans;
+
+    // the last reading kept, which small changes are held to
+    private float m_previousDistance;
+    private boolean m_hasPrevious;
+
+    // the directions of known blocks to skip, and how far either side of
+    // each to skip in degrees
+    private float[] m_excludedAngles;
+    private float[] m_excludedTolerances;
+    private int m_exclusionCount;
+
+    private float m_destinationAngle;
+    private float m_destinationDistance;
+    private float m_blockDistance;
+
+    /**
+     * Constructor.
+     * 
+     * @param params
+     *            the thresholds used to find blocks.
+     * @param maxWidth
+     *            the widest sweep in degrees that will be searched.
+     */
+    public BlockSearch(SearchParameters params, float maxWidth)
+    {
+        m_params = params;
+        m_scan = new PolarScan(maxWidth, BIN_SIZE);
+        m_means = new float[2];
+        m_otherMeans = new float[2];
+        m_excludedAngles = new float[MAX_EXCLUSIONS];
+        m_excludedTolerances = new float[MAX_EXCLUSIONS];
+        reset(0);
+    }
+
+    /**
+     * Removes all readings to begin a new sweep.
+     * 
+     * @param startAngle
+     *            the heading in degrees at the start of the sweep.
+     */
+    public void reset(float startAngle)
+    {
+        m_scan.reset(startAngle);
+        m_hasPrevious = false;
+        m_exclusionCount = 0;
+        m_destinationAngle = 0;
+        m_destinationDistance = 0;
+        m_blockDistance = 0;
+    }
+
+    /**
+     * Skips a block that is already known when picking a destination, so the
+     * robot does not approach it again. Exclusions are cleared by
+     * {@link #reset(float)}.
+     * 
+     * @param angle
+     *            the heading in degrees of the block from where the sweep is
+     *            taken.
+     * @param tolerance
+     *            how far in degrees either side of the heading to skip.
+     * @return false if too many blocks are already skipped.
+     */
+    public boolean exclude(float angle, float tolerance)
+    {
+        if (m_exclusionCount == MAX_EXCLUSIONS)
+        {
+            return false;
+        }
+        m_excludedAngles[m_exclusionCount] = angle;
+        m_excludedTolerances[m_exclusionCount] = tolerance;
+        m_exclusionCount++;
+        return true;
+    }
+
+    /**
+     * @return true if a heading in degrees is towards a known block.
+     */
+    private boolean isExcluded(float angle)
+    {
+        for (int i = 0; i < m_exclusionCount; i++)
+        {
+            if (Math.abs(Utils.toBearing(angle - m_excludedAngles[i])) <= m_excludedTolerances[i])
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a reading from the sweep. A reading that changed by less than the
+     * hold distance from the last kept reading is replaced by the last kept
+     * reading.
+     * 
+     * @param angle
+     *            the heading in degrees at which the reading was taken.
+     * @param rawDistance
+     *            the unfiltered distance read by the sensor in cm.
+     * @return the distance added to the scan in cm.
+     */
+    public float add(float angle, float rawDistance)
+    {
+        float distance = Math.min(rawDistance, m_params.getNoObject());
+        if (m_hasPrevious && Math.abs(distance - m_previousDistance) < m_params.getHoldDistance())
+        {
+            distance = m_previousDistance;
+        }
+        else
+        {
+            m_previousDistance = distance;
+            m_hasPrevious = true;
+        }
+        m_scan.add(angle, distance);
+        return distance;
+    }
+
+    /**
+     * Averages the readings in each bin. Must be called once the sweep is
+     * done, before sanitizing.
+     * 
+     * @return the number of points in the scan.
+     */
+    public int process()
+    {
+        return m_scan.process();
+    }
+
+    /**
+     * Removes false positives, then finds the discontinuities in the scan.
+     * 
+     * @return the number of discontinuities.
+     */
+    public int findDiscontinuities()
+    {
+        m_scan.sanitize(m_params.getNoObject(), m_params.getMinObjectAngle());
+        return m_scan.findDiscontinuities(m_params.getDiscontinuityDistance());
+    }
+
+    /**
+     * Runs the whole sweep analysis.
+     * 
+     * @return what was found in the sweep. If there is a destination, it is
+     *         given by {@link #getDestinationAngle()} and
+     *         {@link #getDestinationDistance()}.
+     */
+    public Outcome analyze()
+    {
+        if (process() == 0)
+        {
+            return Outcome.Empty;
+        }
+        findDiscontinuities();
+        return decide();
+    }
+
+    /**
+     * Picks a destination from the discontinuities found in the scan.
+     * 
+     * @return what was found in the sweep.
+     */
+    public Outcome decide()
+    {
+        int discontinuities = m_scan.getDiscontinuityCount();
+        if (discontinuities == 0)
+        {
+            // go towards the mean of the sweep
+            aimAtMean();
+            return Outcome.NoDiscontinuities;
+        }
+        if (discontinuities == 1)
+        {
+            // go towards the side of the discontinuity that is nearer
+            int dividingIndex = m_scan.getDiscontinuity(0);
+            m_scan.getMeans(0, dividingIndex, m_means);
+            m_scan.getMeans(dividingIndex, m_scan.size(), m_otherMeans);
+            float[] nearer = m_means[1] < m_otherMeans[1] ? m_means : m_otherMeans;
+            if (isExcluded(nearer[0]))
+            {
+                aimAtMean();
+                return Outcome.KnownBlock;
+            }
+            setDestination(nearer[0], nearer[1]);
+            m_blockDistance = nearer[1];
+            return Outcome.OneDiscontinuity;
+        }
+        if (hasMultipleBlocks())
+        {
+            return Outcome.MultipleBlocks;
+        }
+        return findBlockPair();
+    }
+
+    /**
+     * @return true if any consecutive discontinuities are too far apart to be
+     *         the same block.
+     */
+    private boolean hasMultipleBlocks()
+    {
+        float previousAngle = m_scan.getAngleOffset(m_scan.getDiscontinuity(0));
+        for (int i = 1; i < m_scan.getDiscontinuityCount(); i++)
+        {
+            float currentAngle = m_scan.getAngleOffset(m_scan.getDiscontinuity(i));
+            if (currentAngle - previousAngle > m_params.getOneBlockAngle())
+            {
+                return true;
+            }
+            previousAngle = currentAngle;
+        }
+        return false;
+    }
+
+    /**
+     * Goes towards the mean of the sweep.
+     */
+    private void aimAtMean()
+    {
+        m_scan.getMeans(0, m_scan.size(), m_means);
+        setDestination(m_means[0], m_means[1]);
+    }
+
+    /**
+     * Looks for the first pair of consecutive discontinuities narrow enough
+     * to be a block and not already known, and aims for the middle of it.
+     */
+    private Outcome findBlockPair()
+    {
+        boolean skipped = false;
+        int previousIndex = m_scan.getDiscontinuity(0);
+        int index = previousIndex;
+        float previousAngle = m_scan.getAngle(index);
+        float previousDistance = m_scan.getDistance(index);
+        for (int i = 1; i < m_scan.getDiscontinuityCount(); i++)
+        {
+            index = m_scan.getDiscontinuity(i);
+            float currentAngle = m_scan.getAngle(index);
+            float currentDistance = m_scan.getDistance(index);
+
+            if (getWidth(previousAngle, previousDistance, currentAngle, currentDistance) < m_params.getMaxBlockWidth())
+            {
+                float middleAngle = Utils.normalizeAngle(previousAngle + Utils.toBearing(currentAngle - previousAngle) / 2.0f);
+                if (!isExcluded(middleAngle))
+                {
+                    setDestination(middleAngle, (currentDistance + previousDistance) / 2.0f);
+                    m_scan.getMeans(previousIndex, index, m_means);
+                    m_blockDistance = m_means[1];
+                    return m_destinationDistance < m_params.getMinBlockDistance() ? Outcome.TooClose : Outcome.BlockPair;
+                }
+                skipped = true;
+            }
+
+            previousIndex = index;
+            previousAngle = currentAngle;
+            previousDistance = currentDistance;
+        }
+        if (skipped)
+        {
+            aimAtMean();
+            return Outcome.KnownBlock;
+        }
+        return Outcome.NoBlockPair;
+    }
+
+    /**
+     * Calculates the width of a perceived object.
+     * 
+     * @param angleA
+     *            angle of first edge of the perceived object.
+     * @param distanceA
+     *            distance to the first edge of the perceived object.
+     * @param angleB
+     *            angle of the second edge of the perceived object.
+     * @param distanceB
+     *            distance to the second edge of the perceived object.
+     * @return the calculated width.
+     */
+    static float getWidth(float angleA, float distanceA, float angleB, float distanceB)
+    {
+        float meanDistance = (distanceA + distanceB) / 2.0f;
+        double arcSize = Math.toRadians(Math.abs(Utils.toBearing(angleB - angleA)));
+
+        return (float) (meanDistance * Math.sqrt(2 * (1 - Math.cos(arcSize))));
+    }
+
+    /**
+     * Sets where the robot should go to approach what was found.
+     */
+    private void setDestination(float angle, float distance)
+    {
+        m_destinationAngle = angle;
+        m_destinationDistance = distance;
+    }
+
+    /**
+     * @return the heading in degrees of the destination found.
+     */
+    public float getDestinationAngle()
+    {
+        return m_destinationAngle;
+    }
+
+    /**
+     * @return the distance in cm to the destination found.
+     */
+    public float getDestinationDistance()
+    {
+        return m_destinationDistance;
+    }
+
+    /**
+     * @return the mean distance in cm to the face of the block found, which
+     *         is nearer than the destination when the destination is between
+     *         the block and what is behind it.
+     */
+    public float getBlockDistance()
+    {
+        return m_blockDistance;
+    }
+
+    /**
+     * @return the scan holding the sweep.
+     */
+    public PolarScan getScan()
+    {
+        return m_scan;
+    }
+
+    /**
+     * @return the thresholds used to find blocks.
+     */
+    public SearchParameters getParameters()
+    {
+        return m_params;
+    }
+}
@@ -19,6 +19,10 @@ public class Board
     // the distance the robot tries to leave between itself and a zone to
     // prevent entering in cm
     public static final float ZONE_BUFFER = 2.0f;
+    // the position of the lower left walls along each axis in cm
+    public static final float WALL_LOWER = -TILE_SIZE;
+    // the position of the upper right walls along each axis in cm
+    public static final float WALL_UPPER = TILE_SIZE * (TILE_COUNT - 1);
 
     // various zone rectangles
     private Rectangle m_board;
@@ -50,8 +54,8 @@ public class Board
      */
     public Board(int lrzx, int lrzy, int urzx, int urzy, int lgzx, int lgzy, int ugzx, int ugzy, int startCorner)
     {
-        Vector2 wallLowerCorner = Vector2.one().scale(-TILE_SIZE);
-        Vector2 wallUpperCorner = Vector2.one().scale(TILE_SIZE * (TILE_COUNT - 1));
+        Vector2 wallLowerCorner = Vector2.one().scale(WALL_LOWER);
+        Vector2 wallUpperCorner = Vector2.one().scale(WALL_UPPER);
         m_board = Utils.toRect(wallLowerCorner, wallUpperCorner);
 
         Vector2 dumpLowerCorner = new Vector2(lrzx, lrzy).scale(TILE_SIZE);
@@ -148,12 +152,21 @@ public class Board
      */
     public static Vector2 getNearestIntersection(Vector2 position)
     {
-        float x = (float) Math.floor((position.getX() / Board.TILE_SIZE) + 0.5f);
-        float y = (float) Math.floor((position.getY() / Board.TILE_SIZE) + 0.5f);
-        return new Vector2(
-                Utils.clamp(x, 0, Board.TILE_COUNT - 2),
-                Utils.clamp(y, 0, Board.TILE_COUNT - 2)
-                ).scale(Board.TILE_SIZE);
+        return new Vector2(getNearestLine(position.getX()), getNearestLine(position.getY()));
+    }
+
+    /**
+     * Calculates the position of the board line closest to a coordinate along
+     * either axis.
+     * 
+     * @param coordinate
+     *            the x-axis or y-axis position in cm.
+     * @return the position of the nearest line along the same axis in cm.
+     */
+    public static float getNearestLine(float coordinate)
+    {
+        float line = (float) Math.floor((coordinate / Board.TILE_SIZE) + 0.5f);
+        return Utils.clamp(line, 0, Board.TILE_COUNT - 2) * Board.TILE_SIZE;
     }
 
     /**
@@ -172,6 +185,22 @@ public class Board
         return new Vector2((float) m_dumpZone.getCenterX(), (float) m_dumpZone.getCenterY());
     }
 
+    /**
+     * @return the rectangle covered by the build zone.
+     */
+    public Rectangle getBuildZone()
+    {
+        return m_buildZone;
+    }
+
+    /**
+     * @return the rectangle covered by the dump zone.
+     */
+    public Rectangle getDumpZone()
+    {
+        return m_dumpZone;
+    }
+
     /**
      * Gets the position of the line intersection nearest to the starting corner.
      */
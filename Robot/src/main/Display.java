@@ -15,6 +15,8 @@ public class Display extends Thread
 
     private TextLCD m_screen;
     private Odometer m_odometer;
+    private float[] m_pose;
+    private PeriodicTimer m_timer;
 
     /**
      * Constructor.
@@ -23,6 +25,8 @@ public class Display extends Thread
     {
         m_screen = Robot.SCREEN;
         m_odometer = odometer;
+        m_pose = new float[3];
+        m_timer = new PeriodicTimer("display", UPDATE_PERIOD);
     }
 
     /**
@@ -30,31 +34,32 @@ public class Display extends Thread
      */
     public void run()
     {
-        long updateStart;
-
         while (true)
         {
-            updateStart = System.currentTimeMillis();
-
             // clear display
             m_screen.clear();
 
             // display robot transform
-            Vector2 pos = m_odometer.getPosition();
-            if (pos != null)
-			{
-			    m_screen.drawString(
-	                    String.format("%.2f", pos.getX()) + " " +
-                        String.format("%.2f", pos.getY()) + " " +
-	                    String.format("%.1f", m_odometer.getTheta()),
-	                    0, 0);
-			}
+            m_odometer.getPose(m_pose);
+            m_screen.drawString(
+                    String.format("%.2f", m_pose[0]) + " " +
+                    String.format("%.2f", m_pose[1]) + " " +
+                    String.format("%.1f", m_pose[2]),
+                    0, 0);
 
 			// if finished before the next update should occur, wait the remaining time
-			Utils.sleepToNextPeroid(UPDATE_PERIOD, updateStart);
+			m_timer.waitForNextPeriod();
 		}
 	}
 
+    /**
+     * @return the timer pacing the display loop.
+     */
+    public PeriodicTimer getTimer()
+    {
+        return m_timer;
+    }
+
     /**
      * Prints out a single string to the screen.
      * 
@@ -1,17 +1,21 @@
 package main;
 
 import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import lejos.robotics.RegulatedMotor;
+import lejos.robotics.RegulatedMotorListener;
 
 /**
  * Contains the methods responsible for moving the robot.
  * 
  * @author Scott Sewell
  */
-public class Driver
+public class Driver implements RegulatedMotorListener
 {
     private EV3LargeRegulatedMotor m_leftMotor;
     private EV3LargeRegulatedMotor m_rightMotor;
     private Odometer m_odometer;
+    // triggered when a wheel motor stops rotating, or null
+    private volatile Signal m_stopSignal;
     
     /**
      * Constructor.
@@ -28,6 +32,41 @@ public class Driver
         {
             motor.stop();
             motor.setAcceleration(Robot.ACCELERATION);
+            motor.addListener(this);
+        }
+    }
+
+    /**
+     * Sets a signal to trigger when a wheel motor stops rotating, whether it
+     * finished its move or was stopped. Lets a thread sleep through a move
+     * that is not blocked on, waking when the robot stops.
+     * 
+     * @param stopSignal
+     *            the signal to trigger, or null for none.
+     */
+    public void setStopSignal(Signal stopSignal)
+    {
+        m_stopSignal = stopSignal;
+    }
+
+    /**
+     * Called from the motor regulator thread when a wheel motor starts a
+     * move.
+     */
+    public void rotationStarted(RegulatedMotor motor, int tachoCount, boolean stalled, long timeStamp)
+    {
+    }
+
+    /**
+     * Called from the motor regulator thread when a wheel motor stops,
+     * triggering the stop signal.
+     */
+    public void rotationStopped(RegulatedMotor motor, int tachoCount, boolean stalled, long timeStamp)
+    {
+        Signal stopSignal = m_stopSignal;
+        if (stopSignal != null)
+        {
+            stopSignal.trigger();
         }
     }
 
@@ -124,9 +163,21 @@ public class Driver
      * Immediately stops the robot's motion.
      */
     public void stop()
+    {
+        stop(true);
+    }
+
+    /**
+     * Immediately stops the robot's motion.
+     * 
+     * @param blockThread
+     *            if true, waits for the motors to come to rest before
+     *            returning.
+     */
+    public void stop(boolean blockThread)
     {
         m_leftMotor.stop(true);
-        m_rightMotor.stop(false);
+        m_rightMotor.stop(!blockThread);
     }
 
     /**
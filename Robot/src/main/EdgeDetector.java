@@ -0,0 +1,306 @@
+package main;
+
+/**
+ * Finds board lines in a stream of color sensor brightness samples. The
+ * brightness of the floor and its noise are learned while no line is seen, so
+ * no fixed threshold has to suit every floor and sensor. A two-sided CUSUM
+ * accumulates how far samples stray from the floor, measured in noise
+ * deviations, which picks up lines that only last a sample or two at speed
+ * while ignoring single noisy samples. Once the brightness returns to the
+ * floor, the times at which the signal passed half way to its extreme value on
+ * either side of the line are interpolated between samples, and the time the
+ * sensor was over the center of the line is taken as half way between them.
+ * Nothing is allocated after construction.
+ * 
+ * @author Scott Sewell
+ */
+public class EdgeDetector
+{
+    // the time over which the floor brightness and noise adapt in ns
+    private static final float FLOOR_TIME_CONSTANT = 250000000f;
+    // the number of samples used to learn the floor before lines are detected
+    private static final int CALIBRATION_SAMPLES = 16;
+    // the smallest noise deviation assumed, so a very steady floor doesn't
+    // make every small change a line
+    private static final float MIN_DEVIATION = 0.008f;
+    // how many deviations a sample has to stray before it counts towards a
+    // line
+    private static final float DRIFT = 1.5f;
+    // the accumulated deviations at which a line is detected
+    private static final float ALARM_THRESHOLD = 8.0f;
+    // how many deviations from the floor a sample can be to be off the line
+    private static final float EXIT_DEVIATIONS = 3.0f;
+    // the smallest difference in brightness from the floor for a line
+    private static final float MIN_DEPTH = 0.06f;
+    // the longest time in ns the brightness can stray from the floor for a
+    // line, after which the floor is assumed to have changed instead. Lines
+    // are crossed in less at 1.5 cm/s or faster, below any driving speed.
+    private static final long MAX_LINE_TIME = 1000000000L;
+    // the most samples stored for one line, enough for the longest line at
+    // the highest sampling rate
+    private static final int MAX_LINE_SAMPLES = 512;
+
+    private float m_floor;
+    private float m_deviation;
+    private int m_calibrationCount;
+    private float m_sumLow;
+    private float m_sumHigh;
+
+    // the last floor sample, before any samples that may be part of a line
+    private long m_floorTime;
+    private float m_floorValue;
+
+    // samples since the signal started to stray from the floor
+    private long[] m_times;
+    private float[] m_values;
+    private int m_count;
+    private boolean m_onLine;
+
+    // the last line found
+    private long m_lineTime;
+    private float m_lineDepth;
+
+    /**
+     * Constructor.
+     */
+    public EdgeDetector()
+    {
+        m_times = new long[MAX_LINE_SAMPLES];
+        m_values = new float[MAX_LINE_SAMPLES];
+        reset();
+    }
+
+    /**
+     * Forgets the floor and any line in progress.
+     */
+    public void reset()
+    {
+        m_calibrationCount = 0;
+        m_floor = 0;
+        m_deviation = MIN_DEVIATION;
+        m_sumLow = 0;
+        m_sumHigh = 0;
+        m_count = 0;
+        m_onLine = false;
+    }
+
+    /**
+     * Processes a new brightness sample.
+     * 
+     * @param time
+     *            the system time in ns at which the sample was taken.
+     * @param value
+     *            the brightness of the sample.
+     * @return true if the end of a line was seen, in which case the time of
+     *         the line is given by {@link #getLineTime()}.
+     */
+    public boolean add(long time, float value)
+    {
+        if (m_calibrationCount < CALIBRATION_SAMPLES)
+        {
+            calibrate(value);
+            m_floorTime = time;
+            m_floorValue = value;
+            return false;
+        }
+
+        float error = (value - m_floor) / m_deviation;
+        m_sumLow = Math.max(0, m_sumLow - error - DRIFT);
+        m_sumHigh = Math.max(0, m_sumHigh + error - DRIFT);
+        boolean offFloor = Math.abs(error) > EXIT_DEVIATIONS;
+
+        if (!offFloor && m_onLine)
+        {
+            // back on the floor after a line, so the line has ended
+            boolean found = locateLine(time, value);
+            m_sumLow = 0;
+            m_sumHigh = 0;
+            m_count = 0;
+            m_onLine = false;
+            return found;
+        }
+
+        if (!offFloor && m_sumLow == 0 && m_sumHigh == 0)
+        {
+            // only noise has been seen since the last floor sample
+            m_count = 0;
+            adaptFloor(time, value);
+            m_floorTime = time;
+            m_floorValue = value;
+            return false;
+        }
+
+        if (m_count == MAX_LINE_SAMPLES || (m_count > 0 && time - m_times[0] > MAX_LINE_TIME))
+        {
+            // too long to be a line, so the floor has probably changed.
+            // Only the line is dropped, keeping the learned noise.
+            m_sumLow = 0;
+            m_sumHigh = 0;
+            m_count = 0;
+            m_onLine = false;
+            m_floor = value;
+            m_floorTime = time;
+            m_floorValue = value;
+            return false;
+        }
+
+        m_times[m_count] = time;
+        m_values[m_count] = value;
+        m_count++;
+        if (m_sumLow > ALARM_THRESHOLD || m_sumHigh > ALARM_THRESHOLD)
+        {
+            m_onLine = true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the system time in ns at which the sensor was over the center
+     *         of the last line found.
+     */
+    public long getLineTime()
+    {
+        return m_lineTime;
+    }
+
+    /**
+     * @return how much darker or brighter than the floor the last line found
+     *         was, negative if it was darker.
+     */
+    public float getLineDepth()
+    {
+        return m_lineDepth;
+    }
+
+    /**
+     * @return the learned brightness of the floor.
+     */
+    public float getFloor()
+    {
+        return m_floor;
+    }
+
+    /**
+     * @return the learned standard deviation of the floor brightness.
+     */
+    public float getDeviation()
+    {
+        return m_deviation;
+    }
+
+    /**
+     * @return true once enough samples have been seen to detect lines.
+     */
+    public boolean isCalibrated()
+    {
+        return m_calibrationCount >= CALIBRATION_SAMPLES;
+    }
+
+    /**
+     * Learns the floor from the first samples by their mean and deviation.
+     */
+    private void calibrate(float value)
+    {
+        m_calibrationCount++;
+        float delta = value - m_floor;
+        m_floor += delta / m_calibrationCount;
+        // the sum of squared differences from the mean is kept in the high
+        // sum, which is unused until calibration is done
+        m_sumHigh += delta * (value - m_floor);
+        if (m_calibrationCount == CALIBRATION_SAMPLES)
+        {
+            m_deviation = Math.max(MIN_DEVIATION, (float) Math.sqrt(m_sumHigh / m_calibrationCount));
+            m_sumHigh = 0;
+        }
+    }
+
+    /**
+     * Blends a floor sample into the floor brightness and deviation, weighted
+     * by the time since the last floor sample so the floor adapts at the same
+     * rate whatever the sampling rate.
+     */
+    private void adaptFloor(long time, float value)
+    {
+        float alpha = (float) (1 - Math.exp(-(time - m_floorTime) / FLOOR_TIME_CONSTANT));
+        float delta = value - m_floor;
+        m_floor += alpha * delta;
+        float variance = m_deviation * m_deviation;
+        variance += alpha * (delta * delta - variance);
+        m_deviation = Math.max(MIN_DEVIATION, (float) Math.sqrt(variance));
+    }
+
+    /**
+     * Finds when the sensor was over the center of a line from the stored
+     * samples and the floor samples either side of them.
+     * 
+     * @return true if the line was deep enough to be a board line.
+     */
+    private boolean locateLine(long exitTime, float exitValue)
+    {
+        // the sample furthest from the floor
+        int peak = 0;
+        for (int i = 1; i < m_count; i++)
+        {
+            if (Math.abs(m_values[i] - m_floor) > Math.abs(m_values[peak] - m_floor))
+            {
+                peak = i;
+            }
+        }
+        float depth = m_values[peak] - m_floor;
+        if (Math.abs(depth) < MIN_DEPTH)
+        {
+            return false;
+        }
+        float half = m_floor + depth / 2;
+
+        // the last sample before the peak on the floor side of half way
+        int entry = peak;
+        while (entry >= 0 && isPast(m_values[entry], half, depth))
+        {
+            entry--;
+        }
+        long entryTime = entry < 0
+                ? interpolate(m_floorTime, m_floorValue, m_times[0], m_values[0], half)
+                : interpolate(m_times[entry], m_values[entry], m_times[entry + 1], m_values[entry + 1], half);
+
+        // the first sample after the peak on the floor side of half way
+        int exit = peak;
+        while (exit < m_count && isPast(m_values[exit], half, depth))
+        {
+            exit++;
+        }
+        long lastTime = m_times[exit - 1];
+        float lastValue = m_values[exit - 1];
+        long leaveTime = exit == m_count
+                ? interpolate(lastTime, lastValue, exitTime, exitValue, half)
+                : interpolate(lastTime, lastValue, m_times[exit], m_values[exit], half);
+
+        m_lineTime = entryTime + (leaveTime - entryTime) / 2;
+        m_lineDepth = depth;
+        return true;
+    }
+
+    /**
+     * @return true if a value is further from the floor than the half way
+     *         level, in the direction of the line.
+     */
+    private static boolean isPast(float value, float half, float depth)
+    {
+        return depth < 0 ? value <= half : value >= half;
+    }
+
+    /**
+     * Finds the time between two samples at which the signal passed a level,
+     * assuming it changed linearly between them.
+     */
+    static long interpolate(long time0, float value0, long time1, float value1, float level)
+    {
+        float change = value1 - value0;
+        if (change == 0)
+        {
+            return time0;
+        }
+        float fraction = Utils.clamp((level - value0) / change, 0, 1);
+        return time0 + (long) (fraction * (time1 - time0));
+    }
+}
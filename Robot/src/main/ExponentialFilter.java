@@ -0,0 +1,73 @@
+package main;
+
+/**
+ * Smooths a signal by blending each new value into a running average, so that
+ * older values have exponentially less influence. Needs no history, so it
+ * costs the same however long the smoothing is.
+ * 
+ * @author Scott Sewell
+ */
+public class ExponentialFilter
+{
+    private float m_alpha;
+    private float m_value;
+    private boolean m_started;
+
+    /**
+     * Constructor.
+     * 
+     * @param alpha
+     *            how much of each new value is blended in, from 0 for none to
+     *            1 for no smoothing.
+     */
+    public ExponentialFilter(float alpha)
+    {
+        m_alpha = alpha;
+        m_started = false;
+    }
+
+    /**
+     * Creates a filter that smooths over roughly a given time.
+     * 
+     * @param timeConstant
+     *            the time after which a step change is 63% blended in.
+     * @param period
+     *            the time between values, in the same units.
+     * @return a new filter.
+     */
+    public static ExponentialFilter fromTimeConstant(float timeConstant, float period)
+    {
+        return new ExponentialFilter((float) (1 - Math.exp(-period / timeConstant)));
+    }
+
+    /**
+     * Blends in a new value. The first value is taken as is.
+     * 
+     * @param value
+     *            the newest value of the signal.
+     * @return the smoothed value.
+     */
+    public float add(float value)
+    {
+        m_value = m_started ? m_value + m_alpha * (value - m_value) : value;
+        m_started = true;
+        return m_value;
+    }
+
+    /**
+     * @return the smoothed value, or 0 if no values have been added.
+     */
+    public float getValue()
+    {
+        return m_value;
+    }
+
+    /**
+     * Forgets all values added.
+     */
+    public void clear()
+    {
+        m_value = 0;
+        m_started = false;
+    }
+}
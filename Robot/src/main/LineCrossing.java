@@ -0,0 +1,65 @@
+package main;
+
+/**
+ * A board line seen by one of the color sensors.
+ * 
+ * @author Scott Sewell
+ */
+public final class LineCrossing
+{
+    /**
+     * The color sensors that detect lines.
+     */
+    public enum Sensor
+    {
+        Left,
+        Right
+    }
+
+    private final Sensor m_sensor;
+    private final long m_time;
+    private final float m_brightnessDelta;
+
+    /**
+     * Constructor.
+     * 
+     * @param sensor
+     *            the sensor that saw the line.
+     * @param time
+     *            the system time in nanoseconds at which the sensor was over
+     *            the center of the line.
+     * @param brightnessDelta
+     *            how much the brightness of the line differed from the floor.
+     */
+    public LineCrossing(Sensor sensor, long time, float brightnessDelta)
+    {
+        m_sensor = sensor;
+        m_time = time;
+        m_brightnessDelta = brightnessDelta;
+    }
+
+    /**
+     * @return the sensor that saw the line.
+     */
+    public Sensor getSensor()
+    {
+        return m_sensor;
+    }
+
+    /**
+     * @return the system time in nanoseconds at which the sensor was over the
+     *         center of the line.
+     */
+    public long getTime()
+    {
+        return m_time;
+    }
+
+    /**
+     * @return how much the brightness of the line differed from the floor.
+     */
+    public float getBrightnessDelta()
+    {
+        return m_brightnessDelta;
+    }
+}
@@ -1,116 +1,137 @@
 package main;
 
-import java.util.LinkedList;
-import java.util.Queue;
 import lejos.hardware.sensor.EV3ColorSensor;
 import lejos.robotics.SampleProvider;
 
 /**
  * Contains the methods responsible for fetching and processing the samples
- * taken by the color sensor.
+ * taken by the color sensor. Each line seen is added to a queue as a
+ * LineCrossing, so that none are missed however slowly they are consumed.
+ * Lines are found by an EdgeDetector that learns the floor brightness. In
+ * high rate mode the sensor is sampled as fast as it updates, so that lines
+ * are still seen clearly when driving fast.
  * 
  * @author Aimee Ascencio
  */
-public class LineDetector extends Thread
+public class LineDetector extends Thread implements SensorTask
 {
     // sensor polling period
     public static final int UPDATE_PERIOD = 30;
-    // how many past brightness values are store
-    private static final int BUFFER_SIZE = 6;
-    // time that has to have passed to detect another line
-    private static final int MIN_TIME_BETWEEN_LINES = 150;
-    // the minimum change in brightness to consider it a line
-    private static final float BRIGHTNESS_DELTA_THRESHOLD = 0.125f;
+    // sensor polling period in high rate mode, about as often as the sensor
+    // produces new values in red mode
+    public static final int HIGH_RATE_PERIOD = 2;
+    // the most line crossings waiting to be consumed
+    private static final int QUEUE_SIZE = 16;
+    // the number of past brightness readings kept for other threads
+    private static final int READINGS_SIZE = 64;
 
     private SampleProvider m_colorSensor;
-    private Queue<Float> m_brigthnessBuffer;
-    private long m_lastLineTime;
-    private boolean m_detectedLine;
-    private Object m_lock;
+    private EdgeDetector m_edgeDetector;
+    private float[] m_sample;
+    private LineCrossing.Sensor m_sensor;
+    private SpscQueue<LineCrossing> m_crossings;
+    private SampleRing m_readings;
+    private PeriodicTimer m_timer;
 
     /**
      * Constructor
+     * 
+     * @param colorSensor
+     *            the color sensor to detect lines with.
+     * @param sensor
+     *            which sensor the color sensor is, to identify its crossings.
      */
-    public LineDetector(EV3ColorSensor colorSensor)
+    public LineDetector(EV3ColorSensor colorSensor, LineCrossing.Sensor sensor)
     {
+        super("line " + sensor.name().toLowerCase());
+        m_sensor = sensor;
+        m_timer = new PeriodicTimer(getName(), UPDATE_PERIOD);
         m_colorSensor = colorSensor.getMode("Red");
-        m_brigthnessBuffer = new LinkedList<Float>();
-        m_detectedLine = false;
-        m_lock = new Object();
+        m_edgeDetector = new EdgeDetector();
+        m_sample = new float[m_colorSensor.sampleSize()];
+        m_crossings = new SpscQueue<LineCrossing>(QUEUE_SIZE);
+        m_readings = new SampleRing(READINGS_SIZE);
     }
 
     /**
-     * Main loop to detect brightness.
+     * Main loop to detect brightness, used when not sampled by a SensorHub.
      */
     public void run()
     {
-        long updateStart;
         while (true)
         {
-            updateStart = System.currentTimeMillis();
+            sample();
+            m_timer.waitForNextPeriod();
+        }
+    }
 
-            // sample color sensor
-            float[] collectedSample = new float[m_colorSensor.sampleSize()];
-            m_colorSensor.fetchSample(collectedSample, 0);
+    /**
+     * Samples the color sensor and looks for a line.
+     */
+    public void sample()
+    {
+        m_colorSensor.fetchSample(m_sample, 0);
+        long sampleTime = System.nanoTime();
+        m_readings.publish(sampleTime, m_sample[0]);
 
-            // add new brightness value to the buffer
-            m_brigthnessBuffer.add(collectedSample[0]);
+        // a line is reported once the sensor has passed over it, at the
+        // interpolated time the sensor was over its center
+        if (m_edgeDetector.add(sampleTime, m_sample[0]))
+        {
+            m_crossings.offer(new LineCrossing(m_sensor, m_edgeDetector.getLineTime(), m_edgeDetector.getLineDepth()));
+        }
+    }
 
-            // remove values older sample values if the buffer is above capacity
-            if (m_brigthnessBuffer.size() > BUFFER_SIZE)
-            {
-                m_brigthnessBuffer.remove();
-            }
+    /**
+     * Sets how often the sensor is sampled. High rate sampling finds lines
+     * reliably at high speeds, but takes more processor time.
+     * 
+     * @param highRate
+     *            true to sample as fast as the sensor allows.
+     */
+    public void setHighRate(boolean highRate)
+    {
+        m_timer.setPeriod(highRate ? HIGH_RATE_PERIOD : UPDATE_PERIOD);
+    }
 
-            // calculate the average brightness of the values in the buffer
-            float averageBrightness = 0;
-            if (m_brigthnessBuffer.size() > 0)
-            {
-                for (float sample : m_brigthnessBuffer)
-                {
-                    averageBrightness += sample;
-                }
-                averageBrightness /= m_brigthnessBuffer.size();
-            }
+    /**
+     * @return true if sampling as fast as the sensor allows.
+     */
+    public boolean isHighRate()
+    {
+        return m_timer.getPeriod() == HIGH_RATE_PERIOD;
+    }
 
-            // if a line was very recently seen, don't bother checking again for
-            // a line.
-            if (updateStart - m_lastLineTime > MIN_TIME_BETWEEN_LINES)
-            {
-                synchronized (m_lock)
-                {
-                    m_detectedLine = false;
-                }
+    /**
+     * @return the edge detector finding lines in the samples.
+     */
+    public EdgeDetector getEdgeDetector()
+    {
+        return m_edgeDetector;
+    }
 
-                // if there is a very different value compared to recent values
-                // we've probably passed over a line.
-                if (Math.abs(averageBrightness - collectedSample[0]) > BRIGHTNESS_DELTA_THRESHOLD)
-                {
-                    m_lastLineTime = System.currentTimeMillis();
-                    synchronized (m_lock)
-                    {
-                        m_detectedLine = true;
-                    }
-                }
-            }
+    /**
+     * @return the timer pacing the detector loop.
+     */
+    public PeriodicTimer getTimer()
+    {
+        return m_timer;
+    }
 
-            Utils.sleepToNextPeroid(UPDATE_PERIOD, updateStart);
-        }
+    /**
+     * @return the recent brightness readings with their sample times.
+     */
+    public SampleRing getReadings()
+    {
+        return m_readings;
     }
 
     /**
-     * @return true when a line was just detected.
+     * @return the queue of lines seen that have yet to be consumed. Only one
+     *         thread may take crossings from it.
      */
-    public boolean detectedLine()
+    public SpscQueue<LineCrossing> getCrossings()
     {
-        synchronized (m_lock)
-        {
-            if (m_detectedLine)
-            {
-                m_detectedLine = false;
-                return true;
-            }
-            return false;
-        }
+        return m_crossings;
     }
 }
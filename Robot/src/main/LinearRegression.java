@@ -1,24 +1,60 @@
 package main;
 
-import java.util.LinkedList;
-
 /**
  * Contains methods for computing linear regression and approximating an angle
- * based on a set of points.
+ * based on a set of points. Keeps running sums as points are added, so fits
+ * take the same time however many points there are. Can be limited to the
+ * most recent points, in which case the oldest point is removed from the sums
+ * as each new point is added.
  * 
  * @author Aimee Ascencio
  */
 public class LinearRegression
 {
-    private LinkedList<Vector2> m_listPoints;
+    // the most recent points, only kept when the set is limited to a window
+    private float[] m_windowX;
+    private float[] m_windowY;
+    private int m_oldest;
+
+    private int m_count;
+    private float m_firstX;
+    private float m_firstY;
+    private float m_lastX;
+    private float m_lastY;
+
+    // sums of the point coordinates relative to the first point added, which
+    // keeps the sums small so that little precision is lost
+    private float m_originX;
+    private float m_originY;
+    private double m_sumX;
+    private double m_sumY;
+    private double m_sumX2;
+    private double m_sumY2;
+    private double m_sumXY;
 
     /**
-     * Constructor
+     * Constructor for a set that keeps every point added.
      */
     public LinearRegression()
     {
-        m_listPoints = new LinkedList<Vector2>();
+        this(0);
+    }
 
+    /**
+     * Constructor.
+     * 
+     * @param window
+     *            the number of most recent points kept, or 0 to keep every
+     *            point.
+     */
+    public LinearRegression(int window)
+    {
+        if (window > 0)
+        {
+            m_windowX = new float[window];
+            m_windowY = new float[window];
+        }
+        clearList();
     }
 
     /**
@@ -28,23 +64,71 @@ public class LinearRegression
      */
     public void addPoint(Vector2 point)
     {
-        m_listPoints.add(point);
+        addPoint(point.getX(), point.getY());
     }
 
     /**
-     * @return the first point in the list.
+     * Add a new point to the set, removing the oldest point if the set is
+     * limited to a window that is full.
+     * 
+     * @param x
+     *            the x-axis position of the point.
+     * @param y
+     *            the y-axis position of the point.
+     */
+    public void addPoint(float x, float y)
+    {
+        if (m_count == 0)
+        {
+            m_originX = x;
+            m_originY = y;
+        }
+
+        if (m_windowX != null)
+        {
+            if (m_count == m_windowX.length)
+            {
+                accumulate(m_windowX[m_oldest], m_windowY[m_oldest], -1);
+                m_windowX[m_oldest] = x;
+                m_windowY[m_oldest] = y;
+                m_oldest = (m_oldest + 1) % m_windowX.length;
+                m_count--;
+                m_firstX = m_windowX[m_oldest];
+                m_firstY = m_windowY[m_oldest];
+            }
+            else
+            {
+                int index = (m_oldest + m_count) % m_windowX.length;
+                m_windowX[index] = x;
+                m_windowY[index] = y;
+            }
+        }
+
+        if (m_count == 0)
+        {
+            m_firstX = x;
+            m_firstY = y;
+        }
+        m_lastX = x;
+        m_lastY = y;
+        m_count++;
+        accumulate(x, y, 1);
+    }
+
+    /**
+     * @return the first point in the set.
      */
     public Vector2 getFirst()
     {
-        return m_listPoints.peek();
+        return m_count == 0 ? null : new Vector2(m_firstX, m_firstY);
     }
 
     /**
-     * @return the last point in the list.
+     * @return the last point in the set.
      */
     public Vector2 getLast()
     {
-        return m_listPoints.peekLast();
+        return m_count == 0 ? null : new Vector2(m_lastX, m_lastY);
     }
 
     /**
@@ -52,7 +136,7 @@ public class LinearRegression
      */
     public int sampleSize()
     {
-        return m_listPoints.size();
+        return m_count;
     }
 
     /**
@@ -60,71 +144,76 @@ public class LinearRegression
      */
     public void clearList()
     {
-        m_listPoints = new LinkedList<Vector2>();
+        m_count = 0;
+        m_oldest = 0;
+        m_sumX = 0;
+        m_sumY = 0;
+        m_sumX2 = 0;
+        m_sumY2 = 0;
+        m_sumXY = 0;
     }
 
     /**
      * @return the linear regression approximation of slope based on the set.
+     *         Undefined if the points lie along a line parallel to the y-axis.
      */
     public float slope()
     {
-        int n = m_listPoints.size();
-        float s = n * sumXY() - sumX() * sumY();
-        s /= (n * sumX2() - sumX() * sumX());
-        return s;
+        int n = m_count;
+        double s = n * m_sumXY - m_sumX * m_sumY;
+        s /= (n * m_sumX2 - m_sumX * m_sumX);
+        return (float) s;
     }
 
-    // Methods required for linear regression
     /**
-     * @return the sum of the X- components of the point in the set.
+     * Fits a line that minimizes the perpendicular distance to the points
+     * rather than the distance along the y-axis, so it works equally well for
+     * lines in any direction.
+     * 
+     * @return the direction of the line in degrees, pointing from the first
+     *         point towards the last point, or NaN if there are fewer than two
+     *         points.
      */
-    private float sumX()
+    public float heading()
     {
-        float sum = 0;
-        for (Vector2 v : m_listPoints)
+        if (m_count < 2)
         {
-            sum += v.getX();
+            return Float.NaN;
         }
-        return sum;
-    }
 
-    /**
-     * @return the sum of the Y-components of the point in the set.
-     */
-    private float sumY()
-    {
-        float sum = 0;
-        for (Vector2 v : m_listPoints)
-        {
-            sum += v.getY();
-        }
-        return sum;
-    }
+        // the spread of the points about their mean
+        double meanX = m_sumX / m_count;
+        double meanY = m_sumY / m_count;
+        double varianceX = m_sumX2 / m_count - meanX * meanX;
+        double varianceY = m_sumY2 / m_count - meanY * meanY;
+        double covariance = m_sumXY / m_count - meanX * meanY;
 
-    /**
-     * @return the sum of the X-components squared for each point in the set.
-     */
-    private float sumX2()
-    {
-        float sum = 0;
-        for (Vector2 v : m_listPoints)
+        // the direction in which the points are most spread out
+        double angle = 0.5 * Math.atan2(2 * covariance, varianceX - varianceY);
+
+        // the fitted line has no direction, so point it the way the points
+        // were added
+        if (Math.cos(angle) * (m_lastX - m_firstX) + Math.sin(angle) * (m_lastY - m_firstY) < 0)
         {
-            sum += v.getX() * v.getX();
+            angle += Math.PI;
         }
-        return sum;
+        return Utils.normalizeAngle((float) Math.toDegrees(angle));
     }
 
     /**
-     * @return the sum of the multiplication of X and Y components of the points
-     *         in the set.
+     * Adds or removes a point from the running sums.
+     * 
+     * @param sign
+     *            1 to add the point, or -1 to remove it.
      */
-    private float sumXY()
+    private void accumulate(float x, float y, int sign)
     {
-        float sum = 0;
-        for (Vector2 v : m_listPoints)
-        {
-            sum += v.getY() * v.getX();
-        }
-        return sum;
+        double dx = x - m_originX;
+        double dy = y - m_originY;
+        m_sumX += sign * dx;
+        m_sumY += sign * dy;
+        m_sumX2 += sign * dx * dx;
+        m_sumY2 += sign * dy * dy;
+        m_sumXY += sign * dx * dy;
     }
-}
\ No newline at end of file
+}
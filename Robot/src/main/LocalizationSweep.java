@@ -0,0 +1,348 @@
+package main;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Holds the ranges seen while turning in a start corner, to find where the
+ * two walls are without turning a full revolution. Readings come from two
+ * sensors facing a fixed angle apart. The leading sensor faces further along
+ * the turn, so the trailing sensor sees the directions behind where the
+ * leading sensor started, and the sweep is complete that much sooner.
+ * Readings are kept in order of increasing angle in primitive arrays, so
+ * angles can be found by binary search. Edges are interpolated between
+ * readings, so they are found to less than the angle between readings.
+ * Nothing is allocated after construction.
+ * 
+ * @author Scott Sewell
+ */
+public class LocalizationSweep
+{
+    private float m_lag;
+    private float m_startAngle;
+
+    // the readings in order of increasing angle
+    private float[] m_angles;
+    private float[] m_distances;
+    private int m_count;
+
+    // the leading sensor's readings, held until the trailing sensor has
+    // covered the directions before them
+    private float[] m_pendingAngles;
+    private float[] m_pendingDistances;
+    private int m_pendingCount;
+    private boolean m_caughtUp;
+
+    // the edges of the walls, found between readings
+    private float[] m_crossings;
+    private boolean[] m_crossingFalls;
+    private float m_fallingAngle;
+    private float m_risingAngle;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity
+     *            the most readings kept. Further readings are ignored.
+     * @param lag
+     *            how far in degrees the trailing sensor faces behind the
+     *            leading sensor in the direction of the turn.
+     */
+    public LocalizationSweep(int capacity, float lag)
+    {
+        if (capacity < 2 || lag < 0)
+        {
+            throw new InvalidParameterException("Attempted to create a localization sweep with fewer than two readings or a negative lag!");
+        }
+        m_lag = lag;
+        m_angles = new float[capacity];
+        m_distances = new float[capacity];
+        m_pendingAngles = new float[capacity];
+        m_pendingDistances = new float[capacity];
+        m_crossings = new float[capacity];
+        m_crossingFalls = new boolean[capacity];
+        reset(0);
+    }
+
+    /**
+     * Removes all readings to begin a new sweep.
+     * 
+     * @param startAngle
+     *            the direction in degrees the trailing sensor faces at the
+     *            start of the sweep.
+     */
+    public void reset(float startAngle)
+    {
+        m_startAngle = startAngle;
+        m_count = 0;
+        m_pendingCount = 0;
+        m_caughtUp = m_lag == 0;
+        m_fallingAngle = Float.NaN;
+        m_risingAngle = Float.NaN;
+    }
+
+    /**
+     * Adds a reading from the sensor facing further along the turn.
+     * 
+     * @param angle
+     *            the direction in degrees the sensor faced, counting up
+     *            continuously through the turn rather than wrapping at 360.
+     * @param distance
+     *            the distance read in cm.
+     */
+    public void addLeading(float angle, float distance)
+    {
+        if (m_caughtUp)
+        {
+            append(angle, distance);
+        }
+        else if (m_pendingCount < m_pendingAngles.length)
+        {
+            m_pendingAngles[m_pendingCount] = angle;
+            m_pendingDistances[m_pendingCount] = distance;
+            m_pendingCount++;
+        }
+    }
+
+    /**
+     * Adds a reading from the sensor facing behind the leading sensor. Only
+     * readings in directions the leading sensor never faced are kept.
+     * 
+     * @param angle
+     *            the direction in degrees the sensor faced, counting up
+     *            continuously through the turn rather than wrapping at 360.
+     * @param distance
+     *            the distance read in cm.
+     */
+    public void addTrailing(float angle, float distance)
+    {
+        if (m_caughtUp)
+        {
+            return;
+        }
+        if (angle < m_startAngle + m_lag)
+        {
+            append(angle, distance);
+            return;
+        }
+
+        // the trailing sensor has reached where the leading sensor started,
+        // so the held readings follow on
+        m_caughtUp = true;
+        for (int i = 0; i < m_pendingCount; i++)
+        {
+            append(m_pendingAngles[i], m_pendingDistances[i]);
+        }
+        m_pendingCount = 0;
+    }
+
+    /**
+     * Adds a reading after the last, ignoring readings out of order.
+     */
+    private void append(float angle, float distance)
+    {
+        if (m_count == m_angles.length || (m_count > 0 && angle <= m_angles[m_count - 1]))
+        {
+            return;
+        }
+        m_angles[m_count] = angle;
+        m_distances[m_count] = distance;
+        m_count++;
+    }
+
+    /**
+     * Looks for the walls, seen as the widest span where the distance is
+     * below a threshold with an edge seen at either end. Once the sweep has
+     * covered a whole revolution, a span may wrap past the first reading.
+     * 
+     * @param threshold
+     *            the distance in cm below which a wall is seen.
+     * @param minSpan
+     *            the narrowest span in degrees taken as the walls, so that
+     *            blocks near the start are not.
+     * @return true if the walls were found, with their edges given by
+     *         {@link #getFallingAngle()} and {@link #getRisingAngle()}.
+     */
+    public boolean findWalls(float threshold, float minSpan)
+    {
+        m_fallingAngle = Float.NaN;
+        m_risingAngle = Float.NaN;
+        if (!m_caughtUp || m_count < 2)
+        {
+            return false;
+        }
+
+        // find where the distance crosses the threshold, joining the last
+        // reading of the first revolution to the first reading once the
+        // sweep has come all the way around
+        float end = m_angles[0] + 360;
+        boolean fullTurn = m_angles[m_count - 1] >= end;
+        int crossingCount = 0;
+        int last = 0;
+        for (int i = 1; i < m_count && m_angles[i] < end; i++)
+        {
+            crossingCount = addCrossing(crossingCount, m_angles[i - 1], m_distances[i - 1], m_angles[i], m_distances[i], threshold);
+            last = i;
+        }
+        if (fullTurn)
+        {
+            crossingCount = addCrossing(crossingCount, m_angles[last], m_distances[last], end, m_distances[0], threshold);
+        }
+
+        // each falling edge and the next rising edge bound a span below the
+        // threshold
+        float widest = 0;
+        for (int i = 0; i < crossingCount; i++)
+        {
+            if (!m_crossingFalls[i])
+            {
+                continue;
+            }
+            float rising = Float.NaN;
+            for (int j = 1; j < crossingCount && Float.isNaN(rising); j++)
+            {
+                int k = i + j;
+                if (k < crossingCount)
+                {
+                    rising = m_crossingFalls[k] ? Float.NaN : m_crossings[k];
+                }
+                else if (fullTurn)
+                {
+                    k -= crossingCount;
+                    rising = m_crossingFalls[k] ? Float.NaN : m_crossings[k] + 360;
+                }
+                else
+                {
+                    break;
+                }
+            }
+            float span = rising - m_crossings[i];
+            if (!Float.isNaN(rising) && span >= minSpan && span > widest)
+            {
+                widest = span;
+                m_fallingAngle = m_crossings[i];
+                m_risingAngle = rising;
+            }
+        }
+        return !Float.isNaN(m_fallingAngle);
+    }
+
+    /**
+     * Records where the distance crosses a threshold between two readings,
+     * found by interpolating between them.
+     * 
+     * @return the new number of crossings.
+     */
+    private int addCrossing(int count, float angleA, float distanceA, float angleB, float distanceB, float threshold)
+    {
+        boolean falls = distanceA >= threshold && distanceB < threshold;
+        boolean rises = distanceA < threshold && distanceB >= threshold;
+        if (!falls && !rises)
+        {
+            return count;
+        }
+        float t = (threshold - distanceA) / (distanceB - distanceA);
+        m_crossings[count] = angleA + (angleB - angleA) * t;
+        m_crossingFalls[count] = falls;
+        return count + 1;
+    }
+
+    /**
+     * Finds the distance seen in a direction by interpolating between the
+     * readings either side of it.
+     * 
+     * @param angle
+     *            the direction in degrees. Any multiple of 360 degrees may
+     *            be added.
+     * @return the distance in cm, or NaN if the direction was not covered.
+     */
+    public float getDistanceAt(float angle)
+    {
+        if (m_count == 0)
+        {
+            return Float.NaN;
+        }
+        float first = m_angles[0];
+        float target = first + Utils.normalizeAngle(angle - first);
+        float last = m_angles[m_count - 1];
+        if (target > last)
+        {
+            return Float.NaN;
+        }
+
+        // find the last reading at or before the direction
+        int low = 0;
+        int high = m_count - 1;
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+            if (m_angles[mid] <= target)
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        if (low == m_count - 1)
+        {
+            return m_distances[low];
+        }
+        float t = (target - m_angles[low]) / (m_angles[low + 1] - m_angles[low]);
+        return m_distances[low] + (m_distances[low + 1] - m_distances[low]) * t;
+    }
+
+    /**
+     * @return the direction in degrees where the distance falls below the
+     *         threshold at the start of the walls, or NaN if the walls have
+     *         not been found.
+     */
+    public float getFallingAngle()
+    {
+        return m_fallingAngle;
+    }
+
+    /**
+     * @return the direction in degrees where the distance rises above the
+     *         threshold at the end of the walls, which is after the falling
+     *         angle, or NaN if the walls have not been found.
+     */
+    public float getRisingAngle()
+    {
+        return m_risingAngle;
+    }
+
+    /**
+     * @return the number of degrees covered without a gap, or 0 until the
+     *         trailing sensor has caught up with where the leading sensor
+     *         started.
+     */
+    public float getCoverage()
+    {
+        return m_caughtUp && m_count > 0 ? m_angles[m_count - 1] - m_angles[0] : 0;
+    }
+
+    /**
+     * @return the number of readings kept in order.
+     */
+    public int size()
+    {
+        return m_count;
+    }
+
+    /**
+     * @return the direction in degrees of a reading.
+     */
+    public float getAngle(int index)
+    {
+        return m_angles[index];
+    }
+
+    /**
+     * @return the distance in cm of a reading.
+     */
+    public float getDistance(int index)
+    {
+        return m_distances[index];
+    }
+}
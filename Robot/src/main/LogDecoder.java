@@ -0,0 +1,185 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a log file written by {@link Logger} into text. Meant to be run on a
+ * computer after copying the log off the robot, so that no formatting is done
+ * on the robot.
+ * 
+ * @author Scott Sewell
+ */
+public class LogDecoder
+{
+    /**
+     * Prints a log file to the console.
+     * 
+     * @param args
+     *            the path of the log file.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 1)
+        {
+            System.out.println("Usage: LogDecoder <log file>");
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0]))))
+        {
+            decode(in, System.out);
+        }
+        catch (IOException e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Prints each record of a log, with the time in ms since the first record.
+     * 
+     * @param in
+     *            the log, starting at its header.
+     * @param out
+     *            where to print the records.
+     * @return the number of records printed.
+     */
+    public static int decode(DataInput in, PrintStream out) throws IOException
+    {
+        readHeader(in);
+
+        Logger.Event[] events = Logger.Event.values();
+        long startTime = 0;
+        int count = 0;
+        while (true)
+        {
+            int event;
+            try
+            {
+                event = in.readUnsignedByte();
+            }
+            catch (EOFException e)
+            {
+                return count;
+            }
+            long time = in.readLong();
+            float value0 = in.readFloat();
+            float value1 = in.readFloat();
+            float value2 = in.readFloat();
+
+            if (count == 0)
+            {
+                startTime = time;
+            }
+            String text = event < events.length
+                    ? String.format(events[event].getFormat(), value0, value1, value2)
+                    : "unknown event " + event;
+            out.println(String.format("%10.3f\t%s", (time - startTime) / 1e6, text));
+            count++;
+        }
+    }
+
+    /**
+     * Reads the search sweeps recorded in a log.
+     * 
+     * @param in
+     *            the log, starting at its header.
+     * @param sweeps
+     *            the list the sweeps are added to.
+     * @return the number of sweeps read.
+     */
+    public static int readSweeps(DataInput in, List<RecordedSweep> sweeps) throws IOException
+    {
+        readHeader(in);
+
+        Logger.Event[] events = Logger.Event.values();
+        RecordedSweep sweep = null;
+        int count = 0;
+        while (true)
+        {
+            int event;
+            try
+            {
+                event = in.readUnsignedByte();
+            }
+            catch (EOFException e)
+            {
+                return count;
+            }
+            long time = in.readLong();
+            float value0 = in.readFloat();
+            float value1 = in.readFloat();
+            float value2 = in.readFloat();
+            if (event >= events.length)
+            {
+                continue;
+            }
+
+            switch (events[event])
+            {
+                case SweepStart:
+                    sweep = new RecordedSweep(value0, value1);
+                    sweeps.add(sweep);
+                    count++;
+                    break;
+                case SweepReading:
+                    if (sweep != null)
+                    {
+                        sweep.add(time, value0, value1);
+                    }
+                    break;
+                case SweepLabel:
+                    if (sweep != null)
+                    {
+                        sweep.setLabel(value0 > 0 ? RecordedSweep.Label.Block : RecordedSweep.Label.NoBlock, value1, value2);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads the search sweeps recorded in log files.
+     * 
+     * @param filenames
+     *            the paths of the log files.
+     * @return the sweeps in all of the files, in order.
+     */
+    public static List<RecordedSweep> readSweeps(String[] filenames) throws IOException
+    {
+        List<RecordedSweep> sweeps = new ArrayList<RecordedSweep>();
+        for (String filename : filenames)
+        {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename))))
+            {
+                readSweeps(in, sweeps);
+            }
+        }
+        return sweeps;
+    }
+
+    /**
+     * Checks the header identifying a log file.
+     */
+    private static void readHeader(DataInput in) throws IOException
+    {
+        if (in.readInt() != Logger.MAGIC)
+        {
+            throw new IOException("Not a log file!");
+        }
+        int version = in.readInt();
+        if (version != Logger.VERSION)
+        {
+            throw new IOException("Unsupported log version " + version + "!");
+        }
+    }
+}
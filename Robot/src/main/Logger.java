@@ -0,0 +1,256 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records debugging events without blocking or allocating on the thread
+ * logging them. Each event is a fixed size binary record held in preallocated
+ * arrays, and a low priority thread periodically drains the records to a
+ * single file. No text is formatted on the robot; the file is turned into
+ * text on a computer by {@link LogDecoder}. If the records are logged faster
+ * than they are drained, new records are dropped and counted rather than
+ * waiting.
+ * 
+ * @author Scott Sewell
+ */
+public class Logger extends Thread
+{
+    // identifies a log file, and the version of its record layout
+    public static final int MAGIC = 0x444c4f47;
+    public static final int VERSION = 1;
+    // the default number of records held before they are written
+    public static final int DEFAULT_CAPACITY = 4096;
+    // the period at which records are written to the file in ms
+    private static final int DRAIN_PERIOD = 200;
+
+    /**
+     * The kinds of events that can be logged, each with the format used to
+     * print its values.
+     */
+    public enum Event
+    {
+        SweepPoint("sweep point %.0f: angle %.1f distance %.1f"),
+        SanitizedPoint("sanitized point %.0f: angle %.1f distance %.1f"),
+        Discontinuity("discontinuity %.0f: angle %.1f distance %.1f"),
+        MultipleBlocks("detected more than one block. Abort."),
+        Destination("planning on traveling: %.1f at angle %.1f"),
+        SweepAnalysis("sweep analyzed in %.3f ms with %.0f points and %.0f discontinuities"),
+        SweepStart("sweep started at %.1f degrees over %.1f degrees"),
+        SweepReading("sweep reading at %.2f degrees: %.1f cm"),
+        SweepLabel("sweep label %.0f: block at %.1f degrees %.1f cm from the sweep start"),
+        BlockSighted("block seen at (%.1f, %.1f) with confidence %.2f"),
+        KnownBlock("skipped %.0f known blocks, planning on traveling: %.1f at angle %.1f"),
+        RememberedBlock("going to remembered block at (%.1f, %.1f) with confidence %.2f"),
+        FirstMotion("started on the task %.0f ms into the match (fast start %.0f)");
+
+        private String m_format;
+
+        Event(String format)
+        {
+            m_format = format;
+        }
+
+        /**
+         * @return the format string used to print the event's values.
+         */
+        public String getFormat()
+        {
+            return m_format;
+        }
+    }
+
+    private String m_filename;
+
+    // the records, stored as parallel arrays so none are allocated
+    private int[] m_events;
+    private long[] m_times;
+    private float[] m_values0;
+    private float[] m_values1;
+    private float[] m_values2;
+    private int m_mask;
+    // the index of the next record to write, only written by the logger
+    // thread
+    private AtomicLong m_head;
+    // the index of the next free record, only written by the logging thread
+    private AtomicLong m_tail;
+    private volatile int m_dropped;
+
+    /**
+     * Constructor.
+     * 
+     * @param filename
+     *            the file the records are written to.
+     * @param capacity
+     *            the most records held at once, rounded up to a power of two.
+     */
+    public Logger(String filename, int capacity)
+    {
+        super("logger");
+        setPriority(Thread.MIN_PRIORITY);
+        setDaemon(true);
+        m_filename = filename;
+
+        int size = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1);
+        m_events = new int[size];
+        m_times = new long[size];
+        m_values0 = new float[size];
+        m_values1 = new float[size];
+        m_values2 = new float[size];
+        m_mask = size - 1;
+        m_head = new AtomicLong(0);
+        m_tail = new AtomicLong(0);
+        m_dropped = 0;
+    }
+
+    /**
+     * Logs an event with up to three values. Must only be called from one
+     * thread.
+     * 
+     * @param event
+     *            the kind of event.
+     * @param value0
+     *            the first value printed by the event's format.
+     * @param value1
+     *            the second value printed by the event's format.
+     * @param value2
+     *            the third value printed by the event's format.
+     * @return false if the records were full and the event was dropped.
+     */
+    public boolean log(Event event, float value0, float value1, float value2)
+    {
+        return log(event, System.nanoTime(), value0, value1, value2);
+    }
+
+    /**
+     * Logs an event that happened at a given time with up to three values.
+     * Must only be called from one thread.
+     * 
+     * @param event
+     *            the kind of event.
+     * @param time
+     *            the system time in ns at which the event happened.
+     * @param value0
+     *            the first value printed by the event's format.
+     * @param value1
+     *            the second value printed by the event's format.
+     * @param value2
+     *            the third value printed by the event's format.
+     * @return false if the records were full and the event was dropped.
+     */
+    public boolean log(Event event, long time, float value0, float value1, float value2)
+    {
+        long tail = m_tail.get();
+        if (tail - m_head.get() == m_events.length)
+        {
+            m_dropped++;
+            return false;
+        }
+        int index = (int) tail & m_mask;
+        m_events[index] = event.ordinal();
+        m_times[index] = time;
+        m_values0[index] = value0;
+        m_values1[index] = value1;
+        m_values2[index] = value2;
+        // publishes the record written above to the logger thread
+        m_tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Logs an event with one value.
+     * 
+     * @param event
+     *            the kind of event.
+     * @param value
+     *            the value printed by the event's format.
+     * @return false if the records were full and the event was dropped.
+     */
+    public boolean log(Event event, float value)
+    {
+        return log(event, value, 0, 0);
+    }
+
+    /**
+     * Main loop writing the records to the file.
+     */
+    public void run()
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_filename))))
+        {
+            writeHeader(out);
+            while (true)
+            {
+                if (drain(out) > 0)
+                {
+                    // flush so the records survive the robot being turned
+                    // off
+                    out.flush();
+                }
+                LockSupport.parkNanos(DRAIN_PERIOD * 1000000L);
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the header identifying a log file.
+     * 
+     * @param out
+     *            the start of the file.
+     */
+    static void writeHeader(DataOutput out) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Writes all logged records and frees their space. Only to be called by
+     * the logger thread.
+     * 
+     * @param out
+     *            where to write the records.
+     * @return the number of records written.
+     */
+    int drain(DataOutput out) throws IOException
+    {
+        long head = m_head.get();
+        long tail = m_tail.get();
+        for (long i = head; i < tail; i++)
+        {
+            int index = (int) i & m_mask;
+            out.writeByte(m_events[index]);
+            out.writeLong(m_times[index]);
+            out.writeFloat(m_values0[index]);
+            out.writeFloat(m_values1[index]);
+            out.writeFloat(m_values2[index]);
+        }
+        m_head.lazySet(tail);
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return the number of records waiting to be written.
+     */
+    public int size()
+    {
+        return (int) (m_tail.get() - m_head.get());
+    }
+
+    /**
+     * @return the number of events dropped because the records were full.
+     */
+    public int getDroppedCount()
+    {
+        return m_dropped;
+    }
+}
@@ -1,16 +1,12 @@
 package main;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.*;
 import lejos.hardware.Button;
 import lejos.hardware.Sound;
 
 /**
  * The main class that manages most of the decision making aspects of the robot.
- *
+ * 
  * @author Scott Sewell
  */
 public class Main
@@ -27,26 +23,83 @@ public class Main
     private static final float AVOID_DISTANCE = 40;
     // how much error is allowed between the odometer position and destination position.
     private static final float POSITION_TOLERANCE = 2.0f;
+    // if true odometry correction weighs measurements using a pose estimator
+    private static final boolean USE_POSE_ESTIMATOR = true;
+    // if true the sensors are sampled from a single hub thread instead of a
+    // thread each
+    private static final boolean USE_SENSOR_HUB = true;
+    // the number of hub ticks between odometer updates
+    private static final int ODOMETER_DIVISOR = 5;
+    // if true the odometer updates less often while the wheels turn slowly
+    private static final boolean USE_ADAPTIVE_ODOMETRY = true;
+    // the longest time to wait for a new ultrasonic reading in ns, after
+    // which the robot's state is checked again
+    private static final long READING_TIMEOUT = UltrasonicPoller.UPDATE_PERIOD * 4 * 1000000L;
+    // the uncertainty in cm of the position found by localization
+    private static final float LOCALIZATION_POSITION_DEVIATION = 2.0f;
+    // the uncertainty in degrees of the heading found by localization
+    private static final float LOCALIZATION_THETA_DEVIATION = 3.0f;
+    // how far the robot turns to relocalize after getting lost in degrees
+    private static final float RELOCALIZATION_SWEEP = 360;
+    // how far the robot may be from its odometer pose once lost in cm
+    private static final float RELOCALIZATION_POSITION_DEVIATION = 40;
+    // how far the robot may be from its odometer heading once lost in degrees
+    private static final float RELOCALIZATION_THETA_DEVIATION = 30;
+    // if true localization turns only until both walls have been seen, at
+    // a higher speed, instead of a full revolution
+    private static final boolean USE_FAST_LOCALIZATION = true;
+    // the narrowest span in degrees the walls are seen over while localizing,
+    // so blocks near the start are not taken as the walls
+    private static final float MIN_WALL_SPAN = 90;
+    // the most readings kept while localizing
+    private static final int LOCALIZATION_READINGS = 512;
+    // if true the robot is placed in a jig at a known pose in the start
+    // corner and starts without localizing
+    private static final boolean USE_FAST_START = false;
+    // where the jig holds the robot relative to the start intersection in
+    // cm, in a frame facing the start heading: the center of the corner tile
+    private static final Vector2 JIG_OFFSET = new Vector2(-Board.TILE_SIZE / 2, -Board.TILE_SIZE / 2);
+    // the uncertainty in cm of the position the jig holds the robot at
+    private static final float JIG_POSITION_DEVIATION = 3.0f;
+    // the uncertainty in degrees of the heading the jig holds the robot at
+    private static final float JIG_THETA_DEVIATION = 5.0f;
+    // how far the robot drives out of the jig in cm, so both color sensors
+    // cross the first line
+    private static final float JIG_EXIT_DISTANCE = Board.TILE_SIZE;
+    // the file debugging events are logged to, decoded by LogDecoder
+    private static final String LOG_FILE = "log.bin";
     
     private StartParameters m_startParams;
     private Board m_board;
     private Odometer m_odometer;
+    private SensorHub m_sensorHub;
     private OdometryCorrection m_odoCorrection;
     private UltrasonicPoller m_usMain;
     private UltrasonicPoller m_usUpper;
     private Driver m_driver;
     private HeldBlockManager m_blockManager;
     private Display m_display;
+    private ParticleFilter m_particleFilter;
+    private Logger m_logger;
+    private Mapper m_mapper;
+    private BlockRegistry m_blocks;
+    private LocalizationSweep m_localizationSweep;
     
     private long m_startTime;
+    // how long the last localization took in ns
+    private long m_localizationTime;
+    // the time from the start of the match until the robot started on the
+    // task in ms
+    private long m_firstMotionTime;
     
     // search algorithm
     private static final float OFFSET = 30; // to give enough space for the robot to turn around
-    private float m_usPreviousDistance = 0;
-    private boolean m_usHasStartedCollectingData = false;
-    private float m_discontinuityStartAngle = 0;
-    private float m_discontinuityEndAngle = 0;
-    private boolean  m_discontinuitySpotted = false;
+    private BlockSearch m_search;
+    private Vector2 m_sweepOrigin;
+    // the block seen by the last search, if one was found
+    private Block m_sweepBlock;
+    // holds the known blocks near a sweep, so none are allocated
+    private Block[] m_nearbyBlocks = new Block[BlockRegistry.DEFAULT_CAPACITY];
 
     
     /**
@@ -64,13 +117,20 @@ public class Main
     private void launch()
     {
         // initialize
-        m_usMain = new UltrasonicPoller(Robot.ULTRASOUND_MAIN);
-        m_usUpper = new UltrasonicPoller(Robot.ULTRASOUND_UPPER);
+        m_usMain = new UltrasonicPoller(Robot.ULTRASOUND_MAIN, "us main");
+        m_usUpper = new UltrasonicPoller(Robot.ULTRASOUND_UPPER, "us upper");
         m_odometer = new Odometer();
-        m_odoCorrection = new OdometryCorrection(m_odometer);
+        m_odometer.setAdaptivePeriod(USE_ADAPTIVE_ODOMETRY);
+        m_odoCorrection = new OdometryCorrection(m_odometer, m_usMain, m_usUpper);
+        // sample the lines quickly so none are missed at driving speed
+        m_odoCorrection.getLeftLineDetector().setHighRate(true);
+        m_odoCorrection.getRightLineDetector().setHighRate(true);
         m_driver = new Driver(m_odometer);
         m_blockManager = new HeldBlockManager();
         m_display = new Display(m_odometer);
+        m_logger = new Logger(LOG_FILE, Logger.DEFAULT_CAPACITY);
+        m_logger.start();
+        m_blocks = new BlockRegistry();
 
         // choose whether to use wifi or test parameters.
         m_startParams = new StartParameters();
@@ -93,39 +153,124 @@ public class Main
 
         // get the board
         m_board = m_startParams.getBoard();
+        m_particleFilter = new ParticleFilter(m_board, ParticleFilter.DEFAULT_PARTICLE_COUNT);
 
         // start threads
-        m_usMain.start();
-        m_usUpper.start();
-        m_odometer.start();
+        // the ultrasonic sensors are read in turn so that their readings are
+        // evenly spaced. Both still ping continuously.
+        UltrasonicScheduler usScheduler = new UltrasonicScheduler(m_usMain, m_usUpper);
+        if (USE_SENSOR_HUB)
+        {
+            m_sensorHub = new SensorHub();
+            m_sensorHub.add(m_odometer, ODOMETER_DIVISOR);
+            m_odometer.setSensorHub(m_sensorHub);
+            m_sensorHub.add(usScheduler, usScheduler.getSlotPeriod() / SensorHub.BASE_PERIOD);
+            m_odoCorrection.setSensorHub(m_sensorHub);
+            m_sensorHub.start();
+        }
+        else
+        {
+            usScheduler.start();
+            m_odometer.start();
+        }
         m_display.start();
 
-        // localize
-        localize(true);
+        // localize, or take the pose from the jig the robot was placed in
+        if (USE_FAST_START)
+        {
+            startFromJig();
+        }
+        else
+        {
+            localize(true);
+        }
 
-        // start odometry correction now that localization is done
+        // start odometry correction now that the pose is known
+        if (USE_POSE_ESTIMATOR)
+        {
+            m_odometer.setEstimator(USE_FAST_START ?
+                    new PoseEstimator(JIG_POSITION_DEVIATION, JIG_THETA_DEVIATION) :
+                    new PoseEstimator(LOCALIZATION_POSITION_DEVIATION, LOCALIZATION_THETA_DEVIATION));
+        }
         m_odoCorrection.start();
 
+        // map the board from every reading now that the pose is known
+        m_mapper = new Mapper(m_odometer, m_usMain, m_usUpper);
+        m_mapper.start();
+
         // initialize the claw
         m_blockManager.initializeClaw();
 
+        // the robot knows where it is and can start on the task
+        m_firstMotionTime = System.currentTimeMillis() - m_startTime;
+        m_logger.log(Logger.Event.FirstMotion, m_firstMotionTime, USE_FAST_START ? 1 : 0, 0);
+
+        // drive out of the jig straight across the first line, so the pose is
+        // refined from the crossings before searching
+        if (USE_FAST_START)
+        {
+            m_driver.goForward(JIG_EXIT_DISTANCE, true);
+        }
+
         // main logic loop
         while (getTimeRemaining() > 20)
         {
-            // search for blocks until we are facing a probably block
-            while (!searchForBlocks(45, 90))
+            // an odometer pose off the board means the robot was knocked and
+            // has lost track of where it is
+            if (!isOnBoard(m_odometer.getPosition()))
             {
-                
+                relocalize(RELOCALIZATION_SWEEP);
+            }
+
+            // go straight to the nearest remembered block that looked blue,
+            // otherwise search for blocks until we are facing a probable block
+            Block target = m_blocks.findNearestUnvisited(m_odometer.getPosition(), Block.Type.Blue);
+            boolean searched = target == null;
+            if (!searched)
+            {
+                approachBlock(target);
+            }
+            else
+            {
+                while (!searchForBlocks(45, 90))
+                {
+                    
+                }
+                target = m_sweepBlock;
             }
             
             // if there is an object in front of the robot, identify it
             float blockDistance = m_usMain.getFilteredDistance() + Robot.US_MAIN_OFFSET.getX();
+            if (searched)
+            {
+                labelSweep(blockDistance < Robot.RADIUS + 20, blockDistance);
+            }
+
+            // the block approached has either been found and is identified
+            // below, or was not really there, so its sighting is no longer
+            // needed
+            if (target != null)
+            {
+                m_blocks.remove(target);
+            }
+
             if (blockDistance < Robot.RADIUS + 20)
             {
                 // identify the block in front of the robot
                 m_driver.turn(-90, Robot.ROTATE_SPEED, true);
                 boolean isBlueBlock = m_usUpper.getFilteredDistance() + Robot.US_UPPER_OFFSET.getY() > blockDistance + 10;
                 m_driver.turn(90, Robot.ROTATE_SPEED, true);
+
+                // remember wooden blocks so they are skipped from now on
+                if (!isBlueBlock)
+                {
+                    Vector2 center = m_odometer.toWorldSpace(new Vector2(blockDistance + Block.BLUE_BLOCK_WIDTH / 2, 0));
+                    Block block = m_blocks.observe(Block.Type.Wood, center.getX(), center.getY(), BlockRegistry.IDENTIFIED_CONFIDENCE, System.nanoTime());
+                    if (block != null)
+                    {
+                        m_blocks.markVisited(block);
+                    }
+                }
                 
                 // if a blue block, grab hold of it
                 if (isBlueBlock)
@@ -147,6 +292,14 @@ public class Main
         
         // we must move back to the start corner before the end of the match
         moveWhileAvoiding(m_board.getStartPos(), POSITION_TOLERANCE);
+
+        // print the loop timing statistics for tuning the loop rates
+        System.out.println(PeriodicTimer.report());
+        System.out.println("line latency mean " + (m_odoCorrection.getMeanLatency() / 1000) + "us max " + (m_odoCorrection.getMaxLatency() / 1000) + "us");
+        System.out.println("obstacle stop latency max " + (m_usMain.getMaxThresholdLatency() / 1000) + "us");
+        System.out.println("map update mean " + m_mapper.getMeanUpdateTime() + "ns per reading");
+        System.out.println("localization " + (m_localizationTime / 1000000) + "ms");
+        System.out.println("first motion after " + m_firstMotionTime + "ms" + (USE_FAST_START ? " (fast start)" : " (localized)"));
         
         // finish
         System.exit(0);
@@ -154,7 +307,7 @@ public class Main
 
     /**
      * Attempts to set the odometer's angle to match the board's coordinates by
-     * rotating near a board corner. Uses the ultrasonic sensor to determine
+     * rotating near a board corner. Uses the ultrasonic sensors to determine
      * angles at which the walls are seen.
      * 
      * @param moveToOrigin 
@@ -162,6 +315,44 @@ public class Main
      *            the corner after calculating its position.
      */
     private void localize(boolean moveToOrigin)
+    {
+        long start = System.nanoTime();
+
+        // only turn as far as needed to see both walls, falling back to a
+        // full revolution if they could not be found
+        if (!USE_FAST_LOCALIZATION || !localizeFromArc())
+        {
+            localizeFromRevolution();
+        }
+        m_localizationTime = System.nanoTime() - start;
+        
+        Sound.beepSequenceUp();
+        
+        // if applicable, move to the nearest line intersection
+        if (moveToOrigin)
+        {
+            m_driver.travelTo(Board.getNearestIntersection(m_odometer.getPosition()), true);
+            m_driver.turnTo(90 * m_startParams.getStartCorner() - 90, Robot.ROTATE_SPEED, true);
+        }
+    }
+
+    /**
+     * Sets the odometer to the pose the jig holds the robot at in the start
+     * corner, facing the heading the robot would have after localizing. Any
+     * error in the placement is corrected as the color sensors cross lines.
+     */
+    private void startFromJig()
+    {
+        float heading = 90 * m_startParams.getStartCorner() - 90;
+        m_odometer.setTheta(heading);
+        m_odometer.setPosition(Vector2.add(m_board.getStartPos(), Vector2.rotate(JIG_OFFSET, heading)));
+    }
+
+    /**
+     * Localizes by turning one full revolution at localization speed and
+     * recording the distances seen by the upper sensor.
+     */
+    private void localizeFromRevolution()
     {
         m_odometer.setTheta(0);
         m_odometer.setPosition(Vector2.zero());
@@ -170,12 +361,24 @@ public class Main
         // along with the angles they were captured at
         List<Float> orientations = new ArrayList<Float>();
         List<Float> distances = new ArrayList<Float>();
+        float[] samplePose = new float[3];
+        long sequence = m_usUpper.getSequence();
         m_driver.turn(360, Robot.LOCALIZATION_SPEED, false);
         while (m_driver.isTravelling())
         {
-            orientations.add(Utils.normalizeAngle(m_odometer.getTheta() + 90));
-            distances.add(m_usUpper.getFilteredDistance() + Robot.US_UPPER_OFFSET.getY());
-            Utils.sleep(UltrasonicPoller.UPDATE_PERIOD * 2);
+            // take each new reading exactly once, with the heading at the time
+            // it was taken
+            long newest = m_usUpper.awaitNext(sequence, READING_TIMEOUT);
+            while (sequence < newest)
+            {
+                sequence++;
+                float distance = m_usUpper.getFilteredDistance(sequence);
+                if (!Float.isNaN(distance) && m_odometer.poseAt(m_usUpper.getTimestamp(sequence), samplePose))
+                {
+                    orientations.add(Utils.normalizeAngle(samplePose[2] + 90));
+                    distances.add(distance + Robot.US_UPPER_OFFSET.getY());
+                }
+            }
         }
         
         // find all the angles that correspond to when the distance rises above
@@ -212,32 +415,247 @@ public class Main
                 if (bearing > largestBearing)
                 {
                     largestBearing = bearing;
-                    angle = 315 - (bearing / 2) - risingAng;
+                    angle = getWallAngle(fallingAng, risingAng);
                 }
             }
         }
         
+        setPoseFromWalls(angle,
+                distances.get(Utils.closestIndex(Utils.normalizeAngle(180 - angle), orientations)),
+                distances.get(Utils.closestIndex(Utils.normalizeAngle(90 - angle), orientations)));
+    }
+
+    /**
+     * Localizes by turning at a higher speed only until both walls have been
+     * seen. The main sensor faces behind the upper sensor in the turn, so it
+     * covers the directions behind where the upper sensor started, and the
+     * walls are always seen within three quarters of a revolution. Edges are
+     * interpolated between readings, so the higher speed loses little
+     * accuracy.
+     * 
+     * @return true if the walls were found and the odometer was set.
+     */
+    private boolean localizeFromArc()
+    {
+        m_odometer.setTheta(0);
+        m_odometer.setPosition(Vector2.zero());
+
+        // the sweep is kept between localizations so nothing is allocated
+        // while turning
+        if (m_localizationSweep == null)
+        {
+            m_localizationSweep = new LocalizationSweep(LOCALIZATION_READINGS, Robot.US_UPPER_ANGLE - Robot.US_MAIN_ANGLE);
+        }
+        LocalizationSweep sweep = m_localizationSweep;
+        sweep.reset(Robot.US_MAIN_ANGLE);
+
+        float[] samplePose = new float[3];
+        float lastTheta = 0;
+        float turned = 0;
+        boolean found = false;
+        long mainSequence = m_usMain.getSequence();
+        long upperSequence = m_usUpper.getSequence();
+        m_driver.turn(360, Robot.FAST_LOCALIZATION_SPEED, false);
+        while (m_driver.isTravelling() && !found)
+        {
+            // take the readings of both sensors in the order they were taken,
+            // counting the heading up through the turn
+            m_usUpper.awaitNext(upperSequence, READING_TIMEOUT);
+            long mainNewest = m_usMain.getSequence();
+            long upperNewest = m_usUpper.getSequence();
+            while (mainSequence < mainNewest || upperSequence < upperNewest)
+            {
+                long mainTime = mainSequence < mainNewest ? m_usMain.getTimestamp(mainSequence + 1) : Long.MAX_VALUE;
+                long upperTime = upperSequence < upperNewest ? m_usUpper.getTimestamp(upperSequence + 1) : Long.MAX_VALUE;
+                boolean isMain = mainTime <= upperTime;
+                float distance = isMain ? m_usMain.getFilteredDistance(++mainSequence) : m_usUpper.getFilteredDistance(++upperSequence);
+                if (Float.isNaN(distance) || !m_odometer.poseAt(isMain ? mainTime : upperTime, samplePose))
+                {
+                    continue;
+                }
+                turned += Utils.toBearing(samplePose[2] - lastTheta);
+                lastTheta = samplePose[2];
+                if (isMain)
+                {
+                    sweep.addTrailing(turned + Robot.US_MAIN_ANGLE, distance + Robot.US_MAIN_OFFSET.getX());
+                }
+                else
+                {
+                    sweep.addLeading(turned + Robot.US_UPPER_ANGLE, distance + Robot.US_UPPER_OFFSET.getY());
+                }
+            }
+            found = sweep.findWalls(LOCALIZATION_DISTANCE, MIN_WALL_SPAN);
+        }
+        m_driver.stop(true);
+
+        if (!found)
+        {
+            return false;
+        }
+        float angle = getWallAngle(sweep.getFallingAngle(), sweep.getRisingAngle());
+        float xDistance = sweep.getDistanceAt(180 - angle);
+        float yDistance = sweep.getDistanceAt(90 - angle);
+        if (Float.isNaN(xDistance) || Float.isNaN(yDistance))
+        {
+            return false;
+        }
+        setPoseFromWalls(angle, xDistance, yDistance);
+        return true;
+    }
+
+    /**
+     * Finds the rotation from the odometer's heading to the board's heading
+     * from the edges of the walls seen by the upper sensor in a start
+     * corner.
+     * 
+     * @param fallingAngle
+     *            the direction in degrees where the distance fell below the
+     *            localization distance.
+     * @param risingAngle
+     *            the direction in degrees where the distance rose above the
+     *            localization distance.
+     * @return the rotation in degrees, before accounting for the start
+     *         corner.
+     */
+    private static float getWallAngle(float fallingAngle, float risingAngle)
+    {
+        float bearing = Math.abs(Utils.toBearing(risingAngle - fallingAngle));
+        return 315 - (bearing / 2) - risingAngle;
+    }
+
+    /**
+     * Sets the odometer pose from the walls of the start corner.
+     * 
+     * @param angle
+     *            the rotation in degrees from the odometer's heading to the
+     *            board's heading, before accounting for the start corner.
+     * @param xDistance
+     *            the distance in cm from the robot center to the wall along
+     *            the corner's x axis.
+     * @param yDistance
+     *            the distance in cm from the robot center to the wall along
+     *            the corner's y axis.
+     */
+    private void setPoseFromWalls(float angle, float xDistance, float yDistance)
+    {
         // account for the starting corner the robot is in
         float cornerAngOffset = 90 * m_startParams.getStartCorner();
 
         // set odometer angle accounting for start corner
-        m_odometer.setTheta(angle + cornerAngOffset);
-        
-        Vector2 startPos = new Vector2(
-                distances.get(Utils.closestIndex(Utils.normalizeAngle(180 - angle), orientations)) - Board.TILE_SIZE,
-                Board.TILE_SIZE - distances.get(Utils.closestIndex(Utils.normalizeAngle(90 - angle), orientations))
-                );
-        
-        m_odometer.setPosition(m_board.getStartPos().add(startPos.rotate(cornerAngOffset)));
+        m_odometer.setTheta(m_odometer.getTheta() + angle + cornerAngOffset);
         
+        Vector2 startPos = new Vector2(xDistance - Board.TILE_SIZE, Board.TILE_SIZE - yDistance);
+        m_odometer.setPosition(Vector2.add(m_board.getStartPos(), startPos.rotate(cornerAngOffset)));
+    }
+
+    /**
+     * Finds the robot's pose after it has lost track of it, such as after a
+     * collision, by turning in place and matching the ranges seen by both
+     * ultrasonic sensors against the board walls. Works anywhere on the board,
+     * as long as the robot is not too far from the odometer pose.
+     * 
+     * @param sweepAngle
+     *            how far to turn while taking ranges in degrees.
+     * @return true if a pose was found and the odometer was corrected.
+     */
+    private boolean relocalize(float sweepAngle)
+    {
+        float[] lastPose = new float[3];
+        float[] samplePose = new float[3];
+        m_odometer.getPose(lastPose);
+        m_particleFilter.initialize(lastPose[0], lastPose[1], lastPose[2], RELOCALIZATION_POSITION_DEVIATION, RELOCALIZATION_THETA_DEVIATION);
+
+        long mainSequence = m_usMain.getSequence();
+        long upperSequence = m_usUpper.getSequence();
+        m_driver.turn(sweepAngle, Robot.LOCALIZATION_SPEED, false);
+        while (m_driver.isTravelling())
+        {
+            // weigh each new range using the motion since the previous one.
+            // The sensors are read in turn, so their readings alternate, and
+            // waiting for either sensor wakes for every other reading.
+            m_usMain.awaitNext(mainSequence, READING_TIMEOUT);
+            long mainNewest = m_usMain.getSequence();
+            long upperNewest = m_usUpper.getSequence();
+            while (mainSequence < mainNewest || upperSequence < upperNewest)
+            {
+                long mainTime = mainSequence < mainNewest ? m_usMain.getTimestamp(mainSequence + 1) : Long.MAX_VALUE;
+                long upperTime = upperSequence < upperNewest ? m_usUpper.getTimestamp(upperSequence + 1) : Long.MAX_VALUE;
+                if (mainTime <= upperTime)
+                {
+                    mainSequence++;
+                    float range = m_usMain.getDistance(mainSequence);
+                    if (!Float.isNaN(range) && m_odometer.poseAt(mainTime, samplePose))
+                    {
+                        moveParticles(lastPose, samplePose);
+                        m_particleFilter.measure(Robot.US_MAIN_OFFSET.getX(), Robot.US_MAIN_OFFSET.getY(), Robot.US_MAIN_ANGLE, range);
+                    }
+                }
+                else
+                {
+                    upperSequence++;
+                    float range = m_usUpper.getDistance(upperSequence);
+                    if (!Float.isNaN(range) && m_odometer.poseAt(upperTime, samplePose))
+                    {
+                        moveParticles(lastPose, samplePose);
+                        m_particleFilter.measure(Robot.US_UPPER_OFFSET.getX(), Robot.US_UPPER_OFFSET.getY(), Robot.US_UPPER_ANGLE, range);
+                    }
+                }
+            }
+        }
+
+        if (!m_particleFilter.isConverged())
+        {
+            return false;
+        }
+
+        // the estimate is of the pose at the last range, so carry over any
+        // motion since then
+        float[] estimate = new float[3];
+        m_particleFilter.getEstimate(estimate);
+        Pose pose = m_odometer.getPose();
+        float rotation = Utils.toBearing(estimate[2] - lastPose[2]);
+        Vector2 moved = new Vector2(pose.getX() - lastPose[0], pose.getY() - lastPose[1]).rotate(rotation);
+        m_odometer.setPosition(new Vector2(estimate[0], estimate[1]).add(moved));
+        m_odometer.setTheta(pose.getTheta() + rotation);
+
         Sound.beepSequenceUp();
-        
-        // if applicable, move to the nearest line intersection
-        if (moveToOrigin)
+        return true;
+    }
+
+    /**
+     * Moves the particles by the odometer motion between two poses.
+     * 
+     * @param lastPose
+     *            the pose the particles were last moved to, which is set to
+     *            the new pose.
+     * @param pose
+     *            the new pose.
+     */
+    private void moveParticles(float[] lastPose, float[] pose)
+    {
+        float dx = pose[0] - lastPose[0];
+        float dy = pose[1] - lastPose[1];
+        double heading = Math.toRadians(lastPose[2]);
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        if (dx * Math.cos(heading) + dy * Math.sin(heading) < 0)
         {
-            m_driver.travelTo(Board.getNearestIntersection(m_odometer.getPosition()), true);
-            m_driver.turnTo(cornerAngOffset - 90, Robot.ROTATE_SPEED, true);
+            distance = -distance;
         }
+        m_particleFilter.move(distance, Utils.toBearing(pose[2] - lastPose[2]));
+        System.arraycopy(pose, 0, lastPose, 0, 3);
+    }
+
+    /**
+     * Checks if a position is within the board walls.
+     * 
+     * @param position
+     *            the position to check.
+     * @return true if the position is on the board.
+     */
+    private boolean isOnBoard(Vector2 position)
+    {
+        return position.getX() > Board.WALL_LOWER && position.getX() < Board.WALL_UPPER &&
+                position.getY() > Board.WALL_LOWER && position.getY() < Board.WALL_UPPER;
     }
 
     /**
@@ -272,17 +690,24 @@ public class Main
     {
         m_driver.turnTo(Vector2.subtract(position, m_odometer.getPosition()).angle(), Robot.ROTATE_SPEED, true);
         Utils.sleep(50);
+
+        // the ultrasonic poller stops the robot as soon as it sees an
+        // obstacle, so sleep until then, until the robot arrives, or until
+        // the move ends short of the destination, whichever comes first
+        Signal stopped = new Signal();
+        PoseTrigger arrival = new PoseTrigger(Utils.padRect(Utils.toRect(position, position), POSITION_TOLERANCE));
+        RangeThreshold obstacle = new RangeThreshold(Robot.RADIUS + OBSTACLE_DISTANCE - Robot.US_MAIN_OFFSET.getX(), m_driver);
+        arrival.forwardTo(stopped);
+        obstacle.forwardTo(stopped);
+        m_driver.setStopSignal(stopped);
+        m_odometer.addTrigger(arrival);
+        m_usMain.addThreshold(obstacle);
         m_driver.goForward(Vector2.distance(m_odometer.getPosition(), position), false);
-        
-        while ( m_driver.isTravelling() &&
-                m_usMain.getFilteredDistance() + Robot.US_MAIN_OFFSET.getX() > Robot.RADIUS + OBSTACLE_DISTANCE
-                ) {}
-        if (m_driver.isTravelling() && Vector2.distance(position, m_odometer.getPosition()) > OBSTACLE_DISTANCE)
-        {
-            m_driver.stop();
-            return true;
-        }
-        return false;
+        stopped.await(0);
+        m_driver.setStopSignal(null);
+        m_usMain.removeThreshold(obstacle);
+        m_odometer.removeTrigger(arrival);
+        return obstacle.isTriggered() && Vector2.distance(position, m_odometer.getPosition()) > OBSTACLE_DISTANCE;
     }
 
     /**
@@ -293,10 +718,11 @@ public class Main
     {
         // check if there is no obstacle nearby on the left using the left ultrasound sensor
         // also check if the avoidance detour will cross into a invalid position
-        Vector2 leftAvoidWaypoint1 = m_odometer.toWorldSpace(new Vector2(0, AVOID_DISTANCE));
-        Vector2 leftAvoidWaypoint2 = m_odometer.toWorldSpace(new Vector2(AVOID_DISTANCE, AVOID_DISTANCE));
-        Vector2 rightAvoidWaypoint1 = m_odometer.toWorldSpace(new Vector2(0, -AVOID_DISTANCE));
-        Vector2 rightAvoidWaypoint2 = m_odometer.toWorldSpace(new Vector2(AVOID_DISTANCE, -AVOID_DISTANCE));
+        Pose pose = m_odometer.getPose();
+        Vector2 leftAvoidWaypoint1 = pose.toWorldSpace(new Vector2(0, AVOID_DISTANCE));
+        Vector2 leftAvoidWaypoint2 = pose.toWorldSpace(new Vector2(AVOID_DISTANCE, AVOID_DISTANCE));
+        Vector2 rightAvoidWaypoint1 = pose.toWorldSpace(new Vector2(0, -AVOID_DISTANCE));
+        Vector2 rightAvoidWaypoint2 = pose.toWorldSpace(new Vector2(AVOID_DISTANCE, -AVOID_DISTANCE));
 
         Vector2 detour1;
         Vector2 detour2;
@@ -354,7 +780,8 @@ public class Main
     
     /**
      * Searches for blocks. Sweeps from current angle to +90 degrees, collects
-     * data into a Map then analyzes that data and moves the robot accordingly.
+     * data into a block search then moves the robot according to what was
+     * found. Each raw reading is logged so the search can be tuned offline.
      * 
      * @param searchDirection
      *            the direction in degrees that the robot will center the sweep
@@ -369,543 +796,218 @@ public class Main
         float startAngle = Utils.normalizeAngle(searchDirection - (searchWidth / 2));
         m_driver.turnTo(startAngle, Robot.ROTATE_SPEED, true);
 
+        // the search is reused between sweeps so nothing is allocated while
+        // searching
+        if (m_search == null || m_search.getScan().getWidth() < searchWidth)
+        {
+            m_search = new BlockSearch(new SearchParameters(), searchWidth);
+        }
+        m_search.reset(startAngle);
+        m_sweepOrigin = m_odometer.getPosition();
+        m_sweepBlock = null;
+        m_logger.log(Logger.Event.SweepStart, startAngle, searchWidth, 0);
+
         // start turning the robot
         m_driver.turn(searchWidth, Robot.SEARCH_SPEED, false);
         
         // take samples while turning
-        Map<Float,Float> angleDistanceMap = new HashMap<Float,Float>();
+        float[] samplePose = new float[3];
+        long sequence = m_usMain.getSequence();
         while (m_driver.isTravelling())
         {
-            angleDistanceMap.put(m_odometer.getTheta(), getDistanceMain());
-            // prevents grabbing samples than they can be generated
-            Utils.sleep(UltrasonicPoller.UPDATE_PERIOD);
-        }
-
-        // sort the map by increasing angle
-        Map<Float,Float> sortedData = new TreeMap<Float,Float>(angleDistanceMap);
-        writeToFile(sortedData, "sorted.txt");
-
-        // sanitize data to remove incorrect discontinuities
-        Map<Float,Float> sanitizedData = sanitize(sortedData);
-        writeToFile(sanitizedData, "sanitized.txt");
-
-        // set the iterator to the first sanitized data point
-        Iterator<Map.Entry<Float,Float>> entries = sanitizedData.entrySet().iterator();
-        Map.Entry<Float,Float> entry = entries.next();
-        float previousDistance = entry.getValue();
-
-        // check for discontinuities
-        Map<Float,Float> discontinuitiesMap = new HashMap<Float,Float>();
-        
-        while (entries.hasNext())
-        {
-            entry = entries.next();
-            float currentAngle = entry.getKey();
-            float currentDistance = entry.getValue();
-
-            // if there is a discontinuity increase the discontinuity counter
-            // and store the data point on another map
-            if (Math.abs(currentDistance - previousDistance) > 10)
+            // take each new reading exactly once, with the heading at the time
+            // it was taken
+            long newest = m_usMain.awaitNext(sequence, READING_TIMEOUT);
+            while (sequence < newest)
             {
-                discontinuitiesMap.put(currentAngle, currentDistance);
+                sequence++;
+                float distance = m_usMain.getDistance(sequence);
+                long time = m_usMain.getTimestamp(sequence);
+                if (!Float.isNaN(distance) && m_odometer.poseAt(time, samplePose))
+                {
+                    m_logger.log(Logger.Event.SweepReading, time, samplePose[2], distance, 0);
+                    m_search.add(samplePose[2], distance);
+                }
             }
-
-            // updating for next iteration
-            previousDistance = currentDistance;
         }
 
-        // sort the discontinuities map
-        Map<Float,Float> sortedDiscontinuities = new TreeMap<Float,Float>(discontinuitiesMap);
-
-        // take action based on the number of possible blocks
-        if (sortedDiscontinuities.size() == 0)
+        // average the readings in each bin in order of increasing angle
+        long analysisStart = System.nanoTime();
+        if (m_search.process() == 0)
         {
-            Sound.buzz();
-            noDiscontinuities(sortedData);
+            return false;
         }
-        else if (sortedDiscontinuities.size() == 1)
+        logScan(Logger.Event.SweepPoint, false);
+
+        // sanitize data to remove incorrect discontinuities, then check for
+        // discontinuities
+        int discontinuities = m_search.findDiscontinuities();
+        logScan(Logger.Event.SanitizedPoint, false);
+        logScan(Logger.Event.Discontinuity, true);
+
+        // skip the wooden blocks that are already known
+        int excluded = excludeKnownBlocks();
+        BlockSearch.Outcome outcome = m_search.decide();
+        m_logger.log(Logger.Event.SweepAnalysis, (System.nanoTime() - analysisStart) / 1e6f, m_search.getScan().size(), discontinuities);
+        if (outcome == BlockSearch.Outcome.OneDiscontinuity || outcome == BlockSearch.Outcome.BlockPair || outcome == BlockSearch.Outcome.TooClose)
         {
-            Sound.beep();
-            writeToFile(sortedDiscontinuities, "disc1.txt");
-            oneDiscontinuity(sortedData, sortedDiscontinuities);
-            return true;
+            rememberSighting();
         }
-        else
-        {
-            Sound.twoBeeps();
-            writeToFile(sortedDiscontinuities, "disc2.txt");
 
-            if (moreThanOneBlock(sortedDiscontinuities))
-            {
+        // take action based on the number of possible blocks
+        switch (outcome)
+        {
+            case NoDiscontinuities:
+                Sound.buzz();
+                travelToDestination();
+                return false;
+            case OneDiscontinuity:
+                Sound.beep();
+                travelToDestination();
+                return true;
+            case MultipleBlocks:
+                Sound.twoBeeps();
+                m_logger.log(Logger.Event.MultipleBlocks, 0);
                 Sound.beepSequenceUp();
-            }
-            else
-            {
-                manyDiscontinuities(sortedDiscontinuities);
+                return false;
+            case BlockPair:
+                Sound.twoBeeps();
+                m_logger.log(Logger.Event.Destination, m_search.getDestinationDistance(), m_search.getDestinationAngle(), 0);
+                travelToDestination();
                 return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * This method removes any false positives from the data.
-     * 
-     * @param rawData
-     *            angles to distance map containing search data.
-     * @return the cleaned up map containing the angles and the distances
-     *         recorded by the ultrasonic sensor.
-     */
-    private Map<Float,Float> sanitize(Map<Float,Float> rawData)
-    {
-        float currentAngle;
-        float currentDistance;
-        float previousAngle;
-        float previousDistance;
-        float angleGap;
-        float minAngleGap = 8;
-        float absDistanceGap;
-        float minDistanceGap = 0;
-        Iterator<Map.Entry<Float,Float>> entries;
-        Map.Entry<Float,Float> entry;
-
-        // in case we can't modify a parameter
-        // creating new reference
-        // Map<Float, Float> localRawData = new TreeMap<Float, Float>(rawData);
-
-        // setting the discontinuities
-        entries = rawData.entrySet().iterator();
-
-        // set previousAngle and previousDistance to first data point
-        entry = entries.next();
-        previousAngle = entry.getKey();
-        previousDistance = entry.getValue();
-
-        // hardcoding 55 for the first value
-        rawData.put(entry.getKey(), 55f);
-        previousDistance = 55f;
-
-        // set m_discontinuityStartAngle to first angle
-        m_discontinuityStartAngle = previousAngle;
-
-        // check for discontinuities
-        while (entries.hasNext())
-        {
-            entry = entries.next();
-            currentAngle = entry.getKey();
-            currentDistance = entry.getValue();
-
-            absDistanceGap = Math.abs(currentDistance - previousDistance);
-
-            if (absDistanceGap > minDistanceGap)
-            {
-                // so here we know the sensor detected something
-                // let's see what angle does it span
-                // if it's less than 8 degress, we change the data
-                // meaning at currentAngle, change distance
-
-                // if 55 prev and now 30
-                // the discontinuity was detected at THIS angle
-                // so set m_start to this angle, ie currentAngle
-                if (!m_discontinuitySpotted) // if discon has been spotted
-                {
-                    m_discontinuityStartAngle = currentAngle;
-                    m_discontinuitySpotted = true;
-
-                }
-                else
-                {
-                    m_discontinuityEndAngle = currentAngle;
-                    m_discontinuitySpotted = false;
-
-                    angleGap = Math.abs(m_discontinuityEndAngle - m_discontinuityStartAngle);
-
-                    writeDebug("Angle gap is: " + angleGap);
-
-                    if (angleGap < minAngleGap) // if we have a discontinuity
-                                                // lower than this, delete
-                    {
-                        writeDebug("will delete from: " + m_discontinuityStartAngle + " to: " + m_discontinuityEndAngle);
-
-                        // modifiying this reference
-                        filterOutFalsePositives(rawData, m_discontinuityStartAngle, m_discontinuityEndAngle);
-                    }
-                }
-            }
-
-            previousAngle = currentAngle;
-            previousDistance = currentDistance;
-
-            // if we are at the end of the data, add a 55 to make sure
-            // that we spot a discontinuity in the case there's a block
-            // that is detected up until the end of the scan.
-            if (!entries.hasNext())
-            {
-                rawData.put(currentAngle, 55f);
-            }
-        }
-        return rawData;
-    }
-    
-    /**
-     * This method checks if any discontinuities is covering more than a certain
-     * angle (80 for one block). If it is, it lets the any method calling it
-     * know that there is more than one block around the robot.
-     * 
-     * @param sortedDiscontinuities
-     * @return Whether there is more than one block in front of the robot.
-     */
-    private boolean moreThanOneBlock(Map<Float,Float> sortedDiscontinuities)
-    {
-        float currentAngle;
-        float previousAngle;
-        float oneBlockAngle = 80;
-        Iterator<Map.Entry<Float,Float>> entries;
-        Map.Entry<Float,Float> entry;
-
-        entries = sortedDiscontinuities.entrySet().iterator();
-
-        entry = entries.next();
-        previousAngle = entry.getKey();
-
-        while (entries.hasNext())
-        {
-            entry = entries.next();
-            currentAngle = entry.getKey();
-
-            if (Math.abs(currentAngle - previousAngle) > oneBlockAngle)
-            {
-                writeDebug("Detected two blocks. Abort.");
+            case TooClose:
+                // abort the search and relocate
+                Sound.twoBeeps();
+                m_logger.log(Logger.Event.Destination, m_search.getDestinationDistance(), m_search.getDestinationAngle(), 0);
+                Sound.beepSequenceUp();
                 return true;
-            }
-
-            // updating for next iteration
-            previousAngle = currentAngle;
+            case NoBlockPair:
+                Sound.twoBeeps();
+                return true;
+            case KnownBlock:
+                // move on from the known blocks as if nothing was seen
+                Sound.buzz();
+                m_logger.log(Logger.Event.KnownBlock, excluded, m_search.getDestinationDistance(), m_search.getDestinationAngle());
+                travelToDestination();
+                return false;
+            default:
+                return false;
         }
-        return false;
     }
 
     /**
-     * Method that iterates through the data from one angle to the other to
-     * remove any discontinuities in between.
-     * 
-     * @param rawData
-     * @param discontinuityStartAngle
-     * @param discontinuityEndAngle
+     * Moves the robot towards the destination found by the last search,
+     * leaving enough space for the robot to turn around.
      */
-    private void filterOutFalsePositives(Map<Float,Float> rawData, float discontinuityStartAngle, float discontinuityEndAngle)
+    private void travelToDestination()
     {
-        float correctedDistance = 55f;
-        float currentAngle;
-
-        for (Map.Entry<Float,Float> entry : rawData.entrySet())
-        {
-            currentAngle = entry.getKey();
-
-            // do not include endAngle as it is the other discontinuity
-            if ((currentAngle >= discontinuityStartAngle) && (currentAngle < discontinuityEndAngle))
-            {
-                rawData.put(currentAngle, correctedDistance);
-            }
-        }
-    }
-    
-    /**
-     * This method is to be called for analyzing a dataset containing no
-     * discontinuities.
-     * 
-     * @param data
-     *            a map containing all the angles and the distances for each
-     *            of them.
-     */
-    private void noDiscontinuities(Map<Float,Float> data)
-    {
-        float[] meanAngleDistance = getMeanAngleDistance(data);
-
-        float meanAngle = meanAngleDistance[0];
-        float meanDistance = meanAngleDistance[1];
-
-        Vector2 destination = Vector2.fromPolar(meanAngle, meanDistance - OFFSET);
-
-        // move robot to mean distance, at mean angle
+        Vector2 destination = Vector2.add(m_sweepOrigin, Vector2.fromPolar(m_search.getDestinationAngle(), m_search.getDestinationDistance() - OFFSET));
         m_driver.travelTo(destination, true);
     }
-    
-    /**
-     * This method is called when only one discontinuity is detected by the main
-     * ultrasonic sensor.
-     * 
-     * @param data
-     *            a map containing all the angles measured and their
-     *            corresponding distances.
-     * @param discontinuitiesMap
-     *            a map containing the only discontinuity found.
-     */
-    private void oneDiscontinuity(Map<Float,Float> data, Map<Float,Float> discontinuitiesMap)
-    {
-        // partitioning data in 2, on either side of the single discontinuity
-        float dividingAngle = discontinuitiesMap.keySet().iterator().next();
-        Map<Float,Float> partitionOne = new HashMap<Float,Float>();
-        Map<Float,Float> partitionTwo = new HashMap<Float,Float>();
-
-        for (Map.Entry<Float,Float> entry : data.entrySet())
-        {
-            if (entry.getKey() < dividingAngle)
-            {
-                partitionOne.put(entry.getKey(), entry.getValue());
-            }
-            else
-            {
-                partitionTwo.put(entry.getKey(), entry.getValue());
-            }
-        }
-
-        // get the mean angle and mean distance of each partitions
-        // first eleement of the array is the angle, second is distance
-        float[] meansPartitionOne = getMeanAngleDistance(partitionOne);
-        float[] meansPartitionTwo = getMeanAngleDistance(partitionTwo);
-
-        float meanAnglePartitionOne = meansPartitionOne[0];
-        float meanDistancePartitionOne = meansPartitionOne[1];
-        float meanAnglePartitionTwo = meansPartitionTwo[0];
-        float meanDistancePartitionTwo = meansPartitionTwo[1];
-
-        Vector2 destination;
-
-        // selecting the partition with the smaller average for the
-        // distance measured
-        if (meanDistancePartitionOne < meanDistancePartitionTwo)
-        {
-            destination = Vector2.fromPolar(meanAnglePartitionOne, meanDistancePartitionOne - OFFSET);
-        }
-        else
-        {
-            destination = Vector2.fromPolar(meanAnglePartitionTwo, meanDistancePartitionTwo - OFFSET);
-        }
 
-        m_driver.travelTo(destination, true);
-    }
-    
     /**
-     * This method is called when the main ultrasonic sensor has detected more
-     * than one discontinuity. The robot will move towards the first blue block
-     * it detects.
+     * Tells the search to skip the known wooden blocks within range of the
+     * sweep.
      * 
-     * @param data
-     *            a map that includes all the angles and the distances of the
-     *            detected discontinuities.
+     * @return the number of blocks skipped.
      */
-    private void manyDiscontinuities(Map<Float,Float> data)
+    private int excludeKnownBlocks()
     {
-        float currentAngle;
-        float currentDistance;
-        float previousAngle;
-        float previousDistance;
-        Iterator<Map.Entry<Float,Float>> entries;
-        Map.Entry<Float,Float> entry;
-        float width;
-        ArrayList<Float> objectWidths = new ArrayList<Float>(); // delete later
-                                                                // if not used
-        float destinationAngle;
-        float destinationDistance;
-
-        // An Iterator to iterate through all the discontinuities in the Map
-        entries = data.entrySet().iterator();
-
-        // initialize the previous variables with first element on the Map
-        entry = entries.next();
-        previousAngle = entry.getKey();
-        previousDistance = entry.getValue();
-
-        // do while to go through the loop once in case there are only
-        // 2 discontinuities in the Map
-        do
-        {
-            entry = entries.next();
-            currentAngle = entry.getKey();
-            currentDistance = entry.getValue();
-
-            // calculating widths and adding to the arraylist
-            width = calculateWidth(previousAngle, previousDistance, currentAngle, currentDistance);
-            objectWidths.add(width);
-
-            // TODO need a better width calculator
-            // mb get some data and then calculate what could be considered
-            // a block and what is more than than.
-            // for example, if width exceeds 100, then assume it's two blocks
-            // and do something else
-            // this could also be just checking the angle instead of the width
-            if (width < 120)
+        float range = m_search.getParameters().getNoObject() + Block.BLUE_BLOCK_WIDTH;
+        int count = m_blocks.findWithinRadius(m_sweepOrigin.getX(), m_sweepOrigin.getY(), range, m_nearbyBlocks);
+        int excluded = 0;
+        for (int i = 0; i < count; i++)
+        {
+            Block block = m_nearbyBlocks[i];
+            if (block.type == Block.Type.Wood)
             {
-                // trying to aim for the middle of the block
-                destinationAngle = (currentAngle + previousAngle) / 2.0f;
-
-                // an offset might be needed here to not land on top of the
-                // block
-                destinationDistance = (currentDistance + previousDistance) / 2.0f;
-
-                // DEBUG
-                writeDebug("Planning on traveling: " + destinationDistance);
-
-                // if it detects an object to close to it, abort search and
-                // relocate
-                if (destinationDistance < 16)
+                // skip as much of the sweep as the block could cover
+                Vector2 toBlock = Vector2.subtract(block.position, m_sweepOrigin);
+                float tolerance = (float) Math.toDegrees(Math.atan2(BlockRegistry.MERGE_DISTANCE, toBlock.magnitude()));
+                if (m_search.exclude(toBlock.angle(), tolerance))
                 {
-                    Sound.beepSequenceUp();
-                    break;
+                    excluded++;
                 }
-
-                m_driver.travelTo(Vector2.fromPolar(destinationAngle, destinationDistance - OFFSET), true);
-                break;
             }
-
-            // updating the previous variables for next iteration
-            previousAngle = currentAngle;
-            previousDistance = currentDistance;
+            m_nearbyBlocks[i] = null;
         }
-        while (entries.hasNext());
-    }
-
-    /**
-     * This method calculates the width of a perceived object.
-     * 
-     * @param angleA
-     *            angle of first edge of the perceived object.
-     * @param distanceA
-     *            distance to the first edge of the perceived object.
-     * @param angleB
-     *            angle of the second edge of the perceived object.
-     * @param distanceB
-     *            distance to the second edge of the perceived object.
-     * @return the calculated width.
-     */
-    private float calculateWidth(float angleA, float distanceA, float angleB, float distanceB)
-    {
-        float meanDistance = (distanceA + distanceB) / 2.0f;
-        float arcSize = Math.abs(Utils.toBearing(angleB - angleA));
-
-        return (float)(meanDistance * Math.sqrt(2 * (1 - Math.cos(arcSize))));
+        return excluded;
     }
 
     /**
-     * This method calculates the average of all angles and all distances passed
-     * to it in a Map.
-     * 
-     * @param data
-     *            a map containing angles as keys and distances as values.
-     * @return the average of all the angles and all the distances that were
-     *         on the map in an array of size 2. The first element is the angle,
-     *         distance is the second.
+     * Remembers the block found by the last search, guessing its type from
+     * the map.
      */
-    private float[] getMeanAngleDistance(Map<Float,Float> data)
+    private void rememberSighting()
     {
-        float meanDistance = 0;
-        float meanAngle = 0;
-        
-        if (data.size() > 0)
+        float angle = m_search.getDestinationAngle();
+        float distance = m_search.getBlockDistance() + Robot.US_MAIN_OFFSET.getX();
+        Vector2 face = Vector2.add(m_sweepOrigin, Vector2.fromPolar(angle, distance));
+        Vector2 center = Vector2.add(m_sweepOrigin, Vector2.fromPolar(angle, distance + Block.BLUE_BLOCK_WIDTH / 2));
+        m_sweepBlock = m_blocks.observe(m_mapper.classify(face.getX(), face.getY()), center.getX(), center.getY(), BlockRegistry.SIGHTING_CONFIDENCE,
+                System.nanoTime());
+        if (m_sweepBlock != null)
         {
-            for (Map.Entry<Float,Float> entry : data.entrySet())
-            {
-                meanAngle += entry.getKey();
-                meanDistance += entry.getValue();
-            }
-            meanDistance = meanDistance / data.size();
-            meanAngle = meanAngle / data.size();
+            m_logger.log(Logger.Event.BlockSighted, center.getX(), center.getY(), m_sweepBlock.confidence);
         }
-        
-        return new float[] { meanAngle, meanDistance };
     }
- 
+
     /**
-     * Wrapper to get the main ultrasonic sensor's instantaneous reading.
-     * 
-     * NOTE: if the difference between the first value and the second is higher
-     * than 8, then keep the previous value. otherwise go with the newest value.
+     * Drives up to a remembered block without searching for it, stopping far
+     * enough away to turn around, and faces it.
      * 
-     * @return the distance detected by the ultrasonic sensor.
+     * @param block
+     *            the block to go to.
      */
-    private float getDistanceMain()
-    {   
-        float distance = Math.min(m_usMain.getLastDistance(), 55);
-
-        // if it's the first time running this method
-        // intialize the previous distance as the current distance
-        if (!m_usHasStartedCollectingData)
-        {
-            m_usHasStartedCollectingData = true;
-            m_usPreviousDistance = distance;
-            return distance;
-        }
-        else
+    private void approachBlock(Block block)
+    {
+        m_logger.log(Logger.Event.RememberedBlock, block.position.getX(), block.position.getY(), block.confidence);
+        Vector2 toBlock = Vector2.subtract(block.position, m_odometer.getPosition());
+        if (toBlock.magnitude() > OFFSET)
         {
-            // if the difference between the previous value and the current
-            // value is less than 7f, keep the previous value
-            if (Math.abs(distance - m_usPreviousDistance) < 10)
-            {
-                distance = m_usPreviousDistance;
-            }
-            else
-            {
-                // if the difference between the previous and the current value
-                // is greater, then keep distance as it is, but update the
-                // previous distance;
-                m_usPreviousDistance = distance;
-            }
-            return distance;
+            m_driver.travelTo(Vector2.add(m_odometer.getPosition(), Vector2.fromPolar(toBlock.angle(), toBlock.magnitude() - OFFSET)), true);
         }
+        m_driver.turnTo(Vector2.subtract(block.position, m_odometer.getPosition()).angle(), Robot.ROTATE_SPEED, true);
     }
 
     /**
-     * This method writes a map to a file.
+     * Logs what was found in front of the robot after the last search, so
+     * the search can be scored offline.
      * 
-     * @param data
-     *            a non-null map.
+     * @param found
+     *            true if a block is in front of the robot.
+     * @param blockDistance
+     *            the distance in cm from the robot center to the block.
      */
-    private void writeToFile(Map<Float,Float> data, String filename)
+    private void labelSweep(boolean found, float blockDistance)
     {
-        // Print output on to a txt file
-        File file = new File(filename);
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename)))
+        if (found)
         {
-            if (!file.exists())
-            {
-                file.createNewFile();
-            }
-            int index = 0;
-            for (Map.Entry<Float,Float> entry : data.entrySet())
-            {
-                writer.write(index + "\t" + String.format("%.1f", entry.getKey()) + "\t" + String.format("%.1f", entry.getValue()) + "\n");
-                index++;
-            }
+            Vector2 block = m_odometer.toWorldSpace(new Vector2(blockDistance, 0)).subtract(m_sweepOrigin);
+            m_logger.log(Logger.Event.SweepLabel, 1, block.angle(), block.magnitude());
         }
-        catch (IOException e)
+        else
         {
-            System.out.println(e.getMessage());
+            m_logger.log(Logger.Event.SweepLabel, 0, 0, 0);
         }
     }
-    
+
     /**
-     * Method for writing to a debug file. Appends to same file.
+     * Logs the points of a scan.
      * 
-     * @param data
-     *            any string.
+     * @param event
+     *            the event logged for each point.
+     * @param discontinuitiesOnly
+     *            if true only the discontinuities of the scan are logged.
      */
-    private static void writeDebug(String data)
+    private void logScan(Logger.Event event, boolean discontinuitiesOnly)
     {
-        // Print output on to a txt file
-        File file = new File("Debug.txt");
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("Debug.txt", true)))
-        {
-            if (!file.exists())
-            {
-                file.createNewFile();
-            }
-
-            writer.write(data + "\n");
-        }
-        catch (IOException e)
+        PolarScan scan = m_search.getScan();
+        int count = discontinuitiesOnly ? scan.getDiscontinuityCount() : scan.size();
+        for (int i = 0; i < count; i++)
         {
-            System.out.println(e.getMessage());
+            int index = discontinuitiesOnly ? scan.getDiscontinuity(i) : i;
+            m_logger.log(event, i, scan.getAngle(index), scan.getDistance(index));
         }
     }
 }
\ No newline at end of file
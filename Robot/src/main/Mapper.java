@@ -0,0 +1,222 @@
+package main;
+
+/**
+ * Builds occupancy grids of the board from every ultrasonic reading, whether
+ * the robot is sweeping, driving or turning. Each reading is placed at the
+ * pose the robot had when it was taken. The main sensor is low enough to see
+ * blocks while the upper sensor sees over them, so each has its own grid;
+ * otherwise the upper sensor would keep clearing the blocks the main sensor
+ * sees. Somewhere occupied at block height but free above it is likely a
+ * block.
+ * 
+ * @author Scott Sewell
+ */
+public class Mapper extends Thread
+{
+    // the period at which new readings are added to the grids in ms
+    public static final int UPDATE_PERIOD = 50;
+    // the width of each grid cell in cm
+    public static final float RESOLUTION = 2.0f;
+    // the furthest distance in cm readings are trusted to
+    public static final float MAX_RANGE = 80;
+
+    private Odometer m_odometer;
+    private UltrasonicPoller m_usMain;
+    private UltrasonicPoller m_usUpper;
+    private long m_usMainSequence;
+    private long m_usUpperSequence;
+    private PeriodicTimer m_timer;
+
+    private OccupancyGrid m_lowGrid;
+    private OccupancyGrid m_highGrid;
+    private float[] m_pose;
+
+    // the number of readings added, and the time spent adding them in ns
+    private volatile int m_readingCount;
+    private volatile long m_updateTime;
+
+    /**
+     * Constructor.
+     * 
+     * @param odometer
+     *            the odometer giving the pose of each reading.
+     * @param usMain
+     *            the poller for the forward facing ultrasonic sensor.
+     * @param usUpper
+     *            the poller for the left facing ultrasonic sensor.
+     */
+    public Mapper(Odometer odometer, UltrasonicPoller usMain, UltrasonicPoller usUpper)
+    {
+        super("mapper");
+        m_odometer = odometer;
+        m_usMain = usMain;
+        m_usUpper = usUpper;
+        m_timer = new PeriodicTimer(getName(), UPDATE_PERIOD);
+
+        float size = Board.WALL_UPPER - Board.WALL_LOWER;
+        m_lowGrid = new OccupancyGrid(Board.WALL_LOWER, Board.WALL_LOWER, size, RESOLUTION);
+        m_highGrid = new OccupancyGrid(Board.WALL_LOWER, Board.WALL_LOWER, size, RESOLUTION);
+        m_pose = new float[3];
+    }
+
+    /**
+     * Main loop adding new readings to the grids. Readings taken before the
+     * mapper was started are ignored.
+     */
+    public void run()
+    {
+        m_usMainSequence = m_usMain.getSequence();
+        m_usUpperSequence = m_usUpper.getSequence();
+        while (true)
+        {
+            update();
+            m_timer.waitForNextPeriod();
+        }
+    }
+
+    /**
+     * Adds the readings taken since the last update to the grids.
+     */
+    private void update()
+    {
+        long start = System.nanoTime();
+        int count = 0;
+
+        long newest = m_usMain.getSequence();
+        while (m_usMainSequence < newest)
+        {
+            m_usMainSequence++;
+            if (addReading(m_lowGrid, m_usMain, m_usMainSequence, Robot.US_MAIN_OFFSET, Robot.US_MAIN_ANGLE))
+            {
+                count++;
+            }
+        }
+
+        newest = m_usUpper.getSequence();
+        while (m_usUpperSequence < newest)
+        {
+            m_usUpperSequence++;
+            if (addReading(m_highGrid, m_usUpper, m_usUpperSequence, Robot.US_UPPER_OFFSET, Robot.US_UPPER_ANGLE))
+            {
+                count++;
+            }
+        }
+
+        m_readingCount += count;
+        m_updateTime += System.nanoTime() - start;
+    }
+
+    /**
+     * Traces a reading through a grid from where the sensor was when it was
+     * taken.
+     * 
+     * @return false if the reading has been overwritten.
+     */
+    private boolean addReading(OccupancyGrid grid, UltrasonicPoller poller, long sequence, Vector2 offset, float angle)
+    {
+        float range = poller.getDistance(sequence);
+        if (Float.isNaN(range))
+        {
+            return false;
+        }
+        m_odometer.poseAt(poller.getTimestamp(sequence), m_pose);
+        addReading(grid, m_pose, offset.getX(), offset.getY(), angle, range);
+        return true;
+    }
+
+    /**
+     * Traces a reading through a grid.
+     * 
+     * @param grid
+     *            the grid to update.
+     * @param pose
+     *            the x and y position in cm and the orientation in degrees of
+     *            the robot when the reading was taken.
+     * @param offsetX
+     *            the forward offset of the sensor from the robot center in
+     *            cm.
+     * @param offsetY
+     *            the leftward offset of the sensor from the robot center in
+     *            cm.
+     * @param angle
+     *            the direction the sensor faces from the robot's forward
+     *            direction in degrees.
+     * @param range
+     *            the distance read in cm.
+     */
+    static void addReading(OccupancyGrid grid, float[] pose, float offsetX, float offsetY, float angle, float range)
+    {
+        double theta = Math.toRadians(pose[2]);
+        float cos = (float) Math.cos(theta);
+        float sin = (float) Math.sin(theta);
+        float x = pose[0] + cos * offsetX - sin * offsetY;
+        float y = pose[1] + sin * offsetX + cos * offsetY;
+        grid.update(x, y, pose[2] + angle, range, MAX_RANGE);
+    }
+
+    /**
+     * Checks if a point looks like a block, being occupied at block height
+     * but not above it.
+     * 
+     * @param x
+     *            the x coordinate in cm.
+     * @param y
+     *            the y coordinate in cm.
+     * @return true if a block is likely at the point.
+     */
+    public boolean isBlock(float x, float y)
+    {
+        return m_lowGrid.isOccupied(x, y) && !m_highGrid.isOccupied(x, y);
+    }
+
+    /**
+     * Guesses the type of a block the main sensor has seen. Blue blocks are
+     * shorter than the upper sensor, so it sees past them, while wooden
+     * blocks are tall enough for it to hit.
+     * 
+     * @param x
+     *            the x coordinate of the block's face in cm.
+     * @param y
+     *            the y coordinate of the block's face in cm.
+     * @return the likely type of the block, or Unknown if the upper sensor
+     *         has not seen the point clearly enough to tell.
+     */
+    public Block.Type classify(float x, float y)
+    {
+        if (m_highGrid.isFree(x, y))
+        {
+            return Block.Type.Blue;
+        }
+        if (m_highGrid.isOccupied(x, y))
+        {
+            return Block.Type.Wood;
+        }
+        return Block.Type.Unknown;
+    }
+
+    /**
+     * @return the grid built from the main sensor, at block height.
+     */
+    public OccupancyGrid getLowGrid()
+    {
+        return m_lowGrid;
+    }
+
+    /**
+     * @return the grid built from the upper sensor, above block height.
+     */
+    public OccupancyGrid getHighGrid()
+    {
+        return m_highGrid;
+    }
+
+    /**
+     * @return the mean time in ns spent adding each reading to a grid, or 0
+     *         if none have been added.
+     */
+    public long getMeanUpdateTime()
+    {
+        int count = m_readingCount;
+        return count == 0 ? 0 : m_updateTime / count;
+    }
+}
@@ -0,0 +1,126 @@
+package main;
+
+/**
+ * Finds the median of the most recent values of a signal. The values are kept
+ * both in the order they arrived and in sorted order, so each new value only
+ * needs one value removed from and one inserted into the sorted order.
+ * Nothing is allocated after construction.
+ * 
+ * @author Scott Sewell
+ */
+public class MedianFilter
+{
+    private RingBuffer m_window;
+    private float[] m_sorted;
+
+    /**
+     * Constructor.
+     * 
+     * @param size
+     *            the number of recent values the median is taken over.
+     */
+    public MedianFilter(int size)
+    {
+        m_window = new RingBuffer(size);
+        m_sorted = new float[size];
+    }
+
+    /**
+     * Adds a value, removing the oldest value once the window is full.
+     * 
+     * @param value
+     *            the newest value of the signal.
+     * @return the median of the values in the window.
+     */
+    public float add(float value)
+    {
+        int count = m_window.size();
+        if (m_window.isFull())
+        {
+            // take the oldest value out of the sorted order
+            int removed = indexOf(m_window.get(0), count);
+            System.arraycopy(m_sorted, removed + 1, m_sorted, removed, count - removed - 1);
+            count--;
+        }
+        m_window.add(value);
+
+        int insert = insertionPoint(value, count);
+        System.arraycopy(m_sorted, insert, m_sorted, insert + 1, count - insert);
+        m_sorted[insert] = value;
+
+        return getMedian();
+    }
+
+    /**
+     * @return the median of the values in the window, or 0 if empty.
+     */
+    public float getMedian()
+    {
+        int count = m_window.size();
+        if (count == 0)
+        {
+            return 0;
+        }
+        int middle = count / 2;
+        return count % 2 == 1 ? m_sorted[middle] : (m_sorted[middle - 1] + m_sorted[middle]) / 2;
+    }
+
+    /**
+     * @return the values in the window in the order they were added.
+     */
+    public RingBuffer getWindow()
+    {
+        return m_window;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear()
+    {
+        m_window.clear();
+    }
+
+    /**
+     * Finds where a value should go to keep the sorted values in order.
+     */
+    private int insertionPoint(float value, int count)
+    {
+        int low = 0;
+        int high = count;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (m_sorted[mid] < value)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the index of a value known to be in the sorted values.
+     */
+    private int indexOf(float value, int count)
+    {
+        int index = insertionPoint(value, count);
+        // NaN is not ordered by the search, so fall back to a scan
+        if (index < count && Float.compare(m_sorted[index], value) == 0)
+        {
+            return index;
+        }
+        for (int i = 0; i < count; i++)
+        {
+            if (Float.compare(m_sorted[i], value) == 0)
+            {
+                return i;
+            }
+        }
+        return count - 1;
+    }
+}
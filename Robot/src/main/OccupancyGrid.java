@@ -0,0 +1,261 @@
+package main;
+
+import java.security.InvalidParameterException;
+
+/**
+ * A map of which parts of the board are occupied, built from range readings.
+ * The board is divided into square cells, each holding the log-odds that it
+ * is occupied as a byte, so updating a cell is an integer add and the whole
+ * board fits in a few tens of kB. Each reading is traced through the grid
+ * from the sensor, making the cells it passed through more likely free and
+ * the cell it hit more likely occupied. The trace steps from cell to cell
+ * along the beam, so it costs one step per cell crossed. Nothing is allocated
+ * after construction.
+ * 
+ * @author Scott Sewell
+ */
+public class OccupancyGrid
+{
+    // the log-odds added to a cell a reading hit
+    public static final int HIT_LOG_ODDS = 12;
+    // the log-odds added to a cell a reading passed through
+    public static final int MISS_LOG_ODDS = -4;
+    // the log-odds are kept within this so cells can change their state
+    public static final int MAX_LOG_ODDS = 100;
+    // the log-odds above which a cell is considered occupied
+    public static final int OCCUPIED_LOG_ODDS = 30;
+    // the log-odds below which a cell is considered free
+    public static final int FREE_LOG_ODDS = -20;
+    // the log-odds units per nat, for converting to a probability
+    private static final float LOG_ODDS_SCALE = 20f;
+
+    private float m_minX;
+    private float m_minY;
+    private float m_resolution;
+    private int m_width;
+    private int m_height;
+    private byte[] m_logOdds;
+
+    /**
+     * Constructor.
+     * 
+     * @param minX
+     *            the x coordinate of the lower left corner of the grid in cm.
+     * @param minY
+     *            the y coordinate of the lower left corner of the grid in cm.
+     * @param size
+     *            the width and height of the grid in cm.
+     * @param resolution
+     *            the width of each cell in cm.
+     */
+    public OccupancyGrid(float minX, float minY, float size, float resolution)
+    {
+        if (size <= 0 || resolution <= 0)
+        {
+            throw new InvalidParameterException("Attempted to create an occupancy grid with a non-positive size or resolution!");
+        }
+        m_minX = minX;
+        m_minY = minY;
+        m_resolution = resolution;
+        m_width = (int) Math.ceil(size / resolution);
+        m_height = m_width;
+        m_logOdds = new byte[m_width * m_height];
+    }
+
+    /**
+     * Traces a range reading through the grid.
+     * 
+     * @param x
+     *            the x coordinate of the sensor in cm.
+     * @param y
+     *            the y coordinate of the sensor in cm.
+     * @param angle
+     *            the direction the sensor faced in degrees.
+     * @param range
+     *            the distance read in cm.
+     * @param maxRange
+     *            the furthest distance in cm readings are trusted to. Longer
+     *            readings only clear the cells up to this distance.
+     */
+    public void update(float x, float y, float angle, float range, float maxRange)
+    {
+        boolean hit = range < maxRange;
+        float length = Math.min(range, maxRange) / m_resolution;
+        double radians = Math.toRadians(angle);
+        float dirX = (float) Math.cos(radians);
+        float dirY = (float) Math.sin(radians);
+
+        // positions in cell units
+        float startX = (x - m_minX) / m_resolution;
+        float startY = (y - m_minY) / m_resolution;
+        int cellX = (int) Math.floor(startX);
+        int cellY = (int) Math.floor(startY);
+        int endX = (int) Math.floor(startX + dirX * length);
+        int endY = (int) Math.floor(startY + dirY * length);
+
+        // the distance along the beam between crossing cell edges in each
+        // axis, and to the first edge crossed
+        int stepX = dirX > 0 ? 1 : -1;
+        int stepY = dirY > 0 ? 1 : -1;
+        float deltaX = dirX == 0 ? Float.POSITIVE_INFINITY : Math.abs(1 / dirX);
+        float deltaY = dirY == 0 ? Float.POSITIVE_INFINITY : Math.abs(1 / dirY);
+        float nextX = (dirX > 0 ? cellX + 1 - startX : startX - cellX) * deltaX;
+        float nextY = (dirY > 0 ? cellY + 1 - startY : startY - cellY) * deltaY;
+
+        int steps = Math.abs(endX - cellX) + Math.abs(endY - cellY);
+        for (int i = 0; i < steps; i++)
+        {
+            add(cellX, cellY, MISS_LOG_ODDS);
+            if (nextX < nextY)
+            {
+                nextX += deltaX;
+                cellX += stepX;
+            }
+            else
+            {
+                nextY += deltaY;
+                cellY += stepY;
+            }
+        }
+        add(cellX, cellY, hit ? HIT_LOG_ODDS : MISS_LOG_ODDS);
+    }
+
+    /**
+     * Adds to the log-odds of a cell, ignoring cells outside of the grid.
+     */
+    private void add(int cellX, int cellY, int logOdds)
+    {
+        if (cellX < 0 || cellY < 0 || cellX >= m_width || cellY >= m_height)
+        {
+            return;
+        }
+        int index = cellY * m_width + cellX;
+        m_logOdds[index] = (byte) Math.max(-MAX_LOG_ODDS, Math.min(MAX_LOG_ODDS, m_logOdds[index] + logOdds));
+    }
+
+    /**
+     * Gets the log-odds that a point is occupied.
+     * 
+     * @param x
+     *            the x coordinate in cm.
+     * @param y
+     *            the y coordinate in cm.
+     * @return the log-odds, or 0 if the point is outside of the grid.
+     */
+    public int getLogOdds(float x, float y)
+    {
+        int cellX = getCellX(x);
+        int cellY = getCellY(y);
+        if (cellX < 0 || cellY < 0 || cellX >= m_width || cellY >= m_height)
+        {
+            return 0;
+        }
+        return m_logOdds[cellY * m_width + cellX];
+    }
+
+    /**
+     * Gets the log-odds of a cell.
+     * 
+     * @param cellX
+     *            the column of the cell.
+     * @param cellY
+     *            the row of the cell.
+     * @return the log-odds that the cell is occupied.
+     */
+    public int getLogOdds(int cellX, int cellY)
+    {
+        return m_logOdds[cellY * m_width + cellX];
+    }
+
+    /**
+     * @return the probability that a point is occupied, or 0.5 if it is
+     *         unknown or outside of the grid.
+     */
+    public float getProbability(float x, float y)
+    {
+        return (float) (1 / (1 + Math.exp(-getLogOdds(x, y) / LOG_ODDS_SCALE)));
+    }
+
+    /**
+     * @return true if a point has been seen to be occupied.
+     */
+    public boolean isOccupied(float x, float y)
+    {
+        return getLogOdds(x, y) > OCCUPIED_LOG_ODDS;
+    }
+
+    /**
+     * @return true if a point has been seen to be free.
+     */
+    public boolean isFree(float x, float y)
+    {
+        return getLogOdds(x, y) < FREE_LOG_ODDS;
+    }
+
+    /**
+     * Forgets everything seen.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < m_logOdds.length; i++)
+        {
+            m_logOdds[i] = 0;
+        }
+    }
+
+    /**
+     * @return the column of the cell containing an x coordinate.
+     */
+    public int getCellX(float x)
+    {
+        return (int) Math.floor((x - m_minX) / m_resolution);
+    }
+
+    /**
+     * @return the row of the cell containing a y coordinate.
+     */
+    public int getCellY(float y)
+    {
+        return (int) Math.floor((y - m_minY) / m_resolution);
+    }
+
+    /**
+     * @return the x coordinate in cm of the center of a column.
+     */
+    public float getCenterX(int cellX)
+    {
+        return m_minX + (cellX + 0.5f) * m_resolution;
+    }
+
+    /**
+     * @return the y coordinate in cm of the center of a row.
+     */
+    public float getCenterY(int cellY)
+    {
+        return m_minY + (cellY + 0.5f) * m_resolution;
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int getWidth()
+    {
+        return m_width;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getHeight()
+    {
+        return m_height;
+    }
+
+    /**
+     * @return the width of each cell in cm.
+     */
+    public float getResolution()
+    {
+        return m_resolution;
+    }
+}
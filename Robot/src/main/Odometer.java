@@ -5,72 +5,761 @@ package main;
  * 
  * @author Scott Sewell
  */
-public class Odometer extends Thread
+public class Odometer extends Thread implements SensorTask
 {
     // odometer update period in ms
-    private static final int UPDATE_PERIOD = 25;
+    public static final int UPDATE_PERIOD = 25;
+    // odometer update period in ms used while the wheels turn quickly
+    public static final int FAST_UPDATE_PERIOD = 10;
+    // wheel speed in deg/sec above which the fast update period is used
+    private static final float FAST_WHEEL_SPEED = 200;
+    // number of past updates kept in the pose history
+    private static final int HISTORY_SIZE = 64;
+    // the most triggers that can be waiting at once
+    private static final int MAX_TRIGGERS = 8;
 
-    // robot transform
-    private Vector2 m_position; // position in centimeters
-    private float m_theta; // rotation from x-axis counter-clockwise in degrees
+    // the latest robot transform, kept in primitive fields so that updating
+    // and reading it allocates nothing. Writers make the sequence number odd
+    // while changing the fields, readers retry if it changed while reading.
+    private volatile long m_sequence;
+    private volatile float m_x; // position in centimeters
+    private volatile float m_y;
+    private volatile float m_theta; // rotation from x-axis counter-clockwise in degrees
+    private volatile long m_timestamp; // system time in nanoseconds of the last change
 
-    // lock object for mutual exclusion
+    // ring of past transforms from each update, oldest entries are
+    // overwritten first. Corrections are applied to the whole history so that
+    // it stays in the same frame as the current transform.
+    private long[] m_historyTime;
+    private float[] m_historyX;
+    private float[] m_historyY;
+    private float[] m_historyTheta;
+    private int m_historyNewest;
+    private int m_historyCount;
+
+    // lock object for mutual exclusion between writers
     private Object m_lock;
 
+    private PeriodicTimer m_timer;
+    private volatile Integration m_integration;
+    private boolean m_tachoStarted;
+    private int m_lastTachoL;
+    private int m_lastTachoR;
+    private volatile boolean m_adaptivePeriod;
+    // the system time in ns of the last sample, used to find the wheel speeds
+    private long m_lastSampleTime;
+    // when set, the hub sampling the odometer instead of its own thread
+    private volatile SensorHub m_sensorHub;
+
+    // when set, used in place of plain integration. Guarded by the lock.
+    private PoseEstimator m_estimator;
+    private float[] m_measurementPose;
+
+    // conditions checked after each update, in a fixed array so that checking
+    // them allocates nothing. Guarded by the lock.
+    private PoseTrigger[] m_triggers;
+    private int m_triggerCount;
+
+    /**
+     * The ways in which wheel movements can be turned into a change of
+     * transform.
+     */
+    public enum Integration
+    {
+        /**
+         * Turns first, then moves straight along the new heading. Error grows
+         * with speed and turn rate.
+         */
+        SmallAngle,
+        /**
+         * Moves straight along the heading halfway through the turn (RK2).
+         */
+        Midpoint,
+        /**
+         * Moves along the circular arc the wheels traced, which is exact for
+         * constant wheel speeds during an update.
+         */
+        ExactArc
+    }
+
     /**
      * Constructor.
      */
     public Odometer()
     {
-        m_position = Vector2.zero();
         m_lock = new Object();
+        m_timestamp = System.nanoTime();
+        m_timer = new PeriodicTimer("odometer", UPDATE_PERIOD);
+        m_integration = Integration.ExactArc;
+        m_adaptivePeriod = false;
+        m_measurementPose = new float[3];
+        m_triggers = new PoseTrigger[MAX_TRIGGERS];
+        m_triggerCount = 0;
+
+        m_historyTime = new long[HISTORY_SIZE];
+        m_historyX = new float[HISTORY_SIZE];
+        m_historyY = new float[HISTORY_SIZE];
+        m_historyTheta = new float[HISTORY_SIZE];
+        m_historyNewest = -1;
+        m_historyCount = 0;
     }
 
     /**
      * Main loop run periodically to update the assumed robot transform using
-     * the motor tachometers.
+     * the motor tachometers, used when not sampled by a SensorHub.
      */
     public void run()
     {
-        long updateStart;
+        m_timer.start();
+        while (true)
+        {
+            sample();
+
+            // if finished before the next update should occur, wait the
+            // remaining time
+            m_timer.waitForNextPeriod();
+        }
+    }
 
+    /**
+     * Reads the motor tachometers and updates the transform with the wheel
+     * movement since the last sample.
+     */
+    public void sample()
+    {
         // initialize tachometers
-        int lastTachoL, lastTachoR;
-        Robot.MOTOR_LEFT.resetTachoCount();
-        Robot.MOTOR_RIGHT.resetTachoCount();
-        lastTachoL = Robot.MOTOR_LEFT.getTachoCount();
-        lastTachoR = Robot.MOTOR_RIGHT.getTachoCount();
+        if (!m_tachoStarted)
+        {
+            Robot.MOTOR_LEFT.resetTachoCount();
+            Robot.MOTOR_RIGHT.resetTachoCount();
+            m_lastTachoL = Robot.MOTOR_LEFT.getTachoCount();
+            m_lastTachoR = Robot.MOTOR_RIGHT.getTachoCount();
+            m_tachoStarted = true;
+        }
 
-        while (true)
+        // compute delta in forward direction and angle since last tick
+        int tachoL = Robot.MOTOR_LEFT.getTachoCount();
+        int tachoR = Robot.MOTOR_RIGHT.getTachoCount();
+        double distL = Math.PI * Robot.WHEEL_RADIUS * (tachoL - m_lastTachoL) / 180;
+        double distR = Math.PI * Robot.WHEEL_RADIUS * (tachoR - m_lastTachoR) / 180;
+        m_lastTachoL = tachoL;
+        m_lastTachoR = tachoR;
+
+        integrate(distL, distR);
+        if (m_adaptivePeriod)
+        {
+            adaptPeriod(distL, distR, System.nanoTime());
+        }
+    }
+
+    /**
+     * Updates more often while the wheels turn quickly, as a single update
+     * covers more motion. When sampled by a hub, the hub is told to sample the
+     * odometer at the new period.
+     * 
+     * @param distL
+     *            the distance traveled by the left wheel since the last sample
+     *            in cm.
+     * @param distR
+     *            the distance traveled by the right wheel since the last
+     *            sample in cm.
+     * @param time
+     *            the system time in ns of the sample.
+     */
+    void adaptPeriod(double distL, double distR, long time)
+    {
+        long elapsed = time - m_lastSampleTime;
+        m_lastSampleTime = time;
+        if (elapsed <= 0)
+        {
+            return;
+        }
+        double wheelRotation = Math.toDegrees(Math.max(Math.abs(distL), Math.abs(distR)) / Robot.WHEEL_RADIUS);
+        float wheelSpeed = (float) (wheelRotation * 1e9 / elapsed);
+        setPeriod(wheelSpeed > FAST_WHEEL_SPEED ? FAST_UPDATE_PERIOD : UPDATE_PERIOD);
+    }
+
+    /**
+     * Sets how often the odometer is updated, by its own timer or by the hub.
+     * 
+     * @param period
+     *            the update period in ms.
+     */
+    private void setPeriod(int period)
+    {
+        if (period == m_timer.getPeriod())
+        {
+            return;
+        }
+        m_timer.setPeriod(period);
+        SensorHub sensorHub = m_sensorHub;
+        if (sensorHub != null)
         {
-            updateStart = System.currentTimeMillis();
+            sensorHub.setDivisor(this, Math.max(1, period / sensorHub.getTimer().getPeriod()));
+        }
+    }
+
+    /**
+     * Has the update period applied by a sensor hub sampling the odometer,
+     * rather than by the odometer's own thread. Must be called after the
+     * odometer has been added to the hub.
+     * 
+     * @param sensorHub
+     *            the hub sampling the odometer.
+     */
+    public void setSensorHub(SensorHub sensorHub)
+    {
+        m_sensorHub = sensorHub;
+        m_timer.setPeriod(sensorHub.getDivisor(this) * sensorHub.getTimer().getPeriod());
+    }
+
+    /**
+     * @return the timer pacing the odometer loop.
+     */
+    public PeriodicTimer getTimer()
+    {
+        return m_timer;
+    }
 
-            // compute delta in forward direction and angle since last tick
-            int tachoL = Robot.MOTOR_LEFT.getTachoCount();
-            int tachoR = Robot.MOTOR_RIGHT.getTachoCount();
-            double distL = Math.PI * Robot.WHEEL_RADIUS * (tachoL - lastTachoL) / 180;
-            double distR = Math.PI * Robot.WHEEL_RADIUS * (tachoR - lastTachoR) / 180;
-            lastTachoL = tachoL;
-            lastTachoR = tachoR;
-            float deltaD = (float) (0.5 * (distL + distR));
+    /**
+     * Computes and publishes the new transform from the distance each wheel
+     * has traveled since the last update.
+     * 
+     * @param distL
+     *            the distance traveled by the left wheel in cm.
+     * @param distR
+     *            the distance traveled by the right wheel in cm.
+     */
+    void integrate(double distL, double distR)
+    {
+        double deltaD = 0.5 * (distL + distR);
+        double deltaTheta = (distR - distL) / Robot.WHEEL_TRACK;
 
-            // computes new transform from deltas
-            // only manipulate transform variables here
-            synchronized (m_lock)
+        synchronized (m_lock)
+        {
+            if (m_estimator != null)
             {
-                // using small angle approximation
-                m_theta += Math.toDegrees((distR - distL) / Robot.WHEEL_TRACK);
-                // bring into [0,360] range
-                m_theta = Utils.normalizeAngle(m_theta);
-                m_position.add(Vector2.fromPolar(m_theta, deltaD));
+                m_estimator.predict(distL, distR);
+                publish(m_estimator.getX(), m_estimator.getY(), m_estimator.getTheta());
+                record();
+                checkTriggers();
+                return;
             }
 
-            // if finished before the next update should occur, wait the
-            // remaining time
-            Utils.sleepToNextPeroid(UPDATE_PERIOD, updateStart);
+            double startRadians = Math.toRadians(m_theta);
+            // bring into [0,360] range
+            float theta = Utils.normalizeAngle(m_theta + (float) Math.toDegrees(deltaTheta));
+
+            // find the direction and length of the straight line between the
+            // start and end positions
+            double heading;
+            double length = deltaD;
+            switch (m_integration)
+            {
+                case SmallAngle:
+                    heading = Math.toRadians(theta);
+                    break;
+                case Midpoint:
+                    heading = startRadians + (deltaTheta / 2);
+                    break;
+                default:
+                    heading = startRadians + (deltaTheta / 2);
+                    // the chord of the arc is shorter than the arc itself
+                    if (Math.abs(deltaTheta) > 1e-6)
+                    {
+                        length = 2 * (deltaD / deltaTheta) * Math.sin(deltaTheta / 2);
+                    }
+                    break;
+            }
+
+            publish(m_x + (float) (length * Math.cos(heading)), m_y + (float) (length * Math.sin(heading)), theta);
+            record();
+            checkTriggers();
+        }
+    }
+
+    /**
+     * Adds a condition to check after each update, measured from the current
+     * transform. The trigger is removed once it fires.
+     * 
+     * @param trigger
+     *            the trigger to add.
+     * @return false if the trigger could not be added as too many are
+     *         waiting.
+     */
+    public boolean addTrigger(PoseTrigger trigger)
+    {
+        synchronized (m_lock)
+        {
+            if (m_triggerCount == MAX_TRIGGERS)
+            {
+                return false;
+            }
+            trigger.arm(m_x, m_y, m_theta);
+            m_triggers[m_triggerCount++] = trigger;
+            return true;
+        }
+    }
+
+    /**
+     * Stops checking a trigger that has not yet fired.
+     * 
+     * @param trigger
+     *            the trigger to remove.
+     */
+    public void removeTrigger(PoseTrigger trigger)
+    {
+        synchronized (m_lock)
+        {
+            for (int i = 0; i < m_triggerCount; i++)
+            {
+                if (m_triggers[i] == trigger)
+                {
+                    m_triggers[i] = m_triggers[--m_triggerCount];
+                    m_triggers[m_triggerCount] = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Halts the thread until a condition on the transform is met, without
+     * reading the odometer while waiting.
+     * 
+     * @param trigger
+     *            the condition to wait for.
+     * @param timeout
+     *            the longest time to wait in ms, or 0 to wait without limit.
+     * @return true if the condition was met.
+     */
+    public boolean waitFor(PoseTrigger trigger, long timeout)
+    {
+        if (!addTrigger(trigger))
+        {
+            return false;
+        }
+        boolean triggered = trigger.await(timeout);
+        removeTrigger(trigger);
+        return triggered;
+    }
+
+    /**
+     * Checks every trigger against the current transform, removing those that
+     * fire. Must be called while holding the lock.
+     */
+    private void checkTriggers()
+    {
+        int i = 0;
+        while (i < m_triggerCount)
+        {
+            if (m_triggers[i].check(m_x, m_y, m_theta))
+            {
+                m_triggers[i] = m_triggers[--m_triggerCount];
+                m_triggers[m_triggerCount] = null;
+            }
+            else
+            {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Sets an estimator that tracks the uncertainty of the transform, which is
+     * then used to predict each update and to weigh line crossings and wall
+     * ranges given to the odometer.
+     * 
+     * @param estimator
+     *            the estimator to use, or null to go back to plain integration.
+     */
+    public void setEstimator(PoseEstimator estimator)
+    {
+        synchronized (m_lock)
+        {
+            if (estimator != null)
+            {
+                estimator.setPose(m_x, m_y, m_theta);
+            }
+            m_estimator = estimator;
+        }
+    }
+
+    /**
+     * @return true if an estimator is used to weigh corrections.
+     */
+    public boolean hasEstimator()
+    {
+        synchronized (m_lock)
+        {
+            return m_estimator != null;
+        }
+    }
+
+    /**
+     * Corrects the transform using a color sensor crossing a grid line. Does
+     * nothing if no estimator is set.
+     * 
+     * @param offsetX
+     *            the local space x-axis position of the color sensor in cm.
+     * @param offsetY
+     *            the local space y-axis position of the color sensor in cm.
+     * @param time
+     *            the system time in nanoseconds at which the line was seen.
+     * @return true if the crossing was used.
+     */
+    public boolean fuseLineCrossing(float offsetX, float offsetY, long time)
+    {
+        synchronized (m_lock)
+        {
+            if (m_estimator == null)
+            {
+                return false;
+            }
+            poseAt(time, m_measurementPose);
+            if (m_estimator.updateLine(offsetX, offsetY, m_measurementPose))
+            {
+                applyEstimate();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Corrects the orientation using a heading measured at some recent time.
+     * Does nothing if no estimator is set.
+     * 
+     * @param heading
+     *            the measured orientation in degrees.
+     * @param time
+     *            the system time in nanoseconds at which the heading was
+     *            measured.
+     * @return true if the heading was used.
+     */
+    public boolean fuseHeading(float heading, long time)
+    {
+        synchronized (m_lock)
+        {
+            if (m_estimator == null)
+            {
+                return false;
+            }
+            poseAt(time, m_measurementPose);
+            if (m_estimator.updateHeading(heading, m_measurementPose))
+            {
+                applyEstimate();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Corrects the transform using an ultrasonic range to the board walls.
+     * Does nothing if no estimator is set.
+     * 
+     * @param offsetX
+     *            the local space x-axis position of the sensor in cm.
+     * @param offsetY
+     *            the local space y-axis position of the sensor in cm.
+     * @param angle
+     *            the local space direction the sensor faces in degrees.
+     * @param range
+     *            the measured distance from the sensor in cm.
+     * @param time
+     *            the system time in nanoseconds at which the range was
+     *            measured.
+     * @return true if the range was used.
+     */
+    public boolean fuseRange(float offsetX, float offsetY, float angle, float range, long time)
+    {
+        synchronized (m_lock)
+        {
+            if (m_estimator == null)
+            {
+                return false;
+            }
+            poseAt(time, m_measurementPose);
+            if (m_estimator.updateRange(offsetX, offsetY, angle, range, m_measurementPose))
+            {
+                applyEstimate();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Publishes the estimator's transform, moving the history along with it.
+     * Must be called while holding the lock.
+     */
+    private void applyEstimate()
+    {
+        float x = m_estimator.getX();
+        float y = m_estimator.getY();
+        rotateHistory(Utils.toBearing(m_estimator.getTheta() - m_theta));
+        translateHistory(x - m_x, y - m_y);
+        publish(x, y, m_estimator.getTheta());
+    }
+
+    /**
+     * Sets how wheel movements are turned into a change of transform.
+     * 
+     * @param integration
+     *            the integration method to use from the next update.
+     */
+    public void setIntegration(Integration integration)
+    {
+        m_integration = integration;
+    }
+
+    /**
+     * @return the integration method in use.
+     */
+    public Integration getIntegration()
+    {
+        return m_integration;
+    }
+
+    /**
+     * Sets whether the odometer updates more often while the wheels are
+     * turning quickly. Works both on the odometer's own thread and when
+     * sampled by a hub set with {@link #setSensorHub(SensorHub)}, and may be
+     * called from any thread.
+     * 
+     * @param adaptivePeriod
+     *            if true the update period is shortened at high wheel speeds.
+     */
+    public void setAdaptivePeriod(boolean adaptivePeriod)
+    {
+        m_adaptivePeriod = adaptivePeriod;
+        if (!adaptivePeriod)
+        {
+            setPeriod(UPDATE_PERIOD);
+        }
+    }
+
+    /**
+     * Adds the current transform to the pose history. Must be called while
+     * holding the lock.
+     */
+    private void record()
+    {
+        m_historyNewest = (m_historyNewest + 1) % HISTORY_SIZE;
+        m_historyTime[m_historyNewest] = m_timestamp;
+        m_historyX[m_historyNewest] = m_x;
+        m_historyY[m_historyNewest] = m_y;
+        m_historyTheta[m_historyNewest] = m_theta;
+        m_historyCount = Math.min(m_historyCount + 1, HISTORY_SIZE);
+    }
+
+    /**
+     * Gets the robot transform at some recent time by interpolating between
+     * the updates made before and after it. Used to place sensor samples at
+     * the position they were captured from rather than where the robot is
+     * when the sample is processed. Briefly takes the writer lock, but does
+     * not allocate.
+     * 
+     * @param time
+     *            the system time in nanoseconds, as from System.nanoTime().
+     * @param out
+     *            an array of at least length 3 that is filled with the x and y
+     *            position in cm and the orientation in degrees.
+     * @return true if the time was covered by the history, false if the
+     *         closest available transform was used instead.
+     */
+    public boolean poseAt(long time, float[] out)
+    {
+        synchronized (m_lock)
+        {
+            if (m_historyCount == 0 || time - m_historyTime[m_historyNewest] >= 0)
+            {
+                out[0] = m_x;
+                out[1] = m_y;
+                out[2] = m_theta;
+                return m_historyCount > 0;
+            }
+
+            // binary search for the newest entry at or before the time, with
+            // entries indexed from oldest to newest
+            int oldest = (m_historyNewest - m_historyCount + 1 + HISTORY_SIZE) % HISTORY_SIZE;
+            if (time - m_historyTime[oldest] < 0)
+            {
+                copyEntry(oldest, out);
+                return false;
+            }
+            int low = 0;
+            int high = m_historyCount - 1;
+            while (low < high)
+            {
+                int mid = (low + high + 1) / 2;
+                if (time - m_historyTime[(oldest + mid) % HISTORY_SIZE] >= 0)
+                {
+                    low = mid;
+                }
+                else
+                {
+                    high = mid - 1;
+                }
+            }
+            int before = (oldest + low) % HISTORY_SIZE;
+            int after = (before + 1) % HISTORY_SIZE;
+
+            // interpolate between the two entries
+            float t = (float) (time - m_historyTime[before]) / (m_historyTime[after] - m_historyTime[before]);
+            out[0] = m_historyX[before] + (m_historyX[after] - m_historyX[before]) * t;
+            out[1] = m_historyY[before] + (m_historyY[after] - m_historyY[before]) * t;
+            out[2] = Utils.normalizeAngle(m_historyTheta[before] + Utils.toBearing(m_historyTheta[after] - m_historyTheta[before]) * t);
+            return true;
         }
     }
 
+    /**
+     * Gets the robot transform at some recent time.
+     * 
+     * @param time
+     *            the system time in nanoseconds, as from System.nanoTime().
+     * @return a new pose interpolated from the pose history, with the
+     *         sequence number of the latest update.
+     */
+    public Pose poseAt(long time)
+    {
+        long sequence = m_sequence / 2;
+        float[] out = new float[3];
+        poseAt(time, out);
+        return new Pose(out[0], out[1], out[2], time, sequence);
+    }
+
+    /**
+     * Copies an entry of the pose history. Must be called while holding the
+     * lock.
+     */
+    private void copyEntry(int index, float[] out)
+    {
+        out[0] = m_historyX[index];
+        out[1] = m_historyY[index];
+        out[2] = m_historyTheta[index];
+    }
+
+    /**
+     * Moves every entry in the pose history by an offset. Must be called while
+     * holding the lock.
+     */
+    private void translateHistory(float dx, float dy)
+    {
+        for (int i = 0; i < HISTORY_SIZE; i++)
+        {
+            m_historyX[i] += dx;
+            m_historyY[i] += dy;
+        }
+    }
+
+    /**
+     * Replaces the current transform. Must be called while holding the lock.
+     */
+    private void publish(float x, float y, float theta)
+    {
+        long sequence = m_sequence;
+        m_sequence = sequence + 1;
+        m_x = x;
+        m_y = y;
+        m_theta = theta;
+        m_timestamp = System.nanoTime();
+        m_sequence = sequence + 2;
+    }
+
+    /**
+     * Copies the robot transform into an array without allocating. Never
+     * blocks, and the values copied are always from the same update.
+     * 
+     * @param out
+     *            an array of at least length 3 that is filled with the x and y
+     *            position in cm and the orientation in degrees.
+     * @return the sequence number of the update the values are from.
+     */
+    public long getPose(float[] out)
+    {
+        while (true)
+        {
+            long sequence = m_sequence;
+            out[0] = m_x;
+            out[1] = m_y;
+            out[2] = m_theta;
+            if ((sequence & 1) == 0 && sequence == m_sequence)
+            {
+                return sequence / 2;
+            }
+        }
+    }
+
+    /**
+     * Gets a snapshot of the robot transform. Never blocks.
+     * 
+     * @return a new pose with the latest transform.
+     */
+    public Pose getPose()
+    {
+        while (true)
+        {
+            long sequence = m_sequence;
+            float x = m_x;
+            float y = m_y;
+            float theta = m_theta;
+            long timestamp = m_timestamp;
+            if ((sequence & 1) == 0 && sequence == m_sequence)
+            {
+                return new Pose(x, y, theta, timestamp, sequence / 2);
+            }
+        }
+    }
+
+    /**
+     * Transforms a point from the robot's local space to world space without
+     * allocating.
+     * 
+     * @param localX
+     *            the local space x-axis coordinate.
+     * @param localY
+     *            the local space y-axis coordinate.
+     * @param out
+     *            an array of at least length 3 that is filled with the world
+     *            space x and y coordinates, followed by the robot orientation.
+     */
+    public void toWorldSpace(float localX, float localY, float[] out)
+    {
+        getPose(out);
+        double radians = Math.toRadians(out[2]);
+        float sin = (float) Math.sin(radians);
+        float cos = (float) Math.cos(radians);
+        out[0] += cos * localX - sin * localY;
+        out[1] += sin * localX + cos * localY;
+    }
+
+    /**
+     * Transforms a point from the world space to robot's local space without
+     * allocating.
+     * 
+     * @param worldX
+     *            the world space x-axis coordinate.
+     * @param worldY
+     *            the world space y-axis coordinate.
+     * @param out
+     *            an array of at least length 3 that is filled with the local
+     *            space x and y coordinates, followed by the robot orientation.
+     */
+    public void toLocalSpace(float worldX, float worldY, float[] out)
+    {
+        getPose(out);
+        double radians = Math.toRadians(-out[2]);
+        float sin = (float) Math.sin(radians);
+        float cos = (float) Math.cos(radians);
+        float dx = worldX - out[0];
+        float dy = worldY - out[1];
+        out[0] = cos * dx - sin * dy;
+        out[1] = sin * dx + cos * dy;
+    }
+
     /**
      * Transforms a vector from the robot's local space to world space.
      * 
@@ -80,10 +769,7 @@ public class Odometer extends Thread
      */
     public Vector2 toWorldSpace(Vector2 v)
     {
-        synchronized (m_lock)
-        {
-            return new Vector2(v).rotate(m_theta).add(m_position);
-        }
+        return getPose().toWorldSpace(v);
     }
 
     /**
@@ -95,10 +781,7 @@ public class Odometer extends Thread
      */
     public Vector2 toLocalSpace(Vector2 v)
     {
-        synchronized (m_lock)
-        {
-            return new Vector2(v).subtract(m_position).rotate(-m_theta);
-        }
+        return getPose().toLocalSpace(v);
     }
 
     /**
@@ -106,10 +789,7 @@ public class Odometer extends Thread
      */
     public Vector2 getPosition()
     {
-        synchronized (m_lock)
-        {
-            return new Vector2(m_position);
-        }
+        return getPose().getPosition();
     }
 
     /**
@@ -117,10 +797,7 @@ public class Odometer extends Thread
      */
     public float getTheta()
     {
-        synchronized (m_lock)
-        {
-            return m_theta;
-        }
+        return m_theta;
     }
 
     /**
@@ -133,7 +810,45 @@ public class Odometer extends Thread
     {
         synchronized (m_lock)
         {
-            m_position = new Vector2(v);
+            translateHistory(v.getX() - m_x, v.getY() - m_y);
+            publish(v.getX(), v.getY(), m_theta);
+            if (m_estimator != null)
+            {
+                m_estimator.setPose(m_x, m_y, m_theta);
+            }
+        }
+    }
+
+    /**
+     * Moves the robot's position by an offset. Unlike reading the position and
+     * setting it again, no odometer updates made in between are lost.
+     * 
+     * @param offset
+     *            the displacement to apply in cm.
+     */
+    public void translate(Vector2 offset)
+    {
+        translate(offset.getX(), offset.getY());
+    }
+
+    /**
+     * Moves the robot's position by an offset without allocating.
+     * 
+     * @param dx
+     *            the x-axis displacement to apply in cm.
+     * @param dy
+     *            the y-axis displacement to apply in cm.
+     */
+    public void translate(float dx, float dy)
+    {
+        synchronized (m_lock)
+        {
+            translateHistory(dx, dy);
+            publish(m_x + dx, m_y + dy, m_theta);
+            if (m_estimator != null)
+            {
+                m_estimator.setPose(m_x, m_y, m_theta);
+            }
         }
     }
 
@@ -147,7 +862,35 @@ public class Odometer extends Thread
     {
         synchronized (m_lock)
         {
-            m_theta = Utils.normalizeAngle(theta);
+            theta = Utils.normalizeAngle(theta);
+            rotateHistory(theta - m_theta);
+            publish(m_x, m_y, theta);
+            if (m_estimator != null)
+            {
+                m_estimator.setPose(m_x, m_y, m_theta);
+            }
+        }
+    }
+
+    /**
+     * Rotates every entry in the pose history about the current position.
+     * Must be called while holding the lock.
+     * 
+     * @param angle
+     *            the counter-clockwise angle to rotate by in degrees.
+     */
+    private void rotateHistory(float angle)
+    {
+        double radians = Math.toRadians(angle);
+        float sin = (float) Math.sin(radians);
+        float cos = (float) Math.cos(radians);
+        for (int i = 0; i < HISTORY_SIZE; i++)
+        {
+            float dx = m_historyX[i] - m_x;
+            float dy = m_historyY[i] - m_y;
+            m_historyX[i] = m_x + cos * dx - sin * dy;
+            m_historyY[i] = m_y + sin * dx + cos * dy;
+            m_historyTheta[i] = Utils.normalizeAngle(m_historyTheta[i] + angle);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,13 @@
 package main;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * Contains the methods responsible for correcting the odometer based on the
- * inputs received by two color sensors.
+ * inputs received by two color sensors. If the odometer has an estimator, the
+ * line crossings and the ultrasonic ranges to the board walls are given to it
+ * to be weighed instead. Sleeps until a line detector wakes it with a line
+ * crossing, or until new ultrasonic ranges are due.
  * 
  * @author Aimee Ascencio
  */
@@ -11,30 +16,63 @@ public class OdometryCorrection extends Thread
     // how much the corrected values override the original values for position
     private static final float CORRECTION_WEIGHT_POSITION = 0.6f;
     // maximum error that will be corrected
-    private static final float CORRECTION_ARC = 15.0f;
+    static final float CORRECTION_ARC = 15.0f;
     // min angle change that is considered a turn 
     private static final float MIN_TURNING_ANGLE = 1.0f;
+    // the number of most recent line crossings the heading is fitted to
+    private static final int REGRESSION_WINDOW = 8;
+    // the furthest the robot can travel between the left and right sensors
+    // crossing a line for the crossings to be paired in cm
+    private static final float MAX_PAIR_DISTANCE = 10.0f;
+    // the longest time to sleep waiting for a line crossing in ns
+    private static final long IDLE_PERIOD = 500000000L;
 
     private Odometer m_odometer;
     private LineDetector m_rightLineDetector;
     private LineDetector m_leftLineDetector;
+    private UltrasonicPoller m_usMain;
+    private UltrasonicPoller m_usUpper;
+    private SensorHub m_sensorHub;
+    // the sequence numbers of the last ultrasonic readings fused
+    private long m_usMainSequence;
+    private long m_usUpperSequence;
     private LinearRegression m_listPos;
     private float m_firstAngle;
     private int m_listSize; 
+    // reused to hold poses and positions without allocating
+    private float[] m_sensorPos;
+    private float[] m_firstPose;
+    private float[] m_secondPose;
+    // the last crossing not yet paired with one from the other sensor
+    private LineCrossing m_unpairedCrossing;
+
+    // time from line crossings being sampled to being applied in ns
+    private volatile long m_latencyTotal;
+    private volatile long m_maxLatency;
+    private volatile int m_crossingCount;
     
     /**
      * Constructor.
      * 
      * @param odometer
      *            the odometer to which correction is applied.
+     * @param usMain
+     *            the poller for the forward facing ultrasonic sensor.
+     * @param usUpper
+     *            the poller for the left facing ultrasonic sensor.
      */
-    public OdometryCorrection(Odometer odometer)
+    public OdometryCorrection(Odometer odometer, UltrasonicPoller usMain, UltrasonicPoller usUpper)
     {
         m_odometer = odometer;
-        m_rightLineDetector = new LineDetector(Robot.COLOR_RIGHT);
-        m_leftLineDetector = new LineDetector(Robot.COLOR_LEFT);
-        m_listPos = new LinearRegression();
+        m_usMain = usMain;
+        m_usUpper = usUpper;
+        m_rightLineDetector = new LineDetector(Robot.COLOR_RIGHT, LineCrossing.Sensor.Right);
+        m_leftLineDetector = new LineDetector(Robot.COLOR_LEFT, LineCrossing.Sensor.Left);
+        m_listPos = new LinearRegression(REGRESSION_WINDOW);
         m_listSize = 0;
+        m_sensorPos = new float[3];
+        m_firstPose = new float[3];
+        m_secondPose = new float[3];
     }
 
     /**
@@ -42,82 +80,347 @@ public class OdometryCorrection extends Thread
      */
     public void run()
     {
-        // start the line detector threads
-        m_rightLineDetector.start();
-        m_leftLineDetector.start();
+        // have the line detectors wake this thread when they see a line
+        m_rightLineDetector.getCrossings().setConsumer(this);
+        m_leftLineDetector.getCrossings().setConsumer(this);
+
+        // start sampling the line detectors
+        if (m_sensorHub != null)
+        {
+            int divisor = Math.max(1, LineDetector.HIGH_RATE_PERIOD / m_sensorHub.getTimer().getPeriod());
+            m_sensorHub.add(m_rightLineDetector, divisor);
+            m_sensorHub.add(m_leftLineDetector, divisor);
+        }
+        else
+        {
+            m_rightLineDetector.start();
+            m_leftLineDetector.start();
+        }
         m_firstAngle = m_odometer.getTheta();
+        m_usMainSequence = m_usMain.getSequence();
+        m_usUpperSequence = m_usUpper.getSequence();
 
         while (true)
         {
-            long updateStart = System.currentTimeMillis();
-
-            if (m_leftLineDetector.detectedLine())
+            LineCrossing crossing;
+            while ((crossing = nextCrossing()) != null)
             {
-                m_listPos.addPoint(correctPosition(Robot.CSL_OFFSET));
+                applyCrossing(crossing);
+
+                long latency = System.nanoTime() - crossing.getTime();
+                m_latencyTotal += latency;
+                m_maxLatency = Math.max(m_maxLatency, latency);
+                m_crossingCount++;
             }
 
-            if (m_rightLineDetector.detectedLine())
+            boolean hasEstimator = m_odometer.hasEstimator();
+            if (hasEstimator)
             {
-                m_listPos.addPoint(correctPosition(Robot.CSR_OFFSET));
+                fuseRanges();
             }
 
-            if (m_listSize != m_listPos.sampleSize() && m_listPos.sampleSize() > 3)
+            // sleep until a line is seen, waking for new ultrasonic ranges
+            // if they are used
+            LockSupport.parkNanos(this, hasEstimator ? UltrasonicPoller.UPDATE_PERIOD * 1000000L : IDLE_PERIOD);
+        }
+    }
+
+    /**
+     * Takes the line crossing seen first from either line detector.
+     * 
+     * @return the crossing, or null if there are none waiting.
+     */
+    private LineCrossing nextCrossing()
+    {
+        SpscQueue<LineCrossing> left = m_leftLineDetector.getCrossings();
+        SpscQueue<LineCrossing> right = m_rightLineDetector.getCrossings();
+        LineCrossing leftCrossing = left.peek();
+        LineCrossing rightCrossing = right.peek();
+
+        if (leftCrossing != null && (rightCrossing == null || leftCrossing.getTime() - rightCrossing.getTime() <= 0))
+        {
+            return left.poll();
+        }
+        return rightCrossing != null ? right.poll() : null;
+    }
+
+    /**
+     * Corrects the odometer using a line crossing, or gives the crossing to
+     * the odometer's estimator. If the other sensor has just crossed the same
+     * line, the heading is corrected immediately, otherwise it is corrected
+     * once enough crossings have been seen on a straight path.
+     * 
+     * @param crossing
+     *            the line crossing.
+     */
+    private void applyCrossing(LineCrossing crossing)
+    {
+        Vector2 offset = crossing.getSensor() == LineCrossing.Sensor.Left ? Robot.CSL_OFFSET : Robot.CSR_OFFSET;
+
+        if (m_odometer.hasEstimator())
+        {
+            m_odometer.fuseLineCrossing(offset.getX(), offset.getY(), crossing.getTime());
+            correctPairedHeading(crossing);
+            return;
+        }
+
+        correctPosition(offset, crossing.getTime());
+        m_listPos.addPoint(m_sensorPos[0], m_sensorPos[1]);
+
+        if (correctPairedHeading(crossing))
+        {
+            return;
+        }
+
+        if (m_listSize != m_listPos.sampleSize() && m_listPos.sampleSize() > 3)
+        {
+            m_listSize = m_listPos.sampleSize();
+            correctAngle(m_listPos.heading());
+        }
+    }
+
+    /**
+     * Corrects the heading if a crossing and the previous crossing from the
+     * other sensor are of the same line.
+     * 
+     * @param crossing
+     *            the newest line crossing.
+     * @return true if the heading was corrected.
+     */
+    private boolean correctPairedHeading(LineCrossing crossing)
+    {
+        LineCrossing first = m_unpairedCrossing;
+        if (first == null || first.getSensor() == crossing.getSensor())
+        {
+            m_unpairedCrossing = crossing;
+            return false;
+        }
+        m_unpairedCrossing = null;
+
+        m_odometer.poseAt(first.getTime(), m_firstPose);
+        m_odometer.poseAt(crossing.getTime(), m_secondPose);
+        float heading = getPairedHeading(
+                m_firstPose, first.getSensor() == LineCrossing.Sensor.Left ? Robot.CSL_OFFSET : Robot.CSR_OFFSET,
+                m_secondPose, crossing.getSensor() == LineCrossing.Sensor.Left ? Robot.CSL_OFFSET : Robot.CSR_OFFSET);
+        if (Float.isNaN(heading))
+        {
+            m_unpairedCrossing = crossing;
+            return false;
+        }
+
+        if (m_odometer.hasEstimator())
+        {
+            return m_odometer.fuseHeading(heading, first.getTime());
+        }
+
+        // apply the error at the time of the first crossing to the current
+        // heading, as the robot may have turned since
+        float error = Utils.toBearing(heading - m_firstPose[2]);
+        if (Math.abs(error) < CORRECTION_ARC)
+        {
+            m_odometer.setTheta(m_odometer.getTheta() + error);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the robot's heading from two color sensors crossing the same line
+     * one after the other. Both crossing points are on the line, so the
+     * direction between them in the robot's frame, given how far the robot
+     * moved in between, is the direction of the line relative to the robot.
+     * As board lines lie along the axes, that gives the heading.
+     * 
+     * @param firstPose
+     *            the robot pose when the first sensor crossed the line.
+     * @param firstOffset
+     *            the local space position of the first sensor in cm.
+     * @param secondPose
+     *            the robot pose when the second sensor crossed the line.
+     * @param secondOffset
+     *            the local space position of the second sensor in cm.
+     * @return the heading in degrees at the first crossing, or NaN if the
+     *         crossings are not likely to be of the same line while driving
+     *         straight.
+     */
+    static float getPairedHeading(float[] firstPose, Vector2 firstOffset, float[] secondPose, Vector2 secondOffset)
+    {
+        if (Math.abs(Utils.toBearing(secondPose[2] - firstPose[2])) > MIN_TURNING_ANGLE)
+        {
+            return Float.NaN;
+        }
+
+        // the distance driven forwards between the crossings
+        double radians = Math.toRadians(firstPose[2]);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float distance = (secondPose[0] - firstPose[0]) * cos + (secondPose[1] - firstPose[1]) * sin;
+        if (Math.abs(distance) > MAX_PAIR_DISTANCE)
+        {
+            return Float.NaN;
+        }
+
+        // the direction of the line relative to the robot
+        float localAngle = (float) Math.toDegrees(Math.atan2(
+                secondOffset.getY() - firstOffset.getY(),
+                secondOffset.getX() + distance - firstOffset.getX()));
+
+        // the board line the robot most likely crossed
+        float lineAngle = Math.round((firstPose[2] + localAngle) / 90) * 90;
+        if (Math.abs(Utils.toBearing(firstPose[2] + localAngle - lineAngle)) > CORRECTION_ARC)
+        {
+            return Float.NaN;
+        }
+
+        // both sensors must have been near the same line
+        float firstX = firstPose[0] + cos * firstOffset.getX() - sin * firstOffset.getY();
+        float firstY = firstPose[1] + sin * firstOffset.getX() + cos * firstOffset.getY();
+        float secondX = secondPose[0] + cos * secondOffset.getX() - sin * secondOffset.getY();
+        float secondY = secondPose[1] + sin * secondOffset.getX() + cos * secondOffset.getY();
+        boolean alongX = Math.round(lineAngle / 90) % 2 == 0;
+        if (alongX ? Board.getNearestLine(firstY) != Board.getNearestLine(secondY) : Board.getNearestLine(firstX) != Board.getNearestLine(secondX))
+        {
+            return Float.NaN;
+        }
+
+        return Utils.normalizeAngle(lineAngle - localAngle);
+    }
+
+    /**
+     * Gives any new ultrasonic ranges to the odometer's estimator.
+     */
+    private void fuseRanges()
+    {
+        long newest = m_usMain.getSequence();
+        while (m_usMainSequence < newest)
+        {
+            m_usMainSequence++;
+            float range = m_usMain.getDistance(m_usMainSequence);
+            if (!Float.isNaN(range))
             {
-                m_listSize = m_listPos.sampleSize();
-                correctAngle(m_listPos.slope());
+                m_odometer.fuseRange(Robot.US_MAIN_OFFSET.getX(), Robot.US_MAIN_OFFSET.getY(), Robot.US_MAIN_ANGLE, range, m_usMain.getTimestamp(m_usMainSequence));
             }
+        }
 
-            Utils.sleepToNextPeroid(LineDetector.UPDATE_PERIOD, updateStart);
+        newest = m_usUpper.getSequence();
+        while (m_usUpperSequence < newest)
+        {
+            m_usUpperSequence++;
+            float range = m_usUpper.getDistance(m_usUpperSequence);
+            if (!Float.isNaN(range))
+            {
+                m_odometer.fuseRange(Robot.US_UPPER_OFFSET.getX(), Robot.US_UPPER_OFFSET.getY(), Robot.US_UPPER_ANGLE, range, m_usUpper.getTimestamp(m_usUpperSequence));
+            }
         }
     }
 
+    /**
+     * @return the mean time in ns from line crossings being sampled to being
+     *         applied, or 0 if none have been seen.
+     */
+    public long getMeanLatency()
+    {
+        int count = m_crossingCount;
+        return count == 0 ? 0 : m_latencyTotal / count;
+    }
+
+    /**
+     * @return the longest time in ns from a line crossing being sampled to
+     *         being applied.
+     */
+    public long getMaxLatency()
+    {
+        return m_maxLatency;
+    }
+
+    /**
+     * Has the line detectors sampled by a sensor hub at the high rate rather
+     * than on their own threads. Must be called before the correction is
+     * started.
+     * 
+     * @param sensorHub
+     *            the hub to sample the line detectors.
+     */
+    public void setSensorHub(SensorHub sensorHub)
+    {
+        m_sensorHub = sensorHub;
+    }
+
+    /**
+     * @return the line detector for the left color sensor.
+     */
+    public LineDetector getLeftLineDetector()
+    {
+        return m_leftLineDetector;
+    }
+
+    /**
+     * @return the line detector for the right color sensor.
+     */
+    public LineDetector getRightLineDetector()
+    {
+        return m_rightLineDetector;
+    }
+
     /**
      * Correct a component of the odometer position to what is probably the
      * nearest line.
      * 
      * @param colorSensorOffset
      *            the position of the color sensor in local space.
-     * @return the updated position.
+     * @param lineTime
+     *            the system time in nanoseconds at which the line was seen.
      */
-    private Vector2 correctPosition(Vector2 colorSensorOffset)
+    private void correctPosition(Vector2 colorSensorOffset, long lineTime)
     {
-        // get the position of the color sensor on the board
-        Vector2 colorSensorPos = m_odometer.toWorldSpace(colorSensorOffset);
-        // find the board line intersection closest to the color sensor
-        Vector2 intersection = Board.getNearestIntersection(colorSensorPos);
-        // get the displacement of the line intersection from the color sensor
-        Vector2 dispFromLines = intersection.subtract(colorSensorPos);
-        // reduce the displacement error so that the correction is smaller
-        dispFromLines.scale(CORRECTION_WEIGHT_POSITION);
+        // get the position of the color sensor on the board when the line was
+        // seen, as the robot may have moved since
+        m_odometer.poseAt(lineTime, m_sensorPos);
+        double radians = Math.toRadians(m_sensorPos[2]);
+        float sin = (float) Math.sin(radians);
+        float cos = (float) Math.cos(radians);
+        m_sensorPos[0] += cos * colorSensorOffset.getX() - sin * colorSensorOffset.getY();
+        m_sensorPos[1] += sin * colorSensorOffset.getX() + cos * colorSensorOffset.getY();
+        // get the displacement of the nearest line intersection from the color
+        // sensor, reducing the displacement error so that the correction is
+        // smaller
+        float dispX = (Board.getNearestLine(m_sensorPos[0]) - m_sensorPos[0]) * CORRECTION_WEIGHT_POSITION;
+        float dispY = (Board.getNearestLine(m_sensorPos[1]) - m_sensorPos[1]) * CORRECTION_WEIGHT_POSITION;
 
         // correct the axis that is closer to a line, as this is likely the line
         // that triggered the sensor
-        Vector2 correction;
-        if (Math.abs(dispFromLines.getX()) < Math.abs(dispFromLines.getY()))
+        if (Math.abs(dispX) < Math.abs(dispY))
         {
-            correction = new Vector2(dispFromLines.getX(), 0);            
+            dispY = 0;
         }
         else
         {
-            correction = new Vector2(0, dispFromLines.getY());
+            dispX = 0;
         }
    
-        m_odometer.setPosition(m_odometer.getPosition().add(correction));
-        
-        return m_odometer.getPosition();
+        m_odometer.translate(dispX, dispY);
+
+        // the corrected robot position at the time the line was seen
+        m_odometer.poseAt(lineTime, m_sensorPos);
     }
 
     /**
      * Correct the theta of the odometer, given that the error is not too large.
      * 
-     * @param angle
-     *            The new angle to which we want to set odometer correction.
+     * @param heading
+     *            the direction in degrees of the line fitted to the robot's
+     *            recent positions.
      * @return true if the angle was corrected.
      */
-    private boolean correctAngle(float slope)
+    private boolean correctAngle(float heading)
     {
-        float error = (float) Math.toDegrees(Math.atan(slope)) - m_odometer.getTheta();
-        while (Math.abs(error) > 90)
+        // the robot may have been driving backwards along the line
+        float error = Utils.toBearing(heading - m_odometer.getTheta());
+        if (error > 90)
+        {
+            error -= 180;
+        }
+        else if (error < -90)
         {
             error += 180;
         }
@@ -136,7 +439,7 @@ public class OdometryCorrection extends Thread
     private boolean changedAngle()
     {
         Vector2 last = m_listPos.getLast();
-        if (Math.abs(Utils.toBearing(Vector2.fromPolar(m_firstAngle, 1), Vector2.fromPolar(m_odometer.getTheta(), 1))) > MIN_TURNING_ANGLE)
+        if (Math.abs(Utils.toBearing(m_odometer.getTheta() - m_firstAngle)) > MIN_TURNING_ANGLE)
         {
             m_listPos.clearList();
             m_firstAngle = m_odometer.getTheta();
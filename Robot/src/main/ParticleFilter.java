@@ -0,0 +1,561 @@
+package main;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import lejos.robotics.geometry.Rectangle;
+
+/**
+ * Estimates the robot's pose anywhere on the board using Monte Carlo
+ * localization. Each particle is a guess at the robot's pose, which is moved
+ * with the odometry and weighted by how well the ranges seen by the ultrasonic
+ * sensors match the ranges cast from the particle to the board walls.
+ * Particles are kept in parallel arrays rather than as objects, so updates
+ * walk memory in order and nothing is allocated while localizing. <br>
+ * The board is square, so a sweep alone can't tell the corners apart. Start
+ * the particles around a rough guess of the pose, such as the last odometer
+ * pose or the start corner, when one is known.
+ * 
+ * @author Scott Sewell
+ */
+public class ParticleFilter
+{
+    // the number of particles used unless specified, sized for the brick
+    public static final int DEFAULT_PARTICLE_COUNT = 300;
+    // the number of particles weighed by each parallel task
+    private static final int TASK_SIZE = 256;
+    // fewer particles than this are weighed on one thread, as splitting the
+    // work would cost more than it saves
+    private static final int PARALLEL_COUNT = 1000;
+    // standard deviation of a range reading at zero range in cm
+    private static final float RANGE_DEVIATION = 2.0f;
+    // increase in the range standard deviation per cm of range
+    private static final float RANGE_DEVIATION_SCALE = 0.03f;
+    // relative chance a reading hit something nearer than the map, like a block
+    private static final float SHORT_WEIGHT = 0.2f;
+    // relative chance a reading is noise anywhere in the sensor range
+    private static final float RANDOM_WEIGHT = 0.05f;
+    // standard deviation of the distance driven per cm driven
+    private static final float DISTANCE_NOISE = 0.05f;
+    // standard deviation of the rotation per degree rotated
+    private static final float ROTATION_NOISE = 0.05f;
+    // noise added to resampled particles so that they don't collapse onto a
+    // few poses, as a fraction of the spread of the particles
+    private static final float JITTER_SCALE = 0.1f;
+    // the least noise added to resampled particles in cm and degrees
+    private static final float MIN_POSITION_JITTER = 0.5f;
+    private static final float MIN_THETA_JITTER = 0.5f;
+    // position and orientation spread under which the filter is converged in
+    // cm and degrees
+    private static final float CONVERGED_POSITION_DEVIATION = 4.0f;
+    private static final float CONVERGED_THETA_DEVIATION = 4.0f;
+
+    private int m_count;
+    private float[] m_x;
+    private float[] m_y;
+    private float[] m_theta;
+    private float[] m_weight;
+    // scratch arrays the resampled particles are written to
+    private float[] m_nextX;
+    private float[] m_nextY;
+    private float[] m_nextTheta;
+    // reused to hold the estimate without allocating
+    private float[] m_estimate;
+
+    // rectangles that block the sensors inside the walls
+    private float[] m_zoneMinX;
+    private float[] m_zoneMinY;
+    private float[] m_zoneMaxX;
+    private float[] m_zoneMaxY;
+    private boolean m_zonesVisible;
+
+    private Random m_random;
+    private ForkJoinPool m_pool;
+
+    // the measurement being weighed by the parallel tasks
+    private float m_offsetX;
+    private float m_offsetY;
+    private float m_angle;
+    private float m_range;
+
+    /**
+     * Constructor. Weighs the particles on the calling thread, as splitting
+     * the work between threads was measured to be slower on one processor.
+     * 
+     * @param board
+     *            the board being localized on.
+     * @param particleCount
+     *            the number of particles to track.
+     */
+    public ParticleFilter(Board board, int particleCount)
+    {
+        this(board, particleCount, new Random(), false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param board
+     *            the board being localized on.
+     * @param particleCount
+     *            the number of particles to track.
+     * @param random
+     *            the source of the motion and sampling noise.
+     * @param parallel
+     *            if true weighs large sets of particles using a fork/join
+     *            pool. Only worth it with thousands of particles on a machine
+     *            with several processors.
+     */
+    public ParticleFilter(Board board, int particleCount, Random random, boolean parallel)
+    {
+        m_count = particleCount;
+        m_x = new float[particleCount];
+        m_y = new float[particleCount];
+        m_theta = new float[particleCount];
+        m_weight = new float[particleCount];
+        m_nextX = new float[particleCount];
+        m_nextY = new float[particleCount];
+        m_nextTheta = new float[particleCount];
+        m_estimate = new float[3];
+
+        Rectangle[] zones = { board.getBuildZone(), board.getDumpZone() };
+        m_zoneMinX = new float[zones.length];
+        m_zoneMinY = new float[zones.length];
+        m_zoneMaxX = new float[zones.length];
+        m_zoneMaxY = new float[zones.length];
+        for (int i = 0; i < zones.length; i++)
+        {
+            m_zoneMinX[i] = zones[i].x;
+            m_zoneMinY[i] = zones[i].y;
+            m_zoneMaxX[i] = zones[i].x + zones[i].width;
+            m_zoneMaxY[i] = zones[i].y + zones[i].height;
+        }
+
+        m_random = random;
+        m_pool = parallel ? new ForkJoinPool() : null;
+        initializeUniform();
+    }
+
+    /**
+     * Spreads the particles evenly over the board with any orientation.
+     */
+    public void initializeUniform()
+    {
+        float size = Board.WALL_UPPER - Board.WALL_LOWER;
+        for (int i = 0; i < m_count; i++)
+        {
+            m_x[i] = Board.WALL_LOWER + m_random.nextFloat() * size;
+            m_y[i] = Board.WALL_LOWER + m_random.nextFloat() * size;
+            m_theta[i] = m_random.nextFloat() * 360;
+            m_weight[i] = 1f / m_count;
+        }
+    }
+
+    /**
+     * Spreads the particles around a rough guess of the pose.
+     * 
+     * @param x
+     *            the guessed x-axis position in cm.
+     * @param y
+     *            the guessed y-axis position in cm.
+     * @param theta
+     *            the guessed orientation in degrees.
+     * @param positionDeviation
+     *            the standard deviation of the position guess in cm.
+     * @param thetaDeviation
+     *            the standard deviation of the orientation guess in degrees.
+     */
+    public void initialize(float x, float y, float theta, float positionDeviation, float thetaDeviation)
+    {
+        for (int i = 0; i < m_count; i++)
+        {
+            m_x[i] = Utils.clamp(x + gaussian(positionDeviation), Board.WALL_LOWER, Board.WALL_UPPER);
+            m_y[i] = Utils.clamp(y + gaussian(positionDeviation), Board.WALL_LOWER, Board.WALL_UPPER);
+            m_theta[i] = Utils.normalizeAngle(theta + gaussian(thetaDeviation));
+            m_weight[i] = 1f / m_count;
+        }
+    }
+
+    /**
+     * Sets if the zones block the sensors, such as when blocks have been
+     * stacked in them.
+     * 
+     * @param visible
+     *            if true ranges are cast to the zones as well as the walls.
+     */
+    public void setZonesVisible(boolean visible)
+    {
+        m_zonesVisible = visible;
+    }
+
+    /**
+     * Moves every particle by the motion measured by the odometer. The robot
+     * is treated as turning half the rotation, driving the distance, then
+     * turning the other half, with noise proportional to each.
+     * 
+     * @param distance
+     *            the distance driven in cm.
+     * @param rotation
+     *            the change in orientation in degrees.
+     */
+    public void move(float distance, float rotation)
+    {
+        float distanceDeviation = Math.abs(distance) * DISTANCE_NOISE;
+        float rotationDeviation = Math.abs(rotation) * ROTATION_NOISE;
+
+        for (int i = 0; i < m_count; i++)
+        {
+            float halfRotation = (rotation + gaussian(rotationDeviation)) / 2;
+            float travelled = distance + gaussian(distanceDeviation);
+            double heading = Math.toRadians(m_theta[i] + halfRotation);
+            m_x[i] += travelled * (float) Math.cos(heading);
+            m_y[i] += travelled * (float) Math.sin(heading);
+            m_theta[i] = Utils.normalizeAngle(m_theta[i] + halfRotation * 2);
+        }
+    }
+
+    /**
+     * Weighs the particles by a range read by an ultrasonic sensor, and
+     * resamples them once too few particles carry most of the weight.
+     * 
+     * @param offsetX
+     *            the forward offset of the sensor from the robot center in cm.
+     * @param offsetY
+     *            the left offset of the sensor from the robot center in cm.
+     * @param angle
+     *            the direction the sensor faces from the robot forward
+     *            direction in degrees.
+     * @param range
+     *            the range read in cm.
+     */
+    public void measure(float offsetX, float offsetY, float angle, float range)
+    {
+        m_offsetX = offsetX;
+        m_offsetY = offsetY;
+        m_angle = angle;
+        m_range = range;
+
+        if (m_pool != null && m_count >= PARALLEL_COUNT)
+        {
+            m_pool.invoke(new WeighTask(0, m_count));
+        }
+        else
+        {
+            weigh(0, m_count);
+        }
+
+        // normalize the weights, recovering if no particle fits at all
+        float sum = 0;
+        for (int i = 0; i < m_count; i++)
+        {
+            sum += m_weight[i];
+        }
+        float squareSum = 0;
+        for (int i = 0; i < m_count; i++)
+        {
+            m_weight[i] = sum > 0 ? m_weight[i] / sum : 1f / m_count;
+            squareSum += m_weight[i] * m_weight[i];
+        }
+
+        // the effective number of particles
+        if (1 / squareSum < m_count / 2)
+        {
+            resample();
+        }
+    }
+
+    /**
+     * Gets the weighted mean pose of the particles.
+     * 
+     * @param pose
+     *            an array of 3 to hold the x, y and theta of the estimate.
+     */
+    public void getEstimate(float[] pose)
+    {
+        float x = 0;
+        float y = 0;
+        float cos = 0;
+        float sin = 0;
+        for (int i = 0; i < m_count; i++)
+        {
+            double radians = Math.toRadians(m_theta[i]);
+            x += m_weight[i] * m_x[i];
+            y += m_weight[i] * m_y[i];
+            cos += m_weight[i] * (float) Math.cos(radians);
+            sin += m_weight[i] * (float) Math.sin(radians);
+        }
+        pose[0] = x;
+        pose[1] = y;
+        pose[2] = Utils.normalizeAngle((float) Math.toDegrees(Math.atan2(sin, cos)));
+    }
+
+    /**
+     * @return the weighted standard deviation of the particle positions from
+     *         the estimate in cm.
+     */
+    public float getPositionDeviation()
+    {
+        float[] pose = m_estimate;
+        getEstimate(pose);
+        float variance = 0;
+        for (int i = 0; i < m_count; i++)
+        {
+            float dx = m_x[i] - pose[0];
+            float dy = m_y[i] - pose[1];
+            variance += m_weight[i] * (dx * dx + dy * dy);
+        }
+        return (float) Math.sqrt(variance);
+    }
+
+    /**
+     * @return the weighted standard deviation of the particle orientations
+     *         from the estimate in degrees.
+     */
+    public float getThetaDeviation()
+    {
+        float[] pose = m_estimate;
+        getEstimate(pose);
+        float variance = 0;
+        for (int i = 0; i < m_count; i++)
+        {
+            float error = Utils.toBearing(m_theta[i] - pose[2]);
+            variance += m_weight[i] * error * error;
+        }
+        return (float) Math.sqrt(variance);
+    }
+
+    /**
+     * @return true if the particles agree closely enough on a single pose for
+     *         it to be trusted.
+     */
+    public boolean isConverged()
+    {
+        return getPositionDeviation() < CONVERGED_POSITION_DEVIATION && getThetaDeviation() < CONVERGED_THETA_DEVIATION;
+    }
+
+    /**
+     * @return the number of particles.
+     */
+    public int getParticleCount()
+    {
+        return m_count;
+    }
+
+    /**
+     * Gets the weight of a particle.
+     * 
+     * @param index
+     *            the particle index.
+     * @return the normalized weight.
+     */
+    public float getWeight(int index)
+    {
+        return m_weight[index];
+    }
+
+    /**
+     * Finds the distance from a point to the first wall, or visible zone, in
+     * a given direction.
+     * 
+     * @param x
+     *            the x-axis position of the ray start in cm.
+     * @param y
+     *            the y-axis position of the ray start in cm.
+     * @param angle
+     *            the direction of the ray in degrees.
+     * @return the distance to the first surface hit in cm.
+     */
+    public float castRay(float x, float y, float angle)
+    {
+        double radians = Math.toRadians(angle);
+        return castRay(x, y, (float) Math.cos(radians), (float) Math.sin(radians));
+    }
+
+    /**
+     * Finds the distance along a ray to the first surface hit.
+     */
+    private float castRay(float x, float y, float dirX, float dirY)
+    {
+        // the walls surround the ray start, so take the nearest exit
+        float distX = dirX > 0 ? (Board.WALL_UPPER - x) / dirX : dirX < 0 ? (Board.WALL_LOWER - x) / dirX : Float.MAX_VALUE;
+        float distY = dirY > 0 ? (Board.WALL_UPPER - y) / dirY : dirY < 0 ? (Board.WALL_LOWER - y) / dirY : Float.MAX_VALUE;
+        float range = Math.max(0, Math.min(distX, distY));
+
+        if (m_zonesVisible)
+        {
+            for (int i = 0; i < m_zoneMinX.length; i++)
+            {
+                range = Math.min(range, castRayToRect(x, y, dirX, dirY, i));
+            }
+        }
+        return range;
+    }
+
+    /**
+     * Finds the distance along a ray to where it enters a zone.
+     * 
+     * @return the distance in cm, or Float.MAX_VALUE if the zone is missed.
+     */
+    private float castRayToRect(float x, float y, float dirX, float dirY, int zone)
+    {
+        float near = 0;
+        float far = Float.MAX_VALUE;
+
+        if (dirX != 0)
+        {
+            float t1 = (m_zoneMinX[zone] - x) / dirX;
+            float t2 = (m_zoneMaxX[zone] - x) / dirX;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        else if (x < m_zoneMinX[zone] || x > m_zoneMaxX[zone])
+        {
+            return Float.MAX_VALUE;
+        }
+
+        if (dirY != 0)
+        {
+            float t1 = (m_zoneMinY[zone] - y) / dirY;
+            float t2 = (m_zoneMaxY[zone] - y) / dirY;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        else if (y < m_zoneMinY[zone] || y > m_zoneMaxY[zone])
+        {
+            return Float.MAX_VALUE;
+        }
+
+        return near <= far ? near : Float.MAX_VALUE;
+    }
+
+    /**
+     * Multiplies the weights of a range of particles by the likelihood of the
+     * current measurement.
+     * 
+     * @param start
+     *            the first particle index.
+     * @param end
+     *            one past the last particle index.
+     */
+    private void weigh(int start, int end)
+    {
+        float maxRange = UltrasonicPoller.MAX_RANGE;
+        float randomDensity = RANDOM_WEIGHT / maxRange;
+
+        for (int i = start; i < end; i++)
+        {
+            // particles off the board are impossible
+            if (m_x[i] < Board.WALL_LOWER || m_x[i] > Board.WALL_UPPER || m_y[i] < Board.WALL_LOWER || m_y[i] > Board.WALL_UPPER)
+            {
+                m_weight[i] = 0;
+                continue;
+            }
+
+            double robotRadians = Math.toRadians(m_theta[i]);
+            float cos = (float) Math.cos(robotRadians);
+            float sin = (float) Math.sin(robotRadians);
+            float sensorX = m_x[i] + cos * m_offsetX - sin * m_offsetY;
+            float sensorY = m_y[i] + sin * m_offsetX + cos * m_offsetY;
+            double rayRadians = Math.toRadians(m_theta[i] + m_angle);
+
+            float expected = Math.min(castRay(sensorX, sensorY, (float) Math.cos(rayRadians), (float) Math.sin(rayRadians)), maxRange);
+            float deviation = RANGE_DEVIATION + RANGE_DEVIATION_SCALE * expected;
+            float error = (m_range - expected) / deviation;
+
+            // a mix of seeing the map, something nearer than the map, or noise
+            float likelihood = (float) Math.exp(-0.5f * error * error) / deviation + randomDensity;
+            if (m_range < expected)
+            {
+                likelihood += SHORT_WEIGHT / Math.max(expected, 1);
+            }
+            m_weight[i] *= likelihood;
+        }
+    }
+
+    /**
+     * Draws a new set of equally weighted particles in proportion to the
+     * current weights, using a single random offset so that particles are
+     * kept in proportion with little sampling noise.
+     */
+    private void resample()
+    {
+        float positionJitter = Math.max(getPositionDeviation() * JITTER_SCALE, MIN_POSITION_JITTER);
+        float thetaJitter = Math.max(getThetaDeviation() * JITTER_SCALE, MIN_THETA_JITTER);
+
+        float step = 1f / m_count;
+        float target = m_random.nextFloat() * step;
+        float cumulative = m_weight[0];
+        int source = 0;
+
+        for (int i = 0; i < m_count; i++)
+        {
+            while (target > cumulative && source < m_count - 1)
+            {
+                source++;
+                cumulative += m_weight[source];
+            }
+            m_nextX[i] = m_x[source] + gaussian(positionJitter);
+            m_nextY[i] = m_y[source] + gaussian(positionJitter);
+            m_nextTheta[i] = Utils.normalizeAngle(m_theta[source] + gaussian(thetaJitter));
+            target += step;
+        }
+
+        float[] swap = m_x;
+        m_x = m_nextX;
+        m_nextX = swap;
+        swap = m_y;
+        m_y = m_nextY;
+        m_nextY = swap;
+        swap = m_theta;
+        m_theta = m_nextTheta;
+        m_nextTheta = swap;
+
+        for (int i = 0; i < m_count; i++)
+        {
+            m_weight[i] = step;
+        }
+    }
+
+    /**
+     * Gets a normally distributed random value.
+     * 
+     * @param deviation
+     *            the standard deviation.
+     */
+    private float gaussian(float deviation)
+    {
+        return deviation == 0 ? 0 : (float) m_random.nextGaussian() * deviation;
+    }
+
+    /**
+     * Weighs a range of particles, splitting the range between tasks until
+     * it is small enough to weigh directly.
+     */
+    private class WeighTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int m_start;
+        private int m_end;
+
+        public WeighTask(int start, int end)
+        {
+            m_start = start;
+            m_end = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (m_end - m_start <= TASK_SIZE)
+            {
+                weigh(m_start, m_end);
+            }
+            else
+            {
+                int middle = (m_start + m_end) >>> 1;
+                invokeAll(new WeighTask(m_start, middle), new WeighTask(middle, m_end));
+            }
+        }
+    }
+}
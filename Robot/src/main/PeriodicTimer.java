@@ -0,0 +1,267 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a loop at a fixed rate. Periods are scheduled from a fixed start time
+ * rather than from the end of the previous period so that the loop keeps a
+ * stable phase instead of drifting. Also keeps statistics on how late each
+ * period started and how long the loop body took, so that loop rates can be
+ * tuned on the robot.
+ * 
+ * @author Scott Sewell
+ */
+public class PeriodicTimer
+{
+    // the width of each histogram bin in ns
+    public static final long BIN_WIDTH = 500000;
+    // the number of histogram bins, the last bin counts all larger values
+    public static final int BIN_COUNT = 40;
+
+    // every timer started, so statistics for all loops can be reported
+    private static final List<PeriodicTimer> TIMERS = new ArrayList<PeriodicTimer>();
+
+    private String m_name;
+    private volatile long m_period;
+    private boolean m_started;
+    private long m_deadline;
+    private long m_periodStart;
+
+    private volatile int m_periods;
+    private volatile int m_overruns;
+    private volatile long m_maxJitter;
+    private volatile long m_maxExecution;
+    private int[] m_jitterHistogram;
+    private int[] m_executionHistogram;
+
+    /**
+     * Constructor.
+     * 
+     * @param name
+     *            a name identifying the loop in reports.
+     * @param period
+     *            the desired period of the loop in milliseconds.
+     */
+    public PeriodicTimer(String name, int period)
+    {
+        m_name = name;
+        m_period = period * 1000000L;
+        m_jitterHistogram = new int[BIN_COUNT];
+        m_executionHistogram = new int[BIN_COUNT];
+    }
+
+    /**
+     * Marks the start of the current period, restarting the schedule from
+     * now. Optional, as the first call to waitForNextPeriod() will otherwise
+     * start the schedule.
+     */
+    public void start()
+    {
+        begin(System.nanoTime());
+    }
+
+    /**
+     * Halts the thread until the next period begins. If the loop body took
+     * longer than a period, the missed periods are counted as overruns and
+     * skipped, so that the loop stays in phase instead of running late
+     * periods back to back.
+     */
+    public void waitForNextPeriod()
+    {
+        long now = System.nanoTime();
+        if (!m_started)
+        {
+            begin(now);
+        }
+
+        long execution = now - m_periodStart;
+        m_maxExecution = Math.max(m_maxExecution, execution);
+        m_executionHistogram[toBin(execution)]++;
+
+        // skip to the first period boundary that has not yet passed
+        if (now - m_deadline >= 0)
+        {
+            long missed = (now - m_deadline) / m_period + 1;
+            m_overruns += missed;
+            m_deadline += missed * m_period;
+        }
+
+        sleepUntil(m_deadline);
+
+        m_periodStart = System.nanoTime();
+        long jitter = m_periodStart - m_deadline;
+        m_maxJitter = Math.max(m_maxJitter, jitter);
+        m_jitterHistogram[toBin(jitter)]++;
+        m_periods++;
+
+        m_deadline += m_period;
+    }
+
+    /**
+     * Sets the period of the loop. Takes effect after the current period.
+     * 
+     * @param period
+     *            the desired period of the loop in milliseconds.
+     */
+    public void setPeriod(int period)
+    {
+        m_period = period * 1000000L;
+    }
+
+    /**
+     * @return the period of the loop in milliseconds.
+     */
+    public int getPeriod()
+    {
+        return (int) (m_period / 1000000L);
+    }
+
+    /**
+     * @return the number of periods completed.
+     */
+    public int getPeriodCount()
+    {
+        return m_periods;
+    }
+
+    /**
+     * @return the number of periods that were missed because the loop body
+     *         took too long.
+     */
+    public int getOverrunCount()
+    {
+        return m_overruns;
+    }
+
+    /**
+     * @return the largest delay in ns between when a period should have
+     *         started and when it did.
+     */
+    public long getMaxJitter()
+    {
+        return m_maxJitter;
+    }
+
+    /**
+     * @return the longest time in ns taken by the loop body.
+     */
+    public long getMaxExecution()
+    {
+        return m_maxExecution;
+    }
+
+    /**
+     * @return a copy of the counts of period start delays, in bins of
+     *         BIN_WIDTH ns.
+     */
+    public int[] getJitterHistogram()
+    {
+        return m_jitterHistogram.clone();
+    }
+
+    /**
+     * @return a copy of the counts of loop body durations, in bins of
+     *         BIN_WIDTH ns.
+     */
+    public int[] getExecutionHistogram()
+    {
+        return m_executionHistogram.clone();
+    }
+
+    /**
+     * Creates a summary of the timing statistics.
+     * 
+     * @return a string formatted like
+     *         "odometer 25ms n=400 over=1 jit<=1.5ms exec<=3.0ms".
+     */
+    public String toString()
+    {
+        return m_name + " " + getPeriod() + "ms" +
+                " n=" + m_periods +
+                " over=" + m_overruns +
+                " jit<=" + String.format("%.1f", m_maxJitter / 1000000f) + "ms" +
+                " exec<=" + String.format("%.1f", m_maxExecution / 1000000f) + "ms";
+    }
+
+    /**
+     * Creates a report of the timing statistics of every timer, including the
+     * non-empty histogram bins.
+     * 
+     * @return a report with one section per timer.
+     */
+    public static String report()
+    {
+        StringBuilder report = new StringBuilder();
+        synchronized (TIMERS)
+        {
+            for (PeriodicTimer timer : TIMERS)
+            {
+                report.append(timer.toString()).append('\n');
+                appendHistogram(report, "  jitter", timer.getJitterHistogram());
+                appendHistogram(report, "  exec  ", timer.getExecutionHistogram());
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Adds the non-empty bins of a histogram to a report.
+     */
+    private static void appendHistogram(StringBuilder report, String label, int[] histogram)
+    {
+        report.append(label);
+        for (int i = 0; i < histogram.length; i++)
+        {
+            if (histogram[i] > 0)
+            {
+                report.append(' ').append(String.format("%.1f", i * BIN_WIDTH / 1000000f)).append(':').append(histogram[i]);
+            }
+        }
+        report.append('\n');
+    }
+
+    /**
+     * Starts the schedule and adds the timer to the report.
+     */
+    private void begin(long now)
+    {
+        m_periodStart = now;
+        m_deadline = now + m_period;
+
+        if (!m_started)
+        {
+            m_started = true;
+            synchronized (TIMERS)
+            {
+                TIMERS.add(this);
+            }
+        }
+    }
+
+    /**
+     * Gets the histogram bin a duration falls in.
+     */
+    private static int toBin(long duration)
+    {
+        return (int) Math.max(0, Math.min(duration / BIN_WIDTH, BIN_COUNT - 1));
+    }
+
+    /**
+     * Halts the thread until a given time. Parks rather than sleeping, as
+     * Thread.sleep() rounds to whole milliseconds, which would wake short
+     * periods up to half a millisecond early.
+     * 
+     * @param time
+     *            the system time in nanoseconds to wake up at.
+     */
+    private static void sleepUntil(long time)
+    {
+        long remaining;
+        while ((remaining = time - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted())
+        {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
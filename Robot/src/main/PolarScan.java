@@ -0,0 +1,317 @@
+package main;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Holds the distances seen during a sweep, binned by angle from the start of
+ * the sweep. Readings falling in the same bin are averaged, and bins that saw
+ * no readings are left out once the scan is processed, leaving the points in
+ * order of increasing angle. Sanitizing, finding discontinuities, and taking
+ * means are each a single pass over the points. Since angles are kept
+ * relative to the start of the sweep, a sweep through 0 degrees stays in
+ * order. Nothing is allocated after construction, so a scan can be reused for
+ * each sweep.
+ * 
+ * @author Scott Sewell
+ */
+public class PolarScan
+{
+    private float m_width;
+    private float m_binSize;
+    private float m_startAngle;
+
+    // the readings added to each bin
+    private float[] m_sums;
+    private int[] m_counts;
+
+    // the bins with readings, in order of increasing angle
+    private int[] m_bins;
+    private float[] m_distances;
+    private int m_size;
+
+    // the indices of points that differ greatly from the point before
+    private int[] m_discontinuities;
+    private int m_discontinuityCount;
+
+    /**
+     * Constructor.
+     * 
+     * @param width
+     *            the widest sweep in degrees that can be held.
+     * @param binSize
+     *            the angle in degrees covered by each bin.
+     */
+    public PolarScan(float width, float binSize)
+    {
+        if (width <= 0 || binSize <= 0)
+        {
+            throw new InvalidParameterException("Attempted to create a polar scan with a non-positive width or bin size!");
+        }
+        m_width = width;
+        m_binSize = binSize;
+
+        int binCount = (int) Math.ceil(width / binSize) + 1;
+        m_sums = new float[binCount];
+        m_counts = new int[binCount];
+        m_bins = new int[binCount];
+        m_distances = new float[binCount];
+        m_discontinuities = new int[binCount];
+        reset(0);
+    }
+
+    /**
+     * Removes all readings to begin a new sweep.
+     * 
+     * @param startAngle
+     *            the heading in degrees at the start of the sweep.
+     */
+    public void reset(float startAngle)
+    {
+        m_startAngle = Utils.normalizeAngle(startAngle);
+        for (int i = 0; i < m_counts.length; i++)
+        {
+            m_sums[i] = 0;
+            m_counts[i] = 0;
+        }
+        m_size = 0;
+        m_discontinuityCount = 0;
+    }
+
+    /**
+     * Adds a reading to the bin containing its angle.
+     * 
+     * @param angle
+     *            the heading in degrees at which the reading was taken.
+     * @param distance
+     *            the distance read in cm.
+     * @return false if the angle is outside of the sweep.
+     */
+    public boolean add(float angle, float distance)
+    {
+        // each bin is centered on its angle, so readings just before the
+        // start of the sweep fall in the first bin
+        int bin = (int) (Utils.normalizeAngle(angle - m_startAngle + m_binSize / 2) / m_binSize);
+        if (bin >= m_counts.length)
+        {
+            return false;
+        }
+        m_sums[bin] += distance;
+        m_counts[bin]++;
+        return true;
+    }
+
+    /**
+     * Takes the mean of the readings in each bin, keeping only the bins that
+     * had readings. Must be called once all readings are added.
+     * 
+     * @return the number of points in the scan.
+     */
+    public int process()
+    {
+        m_size = 0;
+        for (int i = 0; i < m_counts.length; i++)
+        {
+            if (m_counts[i] > 0)
+            {
+                m_bins[m_size] = i;
+                m_distances[m_size] = m_sums[i] / m_counts[i];
+                m_size++;
+            }
+        }
+        m_discontinuityCount = 0;
+        return m_size;
+    }
+
+    /**
+     * Removes false positives, which are objects seen over too small an
+     * angle. The ends of the scan are taken to see nothing, so that an object
+     * seen up to the end of the sweep still has a discontinuity on each side.
+     * 
+     * @param noObject
+     *            the distance in cm assumed where no object was seen.
+     * @param minObjectAngle
+     *            the smallest angle in degrees an object can span.
+     */
+    public void sanitize(float noObject, float minObjectAngle)
+    {
+        if (m_size == 0)
+        {
+            return;
+        }
+
+        m_distances[0] = noObject;
+        float previousDistance = noObject;
+        boolean spotted = false;
+        int start = 0;
+        for (int i = 1; i < m_size; i++)
+        {
+            float distance = m_distances[i];
+            if (distance != previousDistance)
+            {
+                if (!spotted)
+                {
+                    start = i;
+                    spotted = true;
+                }
+                else
+                {
+                    spotted = false;
+                    if (getAngleOffset(i) - getAngleOffset(start) < minObjectAngle)
+                    {
+                        // the spans are disjoint, so this is still linear
+                        for (int j = start; j < i; j++)
+                        {
+                            m_distances[j] = noObject;
+                        }
+                    }
+                }
+            }
+            previousDistance = distance;
+        }
+        m_distances[m_size - 1] = noObject;
+    }
+
+    /**
+     * Finds the points that differ greatly in distance from the point before.
+     * 
+     * @param distance
+     *            the change in distance in cm between points that is a
+     *            discontinuity.
+     * @return the number of discontinuities.
+     */
+    public int findDiscontinuities(float distance)
+    {
+        m_discontinuityCount = 0;
+        for (int i = 1; i < m_size; i++)
+        {
+            if (Math.abs(m_distances[i] - m_distances[i - 1]) > distance)
+            {
+                m_discontinuities[m_discontinuityCount++] = i;
+            }
+        }
+        return m_discontinuityCount;
+    }
+
+    /**
+     * Finds the mean angle and distance of a range of points.
+     * 
+     * @param from
+     *            the index of the first point, inclusive.
+     * @param to
+     *            the index of the last point, exclusive.
+     * @param means
+     *            an array of size 2 set to the mean angle in degrees, and the
+     *            mean distance in cm. Both are 0 if the range is empty.
+     */
+    public void getMeans(int from, int to, float[] means)
+    {
+        float angleSum = 0;
+        float distanceSum = 0;
+        for (int i = from; i < to; i++)
+        {
+            angleSum += getAngleOffset(i);
+            distanceSum += m_distances[i];
+        }
+        int count = to - from;
+        if (count > 0)
+        {
+            means[0] = Utils.normalizeAngle(m_startAngle + angleSum / count);
+            means[1] = distanceSum / count;
+        }
+        else
+        {
+            means[0] = 0;
+            means[1] = 0;
+        }
+    }
+
+    /**
+     * @return the number of points in the processed scan.
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * @param index
+     *            the index of a point in the processed scan.
+     * @return the heading in degrees at the center of the point's bin.
+     */
+    public float getAngle(int index)
+    {
+        return Utils.normalizeAngle(m_startAngle + getAngleOffset(index));
+    }
+
+    /**
+     * @param index
+     *            the index of a point in the processed scan.
+     * @return the angle in degrees of the point from the start of the sweep.
+     */
+    public float getAngleOffset(int index)
+    {
+        return m_bins[index] * m_binSize;
+    }
+
+    /**
+     * @param index
+     *            the index of a point in the processed scan.
+     * @return the distance of the point in cm.
+     */
+    public float getDistance(int index)
+    {
+        return m_distances[index];
+    }
+
+    /**
+     * @param index
+     *            the index of a point in the processed scan.
+     * @return the number of readings averaged into the point.
+     */
+    public int getHitCount(int index)
+    {
+        return m_counts[m_bins[index]];
+    }
+
+    /**
+     * @return the number of discontinuities last found.
+     */
+    public int getDiscontinuityCount()
+    {
+        return m_discontinuityCount;
+    }
+
+    /**
+     * @param n
+     *            the discontinuity to get, in order of increasing angle.
+     * @return the index of the point after the change in distance.
+     */
+    public int getDiscontinuity(int n)
+    {
+        return m_discontinuities[n];
+    }
+
+    /**
+     * @return the heading in degrees at the start of the sweep.
+     */
+    public float getStartAngle()
+    {
+        return m_startAngle;
+    }
+
+    /**
+     * @return the widest sweep in degrees that can be held.
+     */
+    public float getWidth()
+    {
+        return m_width;
+    }
+
+    /**
+     * @return the angle in degrees covered by each bin.
+     */
+    public float getBinSize()
+    {
+        return m_binSize;
+    }
+}
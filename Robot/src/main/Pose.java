@@ -0,0 +1,112 @@
+package main;
+
+/**
+ * An immutable snapshot of the robot's transform taken during a single
+ * odometer update. All values in a pose are from the same tick, so they can be
+ * used together without the risk of mixing old and new values.
+ * 
+ * @author Scott Sewell
+ */
+public final class Pose
+{
+    private final float m_x;
+    private final float m_y;
+    private final float m_theta;
+    private final long m_timestamp;
+    private final long m_sequence;
+
+    /**
+     * Constructor.
+     * 
+     * @param x
+     *            the x-axis position in cm.
+     * @param y
+     *            the y-axis position in cm.
+     * @param theta
+     *            the rotation from x-axis counter-clockwise in degrees.
+     * @param timestamp
+     *            the system time in nanoseconds the pose was computed at.
+     * @param sequence
+     *            the number of the update that produced this pose.
+     */
+    public Pose(float x, float y, float theta, long timestamp, long sequence)
+    {
+        m_x = x;
+        m_y = y;
+        m_theta = theta;
+        m_timestamp = timestamp;
+        m_sequence = sequence;
+    }
+
+    /**
+     * Transforms a vector from the robot's local space to world space.
+     * 
+     * @param v
+     *            a local space vector.
+     * @return a new vector in world space.
+     */
+    public Vector2 toWorldSpace(Vector2 v)
+    {
+        return new Vector2(v).rotate(m_theta).add(getPosition());
+    }
+
+    /**
+     * Transforms a vector from the world space to robot's local space.
+     * 
+     * @param v
+     *            a world space vector.
+     * @return a new vector in local space.
+     */
+    public Vector2 toLocalSpace(Vector2 v)
+    {
+        return new Vector2(v).subtract(getPosition()).rotate(-m_theta);
+    }
+
+    /**
+     * @return a new vector with the robot's position in cm.
+     */
+    public Vector2 getPosition()
+    {
+        return new Vector2(m_x, m_y);
+    }
+
+    /**
+     * @return the x-axis position in cm.
+     */
+    public float getX()
+    {
+        return m_x;
+    }
+
+    /**
+     * @return the y-axis position in cm.
+     */
+    public float getY()
+    {
+        return m_y;
+    }
+
+    /**
+     * @return the robot's orientation in degrees.
+     */
+    public float getTheta()
+    {
+        return m_theta;
+    }
+
+    /**
+     * @return the system time in nanoseconds the pose was computed at.
+     */
+    public long getTimestamp()
+    {
+        return m_timestamp;
+    }
+
+    /**
+     * @return the number of the update that produced this pose.
+     */
+    public long getSequence()
+    {
+        return m_sequence;
+    }
+}
@@ -0,0 +1,402 @@
+package main;
+
+/**
+ * Estimates the robot transform with an extended Kalman filter. Wheel
+ * movements predict how the transform changes, while grid line crossings and
+ * ultrasonic ranges to the board walls correct it. The uncertainty of the
+ * estimate is tracked so that each correction is weighted by how much it can
+ * be trusted compared to the current estimate.
+ * 
+ * All matrices are preallocated, so no update allocates. This class is not
+ * thread safe, callers must synchronize access.
+ * 
+ * @author Scott Sewell
+ */
+public class PoseEstimator
+{
+    // variance added per cm traveled by a wheel in cm^2
+    private static final double WHEEL_VARIANCE = 0.02;
+    // variance added to the heading per update to account for wheel slip in rad^2
+    private static final double SLIP_VARIANCE = 1e-6;
+    // variance of the position of a line crossing along the sensor path in cm^2
+    private static final double LINE_VARIANCE = 1.0;
+    // variance of a heading measured from both color sensors crossing a
+    // line in rad^2
+    private static final double HEADING_VARIANCE = Math.pow(Math.toRadians(1.5), 2);
+    // standard deviation of an ultrasonic range in cm
+    private static final double RANGE_DEVIATION = 1.5;
+    // additional standard deviation of an ultrasonic range per cm of range
+    private static final double RANGE_DEVIATION_SCALE = 0.02;
+    // ranges longer than this in cm are not used
+    private static final float MAX_FUSED_RANGE = 120;
+    // smallest cosine of the angle between the ray and wall normal for ranges
+    // to be used, as the ultrasonic sensor misses walls seen at steep angles
+    private static final double MIN_INCIDENCE_COS = 0.7;
+    // measurements further than this many standard deviations from the
+    // expected value are rejected
+    private static final double GATE_SIGMA = 3.0;
+
+    // the state, with the heading in radians
+    private double m_x;
+    private double m_y;
+    private double m_theta;
+
+    // the 3x3 covariance of the state, in row major order
+    private double[] m_p;
+
+    // preallocated scratch matrices
+    private double[] m_f;
+    private double[] m_temp;
+    private double[] m_h;
+    private double[] m_k;
+
+    /**
+     * Constructor.
+     * 
+     * @param positionDeviation
+     *            the initial standard deviation of the position in cm.
+     * @param thetaDeviation
+     *            the initial standard deviation of the heading in degrees.
+     */
+    public PoseEstimator(float positionDeviation, float thetaDeviation)
+    {
+        m_p = new double[9];
+        m_f = new double[9];
+        m_temp = new double[9];
+        m_h = new double[3];
+        m_k = new double[3];
+
+        m_p[0] = positionDeviation * positionDeviation;
+        m_p[4] = positionDeviation * positionDeviation;
+        m_p[8] = Math.toRadians(thetaDeviation) * Math.toRadians(thetaDeviation);
+    }
+
+    /**
+     * Sets the estimated transform without changing its uncertainty.
+     * 
+     * @param x
+     *            the x-axis position in cm.
+     * @param y
+     *            the y-axis position in cm.
+     * @param theta
+     *            the orientation in degrees.
+     */
+    public void setPose(float x, float y, float theta)
+    {
+        m_x = x;
+        m_y = y;
+        m_theta = Math.toRadians(theta);
+    }
+
+    /**
+     * Predicts the new transform from the distance each wheel has traveled
+     * since the last prediction, and grows the uncertainty accordingly.
+     * 
+     * @param distL
+     *            the distance traveled by the left wheel in cm.
+     * @param distR
+     *            the distance traveled by the right wheel in cm.
+     */
+    public void predict(double distL, double distR)
+    {
+        double track = Robot.WHEEL_TRACK;
+        double d = 0.5 * (distL + distR);
+        double deltaTheta = (distR - distL) / track;
+        double heading = m_theta + deltaTheta / 2;
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+
+        m_x += d * cos;
+        m_y += d * sin;
+        m_theta = Math.IEEEremainder(m_theta + deltaTheta, 2 * Math.PI);
+
+        // jacobian of the new state with respect to the old state
+        m_f[0] = 1; m_f[1] = 0; m_f[2] = -d * sin;
+        m_f[3] = 0; m_f[4] = 1; m_f[5] = d * cos;
+        m_f[6] = 0; m_f[7] = 0; m_f[8] = 1;
+
+        // P = F * P * F^T
+        multiply(m_f, m_p, m_temp);
+        multiplyTransposed(m_temp, m_f, m_p);
+
+        // add the wheel noise, mapped through the jacobian with respect to
+        // the wheel distances
+        double varL = WHEEL_VARIANCE * Math.abs(distL);
+        double varR = WHEEL_VARIANCE * Math.abs(distR);
+        double xl = 0.5 * cos + d * sin / (2 * track);
+        double xr = 0.5 * cos - d * sin / (2 * track);
+        double yl = 0.5 * sin - d * cos / (2 * track);
+        double yr = 0.5 * sin + d * cos / (2 * track);
+        double tl = -1 / track;
+        double tr = 1 / track;
+
+        m_p[0] += xl * xl * varL + xr * xr * varR;
+        m_p[1] += xl * yl * varL + xr * yr * varR;
+        m_p[2] += xl * tl * varL + xr * tr * varR;
+        m_p[4] += yl * yl * varL + yr * yr * varR;
+        m_p[5] += yl * tl * varL + yr * tr * varR;
+        m_p[8] += tl * tl * varL + tr * tr * varR + SLIP_VARIANCE;
+        m_p[3] = m_p[1];
+        m_p[6] = m_p[2];
+        m_p[7] = m_p[5];
+    }
+
+    /**
+     * Corrects the estimate using a color sensor crossing a grid line. The
+     * line crossed is assumed to be the one nearest to the sensor.
+     * 
+     * @param offsetX
+     *            the local space x-axis position of the color sensor in cm.
+     * @param offsetY
+     *            the local space y-axis position of the color sensor in cm.
+     * @param pose
+     *            the x and y position in cm and orientation in degrees of the
+     *            robot when the line was seen.
+     * @return true if the measurement was used.
+     */
+    public boolean updateLine(float offsetX, float offsetY, float[] pose)
+    {
+        double theta = Math.toRadians(pose[2]);
+        double cos = Math.cos(theta);
+        double sin = Math.sin(theta);
+        double sensorX = pose[0] + cos * offsetX - sin * offsetY;
+        double sensorY = pose[1] + sin * offsetX + cos * offsetY;
+
+        double errorX = Board.getNearestLine((float) sensorX) - sensorX;
+        double errorY = Board.getNearestLine((float) sensorY) - sensorY;
+
+        // the line closer to the sensor is likely the one that was crossed
+        cos = Math.cos(m_theta);
+        sin = Math.sin(m_theta);
+        if (Math.abs(errorX) < Math.abs(errorY))
+        {
+            m_h[0] = 1;
+            m_h[1] = 0;
+            m_h[2] = -sin * offsetX - cos * offsetY;
+            return update(errorX, LINE_VARIANCE);
+        }
+        else
+        {
+            m_h[0] = 0;
+            m_h[1] = 1;
+            m_h[2] = cos * offsetX - sin * offsetY;
+            return update(errorY, LINE_VARIANCE);
+        }
+    }
+
+    /**
+     * Corrects the estimate using a directly measured heading.
+     * 
+     * @param heading
+     *            the measured orientation in degrees.
+     * @param pose
+     *            the x and y position in cm and orientation in degrees of the
+     *            robot when the heading was measured.
+     * @return true if the measurement was used.
+     */
+    public boolean updateHeading(float heading, float[] pose)
+    {
+        m_h[0] = 0;
+        m_h[1] = 0;
+        m_h[2] = 1;
+        return update(Math.toRadians(Utils.toBearing(heading - pose[2])), HEADING_VARIANCE);
+    }
+
+    /**
+     * Corrects the estimate using an ultrasonic range, assuming the ray hit
+     * the board wall it points towards. Ranges that are too long, hit the wall
+     * at a steep angle, or are much shorter than expected because an obstacle
+     * is in the way are ignored.
+     * 
+     * @param offsetX
+     *            the local space x-axis position of the sensor in cm.
+     * @param offsetY
+     *            the local space y-axis position of the sensor in cm.
+     * @param angle
+     *            the local space direction the sensor faces in degrees.
+     * @param range
+     *            the measured distance from the sensor in cm.
+     * @param pose
+     *            the x and y position in cm and orientation in degrees of the
+     *            robot when the range was measured.
+     * @return true if the measurement was used.
+     */
+    public boolean updateRange(float offsetX, float offsetY, float angle, float range, float[] pose)
+    {
+        if (range > MAX_FUSED_RANGE)
+        {
+            return false;
+        }
+
+        double theta = Math.toRadians(pose[2]);
+        double cos = Math.cos(theta);
+        double sin = Math.sin(theta);
+        double sensorX = pose[0] + cos * offsetX - sin * offsetY;
+        double sensorY = pose[1] + sin * offsetX + cos * offsetY;
+        double rayAngle = theta + Math.toRadians(angle);
+        double rayCos = Math.cos(rayAngle);
+        double raySin = Math.sin(rayAngle);
+
+        // find the distance to the walls the ray points towards
+        double rangeX = Double.MAX_VALUE;
+        double rangeY = Double.MAX_VALUE;
+        if (Math.abs(rayCos) > 1e-6)
+        {
+            rangeX = ((rayCos > 0 ? Board.WALL_UPPER : Board.WALL_LOWER) - sensorX) / rayCos;
+        }
+        if (Math.abs(raySin) > 1e-6)
+        {
+            rangeY = ((raySin > 0 ? Board.WALL_UPPER : Board.WALL_LOWER) - sensorY) / raySin;
+        }
+
+        // derivatives of the sensor position with respect to the heading
+        cos = Math.cos(m_theta);
+        sin = Math.sin(m_theta);
+        double sensorXDerivative = -sin * offsetX - cos * offsetY;
+        double sensorYDerivative = cos * offsetX - sin * offsetY;
+
+        double expected;
+        if (rangeX < rangeY)
+        {
+            if (Math.abs(rayCos) < MIN_INCIDENCE_COS)
+            {
+                return false;
+            }
+            expected = rangeX;
+            m_h[0] = -1 / rayCos;
+            m_h[1] = 0;
+            m_h[2] = -sensorXDerivative / rayCos + expected * raySin / rayCos;
+        }
+        else
+        {
+            if (Math.abs(raySin) < MIN_INCIDENCE_COS)
+            {
+                return false;
+            }
+            expected = rangeY;
+            m_h[0] = 0;
+            m_h[1] = -1 / raySin;
+            m_h[2] = -sensorYDerivative / raySin - expected * rayCos / raySin;
+        }
+
+        double deviation = RANGE_DEVIATION + RANGE_DEVIATION_SCALE * expected;
+        return update(range - expected, deviation * deviation);
+    }
+
+    /**
+     * Applies a scalar measurement using the jacobian in m_h.
+     * 
+     * @param innovation
+     *            the measured value minus the expected value.
+     * @param variance
+     *            the variance of the measurement.
+     * @return true if the measurement passed the gate and was used.
+     */
+    private boolean update(double innovation, double variance)
+    {
+        // P * H^T
+        for (int i = 0; i < 3; i++)
+        {
+            m_k[i] = m_p[i * 3] * m_h[0] + m_p[i * 3 + 1] * m_h[1] + m_p[i * 3 + 2] * m_h[2];
+        }
+        double s = m_h[0] * m_k[0] + m_h[1] * m_k[1] + m_h[2] * m_k[2] + variance;
+
+        // reject outliers
+        if (innovation * innovation > GATE_SIGMA * GATE_SIGMA * s)
+        {
+            return false;
+        }
+
+        // K = P * H^T / S
+        for (int i = 0; i < 3; i++)
+        {
+            m_k[i] /= s;
+        }
+
+        m_x += m_k[0] * innovation;
+        m_y += m_k[1] * innovation;
+        m_theta = Math.IEEEremainder(m_theta + m_k[2] * innovation, 2 * Math.PI);
+
+        // P = P - K * (H * P), where H * P is the transpose of P * H^T
+        double hp0 = m_h[0] * m_p[0] + m_h[1] * m_p[3] + m_h[2] * m_p[6];
+        double hp1 = m_h[0] * m_p[1] + m_h[1] * m_p[4] + m_h[2] * m_p[7];
+        double hp2 = m_h[0] * m_p[2] + m_h[1] * m_p[5] + m_h[2] * m_p[8];
+        for (int i = 0; i < 3; i++)
+        {
+            m_p[i * 3] -= m_k[i] * hp0;
+            m_p[i * 3 + 1] -= m_k[i] * hp1;
+            m_p[i * 3 + 2] -= m_k[i] * hp2;
+        }
+
+        // keep the covariance symmetric despite rounding
+        m_p[1] = m_p[3] = 0.5 * (m_p[1] + m_p[3]);
+        m_p[2] = m_p[6] = 0.5 * (m_p[2] + m_p[6]);
+        m_p[5] = m_p[7] = 0.5 * (m_p[5] + m_p[7]);
+        return true;
+    }
+
+    /**
+     * Multiplies two 3x3 matrices.
+     */
+    private static void multiply(double[] a, double[] b, double[] out)
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                out[i * 3 + j] = a[i * 3] * b[j] + a[i * 3 + 1] * b[3 + j] + a[i * 3 + 2] * b[6 + j];
+            }
+        }
+    }
+
+    /**
+     * Multiplies a 3x3 matrix by the transpose of another.
+     */
+    private static void multiplyTransposed(double[] a, double[] b, double[] out)
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                out[i * 3 + j] = a[i * 3] * b[j * 3] + a[i * 3 + 1] * b[j * 3 + 1] + a[i * 3 + 2] * b[j * 3 + 2];
+            }
+        }
+    }
+
+    /**
+     * @return the estimated x-axis position in cm.
+     */
+    public float getX()
+    {
+        return (float) m_x;
+    }
+
+    /**
+     * @return the estimated y-axis position in cm.
+     */
+    public float getY()
+    {
+        return (float) m_y;
+    }
+
+    /**
+     * @return the estimated orientation in degrees within [0, 360].
+     */
+    public float getTheta()
+    {
+        return Utils.normalizeAngle((float) Math.toDegrees(m_theta));
+    }
+
+    /**
+     * Gets the uncertainty of the estimate.
+     * 
+     * @param out
+     *            an array of at least length 9 that is filled with the 3x3
+     *            covariance of x, y and heading in row major order, with
+     *            positions in cm and the heading in radians.
+     */
+    public void getCovariance(double[] out)
+    {
+        System.arraycopy(m_p, 0, out, 0, 9);
+    }
+}
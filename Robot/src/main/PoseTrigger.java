@@ -0,0 +1,132 @@
+package main;
+
+import java.security.InvalidParameterException;
+import lejos.robotics.geometry.Rectangle;
+
+/**
+ * A condition on the robot's transform that is checked by the odometer on
+ * each update. Threads waiting for the condition sleep until the odometer
+ * finds it has been met, rather than repeatedly reading the odometer. A
+ * trigger fires once, and is then removed from the odometer.
+ * 
+ * @author Scott Sewell
+ */
+public class PoseTrigger extends Signal
+{
+    /**
+     * The kinds of conditions a trigger can wait for.
+     */
+    public enum Type
+    {
+        /**
+         * The robot is further than a distance from where the trigger was
+         * added.
+         */
+        Moved,
+        /**
+         * The robot has turned more than an angle from its orientation when
+         * the trigger was added.
+         */
+        Turned,
+        /**
+         * The robot is inside an area of the board.
+         */
+        Entered
+    }
+
+    private Type m_type;
+    private float m_threshold;
+    private float m_minX;
+    private float m_minY;
+    private float m_maxX;
+    private float m_maxY;
+
+    // the transform when the trigger was added to the odometer
+    private float m_startX;
+    private float m_startY;
+    private float m_startTheta;
+
+    /**
+     * Constructor for a trigger on the distance moved or angle turned.
+     * 
+     * @param type
+     *            Moved or Turned.
+     * @param threshold
+     *            the distance in cm or angle in degrees past which the trigger
+     *            fires.
+     */
+    public PoseTrigger(Type type, float threshold)
+    {
+        if (type == Type.Entered)
+        {
+            throw new InvalidParameterException("Attempted to create an Entered trigger without an area!");
+        }
+        m_type = type;
+        m_threshold = threshold;
+    }
+
+    /**
+     * Constructor for a trigger on entering an area.
+     * 
+     * @param area
+     *            the area of the board in which the trigger fires.
+     */
+    public PoseTrigger(Rectangle area)
+    {
+        m_type = Type.Entered;
+        m_minX = area.x;
+        m_minY = area.y;
+        m_maxX = area.x + area.width;
+        m_maxY = area.y + area.height;
+    }
+
+    /**
+     * @return the kind of condition waited for.
+     */
+    public Type getType()
+    {
+        return m_type;
+    }
+
+    /**
+     * Resets the trigger to measure from the given transform.
+     */
+    void arm(float x, float y, float theta)
+    {
+        m_startX = x;
+        m_startY = y;
+        m_startTheta = theta;
+        reset();
+    }
+
+    /**
+     * Checks the condition against a new transform, waking any waiting
+     * threads if it is met.
+     * 
+     * @return true if the trigger fired.
+     */
+    boolean check(float x, float y, float theta)
+    {
+        boolean met;
+        switch (m_type)
+        {
+            case Moved:
+                float dx = x - m_startX;
+                float dy = y - m_startY;
+                met = dx * dx + dy * dy > m_threshold * m_threshold;
+                break;
+            case Turned:
+                met = Math.abs(Utils.toBearing(theta - m_startTheta)) > m_threshold;
+                break;
+            default:
+                met = x >= m_minX && x <= m_maxX && y >= m_minY && y <= m_maxY;
+                break;
+        }
+
+        if (met)
+        {
+            trigger();
+        }
+        return met;
+    }
+}
@@ -0,0 +1,63 @@
+package main;
+
+/**
+ * Filters ultrasonic distances in two stages. A short sliding median first
+ * rejects single glitches, such as a missed echo read as the maximum range or
+ * a zero, which would otherwise dominate the average. The harmonic mean of
+ * the last few medians then smooths the noise, favouring nearer distances so
+ * that obstacles are reported quickly. Both stages run in constant time and
+ * allocate nothing after construction.
+ * 
+ * @author Scott Sewell
+ */
+public class RangeFilter
+{
+    private MedianFilter m_median;
+    private RingBuffer m_buffer;
+
+    /**
+     * Constructor.
+     * 
+     * @param medianSize
+     *            the number of recent distances the median is taken over, an
+     *            odd number so that up to half of them can be glitches.
+     * @param meanSize
+     *            the number of recent medians averaged.
+     */
+    public RangeFilter(int medianSize, int meanSize)
+    {
+        m_median = new MedianFilter(medianSize);
+        m_buffer = new RingBuffer(meanSize);
+    }
+
+    /**
+     * Adds a new distance.
+     * 
+     * @param distance
+     *            the newest distance read in cm.
+     * @return the filtered distance in cm.
+     */
+    public float add(float distance)
+    {
+        m_buffer.add(m_median.add(distance));
+        return getDistance();
+    }
+
+    /**
+     * @return the filtered distance in cm, or 0 if no distances have been
+     *         added.
+     */
+    public float getDistance()
+    {
+        return m_buffer.getHarmonicMean();
+    }
+
+    /**
+     * Forgets all distances added.
+     */
+    public void clear()
+    {
+        m_median.clear();
+        m_buffer.clear();
+    }
+}
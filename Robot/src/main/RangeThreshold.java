@@ -0,0 +1,84 @@
+package main;
+
+/**
+ * A distance below which an ultrasonic poller reacts to a reading as soon as
+ * it is taken, rather than waiting for another thread to notice it. If given
+ * a driver, the poller stops the robot from the sensor thread, then wakes any
+ * threads waiting on the threshold. A threshold fires once, and is then
+ * removed from the poller.
+ * 
+ * @author Scott Sewell
+ */
+public class RangeThreshold extends Signal
+{
+    private float m_distance;
+    private Driver m_driver;
+
+    // when the reading that crossed the threshold was taken, and when the
+    // reaction to it was complete, in ns
+    private volatile long m_sampleTime;
+    private volatile long m_reactionTime;
+
+    /**
+     * Constructor.
+     * 
+     * @param distance
+     *            the filtered distance from the sensor in cm below which the
+     *            threshold fires.
+     * @param driver
+     *            the driver to stop when the threshold fires, or null to only
+     *            wake waiting threads.
+     */
+    public RangeThreshold(float distance, Driver driver)
+    {
+        m_distance = distance;
+        m_driver = driver;
+    }
+
+    /**
+     * @return the distance in cm below which the threshold fires.
+     */
+    public float getDistance()
+    {
+        return m_distance;
+    }
+
+    /**
+     * @return the time in ns from the reading that crossed the threshold
+     *         being taken to the robot being told to stop, or 0 if it hasn't
+     *         fired.
+     */
+    public long getLatency()
+    {
+        return isTriggered() ? m_reactionTime - m_sampleTime : 0;
+    }
+
+    /**
+     * Checks a new reading against the threshold, stopping the robot and
+     * waking any waiting threads if it is crossed.
+     * 
+     * @param distance
+     *            the filtered distance read in cm.
+     * @param sampleTime
+     *            the system time in ns at which the reading was taken.
+     * @return true if the threshold fired.
+     */
+    boolean check(float distance, long sampleTime)
+    {
+        if (!(distance < m_distance))
+        {
+            return false;
+        }
+
+        // stop first, as that is what the reaction time is measured to
+        if (m_driver != null)
+        {
+            m_driver.stop(false);
+        }
+        m_reactionTime = System.nanoTime();
+        m_sampleTime = sampleTime;
+
+        trigger();
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * The raw readings of a search sweep read back from a log, along with what
+ * the robot found when it approached, for replaying offline.
+ * 
+ * @author Scott Sewell
+ */
+public class RecordedSweep
+{
+    /**
+     * What the robot found after the sweep.
+     */
+    public enum Label
+    {
+        // the robot didn't check for a block after the sweep
+        Unknown,
+        // no block was in front of the robot after approaching
+        NoBlock,
+        // a block was found where given by the label angle and distance
+        Block
+    }
+
+    private float m_startAngle;
+    private float m_width;
+    private long[] m_times;
+    private float[] m_angles;
+    private float[] m_distances;
+    private int m_size;
+
+    private Label m_label;
+    private float m_blockAngle;
+    private float m_blockDistance;
+
+    /**
+     * Constructor.
+     * 
+     * @param startAngle
+     *            the heading in degrees at the start of the sweep.
+     * @param width
+     *            how many degrees the sweep covered.
+     */
+    public RecordedSweep(float startAngle, float width)
+    {
+        m_startAngle = startAngle;
+        m_width = width;
+        m_times = new long[64];
+        m_angles = new float[64];
+        m_distances = new float[64];
+        m_size = 0;
+        m_label = Label.Unknown;
+    }
+
+    /**
+     * Adds a reading to the end of the sweep.
+     * 
+     * @param time
+     *            the system time in ns at which the reading was taken.
+     * @param angle
+     *            the heading in degrees at which the reading was taken.
+     * @param distance
+     *            the unfiltered distance read in cm.
+     */
+    public void add(long time, float angle, float distance)
+    {
+        if (m_size == m_angles.length)
+        {
+            m_times = Arrays.copyOf(m_times, m_size * 2);
+            m_angles = Arrays.copyOf(m_angles, m_size * 2);
+            m_distances = Arrays.copyOf(m_distances, m_size * 2);
+        }
+        m_times[m_size] = time;
+        m_angles[m_size] = angle;
+        m_distances[m_size] = distance;
+        m_size++;
+    }
+
+    /**
+     * Sets what the robot found after the sweep.
+     * 
+     * @param label
+     *            whether a block was found.
+     * @param blockAngle
+     *            the angle in degrees of the block from where the sweep
+     *            started.
+     * @param blockDistance
+     *            the distance in cm of the block from where the sweep
+     *            started.
+     */
+    public void setLabel(Label label, float blockAngle, float blockDistance)
+    {
+        m_label = label;
+        m_blockAngle = blockAngle;
+        m_blockDistance = blockDistance;
+    }
+
+    /**
+     * Replays the readings into a search.
+     * 
+     * @param search
+     *            the search to add the readings to, which is reset first.
+     */
+    public void replay(BlockSearch search)
+    {
+        search.reset(m_startAngle);
+        for (int i = 0; i < m_size; i++)
+        {
+            search.add(m_angles[i], m_distances[i]);
+        }
+    }
+
+    /**
+     * @return the heading in degrees at the start of the sweep.
+     */
+    public float getStartAngle()
+    {
+        return m_startAngle;
+    }
+
+    /**
+     * @return how many degrees the sweep covered.
+     */
+    public float getWidth()
+    {
+        return m_width;
+    }
+
+    /**
+     * @return the number of readings.
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * @return the system time in ns at which a reading was taken.
+     */
+    public long getTime(int index)
+    {
+        return m_times[index];
+    }
+
+    /**
+     * @return the heading in degrees at which a reading was taken.
+     */
+    public float getAngle(int index)
+    {
+        return m_angles[index];
+    }
+
+    /**
+     * @return the unfiltered distance of a reading in cm.
+     */
+    public float getDistance(int index)
+    {
+        return m_distances[index];
+    }
+
+    /**
+     * @return whether a block was found after the sweep.
+     */
+    public Label getLabel()
+    {
+        return m_label;
+    }
+
+    /**
+     * @return the angle in degrees of the block found from where the sweep
+     *         started.
+     */
+    public float getBlockAngle()
+    {
+        return m_blockAngle;
+    }
+
+    /**
+     * @return the distance in cm of the block found from where the sweep
+     *         started.
+     */
+    public float getBlockDistance()
+    {
+        return m_blockDistance;
+    }
+}
@@ -0,0 +1,214 @@
+package main;
+
+/**
+ * Holds the most recent values of a signal in a fixed size array, replacing
+ * the oldest value once full. Keeps running sums as values are added and
+ * removed, so the mean, variance and harmonic mean of the values are found in
+ * constant time. Nothing is allocated after construction.
+ * 
+ * @author Scott Sewell
+ */
+public class RingBuffer
+{
+    // the number of values added between recomputing the running sums from
+    // the stored values, so that rounding errors don't build up
+    private static final int RESYNC_PERIOD = 1024;
+
+    private float[] m_values;
+    private int m_oldest;
+    private int m_size;
+    private int m_sinceResync;
+
+    private double m_sum;
+    private double m_squareSum;
+    private double m_reciprocalSum;
+    // zeros are counted rather than summed as infinite reciprocals, which
+    // could not be subtracted again
+    private int m_zeroCount;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity
+     *            the number of values kept.
+     */
+    public RingBuffer(int capacity)
+    {
+        m_values = new float[capacity];
+        clear();
+    }
+
+    /**
+     * Adds a value, removing the oldest value if the buffer is full.
+     * 
+     * @param value
+     *            the newest value of the signal.
+     */
+    public void add(float value)
+    {
+        int index;
+        if (m_size == m_values.length)
+        {
+            index = m_oldest;
+            float removed = m_values[index];
+            m_sum -= removed;
+            m_squareSum -= (double) removed * removed;
+            removeReciprocal(removed);
+            m_oldest = (m_oldest + 1) % m_values.length;
+        }
+        else
+        {
+            index = (m_oldest + m_size) % m_values.length;
+            m_size++;
+        }
+
+        m_values[index] = value;
+        m_sum += value;
+        m_squareSum += (double) value * value;
+        addReciprocal(value);
+
+        if (++m_sinceResync >= RESYNC_PERIOD)
+        {
+            resync();
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear()
+    {
+        m_oldest = 0;
+        m_size = 0;
+        m_sinceResync = 0;
+        m_sum = 0;
+        m_squareSum = 0;
+        m_reciprocalSum = 0;
+        m_zeroCount = 0;
+    }
+
+    /**
+     * Gets a stored value.
+     * 
+     * @param index
+     *            the age of the value, where 0 is the oldest value.
+     * @return the value.
+     */
+    public float get(int index)
+    {
+        return m_values[(m_oldest + index) % m_values.length];
+    }
+
+    /**
+     * @return the most recently added value, or 0 if empty.
+     */
+    public float getNewest()
+    {
+        return m_size == 0 ? 0 : get(m_size - 1);
+    }
+
+    /**
+     * @return the number of values stored.
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * @return the number of values kept once full.
+     */
+    public int capacity()
+    {
+        return m_values.length;
+    }
+
+    /**
+     * @return true if adding a value will remove the oldest value.
+     */
+    public boolean isFull()
+    {
+        return m_size == m_values.length;
+    }
+
+    /**
+     * @return the mean of the values, or 0 if empty.
+     */
+    public float getMean()
+    {
+        return m_size == 0 ? 0 : (float) (m_sum / m_size);
+    }
+
+    /**
+     * @return the population variance of the values, or 0 if empty.
+     */
+    public float getVariance()
+    {
+        if (m_size == 0)
+        {
+            return 0;
+        }
+        double mean = m_sum / m_size;
+        return (float) Math.max(0, m_squareSum / m_size - mean * mean);
+    }
+
+    /**
+     * Gets the harmonic mean, which is weighted towards the smaller values.
+     * Only meaningful if all values are positive.
+     * 
+     * @return the harmonic mean of the values, or 0 if empty.
+     */
+    public float getHarmonicMean()
+    {
+        return m_size == 0 || m_zeroCount > 0 ? 0 : (float) (m_size / m_reciprocalSum);
+    }
+
+    /**
+     * Recomputes the running sums from the stored values.
+     */
+    private void resync()
+    {
+        m_sinceResync = 0;
+        m_sum = 0;
+        m_squareSum = 0;
+        m_reciprocalSum = 0;
+        m_zeroCount = 0;
+        for (int i = 0; i < m_size; i++)
+        {
+            float value = get(i);
+            m_sum += value;
+            m_squareSum += (double) value * value;
+            addReciprocal(value);
+        }
+    }
+
+    /**
+     * Adds the reciprocal of a value to the running sum.
+     */
+    private void addReciprocal(float value)
+    {
+        if (value == 0)
+        {
+            m_zeroCount++;
+        }
+        else
+        {
+            m_reciprocalSum += 1.0 / value;
+        }
+    }
+
+    /**
+     * Removes the reciprocal of a value from the running sum.
+     */
+    private void removeReciprocal(float value)
+    {
+        if (value == 0)
+        {
+            m_zeroCount--;
+        }
+        else
+        {
+            m_reciprocalSum -= 1.0 / value;
+        }
+    }
+}
@@ -34,6 +34,8 @@ public class Robot
     public static final float   WHEEL_TRACK     = 16.0f;                    // distance between wheels in cm
     public static final Vector2 US_MAIN_OFFSET  = new Vector2(5,0);         // the position offset of the main ultrasound sensor from the robot center in cm
     public static final Vector2 US_UPPER_OFFSET = new Vector2(-1,9);        // the position offset of the upper ultrasound sensor from the robot center in cm
+    public static final float   US_MAIN_ANGLE   = 0;                        // the direction the main ultrasound sensor faces from the robot forward direction in degrees
+    public static final float   US_UPPER_ANGLE  = 90;                       // the direction the upper ultrasound sensor faces from the robot forward direction in degrees
     public static final Vector2 CSL_OFFSET      = new Vector2(-8.6f,8.9f);  // the position offset of the left color sensor from the robot center in cm
     public static final Vector2 CSR_OFFSET      = new Vector2(-8.6f,-8.9f); // the position offset of the right color sensor from the robot center in cm
     
@@ -42,6 +44,7 @@ public class Robot
     public static final int     MOVE_SPEED          = 150;      // maximum wheel rotation speed while moving forwards in deg/sec
     public static final int     ROTATE_SPEED        = 100;      // maximum wheel rotation speed while turning in deg/sec
     public static final int     LOCALIZATION_SPEED  = 75;       // maximum wheel rotation speed while localizing in deg/sec
+    public static final int     FAST_LOCALIZATION_SPEED = 150;  // maximum wheel rotation speed while localizing from part of a turn in deg/sec
     public static final int     SEARCH_SPEED        = 50;       // maximum wheel rotation speed while searching in deg/sec
     public static final int     CLAW_ACCELERATION   = 3500;     // acceleration of the claw motors
     public static final int     CLAW_SPEED          = 50;       // speed of the claw motor in deg/sec
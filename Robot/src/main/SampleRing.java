@@ -0,0 +1,185 @@
+package main;
+
+/**
+ * Holds the most recent timestamped readings of a device so that any number
+ * of threads can read them while a single thread publishes them. Every
+ * reading has a sequence number, so readers can tell which readings are new
+ * since they last looked and whether a reading has already been overwritten.
+ * Readers can also sleep until a new reading is published. Nothing is
+ * allocated after construction.
+ * 
+ * @author Scott Sewell
+ */
+public class SampleRing
+{
+    // the readings, in arrays twice the size of the number kept so that the
+    // slot the writer fills next never holds a reading still kept
+    private long[] m_times;
+    private float[] m_values;
+    private int m_mask;
+    private int m_capacity;
+    // the number of readings published, which is the sequence number the
+    // next reading will have
+    private volatile long m_sequence;
+
+    // threads waiting for a new reading wait on this, and are counted so that
+    // publishing only signals when someone is waiting
+    private Object m_newReading;
+    private volatile int m_waiting;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity
+     *            the number of readings kept, rounded up to a power of two.
+     */
+    public SampleRing(int capacity)
+    {
+        m_capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        m_times = new long[m_capacity * 2];
+        m_values = new float[m_capacity * 2];
+        m_mask = m_capacity * 2 - 1;
+        m_sequence = 0;
+        m_newReading = new Object();
+        m_waiting = 0;
+    }
+
+    /**
+     * Adds a reading, overwriting the oldest reading once full. Must only be
+     * called from one thread.
+     * 
+     * @param time
+     *            the system time in ns at which the reading was taken.
+     * @param value
+     *            the reading.
+     */
+    public void publish(long time, float value)
+    {
+        long sequence = m_sequence;
+        int index = (int) sequence & m_mask;
+        m_times[index] = time;
+        m_values[index] = value;
+        // the volatile write makes the reading visible before the new count
+        m_sequence = sequence + 1;
+
+        if (m_waiting > 0)
+        {
+            synchronized (m_newReading)
+            {
+                m_newReading.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Halts the thread until there is a reading newer than a given one.
+     * 
+     * @param afterSequence
+     *            the sequence number of the last reading seen, or -1 if none.
+     * @param timeout
+     *            the longest time to wait in nanoseconds.
+     * @return the sequence number of the newest reading, or -1 if no newer
+     *         reading was published before the timeout.
+     */
+    public long awaitNext(long afterSequence, long timeout)
+    {
+        long sequence = getNewestSequence();
+        if (sequence > afterSequence)
+        {
+            return sequence;
+        }
+
+        long deadline = System.nanoTime() + timeout;
+        synchronized (m_newReading)
+        {
+            // counted before checking for a reading, so that a reading
+            // published after the check is always signalled
+            m_waiting++;
+            try
+            {
+                while ((sequence = getNewestSequence()) <= afterSequence)
+                {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        return -1;
+                    }
+                    m_newReading.wait(remaining / 1000000L, (int) (remaining % 1000000L));
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+            finally
+            {
+                m_waiting--;
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the sequence number of the newest reading, or -1 if there are
+     *         none.
+     */
+    public long getNewestSequence()
+    {
+        return m_sequence - 1;
+    }
+
+    /**
+     * @return the number of readings kept.
+     */
+    public int capacity()
+    {
+        return m_capacity;
+    }
+
+    /**
+     * Gets a reading.
+     * 
+     * @param sequence
+     *            the sequence number of the reading.
+     * @return the reading, or NaN if it has not yet been published or has
+     *         been overwritten.
+     */
+    public float getValue(long sequence)
+    {
+        if (sequence < 0 || sequence >= m_sequence)
+        {
+            return Float.NaN;
+        }
+        float value = m_values[(int) sequence & m_mask];
+        return isKept(sequence) ? value : Float.NaN;
+    }
+
+    /**
+     * Gets the time of a reading.
+     * 
+     * @param sequence
+     *            the sequence number of the reading.
+     * @return the system time in ns at which the reading was taken, or -1 if
+     *         it has not yet been published or has been overwritten.
+     */
+    public long getTime(long sequence)
+    {
+        if (sequence < 0 || sequence >= m_sequence)
+        {
+            return -1;
+        }
+        long time = m_times[(int) sequence & m_mask];
+        return isKept(sequence) ? time : -1;
+    }
+
+    /**
+     * @return true if a reading is still one of the newest kept, checked
+     *         after it is read so that a reading overwritten while it was read
+     *         is also rejected.
+     */
+    private boolean isKept(long sequence)
+    {
+        return getNewestSequence() - sequence < m_capacity;
+    }
+}
@@ -0,0 +1,140 @@
+package main;
+
+/**
+ * The thresholds used to find blocks in a search sweep. The defaults are the
+ * values used on the field, and other values can be tried offline by
+ * replaying recorded sweeps with {@link SearchTuner}.
+ * 
+ * @author Scott Sewell
+ */
+public class SearchParameters
+{
+    // the distance in cm assumed where no object was seen, and beyond which
+    // readings are clamped
+    public static final float DEFAULT_NO_OBJECT = 55;
+    // a reading changing by less than this from the last kept reading in cm
+    // is taken as noise, and the last reading is kept
+    public static final float DEFAULT_HOLD_DISTANCE = 10;
+    // objects spanning less than this many degrees are false positives
+    public static final float DEFAULT_MIN_OBJECT_ANGLE = 8;
+    // the change in distance in cm between points that is a discontinuity
+    public static final float DEFAULT_DISCONTINUITY_DISTANCE = 10;
+    // discontinuities further apart than this in degrees are separate blocks
+    public static final float DEFAULT_ONE_BLOCK_ANGLE = 80;
+    // the widest object in cm taken as a block between two discontinuities
+    public static final float DEFAULT_MAX_BLOCK_WIDTH = 120;
+    // blocks nearer than this in cm are too close to approach
+    public static final float DEFAULT_MIN_BLOCK_DISTANCE = 16;
+
+    private float m_noObject;
+    private float m_holdDistance;
+    private float m_minObjectAngle;
+    private float m_discontinuityDistance;
+    private float m_oneBlockAngle;
+    private float m_maxBlockWidth;
+    private float m_minBlockDistance;
+
+    /**
+     * Constructor using the default values.
+     */
+    public SearchParameters()
+    {
+        this(DEFAULT_NO_OBJECT, DEFAULT_MIN_OBJECT_ANGLE, DEFAULT_DISCONTINUITY_DISTANCE, DEFAULT_ONE_BLOCK_ANGLE, DEFAULT_MAX_BLOCK_WIDTH);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param noObject
+     *            the distance in cm assumed where no object was seen.
+     * @param minObjectAngle
+     *            the smallest angle in degrees an object can span.
+     * @param discontinuityDistance
+     *            the change in distance in cm between points that is a
+     *            discontinuity.
+     * @param oneBlockAngle
+     *            the angle in degrees between discontinuities above which they
+     *            are separate blocks.
+     * @param maxBlockWidth
+     *            the widest object in cm taken as a block.
+     */
+    public SearchParameters(float noObject, float minObjectAngle, float discontinuityDistance, float oneBlockAngle, float maxBlockWidth)
+    {
+        m_noObject = noObject;
+        m_holdDistance = DEFAULT_HOLD_DISTANCE;
+        m_minObjectAngle = minObjectAngle;
+        m_discontinuityDistance = discontinuityDistance;
+        m_oneBlockAngle = oneBlockAngle;
+        m_maxBlockWidth = maxBlockWidth;
+        m_minBlockDistance = DEFAULT_MIN_BLOCK_DISTANCE;
+    }
+
+    /**
+     * @return the distance in cm assumed where no object was seen.
+     */
+    public float getNoObject()
+    {
+        return m_noObject;
+    }
+
+    /**
+     * @return the change in distance in cm below which a reading is noise.
+     */
+    public float getHoldDistance()
+    {
+        return m_holdDistance;
+    }
+
+    /**
+     * @return the smallest angle in degrees an object can span.
+     */
+    public float getMinObjectAngle()
+    {
+        return m_minObjectAngle;
+    }
+
+    /**
+     * @return the change in distance in cm between points that is a
+     *         discontinuity.
+     */
+    public float getDiscontinuityDistance()
+    {
+        return m_discontinuityDistance;
+    }
+
+    /**
+     * @return the angle in degrees between discontinuities above which they
+     *         are separate blocks.
+     */
+    public float getOneBlockAngle()
+    {
+        return m_oneBlockAngle;
+    }
+
+    /**
+     * @return the widest object in cm taken as a block.
+     */
+    public float getMaxBlockWidth()
+    {
+        return m_maxBlockWidth;
+    }
+
+    /**
+     * @return the distance in cm below which blocks are too close to approach.
+     */
+    public float getMinBlockDistance()
+    {
+        return m_minBlockDistance;
+    }
+
+    /**
+     * Creates a formatted string to represent the parameters.
+     * 
+     * @return a string listing each parameter.
+     */
+    public String toString()
+    {
+        return String.format("noObject=%.0f minObjectAngle=%.1f discontinuity=%.1f oneBlockAngle=%.0f maxBlockWidth=%.0f",
+                m_noObject, m_minObjectAngle, m_discontinuityDistance, m_oneBlockAngle, m_maxBlockWidth);
+    }
+}
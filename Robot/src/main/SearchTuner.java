@@ -0,0 +1,354 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the block search offline by replaying recorded sweeps. Meant to be
+ * run on a computer with the logs copied off the robot. Every combination of
+ * a grid of search parameters is scored against the sweeps the robot labeled
+ * after approaching, with the combinations spread across all cores, and the
+ * precision and recall of each is reported.
+ * 
+ * @author Scott Sewell
+ */
+public class SearchTuner
+{
+    // how far in degrees a destination may be from a labeled block and still
+    // have found it
+    public static final float ANGLE_TOLERANCE = 15;
+    // the number of best settings printed
+    private static final int REPORT_COUNT = 20;
+
+    /**
+     * The detections made by one setting of the search parameters.
+     */
+    public static class Score
+    {
+        private SearchParameters m_params;
+        private int m_truePositives;
+        private int m_falsePositives;
+        private int m_falseNegatives;
+        private int m_trueNegatives;
+
+        /**
+         * Constructor.
+         * 
+         * @param params
+         *            the parameters scored.
+         */
+        public Score(SearchParameters params)
+        {
+            m_params = params;
+        }
+
+        /**
+         * @return the parameters scored.
+         */
+        public SearchParameters getParameters()
+        {
+            return m_params;
+        }
+
+        /**
+         * @return the fraction of detections that found a block, or 0 if
+         *         nothing was detected.
+         */
+        public float getPrecision()
+        {
+            int detections = m_truePositives + m_falsePositives;
+            return detections == 0 ? 0 : m_truePositives / (float) detections;
+        }
+
+        /**
+         * @return the fraction of blocks that were detected, or 0 if there
+         *         were no blocks.
+         */
+        public float getRecall()
+        {
+            int blocks = m_truePositives + m_falseNegatives;
+            return blocks == 0 ? 0 : m_truePositives / (float) blocks;
+        }
+
+        /**
+         * @return the harmonic mean of the precision and recall.
+         */
+        public float getF1()
+        {
+            float precision = getPrecision();
+            float recall = getRecall();
+            return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+        }
+
+        /**
+         * @return the number of detections that found a block.
+         */
+        public int getTruePositives()
+        {
+            return m_truePositives;
+        }
+
+        /**
+         * @return the number of detections where there was no block.
+         */
+        public int getFalsePositives()
+        {
+            return m_falsePositives;
+        }
+
+        /**
+         * @return the number of blocks that were missed.
+         */
+        public int getFalseNegatives()
+        {
+            return m_falseNegatives;
+        }
+
+        /**
+         * @return the number of sweeps correctly found to have no block.
+         */
+        public int getTrueNegatives()
+        {
+            return m_trueNegatives;
+        }
+
+        /**
+         * Creates a formatted string to represent the score.
+         * 
+         * @return a string with the precision, recall and parameters.
+         */
+        public String toString()
+        {
+            return String.format("precision %.3f recall %.3f f1 %.3f (tp %d fp %d fn %d tn %d) %s", getPrecision(), getRecall(), getF1(),
+                    m_truePositives, m_falsePositives, m_falseNegatives, m_trueNegatives, m_params);
+        }
+    }
+
+    /**
+     * Tunes the search on the sweeps in log files.
+     * 
+     * @param args
+     *            the paths of the log files, optionally after "-threads n" to
+     *            score with n threads instead of one per processor.
+     */
+    public static void main(String[] args)
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-threads"))
+        {
+            threads = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        if (args.length == first || threads < 1)
+        {
+            System.out.println("Usage: SearchTuner [-threads n] <log file>...");
+            return;
+        }
+
+        List<RecordedSweep> sweeps;
+        try
+        {
+            sweeps = LogDecoder.readSweeps(Arrays.copyOfRange(args, first, args.length));
+        }
+        catch (IOException e)
+        {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        List<SearchParameters> grid = makeGrid(
+                new float[] { 45, 50, 55, 60, 70 },
+                new float[] { 2, 4, 6, 8, 10, 12 },
+                new float[] { 5, 7.5f, 10, 12.5f, 15 },
+                new float[] { 40, 60, 80, 100 },
+                new float[] { 20, 30, 45, 60, 90, 120 });
+        System.out.println(String.format("Replaying %d sweeps through %d settings on %d threads", sweeps.size(), grid.size(), threads));
+
+        long start = System.nanoTime();
+        List<Score> scores;
+        try
+        {
+            scores = tune(grid, sweeps, threads);
+        }
+        catch (InterruptedException e)
+        {
+            return;
+        }
+        System.out.println(String.format("Done in %.1f s", (System.nanoTime() - start) / 1e9));
+
+        Score current = evaluate(new SearchParameters(), sweeps);
+        System.out.println("Current: " + current);
+        sortByF1(scores);
+        for (int i = 0; i < Math.min(REPORT_COUNT, scores.size()); i++)
+        {
+            System.out.println(scores.get(i));
+        }
+        if (scores.isEmpty() || scores.get(0).getF1() <= current.getF1())
+        {
+            System.out.println("No setting scores better than the current parameters");
+        }
+    }
+
+    /**
+     * Makes every combination of parameter values.
+     * 
+     * @return the parameters, one for each combination.
+     */
+    public static List<SearchParameters> makeGrid(float[] noObjects, float[] minObjectAngles, float[] discontinuityDistances,
+            float[] oneBlockAngles, float[] maxBlockWidths)
+    {
+        List<SearchParameters> grid = new ArrayList<SearchParameters>();
+        for (float noObject : noObjects)
+        {
+            for (float minObjectAngle : minObjectAngles)
+            {
+                for (float discontinuityDistance : discontinuityDistances)
+                {
+                    for (float oneBlockAngle : oneBlockAngles)
+                    {
+                        for (float maxBlockWidth : maxBlockWidths)
+                        {
+                            grid.add(new SearchParameters(noObject, minObjectAngle, discontinuityDistance, oneBlockAngle, maxBlockWidth));
+                        }
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Scores each setting of the parameters in parallel.
+     * 
+     * @param grid
+     *            the parameters to score.
+     * @param sweeps
+     *            the sweeps to replay. Only sweeps with a known label are
+     *            scored.
+     * @param threads
+     *            the number of threads to score with.
+     * @return the scores in the same order as the parameters.
+     */
+    public static List<Score> tune(List<SearchParameters> grid, final List<RecordedSweep> sweeps, int threads) throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Score>> futures = new ArrayList<Future<Score>>(grid.size());
+            for (final SearchParameters params : grid)
+            {
+                futures.add(executor.submit(new Callable<Score>()
+                {
+                    public Score call()
+                    {
+                        return evaluate(params, sweeps);
+                    }
+                }));
+            }
+
+            List<Score> scores = new ArrayList<Score>(grid.size());
+            for (Future<Score> future : futures)
+            {
+                try
+                {
+                    scores.add(future.get());
+                }
+                catch (ExecutionException e)
+                {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return scores;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Replays sweeps through the search with one setting of the parameters.
+     * 
+     * @param params
+     *            the parameters to search with.
+     * @param sweeps
+     *            the sweeps to replay. Only sweeps with a known label are
+     *            scored.
+     * @return the detections made.
+     */
+    public static Score evaluate(SearchParameters params, List<RecordedSweep> sweeps)
+    {
+        float maxWidth = 1;
+        for (RecordedSweep sweep : sweeps)
+        {
+            maxWidth = Math.max(maxWidth, sweep.getWidth());
+        }
+        BlockSearch search = new BlockSearch(params, maxWidth);
+
+        Score score = new Score(params);
+        for (RecordedSweep sweep : sweeps)
+        {
+            if (sweep.getLabel() == RecordedSweep.Label.Unknown)
+            {
+                continue;
+            }
+            sweep.replay(search);
+            boolean detected = search.analyze().isDetection();
+
+            if (sweep.getLabel() == RecordedSweep.Label.Block)
+            {
+                if (detected && Math.abs(Utils.toBearing(search.getDestinationAngle() - sweep.getBlockAngle())) <= ANGLE_TOLERANCE)
+                {
+                    score.m_truePositives++;
+                }
+                else
+                {
+                    // going the wrong way both misses the block and is a
+                    // false detection
+                    score.m_falseNegatives++;
+                    if (detected)
+                    {
+                        score.m_falsePositives++;
+                    }
+                }
+            }
+            else if (detected)
+            {
+                score.m_falsePositives++;
+            }
+            else
+            {
+                score.m_trueNegatives++;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Sorts scores from the best balance of precision and recall to the
+     * worst.
+     * 
+     * @param scores
+     *            the scores to sort.
+     */
+    public static void sortByF1(List<Score> scores)
+    {
+        Collections.sort(scores, new Comparator<Score>()
+        {
+            public int compare(Score a, Score b)
+            {
+                return Float.compare(b.getF1(), a.getF1());
+            }
+        });
+    }
+}
@@ -0,0 +1,221 @@
+package main;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Samples every device from a single thread, rather than each device
+ * sleeping on its own period in its own thread. The hub wakes once per base
+ * period and samples each device that is due, so a device with a divisor of 5
+ * is sampled every fifth tick. Devices sharing a divisor are given different
+ * phases where possible, so that slow devices are not all sampled on the same
+ * tick. Ticks are counted from the timer's schedule, so if a tick is skipped
+ * because the hub ran late, devices due on it are sampled on the next tick
+ * and keep their phase. On a single core this saves a context switch for each
+ * device sample and keeps the devices in a fixed order.
+ * 
+ * @author Scott Sewell
+ */
+public class SensorHub extends Thread
+{
+    // the period of the base tick in ms
+    public static final int BASE_PERIOD = 2;
+    // the most devices that can be sampled
+    private static final int MAX_TASKS = 8;
+
+    private PeriodicTimer m_timer;
+    private SensorTask[] m_tasks;
+    // written by any thread and read by the hub thread on every tick
+    private AtomicIntegerArray m_divisors;
+    private long[] m_nextTicks;
+    private volatile int m_taskCount;
+
+    // the total time spent sampling each device in ns
+    private long[] m_sampleTime;
+
+    /**
+     * Constructor.
+     */
+    public SensorHub()
+    {
+        this(BASE_PERIOD);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param basePeriod
+     *            the period of the base tick in ms.
+     */
+    public SensorHub(int basePeriod)
+    {
+        super("sensor hub");
+        m_timer = new PeriodicTimer(getName(), basePeriod);
+        m_tasks = new SensorTask[MAX_TASKS];
+        m_divisors = new AtomicIntegerArray(MAX_TASKS);
+        m_nextTicks = new long[MAX_TASKS];
+        m_sampleTime = new long[MAX_TASKS];
+        m_taskCount = 0;
+    }
+
+    /**
+     * Adds a device to sample. May be called while the hub is running.
+     * 
+     * @param task
+     *            the device to sample.
+     * @param divisor
+     *            the number of base ticks between samples.
+     */
+    public synchronized void add(SensorTask task, int divisor)
+    {
+        if (divisor < 1)
+        {
+            throw new InvalidParameterException("Attempted to add a sensor task with a divisor less than 1!");
+        }
+        if (m_taskCount == MAX_TASKS)
+        {
+            throw new InvalidParameterException("Attempted to add more than " + MAX_TASKS + " sensor tasks!");
+        }
+
+        // spread devices with the same divisor over different ticks
+        int phase = 0;
+        for (int i = 0; i < m_taskCount; i++)
+        {
+            if (m_divisors.get(i) == divisor)
+            {
+                phase++;
+            }
+        }
+
+        int index = m_taskCount;
+        m_tasks[index] = task;
+        m_divisors.set(index, divisor);
+        m_nextTicks[index] = getTick() + phase % divisor;
+        // the volatile write publishes the new task to the hub thread
+        m_taskCount = index + 1;
+    }
+
+    /**
+     * Changes how often a device is sampled. May be called from any thread,
+     * including from the device's own sample method. The hub reads the
+     * divisor after each sample to schedule the next, so a change made from
+     * another thread takes effect after the sample already scheduled.
+     * 
+     * @param task
+     *            the device, which must have been added.
+     * @param divisor
+     *            the number of base ticks between samples.
+     */
+    public synchronized void setDivisor(SensorTask task, int divisor)
+    {
+        if (divisor < 1)
+        {
+            throw new InvalidParameterException("Attempted to set a sensor task divisor less than 1!");
+        }
+        m_divisors.set(indexOf(task), divisor);
+    }
+
+    /**
+     * @return the number of base ticks between samples of a device, which
+     *         must have been added.
+     */
+    public synchronized int getDivisor(SensorTask task)
+    {
+        return m_divisors.get(indexOf(task));
+    }
+
+    /**
+     * @return the order in which a device was added, starting at 0.
+     */
+    private int indexOf(SensorTask task)
+    {
+        for (int i = 0; i < m_taskCount; i++)
+        {
+            if (m_tasks[i] == task)
+            {
+                return i;
+            }
+        }
+        throw new InvalidParameterException("Attempted to find a sensor task that was not added!");
+    }
+
+    /**
+     * Main loop sampling the devices due on each tick.
+     */
+    public void run()
+    {
+        m_timer.start();
+        while (true)
+        {
+            tick(getTick());
+            m_timer.waitForNextPeriod();
+        }
+    }
+
+    /**
+     * Samples each device due on or before a tick.
+     * 
+     * @param tick
+     *            the number of base periods since the hub started.
+     */
+    void tick(long tick)
+    {
+        int count = m_taskCount;
+        for (int i = 0; i < count; i++)
+        {
+            if (tick >= m_nextTicks[i])
+            {
+                long start = System.nanoTime();
+                m_tasks[i].sample();
+                m_sampleTime[i] += System.nanoTime() - start;
+
+                // if more than a whole period was missed, skip to the next
+                // tick in phase rather than sampling repeatedly to catch up
+                int divisor = m_divisors.get(i);
+                long next = m_nextTicks[i] + divisor;
+                if (next <= tick)
+                {
+                    next += ((tick - next) / divisor + 1) * divisor;
+                }
+                m_nextTicks[i] = next;
+            }
+        }
+    }
+
+    /**
+     * @return the number of base periods since the hub started, including
+     *         any that were skipped.
+     */
+    private long getTick()
+    {
+        return (long) m_timer.getPeriodCount() + m_timer.getOverrunCount();
+    }
+
+    /**
+     * @return the timer pacing the base tick.
+     */
+    public PeriodicTimer getTimer()
+    {
+        return m_timer;
+    }
+
+    /**
+     * @return the number of devices sampled.
+     */
+    public int getTaskCount()
+    {
+        return m_taskCount;
+    }
+
+    /**
+     * Gets the time spent sampling a device.
+     * 
+     * @param index
+     *            the order in which the device was added, starting at 0.
+     * @return the total time spent in the device's sample method in ns.
+     */
+    public long getSampleTime(int index)
+    {
+        return m_sampleTime[index];
+    }
+}
@@ -0,0 +1,16 @@
+package main;
+
+/**
+ * A device that can be sampled by a SensorHub, which calls it at a multiple
+ * of the hub's base period instead of it running on its own thread.
+ * 
+ * @author Scott Sewell
+ */
+public interface SensorTask
+{
+    /**
+     * Takes one sample from the device and processes it. Called periodically
+     * from the hub thread, so it must not block for long.
+     */
+    void sample();
+}
@@ -0,0 +1,94 @@
+package main;
+
+/**
+ * An event that threads can sleep until, rather than repeatedly checking for
+ * it. A signal is triggered once and stays triggered until it is reset. It
+ * may also trigger another signal, so that a thread can wait once for
+ * whichever of several events happens first.
+ * 
+ * @author Scott Sewell
+ */
+public class Signal
+{
+    private volatile boolean m_triggered;
+    // triggered along with this signal, or null
+    private volatile Signal m_target;
+
+    /**
+     * Halts the thread until the signal is triggered.
+     * 
+     * @param timeout
+     *            the longest time to wait in ms, or 0 to wait without limit.
+     * @return true if the signal has been triggered.
+     */
+    public boolean await(long timeout)
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this)
+        {
+            while (!m_triggered)
+            {
+                long remaining = timeout == 0 ? 0 : deadline - System.currentTimeMillis();
+                if (timeout != 0 && remaining <= 0)
+                {
+                    break;
+                }
+                try
+                {
+                    wait(remaining);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return m_triggered;
+    }
+
+    /**
+     * @return true if the signal has been triggered.
+     */
+    public boolean isTriggered()
+    {
+        return m_triggered;
+    }
+
+    /**
+     * Sets another signal to be triggered whenever this one is.
+     * 
+     * @param target
+     *            the signal to trigger, or null for none.
+     */
+    public void forwardTo(Signal target)
+    {
+        m_target = target;
+    }
+
+    /**
+     * Triggers the signal, waking any waiting threads, then triggers the
+     * signal it forwards to.
+     */
+    public void trigger()
+    {
+        synchronized (this)
+        {
+            m_triggered = true;
+            notifyAll();
+        }
+        Signal target = m_target;
+        if (target != null)
+        {
+            target.trigger();
+        }
+    }
+
+    /**
+     * Clears the signal so that it can be triggered again.
+     */
+    public void reset()
+    {
+        m_triggered = false;
+    }
+}
@@ -0,0 +1,144 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed size queue for passing values from exactly one producer thread to
+ * exactly one consumer thread without locks. Each side only writes its own
+ * index, so neither side ever waits on the other. If a consumer thread is set,
+ * it is woken whenever a value is added, so it can sleep while the queue is
+ * empty rather than polling it.
+ * 
+ * @author Scott Sewell
+ */
+public class SpscQueue<E>
+{
+    private Object[] m_buffer;
+    private int m_mask;
+    // the index of the next value to take, only written by the consumer
+    private AtomicLong m_head;
+    // the index of the next free slot, only written by the producer
+    private AtomicLong m_tail;
+    private volatile Thread m_consumer;
+    private volatile int m_dropped;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity
+     *            the most values held at once, rounded up to a power of two.
+     */
+    public SpscQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1);
+        m_buffer = new Object[size];
+        m_mask = size - 1;
+        m_head = new AtomicLong(0);
+        m_tail = new AtomicLong(0);
+        m_dropped = 0;
+    }
+
+    /**
+     * Adds a value to the queue and wakes the consumer. Only to be called by
+     * the producer thread.
+     * 
+     * @param value
+     *            the value to add.
+     * @return false if the queue was full and the value was dropped.
+     */
+    public boolean offer(E value)
+    {
+        long tail = m_tail.get();
+        if (tail - m_head.get() == m_buffer.length)
+        {
+            m_dropped++;
+            return false;
+        }
+        m_buffer[(int) tail & m_mask] = value;
+        // publishes the value written above to the consumer
+        m_tail.lazySet(tail + 1);
+
+        Thread consumer = m_consumer;
+        if (consumer != null)
+        {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Takes the oldest value from the queue. Only to be called by the consumer
+     * thread.
+     * 
+     * @return the oldest value, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        long head = m_head.get();
+        if (head == m_tail.get())
+        {
+            return null;
+        }
+        int index = (int) head & m_mask;
+        E value = (E) m_buffer[index];
+        m_buffer[index] = null;
+        m_head.lazySet(head + 1);
+        return value;
+    }
+
+    /**
+     * Gets the oldest value without taking it. Only to be called by the
+     * consumer thread.
+     * 
+     * @return the oldest value, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E peek()
+    {
+        long head = m_head.get();
+        if (head == m_tail.get())
+        {
+            return null;
+        }
+        return (E) m_buffer[(int) head & m_mask];
+    }
+
+    /**
+     * Sets the thread woken when values are added. A thread can consume
+     * several queues, and sleep until any of them has a value using
+     * LockSupport.parkNanos().
+     * 
+     * @param consumer
+     *            the consuming thread.
+     */
+    public void setConsumer(Thread consumer)
+    {
+        m_consumer = consumer;
+    }
+
+    /**
+     * @return true if there are no values in the queue.
+     */
+    public boolean isEmpty()
+    {
+        return m_head.get() == m_tail.get();
+    }
+
+    /**
+     * @return the number of values in the queue.
+     */
+    public int size()
+    {
+        return (int) (m_tail.get() - m_head.get());
+    }
+
+    /**
+     * @return the number of values dropped because the queue was full.
+     */
+    public int getDroppedCount()
+    {
+        return m_dropped;
+    }
+}
@@ -1,7 +1,5 @@
 package main;
 
-import java.util.LinkedList;
-import java.util.Queue;
 import lejos.hardware.sensor.EV3UltrasonicSensor;
 import lejos.robotics.SampleProvider;
 
@@ -11,85 +9,265 @@ import lejos.robotics.SampleProvider;
  * 
  * @author Aimee Ascencio
  */
-public class UltrasonicPoller extends Thread
+public class UltrasonicPoller extends Thread implements SensorTask
 {
     // period at which the sensor is polling in ms
     public static final int UPDATE_PERIOD = 25;
     // maximum distance that distance measured is clamped under in cm
-    private static final int MAX_RANGE = 200;
-    // how many past sensor values are stored
-    private static final int BUFFER_SIZE = 10;
+    public static final int MAX_RANGE = 200;
+    // how many past distances the median is taken over to reject glitches
+    private static final int MEDIAN_SIZE = 5;
+    // how many past medians are averaged
+    private static final int MEAN_SIZE = 2;
+    // the number of past distance readings kept for other threads
+    private static final int READINGS_SIZE = 32;
+    // the most thresholds that can be waiting at once
+    private static final int MAX_THRESHOLDS = 4;
 
     private SampleProvider m_sensor;
-    private Queue<Float> m_buffer;
+    private RangeFilter m_filter;
+    private float[] m_sample;
     private float m_filteredDistance;
     private float m_lastDistance;
+    private long m_lastTimestamp;
+    // raw and filtered distances, published with the same sequence numbers
+    private SampleRing m_readings;
+    private SampleRing m_filteredReadings;
 
     // lock object for mutual exclusion
     private Object m_lock;
 
+    // distances checked on each reading, in a fixed array so that checking
+    // them allocates nothing. Guarded by the lock.
+    private RangeThreshold[] m_thresholds;
+    private int m_thresholdCount;
+    // the longest time from a reading to a threshold's reaction in ns
+    private volatile long m_maxThresholdLatency;
+    private PeriodicTimer m_timer;
+
     /**
      * Constructor.
+     * 
+     * @param sensor
+     *            the ultrasonic sensor to poll.
+     * @param name
+     *            a name identifying the poller.
      */
-    public UltrasonicPoller(EV3UltrasonicSensor sensor)
+    public UltrasonicPoller(EV3UltrasonicSensor sensor, String name)
     {
+        super(name);
+        m_timer = new PeriodicTimer(name, UPDATE_PERIOD);
         m_sensor = sensor.getMode("Distance");
-        m_buffer = new LinkedList<Float>();
+        m_filter = new RangeFilter(MEDIAN_SIZE, MEAN_SIZE);
+        m_sample = new float[m_sensor.sampleSize()];
+        m_readings = new SampleRing(READINGS_SIZE);
+        m_filteredReadings = new SampleRing(READINGS_SIZE);
         m_lock = new Object();
+        m_thresholds = new RangeThreshold[MAX_THRESHOLDS];
+        m_thresholdCount = 0;
     }
 
     /**
-     * Continuously samples the ultrasonic sensor.
+     * Continuously samples the ultrasonic sensor, used when not sampled by a
+     * SensorHub.
      */
     public void run()
     {
-        long updateStart;
         while (true)
         {
-            updateStart = System.currentTimeMillis();
+            sample();
+            m_timer.waitForNextPeriod();
+        }
+    }
 
-            // get a new distance sample
-            float[] usSample = new float[m_sensor.sampleSize()];
-            m_sensor.fetchSample(usSample, 0);
-            float newDistance = Math.min(usSample[0] * 100, MAX_RANGE);
+    /**
+     * Samples the ultrasonic sensor and updates the filtered distance.
+     */
+    public void sample()
+    {
+        // get a new distance sample
+        m_sensor.fetchSample(m_sample, 0);
+        long sampleTime = System.nanoTime();
+        float newDistance = Math.min(m_sample[0] * 100, MAX_RANGE);
 
-            synchronized (m_lock)
-            {
-                m_lastDistance = newDistance;
-            }
+        // reject glitches, then average favouring the nearer distances seen
+        float weightedDistance = m_filter.add(newDistance);
 
-            // store the newest distance value in the buffer
-            m_buffer.add(newDistance);
+        synchronized (m_lock)
+        {
+            m_lastDistance = newDistance;
+            m_lastTimestamp = sampleTime;
+            m_filteredDistance = weightedDistance;
+            checkThresholds(weightedDistance, sampleTime);
+        }
 
-            // remove the oldest values from the buffer
-            if (m_buffer.size() > BUFFER_SIZE)
+        // the filtered reading is published last, as its sequence number is
+        // the one given to readers
+        m_readings.publish(sampleTime, newDistance);
+        m_filteredReadings.publish(sampleTime, weightedDistance);
+    }
+
+    /**
+     * Adds a distance to check each new reading against. The threshold is
+     * removed once it fires.
+     * 
+     * @param threshold
+     *            the threshold to add.
+     * @return false if the threshold could not be added as too many are
+     *         waiting.
+     */
+    public boolean addThreshold(RangeThreshold threshold)
+    {
+        synchronized (m_lock)
+        {
+            if (m_thresholdCount == MAX_THRESHOLDS)
             {
-                m_buffer.remove();
+                return false;
             }
+            m_thresholds[m_thresholdCount++] = threshold;
+            return true;
+        }
+    }
 
-            // compute filtered distance
-            float weightedDistance = 0;
-            if (m_buffer.size() > 0)
+    /**
+     * Stops checking a threshold that has not yet fired.
+     * 
+     * @param threshold
+     *            the threshold to remove.
+     */
+    public void removeThreshold(RangeThreshold threshold)
+    {
+        synchronized (m_lock)
+        {
+            for (int i = 0; i < m_thresholdCount; i++)
             {
-                for (float distance : m_buffer)
+                if (m_thresholds[i] == threshold)
                 {
-                    weightedDistance += (1 / distance);
+                    m_thresholds[i] = m_thresholds[--m_thresholdCount];
+                    m_thresholds[m_thresholdCount] = null;
+                    return;
                 }
-                weightedDistance = m_buffer.size() / weightedDistance;
             }
+        }
+    }
+
+    /**
+     * @return the longest time in ns from a reading being taken to a
+     *         threshold it crossed stopping the robot, or 0 if none have
+     *         fired.
+     */
+    public long getMaxThresholdLatency()
+    {
+        return m_maxThresholdLatency;
+    }
 
-            synchronized (m_lock)
+    /**
+     * Checks every threshold against a new reading, removing those that fire.
+     * Must be called while holding the lock.
+     */
+    private void checkThresholds(float distance, long sampleTime)
+    {
+        int i = 0;
+        while (i < m_thresholdCount)
+        {
+            RangeThreshold threshold = m_thresholds[i];
+            if (threshold.check(distance, sampleTime))
             {
-                m_filteredDistance = weightedDistance;
+                m_maxThresholdLatency = Math.max(m_maxThresholdLatency, threshold.getLatency());
+                m_thresholds[i] = m_thresholds[--m_thresholdCount];
+                m_thresholds[m_thresholdCount] = null;
+            }
+            else
+            {
+                i++;
             }
-
-            Utils.sleepToNextPeroid(UPDATE_PERIOD, updateStart);
         }
     }
 
     /**
-     * Gets the filtered distance value. This value is a weighted average of the
-     * last number of samples.
+     * @return the timer pacing the polling loop.
+     */
+    public PeriodicTimer getTimer()
+    {
+        return m_timer;
+    }
+
+    /**
+     * @return the recent distance readings in cm with their sample times.
+     */
+    public SampleRing getReadings()
+    {
+        return m_readings;
+    }
+
+    /**
+     * @return the sequence number of the newest reading, which increases by
+     *         one for each reading, or -1 if there have been none.
+     */
+    public long getSequence()
+    {
+        return m_filteredReadings.getNewestSequence();
+    }
+
+    /**
+     * Halts the thread until there is a reading newer than a given one. The
+     * reading's distances and time can then be read using its sequence
+     * number, and are guaranteed to belong together.
+     * 
+     * @param afterSequence
+     *            the sequence number of the last reading seen, or -1 if none.
+     * @param timeout
+     *            the longest time to wait in nanoseconds.
+     * @return the sequence number of the newest reading, or -1 if no newer
+     *         reading was taken before the timeout.
+     */
+    public long awaitNext(long afterSequence, long timeout)
+    {
+        return m_filteredReadings.awaitNext(afterSequence, timeout);
+    }
+
+    /**
+     * Gets an unfiltered distance reading.
+     * 
+     * @param sequence
+     *            the sequence number of the reading.
+     * @return the distance in cm, or NaN if the reading is too old or not yet
+     *         taken.
+     */
+    public float getDistance(long sequence)
+    {
+        return m_readings.getValue(sequence);
+    }
+
+    /**
+     * Gets a filtered distance reading.
+     * 
+     * @param sequence
+     *            the sequence number of the reading.
+     * @return the distance in cm, or NaN if the reading is too old or not yet
+     *         taken.
+     */
+    public float getFilteredDistance(long sequence)
+    {
+        return m_filteredReadings.getValue(sequence);
+    }
+
+    /**
+     * Gets the time a reading was taken.
+     * 
+     * @param sequence
+     *            the sequence number of the reading.
+     * @return the system time in nanoseconds at which the reading was taken,
+     *         or -1 if the reading is too old or not yet taken.
+     */
+    public long getTimestamp(long sequence)
+    {
+        return m_filteredReadings.getTime(sequence);
+    }
+
+    /**
+     * Gets the filtered distance value. Glitches are removed by a median of
+     * the last few samples, which are then averaged favouring nearer values.
      * 
      * @return the filtered distance value from the sensor in cm.
      */
@@ -102,7 +280,8 @@ public class UltrasonicPoller extends Thread
     }
 
     /**
-     * @return the more recent distance value from the sensor in cm.
+     * @return the more recent distance value from the sensor in cm, without
+     *         any filtering.
      */
     public float getLastDistance()
     {
@@ -111,4 +290,16 @@ public class UltrasonicPoller extends Thread
             return m_lastDistance;
         }
     }
+
+    /**
+     * @return the system time in nanoseconds at which the more recent distance
+     *         value was sampled.
+     */
+    public long getLastTimestamp()
+    {
+        synchronized (m_lock)
+        {
+            return m_lastTimestamp;
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package main;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Takes turns reading the ultrasonic sensors on a fixed schedule, so that
+ * readings from different sensors are spread evenly through each update
+ * period rather than taken at the same moment. Each sensor is read once per
+ * UltrasonicPoller.UPDATE_PERIOD, with the sensors offset from each other by
+ * an equal share of the period, and each reading gets the next sequence
+ * number of its poller. <br>
+ * Only the reads are scheduled, not the pings. The sensors stay in distance
+ * mode, where each pings continuously on its own, so one can still pick up
+ * the other's echo. Silencing a sensor takes a mode switch far longer than a
+ * slot, so the pings cannot be taken in turn at this rate. A sequence number
+ * counts reads, and a read may repeat the sensor's last measurement.
+ * 
+ * @author Scott Sewell
+ */
+public class UltrasonicScheduler extends Thread implements SensorTask
+{
+    private UltrasonicPoller[] m_pollers;
+    private int m_next;
+    private PeriodicTimer m_timer;
+
+    /**
+     * Constructor.
+     * 
+     * @param pollers
+     *            the pollers for the sensors to read in turn.
+     */
+    public UltrasonicScheduler(UltrasonicPoller... pollers)
+    {
+        super("us scheduler");
+        if (pollers.length == 0)
+        {
+            throw new InvalidParameterException("Attempted to schedule no ultrasonic sensors!");
+        }
+        m_pollers = pollers;
+        m_next = 0;
+        m_timer = new PeriodicTimer(getName(), getSlotPeriod());
+    }
+
+    /**
+     * Main loop reading the sensors in turn, used when not sampled by a
+     * SensorHub.
+     */
+    public void run()
+    {
+        while (true)
+        {
+            sample();
+            m_timer.waitForNextPeriod();
+        }
+    }
+
+    /**
+     * Reads the sensor whose turn it is.
+     */
+    public void sample()
+    {
+        m_pollers[m_next].sample();
+        m_next = (m_next + 1) % m_pollers.length;
+    }
+
+    /**
+     * @return the time between reading one sensor and the next in ms. Should
+     *         be a multiple of the hub's base period when used with a
+     *         SensorHub.
+     */
+    public int getSlotPeriod()
+    {
+        return UltrasonicPoller.UPDATE_PERIOD / m_pollers.length;
+    }
+
+    /**
+     * @return the timer pacing the loop when not sampled by a SensorHub.
+     */
+    public PeriodicTimer getTimer()
+    {
+        return m_timer;
+    }
+}
@@ -6,7 +6,32 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ 
+    BlockRegistryTest.class, 
+    BlockSearchTest.class, 
     ColorTest.class, 
+    EdgeDetectorTest.class, 
+    ExponentialFilterTest.class, 
+    LinearRegressionTest.class, 
+    LocalizationSweepTest.class, 
+    LogDecoderTest.class, 
+    LoggerTest.class, 
+    MapperTest.class, 
+    MedianFilterTest.class, 
+    OccupancyGridTest.class, 
+    OdometryCorrectionTest.class, 
+    OdometerTest.class, 
+    ParticleFilterTest.class, 
+    PeriodicTimerTest.class, 
+    PolarScanTest.class, 
+    PoseEstimatorTest.class, 
+    RangeFilterTest.class, 
+    RangeThresholdTest.class, 
+    RingBufferTest.class, 
+    SampleRingTest.class, 
+    SearchTunerTest.class, 
+    SensorHubTest.class, 
+    SignalTest.class, 
+    SpscQueueTest.class, 
     UtilsTest.class, 
     Vector2Test.class 
     })
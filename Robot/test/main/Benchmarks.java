@@ -0,0 +1,797 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.Test;
+
+/**
+ * Measures how long parts of the robot take, to compare approaches and tune
+ * them. Not part of AllTests, as the timings depend on the machine and check
+ * no behaviour. Run on its own with JUnitCore main.Benchmarks.
+ * 
+ * @author Scott Sewell
+ */
+public class Benchmarks
+{
+    // number of repetitions timed in the benchmarks that time a loop
+    private static final int BENCHMARK_COUNT = 100000;
+    // number of ticks run when comparing against the old poller buffers
+    private static final int BENCHMARK_TICKS = 1000000;
+    // number of events timed when measuring wake latency
+    private static final int LATENCY_EVENTS = 20;
+    // how often the correction thread used to poll the line detectors in ms
+    private static final int POLL_PERIOD = 30;
+    // how long each sensor layout is run for when benchmarking in ms
+    private static final int BENCHMARK_DURATION = 2000;
+    // the time spent in each simulated sensor sample in ns
+    private static final long SAMPLE_WORK = 20000;
+    // the number of search sweeps processed when benchmarking
+    private static final int BENCHMARK_SWEEPS = 2000;
+    // the number of sweeps logged when benchmarking
+    private static final int BENCHMARK_LOG_SWEEPS = 50;
+    // the number of readings traced when benchmarking the occupancy grid
+    private static final int BENCHMARK_READINGS = 200000;
+    // the number of nearest block queries made when benchmarking
+    private static final int BENCHMARK_QUERIES = 200000;
+    // the wheel speeds in deg/s the odometry drift is simulated at
+    private static final int DRIFT_SPEED_STEP = 100;
+    private static final int MAX_DRIFT_SPEED = 800;
+    // how long each reader thread runs in the odometer read benchmark in ms
+    private static final int THROUGHPUT_DURATION = 500;
+
+    // prevents reads from being optimized away
+    private volatile float sink;
+
+    /**
+     * Compares the time to weigh particles on one thread against a fork/join
+     * pool, for the particle count used on the brick and for a large set.
+     */
+    @Test
+    public void benchmarkParticleFilter()
+    {
+        int[] counts = { ParticleFilter.DEFAULT_PARTICLE_COUNT, 5000 };
+        int measurements = 2 * (int) (360 / ParticleFilterTest.SWEEP_STEP);
+        for (int count : counts)
+        {
+            ParticleFilter sequential = new ParticleFilter(ParticleFilterTest.createBoard(), count, new Random(4), false);
+            ParticleFilter parallel = new ParticleFilter(ParticleFilterTest.createBoard(), count, new Random(4), true);
+            float[] truth = { 250, 60, 160 };
+
+            long start = System.nanoTime();
+            ParticleFilterTest.sweep(sequential, truth.clone(), 360, new Random(5));
+            long sequentialTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            ParticleFilterTest.sweep(parallel, truth.clone(), 360, new Random(5));
+            long parallelTime = System.nanoTime() - start;
+
+            System.out.println("ParticleFilter us per range with " + count + " particles on " + Runtime.getRuntime().availableProcessors() +
+                    " processors sequential: " + (sequentialTime / measurements / 1000) + ", parallel: " + (parallelTime / measurements / 1000));
+        }
+    }
+
+    /**
+     * Compares the time to replay simulated sweeps through a grid of search
+     * parameters on one thread against several, and reports the best setting
+     * found against the current one.
+     */
+    @Test
+    public void benchmarkSearchTuner() throws InterruptedException
+    {
+        List<RecordedSweep> sweeps = SearchTunerTest.simulateSweeps(new Random(1));
+        List<SearchParameters> grid = SearchTunerTest.makeGrid();
+        int threads = Math.max(SearchTunerTest.MIN_THREADS, Runtime.getRuntime().availableProcessors());
+
+        long start = System.nanoTime();
+        SearchTuner.tune(grid, sweeps, 1);
+        long serialTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        List<SearchTuner.Score> scores = SearchTuner.tune(grid, sweeps, threads);
+        long parallelTime = System.nanoTime() - start;
+
+        SearchTuner.sortByF1(scores);
+        System.out.println(String.format("Search tuning %d settings x %d sweeps on %d processors ms 1 thread: %.0f, %d threads: %.0f",
+                grid.size(), sweeps.size(), Runtime.getRuntime().availableProcessors(), serialTime / 1e6, threads, parallelTime / 1e6));
+        System.out.println("Search tuning current: " + SearchTuner.evaluate(new SearchParameters(), sweeps));
+        System.out.println("Search tuning best: " + scores.get(0));
+    }
+
+    /**
+     * Compares how many consistent position and heading reads can be made
+     * while the odometer is updating against the previous locking approach.
+     */
+    @Test
+    public void benchmarkOdometerReads() throws InterruptedException
+    {
+        final Odometer odometer = new Odometer();
+        final LockedOdometer locked = new LockedOdometer();
+
+        long lockFreeReads = measureReads(new Runnable()
+        {
+            public void run()
+            {
+                odometer.integrate(0.1, 0.12);
+            }
+        }, new Runnable()
+        {
+            public void run()
+            {
+                Pose pose = odometer.getPose();
+                sink += pose.getX() + pose.getTheta();
+            }
+        });
+
+        long lockedReads = measureReads(new Runnable()
+        {
+            public void run()
+            {
+                locked.integrate(0.1, 0.12);
+            }
+        }, new Runnable()
+        {
+            public void run()
+            {
+                sink += locked.getPosition().getX() + locked.getTheta();
+            }
+        });
+
+        System.out.println("Odometer reads/ms lock-free: " + (lockFreeReads / THROUGHPUT_DURATION) + ", locked: " + (lockedReads / THROUGHPUT_DURATION));
+    }
+
+    /**
+     * Runs a writer and a reader for a fixed time and counts the reads.
+     */
+    private long measureReads(final Runnable write, final Runnable read) throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + THROUGHPUT_DURATION;
+        final long[] reads = new long[1];
+
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                while (System.currentTimeMillis() < end)
+                {
+                    write.run();
+                }
+            }
+        };
+        Thread reader = new Thread()
+        {
+            public void run()
+            {
+                long count = 0;
+                while (System.currentTimeMillis() < end)
+                {
+                    read.run();
+                    count++;
+                }
+                reads[0] = count;
+            }
+        };
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        return reads[0];
+    }
+
+    /**
+     * The odometer transform guarded by a single lock, as it was before poses
+     * were published without locking.
+     */
+    private static class LockedOdometer
+    {
+        private Vector2 m_position = Vector2.zero();
+        private float m_theta;
+        private Object m_lock = new Object();
+
+        public void integrate(double distL, double distR)
+        {
+            float deltaD = (float) (0.5 * (distL + distR));
+            synchronized (m_lock)
+            {
+                m_theta += Math.toDegrees((distR - distL) / Robot.WHEEL_TRACK);
+                m_theta = Utils.normalizeAngle(m_theta);
+                m_position.add(Vector2.fromPolar(m_theta, deltaD));
+            }
+        }
+
+        public Vector2 getPosition()
+        {
+            synchronized (m_lock)
+            {
+                return new Vector2(m_position);
+            }
+        }
+
+        public float getTheta()
+        {
+            synchronized (m_lock)
+            {
+                return m_theta;
+            }
+        }
+    }
+
+    /**
+     * Measures the time for a pose estimator predict cycle and the two
+     * updates that may follow it.
+     */
+    @Test
+    public void benchmarkPoseEstimator()
+    {
+        PoseEstimator estimator = new PoseEstimator(2, 2);
+        float[] pose = { Board.TILE_SIZE + 1, 100, 0 };
+        PoseEstimatorTest.update(estimator, pose, BENCHMARK_COUNT);
+
+        long start = System.nanoTime();
+        PoseEstimatorTest.update(estimator, pose, BENCHMARK_COUNT);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("PoseEstimator ns per predict and 2 updates: " + (elapsed / BENCHMARK_COUNT));
+    }
+
+    /**
+     * Compares the per tick cost of the ultrasonic poller filter before and
+     * after moving it onto a ring buffer, including the sample array the
+     * poller used to allocate each tick.
+     */
+    @Test
+    public void benchmarkPollerFilter()
+    {
+        float[] values = RingBufferTest.randomDistances();
+
+        // warm up both before measuring
+        float check = runLinkedList(values, BENCHMARK_TICKS / 10) + RingBufferTest.runRingBuffer(values, BENCHMARK_TICKS / 10);
+
+        long linkedListBytes = RingBufferTest.allocatedBytes();
+        long start = System.nanoTime();
+        check += runLinkedList(values, BENCHMARK_TICKS);
+        long linkedListTime = System.nanoTime() - start;
+        linkedListBytes = RingBufferTest.allocatedBytes() - linkedListBytes;
+
+        long ringBufferBytes = RingBufferTest.allocatedBytes();
+        start = System.nanoTime();
+        check += RingBufferTest.runRingBuffer(values, BENCHMARK_TICKS);
+        long ringBufferTime = System.nanoTime() - start;
+        ringBufferBytes = RingBufferTest.allocatedBytes() - ringBufferBytes;
+
+        System.out.println("Poller filter ns per tick LinkedList: " + (linkedListTime / BENCHMARK_TICKS) +
+                ", RingBuffer: " + (ringBufferTime / BENCHMARK_TICKS) + " (" + check + ")");
+        if (ringBufferBytes >= 0)
+        {
+            System.out.println("Poller filter bytes per tick LinkedList: " + (linkedListBytes / BENCHMARK_TICKS) +
+                    ", RingBuffer: " + ((float) ringBufferBytes / BENCHMARK_TICKS));
+        }
+    }
+
+    /**
+     * The ultrasonic poller filter as it was, with a new sample array each
+     * tick.
+     */
+    private static float runLinkedList(float[] values, int ticks)
+    {
+        Queue<Float> buffer = new LinkedList<Float>();
+        float filtered = 0;
+        for (int i = 0; i < ticks; i++)
+        {
+            float[] sample = new float[1];
+            sample[0] = values[i % values.length];
+            buffer.add(sample[0]);
+            if (buffer.size() > RingBufferTest.POLLER_BUFFER_SIZE)
+            {
+                buffer.remove();
+            }
+            float weightedDistance = 0;
+            for (float distance : buffer)
+            {
+                weightedDistance += (1 / distance);
+            }
+            filtered += buffer.size() / weightedDistance;
+        }
+        return filtered;
+    }
+
+    /**
+     * Compares the time for a consumer to see a new value when it is woken by
+     * the queue against when it polls a flag every 30 ms, as the odometry
+     * correction did for line crossings.
+     */
+    @Test
+    public void benchmarkWakeLatency() throws InterruptedException
+    {
+        final SpscQueue<Long> queue = new SpscQueue<Long>(4);
+        final long[] latency = new long[2];
+
+        Thread woken = new Thread()
+        {
+            public void run()
+            {
+                for (int received = 0; received < LATENCY_EVENTS;)
+                {
+                    Long sent = queue.poll();
+                    if (sent == null)
+                    {
+                        LockSupport.parkNanos(this, 500000000L);
+                        continue;
+                    }
+                    latency[0] += System.nanoTime() - sent;
+                    received++;
+                }
+            }
+        };
+        queue.setConsumer(woken);
+        woken.start();
+        for (int i = 0; i < LATENCY_EVENTS; i++)
+        {
+            Utils.sleep(7);
+            queue.offer(System.nanoTime());
+        }
+        woken.join(5000);
+
+        final SpscQueue<Long> polledQueue = new SpscQueue<Long>(16);
+        Thread polling = new Thread()
+        {
+            public void run()
+            {
+                for (int received = 0; received < LATENCY_EVENTS;)
+                {
+                    Long sent;
+                    while ((sent = polledQueue.poll()) != null)
+                    {
+                        latency[1] += System.nanoTime() - sent;
+                        received++;
+                    }
+                    Utils.sleep(POLL_PERIOD);
+                }
+            }
+        };
+        polling.start();
+        for (int i = 0; i < LATENCY_EVENTS; i++)
+        {
+            Utils.sleep(7);
+            polledQueue.offer(System.nanoTime());
+        }
+        polling.join(5000);
+
+        long wokenLatency = latency[0] / LATENCY_EVENTS;
+        long polledLatency = latency[1] / LATENCY_EVENTS;
+        System.out.println("Line crossing latency us woken: " + (wokenLatency / 1000) + ", polled: " + (polledLatency / 1000));
+    }
+
+    /**
+     * A simulated sensor that records when it was sampled.
+     */
+    private static class TimedSensor implements SensorTask
+    {
+        private int m_period;
+        private int m_samples;
+        private long m_lastTime;
+        private long m_jitterTotal;
+        private long m_maxJitter;
+
+        /**
+         * Constructor.
+         * 
+         * @param period
+         *            the period at which the sensor should be sampled in ms.
+         */
+        TimedSensor(int period)
+        {
+            m_period = period;
+        }
+
+        public void sample()
+        {
+            long now = System.nanoTime();
+            if (m_samples > 0)
+            {
+                long jitter = Math.abs(now - m_lastTime - m_period * 1000000L);
+                m_jitterTotal += jitter;
+                m_maxJitter = Math.max(m_maxJitter, jitter);
+            }
+            m_lastTime = now;
+            m_samples++;
+
+            // simulate the time taken to fetch and process a sample
+            while (System.nanoTime() - now < SAMPLE_WORK)
+            {
+            }
+        }
+    }
+
+    /**
+     * Compares the processor time and sampling jitter of a thread for each
+     * sensor against a single hub, using the robot's sensor layout.
+     */
+    @Test
+    public void benchmarkSensorHub() throws InterruptedException
+    {
+        final int[] periods = { 2, 2, 10, 24, 24 };
+
+        // a thread for each sensor
+        TimedSensor[] threadSensors = new TimedSensor[periods.length];
+        Thread[] threads = new Thread[periods.length];
+        final long[] threadCpu = new long[periods.length];
+        final AtomicBoolean running = new AtomicBoolean(true);
+        for (int i = 0; i < periods.length; i++)
+        {
+            threadSensors[i] = new TimedSensor(periods[i]);
+            threads[i] = new SamplingThread(threadSensors[i], periods[i], running, threadCpu, i);
+        }
+        runFor(threads, running);
+
+        // a single hub
+        TimedSensor[] hubSensors = new TimedSensor[periods.length];
+        SensorHub hub = new SensorHub();
+        for (int i = 0; i < periods.length; i++)
+        {
+            hubSensors[i] = new TimedSensor(periods[i]);
+            hub.add(hubSensors[i], periods[i] / SensorHub.BASE_PERIOD);
+        }
+        final long[] hubCpu = new long[1];
+        running.set(true);
+        runFor(new Thread[] { new HubThread(hub, running, hubCpu) }, running);
+
+        long threadTotal = 0;
+        for (long cpu : threadCpu)
+        {
+            threadTotal += cpu;
+        }
+        System.out.println(String.format("Sensor sampling cpu ms per s thread per sensor: %.1f, hub: %.1f",
+                threadTotal / 1e6 / (BENCHMARK_DURATION / 1000f), hubCpu[0] / 1e6 / (BENCHMARK_DURATION / 1000f)));
+        System.out.println("Sensor sampling jitter us mean/max (thread per sensor | hub):");
+        for (int i = 0; i < periods.length; i++)
+        {
+            TimedSensor t = threadSensors[i];
+            TimedSensor h = hubSensors[i];
+            System.out.println(String.format("%dms: %d/%d | %d/%d", periods[i],
+                    t.m_jitterTotal / Math.max(1, t.m_samples - 1) / 1000, t.m_maxJitter / 1000,
+                    h.m_jitterTotal / Math.max(1, h.m_samples - 1) / 1000, h.m_maxJitter / 1000));
+        }
+    }
+
+    /**
+     * Runs threads for the sensor benchmark duration, then stops them.
+     */
+    private static void runFor(Thread[] threads, AtomicBoolean running) throws InterruptedException
+    {
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        Thread.sleep(BENCHMARK_DURATION);
+        running.set(false);
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    /**
+     * Samples one sensor on its own period, as the pollers do when run as
+     * threads.
+     */
+    private static class SamplingThread extends Thread
+    {
+        private TimedSensor m_sensor;
+        private PeriodicTimer m_timer;
+        private AtomicBoolean m_running;
+        private long[] m_cpu;
+        private int m_index;
+
+        SamplingThread(TimedSensor sensor, int period, AtomicBoolean running, long[] cpu, int index)
+        {
+            m_sensor = sensor;
+            m_timer = new PeriodicTimer("bench " + index, period);
+            m_running = running;
+            m_cpu = cpu;
+            m_index = index;
+        }
+
+        public void run()
+        {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            long start = bean.getCurrentThreadCpuTime();
+            while (m_running.get())
+            {
+                m_sensor.sample();
+                m_timer.waitForNextPeriod();
+            }
+            m_cpu[m_index] = bean.getCurrentThreadCpuTime() - start;
+        }
+    }
+
+    /**
+     * Runs the hub's loop until stopped.
+     */
+    private static class HubThread extends Thread
+    {
+        private SensorHub m_hub;
+        private AtomicBoolean m_running;
+        private long[] m_cpu;
+
+        HubThread(SensorHub hub, AtomicBoolean running, long[] cpu)
+        {
+            m_hub = hub;
+            m_running = running;
+            m_cpu = cpu;
+        }
+
+        public void run()
+        {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            long start = bean.getCurrentThreadCpuTime();
+            PeriodicTimer timer = m_hub.getTimer();
+            timer.start();
+            while (m_running.get())
+            {
+                m_hub.tick((long) timer.getPeriodCount() + timer.getOverrunCount());
+                timer.waitForNextPeriod();
+            }
+            m_cpu[0] = bean.getCurrentThreadCpuTime() - start;
+        }
+    }
+
+    /**
+     * Compares the time taken to process a search sweep with a polar scan
+     * against the sorted maps previously used.
+     */
+    @Test
+    public void benchmarkPolarScan()
+    {
+        float[] angles = new float[PolarScanTest.READINGS];
+        float[] distances = new float[PolarScanTest.READINGS];
+        PolarScanTest.simulateSweep(angles, distances);
+
+        PolarScan scan = new PolarScan(PolarScanTest.WIDTH, PolarScanTest.BIN_SIZE);
+        float[] means = new float[2];
+        int count = 0;
+        // warm up both before timing
+        for (int i = 0; i < BENCHMARK_SWEEPS; i++)
+        {
+            count += PolarScanTest.processScan(scan, angles, distances, means);
+            count += PolarScanTest.processMap(angles, distances);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_SWEEPS; i++)
+        {
+            count += PolarScanTest.processScan(scan, angles, distances, means);
+        }
+        long scanTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_SWEEPS; i++)
+        {
+            count += PolarScanTest.processMap(angles, distances);
+        }
+        long mapTime = System.nanoTime() - start;
+
+        System.out.println(String.format("Search sweep processing us per sweep polar scan: %.1f, sorted maps: %.1f (%d)",
+                scanTime / 1e3 / BENCHMARK_SWEEPS, mapTime / 1e3 / BENCHMARK_SWEEPS, count));
+    }
+
+    /**
+     * Compares the time the search spends logging a sweep against writing
+     * text files as it previously did.
+     */
+    @Test
+    public void benchmarkLogger() throws IOException
+    {
+        File dir = File.createTempFile("logger", "");
+        dir.delete();
+        dir.mkdir();
+
+        Logger logger = new Logger("unused", Logger.DEFAULT_CAPACITY);
+        DataOutputStream out = new DataOutputStream(new OutputStream()
+        {
+            public void write(int b)
+            {
+            }
+        });
+
+        // warm up both before timing
+        for (int i = 0; i < BENCHMARK_LOG_SWEEPS; i++)
+        {
+            writeSweep(dir);
+            LoggerTest.logSweep(logger);
+            logger.drain(out);
+        }
+
+        long fileTime = 0;
+        long logTime = 0;
+        for (int i = 0; i < BENCHMARK_LOG_SWEEPS; i++)
+        {
+            long start = System.nanoTime();
+            writeSweep(dir);
+            fileTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            LoggerTest.logSweep(logger);
+            logTime += System.nanoTime() - start;
+            // the logger thread drains between sweeps
+            logger.drain(out);
+        }
+
+        for (File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+
+        System.out.println(String.format("Search logging us per sweep text files: %.1f, logger: %.1f (%d dropped)",
+                fileTime / 1e3 / BENCHMARK_LOG_SWEEPS, logTime / 1e3 / BENCHMARK_LOG_SWEEPS, logger.getDroppedCount()));
+    }
+
+    /**
+     * Writes a sweep to text files as the search previously did.
+     */
+    private static void writeSweep(File dir) throws IOException
+    {
+        writePoints(new File(dir, "sorted.txt"), LoggerTest.SWEEP_POINTS);
+        writePoints(new File(dir, "sanitized.txt"), LoggerTest.SWEEP_POINTS);
+        writePoints(new File(dir, "disc2.txt"), 2);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(dir, "Debug.txt"), true)))
+        {
+            writer.write("Planning on traveling: " + 25f + "\n");
+        }
+    }
+
+    /**
+     * Writes points to a text file as the search previously did.
+     */
+    private static void writePoints(File file, int count) throws IOException
+    {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
+        {
+            for (int i = 0; i < count; i++)
+            {
+                writer.write(i + "\t" + String.format("%.1f", i * 0.5f) + "\t" + String.format("%.1f", 55f) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Measures the time taken to trace a reading into an occupancy grid, for readings spread over
+     * the board.
+     */
+    @Test
+    public void benchmarkOccupancyGrid()
+    {
+        OccupancyGrid grid = new OccupancyGrid(OccupancyGridTest.MIN, OccupancyGridTest.MIN, OccupancyGridTest.SIZE, OccupancyGridTest.RESOLUTION);
+        Random random = new Random(1);
+        float[] readings = new float[4 * 1024];
+        for (int i = 0; i < readings.length; i++)
+        {
+            readings[i] = random.nextFloat();
+        }
+
+        for (int i = 0; i < BENCHMARK_READINGS; i++)
+        {
+            traceReading(grid, readings, i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_READINGS; i++)
+        {
+            traceReading(grid, readings, i);
+        }
+        long time = System.nanoTime() - start;
+
+        System.out.println(String.format("Occupancy grid %dx%d cells, ns per reading: %d",
+                grid.getWidth(), grid.getHeight(), time / BENCHMARK_READINGS));
+    }
+
+    /**
+     * Traces one of a set of random readings.
+     */
+    private static void traceReading(OccupancyGrid grid, float[] readings, int i)
+    {
+        int index = (i * 4) & (readings.length - 1);
+        float x = OccupancyGridTest.MIN + readings[index] * OccupancyGridTest.SIZE;
+        float y = OccupancyGridTest.MIN + readings[index + 1] * OccupancyGridTest.SIZE;
+        grid.update(x, y, readings[index + 2] * 360, readings[index + 3] * UltrasonicPoller.MAX_RANGE, OccupancyGridTest.MAX_RANGE);
+    }
+
+    /**
+     * Compares the time to find the nearest unvisited block using the
+     * registry's index against checking every block.
+     */
+    @Test
+    public void benchmarkBlockRegistry()
+    {
+        Random random = new Random(3);
+        BlockRegistry registry = new BlockRegistry();
+        for (int i = 0; i < BlockRegistry.DEFAULT_CAPACITY; i++)
+        {
+            registry.observe(Block.Type.Blue, BlockRegistryTest.randomCoordinate(random), BlockRegistryTest.randomCoordinate(random), BlockRegistry.SIGHTING_CONFIDENCE, i);
+        }
+        float[] points = new float[BENCHMARK_QUERIES * 2];
+        for (int i = 0; i < points.length; i++)
+        {
+            points[i] = BlockRegistryTest.randomCoordinate(random);
+        }
+
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++)
+        {
+            found += registry.findNearest(points[2 * i], points[2 * i + 1], 2 * BlockRegistry.CELL_SIZE, null, false) != null ? 1 : 0;
+        }
+        long indexed = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++)
+        {
+            Block nearest = BlockRegistryTest.findNearestLinear(registry, points[2 * i], points[2 * i + 1], null);
+            found += nearest != null && BlockRegistryTest.distance(nearest, points[2 * i], points[2 * i + 1]) <= 2 * BlockRegistry.CELL_SIZE ? 1 : 0;
+        }
+        long linear = System.nanoTime() - start;
+
+        System.out.println(String.format("nearest block within two tiles: indexed %d ns, linear %d ns per query (%d)", indexed / BENCHMARK_QUERIES,
+                linear / BENCHMARK_QUERIES, found));
+    }
+
+    /**
+     * Simulates a differential drive following a winding path at a range of
+     * wheel speeds, and reports how far each integration method drifts at
+     * both odometer update periods. The heading error counted against the
+     * odometry correction arc is the heading drift plus the angle the position
+     * drift subtends across a tile, as a heading fitted to two line crossings
+     * would see it. The fastest speed inside the arc is the fastest the robot
+     * can drive between line crossings and still be corrected.
+     */
+    @Test
+    public void benchmarkIntegrationDrift()
+    {
+        int[] periods = { Odometer.UPDATE_PERIOD, Odometer.FAST_UPDATE_PERIOD };
+        Odometer.Integration[] methods = Odometer.Integration.values();
+        float[] drift = new float[2];
+        for (int period : periods)
+        {
+            int[] fastest = new int[methods.length];
+            StringBuilder table = new StringBuilder("Odometer drift cm/deg after 20s at " + period + " ms period (speed deg/s:");
+            for (Odometer.Integration method : methods)
+            {
+                table.append(' ').append(method);
+            }
+            table.append(")\n");
+
+            for (int speed = DRIFT_SPEED_STEP; speed <= MAX_DRIFT_SPEED; speed += DRIFT_SPEED_STEP)
+            {
+                table.append(speed).append(':');
+                for (int m = 0; m < methods.length; m++)
+                {
+                    OdometerTest.simulateDrift(methods[m], speed, period, drift);
+                    float error = drift[1] + (float) Math.toDegrees(Math.atan2(drift[0], Board.TILE_SIZE));
+                    table.append(String.format(" %.3f/%.2f", drift[0], error));
+                    if (error < OdometryCorrection.CORRECTION_ARC && fastest[m] == speed - DRIFT_SPEED_STEP)
+                    {
+                        fastest[m] = speed;
+                    }
+                }
+                table.append('\n');
+            }
+
+            table.append("Fastest deg/s inside the " + OdometryCorrection.CORRECTION_ARC + " deg correction arc:");
+            for (int m = 0; m < methods.length; m++)
+            {
+                table.append(' ').append(methods[m]).append(' ').append(fastest[m]);
+            }
+            System.out.println(table);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.security.InvalidParameterException;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class BlockRegistryTest
+{
+    // the area of the board blocks can be on
+    private static final float MIN = 0;
+    private static final float MAX = Board.WALL_UPPER - Board.TILE_SIZE;
+
+    /**
+     * Tests that sightings near a known block are merged into it, moving it
+     * towards the more certain sighting and keeping a known type. <br>
+     * Test method for {@link main.BlockRegistry#observe(Block.Type, float, float, float, long)}.
+     */
+    @Test
+    public void testObserve()
+    {
+        BlockRegistry registry = new BlockRegistry();
+        Block block = registry.observe(Block.Type.Wood, 100, 100, BlockRegistry.IDENTIFIED_CONFIDENCE, 5);
+        assertEquals(1, registry.size());
+
+        // a nearby sighting is the same block, but moves it less as the block
+        // is more certain
+        assertSame(block, registry.observe(Block.Type.Unknown, 106, 100, BlockRegistry.SIGHTING_CONFIDENCE, 10));
+        assertEquals(1, registry.size());
+        assertEquals(Block.Type.Wood, block.type);
+        assertEquals(102f, block.position.getX(), 0.001f);
+        assertEquals(1f, block.confidence, 0.001f);
+        assertEquals(10, block.lastSeen);
+
+        // a sighting further away is a new block
+        Block other = registry.observe(Block.Type.Unknown, 100, 100 + BlockRegistry.MERGE_DISTANCE * 2, BlockRegistry.SIGHTING_CONFIDENCE, 20);
+        assertTrue(block != other);
+        assertEquals(2, registry.size());
+
+        // repeated sightings grow more certain, and identification sets the
+        // type
+        registry.observe(Block.Type.Unknown, 100, 120, BlockRegistry.SIGHTING_CONFIDENCE, 30);
+        assertEquals(0.75f, other.confidence, 0.001f);
+        registry.observe(Block.Type.Blue, 100, 120, BlockRegistry.SIGHTING_CONFIDENCE, 40);
+        assertEquals(Block.Type.Blue, other.type);
+    }
+
+    /**
+     * Tests that a block moved across a bucket edge by a sighting is still
+     * found. <br>
+     * Test method for {@link main.BlockRegistry#observe(Block.Type, float, float, float, long)}.
+     */
+    @Test
+    public void testObserveReindex()
+    {
+        BlockRegistry registry = new BlockRegistry();
+        float edge = Board.WALL_LOWER + BlockRegistry.CELL_SIZE * 4;
+        Block block = registry.observe(Block.Type.Blue, edge - 2, 50, BlockRegistry.SIGHTING_CONFIDENCE, 0);
+        registry.observe(Block.Type.Blue, edge + 6, 50, BlockRegistry.SIGHTING_CONFIDENCE, 0);
+        assertEquals(edge + 2, block.position.getX(), 0.001f);
+
+        Block[] found = new Block[4];
+        assertEquals(1, registry.findWithinRadius(edge + 3, 50, 1.5f, found));
+        assertSame(block, found[0]);
+        assertSame(block, registry.findNearest(edge + 20, 50, 20, null, false));
+    }
+
+    /**
+     * Tests that the nearest unvisited block of a type is found. <br>
+     * Test method for {@link main.BlockRegistry#findNearestUnvisited(Vector2, Block.Type)}.
+     */
+    @Test
+    public void testFindNearestUnvisited()
+    {
+        BlockRegistry registry = new BlockRegistry();
+        Block nearWood = registry.observe(Block.Type.Wood, 20, 20, BlockRegistry.IDENTIFIED_CONFIDENCE, 0);
+        Block nearBlue = registry.observe(Block.Type.Blue, 60, 20, BlockRegistry.SIGHTING_CONFIDENCE, 0);
+        Block farBlue = registry.observe(Block.Type.Blue, 250, 250, BlockRegistry.SIGHTING_CONFIDENCE, 0);
+
+        Vector2 position = new Vector2(0, 0);
+        assertSame(nearWood, registry.findNearestUnvisited(position, null));
+        assertSame(nearBlue, registry.findNearestUnvisited(position, Block.Type.Blue));
+
+        registry.markVisited(nearBlue);
+        assertSame(farBlue, registry.findNearestUnvisited(position, Block.Type.Blue));
+        registry.markVisited(farBlue);
+        assertNull(registry.findNearestUnvisited(position, Block.Type.Blue));
+        assertNull(registry.findNearestUnvisited(position, Block.Type.Unknown));
+        assertNull(registry.findNearest(0, 0, 20, null, false));
+    }
+
+    /**
+     * Tests that the indexed queries find the same blocks as checking every
+     * block, including from points off the board. <br>
+     * Test method for {@link main.BlockRegistry#findNearest(float, float, float, Block.Type, boolean)}.
+     */
+    @Test
+    public void testQueriesMatchLinearScan()
+    {
+        Random random = new Random(7);
+        BlockRegistry registry = new BlockRegistry();
+        for (int i = 0; i < BlockRegistry.DEFAULT_CAPACITY; i++)
+        {
+            Block block = registry.observe(i % 2 == 0 ? Block.Type.Wood : Block.Type.Blue, randomCoordinate(random), randomCoordinate(random),
+                    BlockRegistry.SIGHTING_CONFIDENCE, i);
+            if (block != null && random.nextBoolean())
+            {
+                registry.markVisited(block);
+            }
+        }
+
+        Block[] found = new Block[BlockRegistry.DEFAULT_CAPACITY];
+        for (int i = 0; i < 1000; i++)
+        {
+            float x = randomCoordinate(random) * 1.5f - 80;
+            float y = randomCoordinate(random) * 1.5f - 80;
+            assertSame(findNearestLinear(registry, x, y, Block.Type.Blue), registry.findNearestUnvisited(new Vector2(x, y), Block.Type.Blue));
+
+            float radius = random.nextFloat() * 100;
+            int count = registry.findWithinRadius(x, y, radius, found);
+            assertEquals(countWithinLinear(registry, x, y, radius), count);
+            for (int j = 0; j < count; j++)
+            {
+                assertTrue(Vector2.distance(found[j].position, new Vector2(x, y)) <= radius);
+            }
+        }
+    }
+
+    /**
+     * Tests that removed blocks are no longer found, and the rest still are.
+     * <br>
+     * Test method for {@link main.BlockRegistry#remove(Block)}.
+     */
+    @Test
+    public void testRemove()
+    {
+        BlockRegistry registry = new BlockRegistry();
+        Block a = registry.observe(Block.Type.Blue, 10, 10, BlockRegistry.SIGHTING_CONFIDENCE, 0);
+        Block b = registry.observe(Block.Type.Blue, 12, 40, BlockRegistry.SIGHTING_CONFIDENCE, 0);
+        Block c = registry.observe(Block.Type.Blue, 200, 40, BlockRegistry.SIGHTING_CONFIDENCE, 0);
+
+        assertTrue(registry.remove(a));
+        assertFalse(registry.remove(a));
+        assertEquals(2, registry.size());
+        assertSame(b, registry.findNearestUnvisited(new Vector2(10, 10), null));
+        assertTrue(registry.remove(b));
+        assertSame(c, registry.findNearestUnvisited(new Vector2(10, 10), null));
+        assertSame(c, registry.get(0));
+
+        registry.clear();
+        assertEquals(0, registry.size());
+        assertNull(registry.findNearestUnvisited(new Vector2(200, 40), null));
+    }
+
+    /**
+     * Tests that a full registry replaces its least certain block, but not
+     * with a less certain one. <br>
+     * Test method for {@link main.BlockRegistry#observe(Block.Type, float, float, float, long)}.
+     */
+    @Test
+    public void testCapacity()
+    {
+        BlockRegistry registry = new BlockRegistry(MIN, MIN, MAX, 2);
+        registry.observe(Block.Type.Wood, 10, 10, BlockRegistry.IDENTIFIED_CONFIDENCE, 0);
+        Block unsure = registry.observe(Block.Type.Unknown, 100, 10, BlockRegistry.SIGHTING_CONFIDENCE, 0);
+        assertNull(registry.observe(Block.Type.Unknown, 200, 10, 0.25f, 0));
+
+        Block sure = registry.observe(Block.Type.Wood, 200, 10, BlockRegistry.IDENTIFIED_CONFIDENCE, 0);
+        assertNotNull(sure);
+        assertEquals(2, registry.size());
+        assertFalse(registry.remove(unsure));
+        assertSame(sure, registry.findNearest(200, 10, 20, null, false));
+    }
+
+    /**
+     * Tests that invalid arguments are rejected. <br>
+     * Test method for {@link main.BlockRegistry#BlockRegistry(float, float, float, int)}.
+     */
+    @Test
+    public void testInvalid()
+    {
+        try
+        {
+            new BlockRegistry(MIN, MIN, MAX, 0);
+            fail();
+        }
+        catch (InvalidParameterException e)
+        {
+        }
+        try
+        {
+            new BlockRegistry().observe(Block.Type.Blue, 0, 0, 0, 0);
+            fail();
+        }
+        catch (InvalidParameterException e)
+        {
+        }
+    }
+
+    /**
+     * @return a random coordinate on the board in cm.
+     */
+    static float randomCoordinate(Random random)
+    {
+        return MIN + random.nextFloat() * (MAX - MIN);
+    }
+
+    /**
+     * @return the nearest unvisited block of a type, checking every block.
+     */
+    static Block findNearestLinear(BlockRegistry registry, float x, float y, Block.Type type)
+    {
+        Block nearest = null;
+        for (int i = 0; i < registry.size(); i++)
+        {
+            Block block = registry.get(i);
+            if ((type == null || block.type == type) && !block.visited && (nearest == null || distance(block, x, y) < distance(nearest, x, y)))
+            {
+                nearest = block;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @return the number of blocks within a radius, checking every block.
+     */
+    private static int countWithinLinear(BlockRegistry registry, float x, float y, float radius)
+    {
+        int count = 0;
+        for (int i = 0; i < registry.size(); i++)
+        {
+            if (distance(registry.get(i), x, y) <= radius)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the distance in cm from a block to a point.
+     */
+    static float distance(Block block, float x, float y)
+    {
+        return Vector2.distance(block.position, new Vector2(x, y));
+    }
+}
@@ -0,0 +1,141 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class BlockSearchTest
+{
+    // the sweep used when searching for blocks
+    private static final float WIDTH = 90;
+
+    /**
+     * Tests that a block between two discontinuities is approached at its
+     * center. <br>
+     * Test method for {@link main.BlockSearch#analyze()}.
+     */
+    @Test
+    public void testBlockPair()
+    {
+        BlockSearch search = sweep(0, 30, 50, 25);
+        assertEquals(BlockSearch.Outcome.BlockPair, search.analyze());
+        assertTrue(search.analyze().isDetection());
+        assertEquals(40f, search.getDestinationAngle(), 0.5f);
+        assertEquals((25f + SearchParameters.DEFAULT_NO_OBJECT) / 2, search.getDestinationDistance(), 0.5f);
+    }
+
+    /**
+     * Tests that a known block is skipped, leaving the search to head for
+     * the mean of the sweep, and that exclusions are cleared between sweeps.
+     * <br>
+     * Test method for {@link main.BlockSearch#exclude(float, float)}.
+     */
+    @Test
+    public void testExclude()
+    {
+        BlockSearch search = sweep(0, 30, 50, 25);
+        assertTrue(search.exclude(45, 10));
+        assertEquals(BlockSearch.Outcome.KnownBlock, search.analyze());
+        assertFalse(search.analyze().isDetection());
+
+        search = sweep(0, 30, 50, 25);
+        assertTrue(search.exclude(80, 5));
+        assertEquals(BlockSearch.Outcome.BlockPair, search.analyze());
+        assertEquals(25f, search.getBlockDistance(), 0.01f);
+
+        search.reset(0);
+        for (int i = 0; i < BlockSearch.MAX_EXCLUSIONS; i++)
+        {
+            assertTrue(search.exclude(i, 1));
+        }
+        assertFalse(search.exclude(0, 1));
+    }
+
+    /**
+     * Tests that a single discontinuity divides the sweep, and the nearer side
+     * is approached. <br>
+     * Test method for {@link main.BlockSearch#analyze()}.
+     */
+    @Test
+    public void testOneDiscontinuity()
+    {
+        // the distance steps down too little for a discontinuity, until the
+        // end of the sweep is taken as empty
+        BlockSearch search = new BlockSearch(new SearchParameters(), WIDTH);
+        search.reset(0);
+        for (int i = 0; i <= WIDTH; i++)
+        {
+            search.add(i, i < 20 ? 55 : i < 40 ? 45 : 35);
+        }
+        assertEquals(BlockSearch.Outcome.OneDiscontinuity, search.analyze());
+        assertEquals(1, search.getScan().getDiscontinuityCount());
+        assertEquals(44.5f, search.getDestinationAngle(), 0.01f);
+        assertTrue(search.getDestinationDistance() < 45);
+    }
+
+    /**
+     * Tests that a narrow object is ignored, and that readings are held
+     * through small changes. <br>
+     * Test method for {@link main.BlockSearch#add(float, float)}.
+     */
+    @Test
+    public void testAdd()
+    {
+        BlockSearch search = new BlockSearch(new SearchParameters(), WIDTH);
+        search.reset(0);
+        assertEquals(30f, search.add(0, 30), 0);
+        assertEquals(30f, search.add(1, 35), 0);
+        assertEquals(SearchParameters.DEFAULT_NO_OBJECT, search.add(2, 200), 0);
+
+        search = sweep(0, 20, 24, 25);
+        assertEquals(BlockSearch.Outcome.NoDiscontinuities, search.analyze());
+    }
+
+    /**
+     * Tests that discontinuities far apart are taken as separate blocks. <br>
+     * Test method for {@link main.BlockSearch#decide()}.
+     */
+    @Test
+    public void testMultipleBlocks()
+    {
+        BlockSearch search = new BlockSearch(new SearchParameters(), WIDTH);
+        search.reset(0);
+        for (int i = 0; i <= 90; i++)
+        {
+            search.add(i, i >= 5 && i < 87 ? 25 : SearchParameters.DEFAULT_NO_OBJECT);
+        }
+        assertEquals(BlockSearch.Outcome.MultipleBlocks, search.analyze());
+    }
+
+    /**
+     * Tests the width of an object between two edges. <br>
+     * Test method for {@link main.BlockSearch#getWidth(float, float, float, float)}.
+     */
+    @Test
+    public void testGetWidth()
+    {
+        assertEquals(30f, BlockSearch.getWidth(10, 30, 70, 30), 0.001f);
+        assertEquals(30f, BlockSearch.getWidth(340, 30, 40, 30), 0.001f);
+    }
+
+    /**
+     * @return a search with a sweep from 0 to 90 degrees seeing a block
+     *         between two angles.
+     */
+    static BlockSearch sweep(float from, float blockStart, float blockEnd, float blockDistance)
+    {
+        BlockSearch search = new BlockSearch(new SearchParameters(), WIDTH);
+        search.reset(from);
+        for (int i = 0; i <= WIDTH; i++)
+        {
+            float angle = from + i;
+            boolean onBlock = angle >= blockStart && angle < blockEnd;
+            search.add(angle, onBlock ? blockDistance : SearchParameters.DEFAULT_NO_OBJECT);
+        }
+        return search;
+    }
+}
@@ -0,0 +1,148 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class EdgeDetectorTest
+{
+    // simulated floor and line brightness
+    private static final float FLOOR = 0.45f;
+    private static final float LINE = 0.08f;
+    private static final float NOISE = 0.005f;
+    // simulated line and sensor spot widths in cm
+    private static final float LINE_WIDTH = 0.5f;
+    private static final float SPOT_WIDTH = 1.0f;
+    // the number of lines crossed when measuring accuracy
+    private static final int CROSSING_COUNT = 200;
+
+    /**
+     * Tests that the floor brightness and noise are learned. <br>
+     * Test method for {@link main.EdgeDetector#add(long, float)}.
+     */
+    @Test
+    public void testCalibration()
+    {
+        EdgeDetector detector = new EdgeDetector();
+        Random random = new Random(1);
+        long time = 0;
+        while (!detector.isCalibrated())
+        {
+            assertFalse(detector.add(time, FLOOR + NOISE * 2 * (float) random.nextGaussian()));
+            time += 2000000;
+        }
+        assertEquals(FLOOR, detector.getFloor(), 0.01f);
+        assertTrue(detector.getDeviation() > NOISE);
+        assertTrue(detector.getDeviation() < NOISE * 4);
+    }
+
+    /**
+     * Tests that noise and slow or lasting changes in the floor are not taken
+     * as lines. <br>
+     * Test method for {@link main.EdgeDetector#add(long, float)}.
+     */
+    @Test
+    public void testFloorChanges()
+    {
+        EdgeDetector detector = new EdgeDetector();
+        Random random = new Random(2);
+        long time = 0;
+        int lines = 0;
+        for (int i = 0; i < 20000; i++)
+        {
+            // slow drift, then a step to a brighter tile halfway through
+            float floor = FLOOR + 0.05f * (float) Math.sin(i / 2000.0) + (i > 10000 ? 0.1f : 0);
+            if (detector.add(time, floor + NOISE * (float) random.nextGaussian()))
+            {
+                lines++;
+            }
+            time += 2000000;
+        }
+        assertEquals(0, lines);
+        assertEquals(FLOOR + 0.1f, detector.getFloor(), 0.05f);
+    }
+
+    /**
+     * Tests that lines are found at both sampling rates, and that their
+     * times are interpolated well within a sample period. <br>
+     * Test method for {@link main.EdgeDetector#getLineTime()}.
+     */
+    @Test
+    public void testLineTime()
+    {
+        float slowError = crossLines(LineDetector.UPDATE_PERIOD, 20, 3);
+        float fastError = crossLines(LineDetector.HIGH_RATE_PERIOD, 40, 4);
+        assertTrue(slowError < LineDetector.UPDATE_PERIOD / 4f);
+        assertTrue(fastError < LineDetector.HIGH_RATE_PERIOD / 2f);
+    }
+
+    /**
+     * Tests that lines are found at the slow speeds the robot drives and
+     * turns at, where a line lasts hundreds of samples at the high rate, and
+     * that their positions are interpolated to within a millimetre. <br>
+     * Test method for {@link main.EdgeDetector#add(long, float)}.
+     */
+    @Test
+    public void testSlowLines()
+    {
+        for (int speed = 3; speed <= 6; speed++)
+        {
+            float error = crossLines(LineDetector.HIGH_RATE_PERIOD, speed, speed);
+            assertTrue(error * speed / 1000 < 0.1f);
+        }
+        crossLines(LineDetector.UPDATE_PERIOD, 3, 7);
+    }
+
+    /**
+     * Drives a simulated sensor over many lines at random sample phases.
+     * 
+     * @return the mean error in the line times in ms.
+     */
+    private static float crossLines(int period, float speed, long seed)
+    {
+        EdgeDetector detector = new EdgeDetector();
+        Random random = new Random(seed);
+        long periodNs = period * 1000000L;
+        // lines are spaced so the floor is seen for a while between them
+        float spacing = 10;
+        long time = random.nextInt((int) periodNs);
+        double errorTotal = 0;
+        int found = 0;
+        for (int line = 1; line <= CROSSING_COUNT; line++)
+        {
+            float lineX = line * spacing;
+            long lineTime = (long) (lineX / speed * 1e9);
+            long endTime = (long) ((lineX + spacing / 2) / speed * 1e9);
+            for (; time < endTime; time += periodNs)
+            {
+                float x = time / 1e9f * speed;
+                float value = brightness(x - lineX) + NOISE * (float) random.nextGaussian();
+                if (detector.add(time, value))
+                {
+                    errorTotal += Math.abs(detector.getLineTime() - lineTime) / 1e6;
+                    found++;
+                    assertTrue(detector.getLineDepth() < 0);
+                }
+            }
+        }
+        // the first line may be crossed while calibrating
+        assertTrue(found >= CROSSING_COUNT - 1);
+        return (float) (errorTotal / found);
+    }
+
+    /**
+     * @return the brightness seen with the sensor spot centered a distance
+     *         from the center of a line.
+     */
+    private static float brightness(float offset)
+    {
+        float overlap = Math.min(offset + SPOT_WIDTH / 2, LINE_WIDTH / 2) - Math.max(offset - SPOT_WIDTH / 2, -LINE_WIDTH / 2);
+        float covered = Math.max(0, overlap) / SPOT_WIDTH;
+        return FLOOR + (LINE - FLOOR) * covered;
+    }
+}
@@ -0,0 +1,44 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class ExponentialFilterTest
+{
+    /**
+     * Test method for {@link main.ExponentialFilter#add(float)}.
+     */
+    @Test
+    public void testAdd()
+    {
+        ExponentialFilter filter = new ExponentialFilter(0.5f);
+        assertEquals(0f, filter.getValue(), 0);
+        assertEquals(10f, filter.add(10), 0);
+        assertEquals(15f, filter.add(20), 0);
+        assertEquals(17.5f, filter.add(20), 0);
+
+        filter.clear();
+        assertEquals(4f, filter.add(4), 0);
+    }
+
+    /**
+     * Test method for {@link main.ExponentialFilter#fromTimeConstant(float, float)}.
+     */
+    @Test
+    public void testFromTimeConstant()
+    {
+        ExponentialFilter filter = ExponentialFilter.fromTimeConstant(100, 10);
+        filter.add(0);
+        float value = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            value = filter.add(1);
+        }
+        assertEquals(1 - Math.exp(-1), value, 0.0001);
+    }
+}
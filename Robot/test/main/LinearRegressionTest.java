@@ -0,0 +1,90 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class LinearRegressionTest
+{
+    /**
+     * Test method for {@link main.LinearRegression#slope()}.
+     */
+    @Test
+    public void testSlope()
+    {
+        LinearRegression regression = new LinearRegression();
+        regression.addPoint(new Vector2(300, 100));
+        regression.addPoint(new Vector2(302, 101));
+        regression.addPoint(new Vector2(304, 102));
+        assertEquals(0.5f, regression.slope(), 0.0001f);
+        assertEquals(3, regression.sampleSize());
+        assertEquals(300f, regression.getFirst().getX(), 0);
+        assertEquals(102f, regression.getLast().getY(), 0);
+
+        regression.clearList();
+        assertEquals(0, regression.sampleSize());
+        assertNull(regression.getLast());
+    }
+
+    /**
+     * Tests that headings are found for lines in every direction, including
+     * along the y-axis. <br>
+     * Test method for {@link main.LinearRegression#heading()}.
+     */
+    @Test
+    public void testHeading()
+    {
+        Random random = new Random(1);
+        LinearRegression regression = new LinearRegression();
+        assertTrue(Float.isNaN(regression.heading()));
+
+        for (int angle = 0; angle < 360; angle += 15)
+        {
+            regression.clearList();
+            Vector2 direction = Vector2.fromPolar(angle, 1);
+            for (int i = 0; i < 10; i++)
+            {
+                float noise = (float) random.nextGaussian() * 0.2f;
+                regression.addPoint(100 + direction.getX() * i * 10 - direction.getY() * noise,
+                                    200 + direction.getY() * i * 10 + direction.getX() * noise);
+            }
+            assertEquals(0, Utils.toBearing(regression.heading() - angle), 1);
+        }
+    }
+
+    /**
+     * Tests that only the most recent points are fitted when limited to a
+     * window. <br>
+     * Test method for {@link main.LinearRegression#addPoint(float, float)}.
+     */
+    @Test
+    public void testWindow()
+    {
+        LinearRegression regression = new LinearRegression(3);
+        regression.addPoint(0, 0);
+        regression.addPoint(10, 0);
+        regression.addPoint(20, 0);
+        assertEquals(0f, regression.heading(), 0.001f);
+
+        // turn to drive along the y-axis
+        regression.addPoint(20, 10);
+        regression.addPoint(20, 20);
+        regression.addPoint(20, 30);
+        assertEquals(3, regression.sampleSize());
+        assertEquals(90f, regression.heading(), 0.001f);
+        assertEquals(20f, regression.getFirst().getX(), 0);
+        assertEquals(10f, regression.getFirst().getY(), 0);
+
+        // sums are kept right through many evictions
+        for (int i = 0; i < 100000; i++)
+        {
+            regression.addPoint(300 - i * 0.001f, 250);
+        }
+        assertEquals(180f, regression.heading(), 0.01f);
+    }
+}
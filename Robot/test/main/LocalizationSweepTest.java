@@ -0,0 +1,255 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.security.InvalidParameterException;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class LocalizationSweepTest
+{
+    // the distance below which a wall is seen, as used by Main
+    private static final float THRESHOLD = 45;
+    private static final float MIN_SPAN = 90;
+    // the angle between the main and upper sensors
+    private static final float LAG = 90;
+    // the distance read when nothing is in range
+    private static final float NO_ECHO = 255;
+    // the time between readings of each sensor in s, read in turn
+    private static final float READING_PERIOD = UltrasonicPoller.UPDATE_PERIOD * 2 / 1000f;
+    // the number of start headings simulated
+    private static final int TRIALS = 500;
+
+    /**
+     * Tests that the walls are found between interpolated edges, and that
+     * a short span such as a block is not taken as the walls. <br>
+     * Test method for {@link main.LocalizationSweep#findWalls(float, float)}.
+     */
+    @Test
+    public void testFindWalls()
+    {
+        LocalizationSweep sweep = new LocalizationSweep(64, 0);
+        sweep.reset(0);
+        for (int angle = 0; angle <= 300; angle += 10)
+        {
+            // a block from 20 to 50 degrees and the walls from 100 to 290
+            boolean low = (angle > 20 && angle < 50) || (angle > 100 && angle < 290);
+            sweep.addLeading(angle, low ? 25 : 65);
+        }
+        assertTrue(sweep.findWalls(THRESHOLD, MIN_SPAN));
+        assertEquals(105f, sweep.getFallingAngle(), 0.001f);
+        assertEquals(285f, sweep.getRisingAngle(), 0.001f);
+        assertFalse(sweep.findWalls(THRESHOLD, 200));
+        assertTrue(Float.isNaN(sweep.getFallingAngle()));
+
+        // no rising edge has been seen yet
+        sweep.reset(0);
+        for (int angle = 0; angle <= 200; angle += 10)
+        {
+            sweep.addLeading(angle, angle > 100 ? 25 : 65);
+        }
+        assertFalse(sweep.findWalls(THRESHOLD, MIN_SPAN));
+    }
+
+    /**
+     * Tests that once a whole revolution is covered, walls spanning the
+     * start of the sweep are found. <br>
+     * Test method for {@link main.LocalizationSweep#findWalls(float, float)}.
+     */
+    @Test
+    public void testFindWallsWrapped()
+    {
+        LocalizationSweep sweep = new LocalizationSweep(64, 0);
+        sweep.reset(0);
+        for (int angle = 0; angle < 360; angle += 10)
+        {
+            sweep.addLeading(angle, angle < 100 || angle > 260 ? 25 : 65);
+            assertFalse(sweep.findWalls(THRESHOLD, MIN_SPAN));
+        }
+        sweep.addLeading(360, 25);
+        assertTrue(sweep.findWalls(THRESHOLD, MIN_SPAN));
+        assertEquals(265f, sweep.getFallingAngle(), 0.001f);
+        assertEquals(455f, sweep.getRisingAngle(), 0.001f);
+    }
+
+    /**
+     * Tests that the trailing sensor's readings come before the leading
+     * sensor's, and are only kept until it reaches where the leading sensor
+     * started. <br>
+     * Test method for {@link main.LocalizationSweep#addTrailing(float, float)}.
+     */
+    @Test
+    public void testAddTrailing()
+    {
+        LocalizationSweep sweep = new LocalizationSweep(64, LAG);
+        sweep.reset(10);
+        for (int turned = 0; turned <= 80; turned += 20)
+        {
+            sweep.addTrailing(10 + turned, 1);
+            sweep.addLeading(10 + LAG + turned + 5, 2);
+        }
+        assertEquals(0f, sweep.getCoverage(), 0);
+
+        sweep.addTrailing(10 + LAG + 50, 1);
+        float previous = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < sweep.size(); i++)
+        {
+            assertTrue(sweep.getAngle(i) > previous);
+            assertEquals(sweep.getAngle(i) < 10 + LAG ? 1f : 2f, sweep.getDistance(i), 0);
+            previous = sweep.getAngle(i);
+        }
+        assertEquals(10f, sweep.getAngle(0), 0);
+        assertEquals(LAG + 80 + 5, sweep.getCoverage(), 0.001f);
+    }
+
+    /**
+     * Tests that distances are interpolated between readings, for any
+     * multiple of a revolution, and are not given outside of the sweep. <br>
+     * Test method for {@link main.LocalizationSweep#getDistanceAt(float)}.
+     */
+    @Test
+    public void testGetDistanceAt()
+    {
+        LocalizationSweep sweep = new LocalizationSweep(64, 0);
+        sweep.reset(0);
+        for (int angle = 100; angle <= 200; angle += 10)
+        {
+            sweep.addLeading(angle, angle);
+        }
+        assertEquals(100f, sweep.getDistanceAt(100), 0.001f);
+        assertEquals(133f, sweep.getDistanceAt(133), 0.001f);
+        assertEquals(133f, sweep.getDistanceAt(133 - 720), 0.001f);
+        assertEquals(200f, sweep.getDistanceAt(200), 0.001f);
+        assertTrue(Float.isNaN(sweep.getDistanceAt(201)));
+        assertTrue(Float.isNaN(sweep.getDistanceAt(99)));
+    }
+
+    /**
+     * Tests that invalid arguments are rejected. <br>
+     * Test method for {@link main.LocalizationSweep#LocalizationSweep(int, float)}.
+     */
+    @Test(expected = InvalidParameterException.class)
+    public void testInvalid()
+    {
+        new LocalizationSweep(1, LAG);
+    }
+
+    /**
+     * Tests that turning at the fast speed from any heading finds the walls
+     * of a start corner within three quarters of a revolution, with edges
+     * and distances as accurate as a slow full revolution, in less time. <br>
+     * Test method for {@link main.LocalizationSweep#findWalls(float, float)}.
+     */
+    @Test
+    public void testSimulatedCorner()
+    {
+        Random random = new Random(11);
+        LocalizationSweep sweep = new LocalizationSweep(512, LAG);
+        float fastRate = turnRate(Robot.FAST_LOCALIZATION_SPEED);
+        float slowRate = turnRate(Robot.LOCALIZATION_SPEED);
+
+        float maxTurned = 0;
+        float maxEdgeError = 0;
+        float maxDistanceError = 0;
+        for (int trial = 0; trial < TRIALS; trial++)
+        {
+            // somewhere in the corner tile, facing any direction
+            float x = 8 + random.nextFloat() * 15;
+            float y = 8 + random.nextFloat() * 15;
+            float heading = random.nextFloat() * 360;
+
+            float turned = sweep(sweep, x, y, heading, fastRate * READING_PERIOD / 2);
+            assertTrue(turned <= 270 + fastRate * READING_PERIOD);
+            maxTurned = Math.max(maxTurned, turned);
+
+            float falling = findCrossing(x, y, 90, true);
+            float rising = findCrossing(x, y, 270, false);
+            maxEdgeError = Math.max(maxEdgeError, Math.abs(Utils.toBearing(sweep.getFallingAngle() + heading - falling)));
+            maxEdgeError = Math.max(maxEdgeError, Math.abs(Utils.toBearing(sweep.getRisingAngle() + heading - rising)));
+            maxDistanceError = Math.max(maxDistanceError, Math.abs(sweep.getDistanceAt(180 - heading) - x));
+            maxDistanceError = Math.max(maxDistanceError, Math.abs(sweep.getDistanceAt(270 - heading) - y));
+        }
+        assertTrue(maxEdgeError < 0.5f);
+        assertTrue(maxDistanceError < 0.5f);
+        assertTrue(maxTurned / fastRate < 360 / slowRate);
+    }
+
+    /**
+     * Simulates turning in a corner until the walls are found, with the
+     * sensors read in turn.
+     * 
+     * @return the angle turned in degrees.
+     */
+    private static float sweep(LocalizationSweep sweep, float x, float y, float heading, float step)
+    {
+        sweep.reset(0);
+        float turned = 0;
+        for (int i = 0; turned < 360; i++)
+        {
+            if (i % 2 == 0)
+            {
+                sweep.addTrailing(turned, range(x, y, heading + turned));
+            }
+            else
+            {
+                sweep.addLeading(turned + LAG, range(x, y, heading + turned + LAG));
+            }
+            if (sweep.findWalls(THRESHOLD, MIN_SPAN))
+            {
+                return turned;
+            }
+            turned += step;
+        }
+        fail();
+        return turned;
+    }
+
+    /**
+     * @return the distance seen in a direction from a point in a corner,
+     *         with walls along both axes.
+     */
+    private static float range(float x, float y, float angle)
+    {
+        double radians = Math.toRadians(angle);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float range = NO_ECHO;
+        if (cos < 0)
+        {
+            range = Math.min(range, -x / cos);
+        }
+        if (sin < 0)
+        {
+            range = Math.min(range, -y / sin);
+        }
+        return range;
+    }
+
+    /**
+     * @return the first direction in degrees after a start direction at
+     *         which the distance from a point falls below or rises above
+     *         the threshold.
+     */
+    private static float findCrossing(float x, float y, float start, boolean falling)
+    {
+        float angle = start;
+        while ((range(x, y, angle) < THRESHOLD) != falling)
+        {
+            angle += 0.001f;
+        }
+        return angle;
+    }
+
+    /**
+     * @return the robot's turning rate in degrees per second for a wheel
+     *         speed in degrees per second.
+     */
+    private static float turnRate(int wheelSpeed)
+    {
+        return wheelSpeed * Robot.WHEEL_RADIUS / (Robot.WHEEL_TRACK / 2);
+    }
+}
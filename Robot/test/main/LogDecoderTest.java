@@ -0,0 +1,98 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class LogDecoderTest
+{
+    /**
+     * Tests that times are printed relative to the first record, and that
+     * unknown events are still printed. <br>
+     * Test method for {@link main.LogDecoder#decode(java.io.DataInput, PrintStream)}.
+     */
+    @Test
+    public void testDecode() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Logger.writeHeader(out);
+        writeRecord(out, Logger.Event.Destination.ordinal(), 1000000000L, 20, 45);
+        writeRecord(out, 200, 1002500000L, 0, 0);
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        assertEquals(2, LogDecoder.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), new PrintStream(text)));
+        String[] lines = text.toString().trim().split("\n");
+        assertEquals("0.000\tplanning on traveling: 20.0 at angle 45.0", lines[0].trim());
+        assertEquals("2.500\tunknown event 200", lines[1].trim());
+    }
+
+    /**
+     * Test method for {@link main.LogDecoder#decode(java.io.DataInput, PrintStream)}.
+     */
+    @Test(expected = IOException.class)
+    public void testDecodeBadHeader() throws IOException
+    {
+        byte[] bytes = new byte[8];
+        LogDecoder.decode(new DataInputStream(new ByteArrayInputStream(bytes)), new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    /**
+     * Tests that sweeps are read back with their readings and labels, and
+     * other events are skipped. <br>
+     * Test method for {@link main.LogDecoder#readSweeps(java.io.DataInput, List)}.
+     */
+    @Test
+    public void testReadSweeps() throws IOException
+    {
+        Logger logger = new Logger("unused", 64);
+        logger.log(Logger.Event.SweepStart, 0, 90, 0);
+        logger.log(Logger.Event.SweepReading, 100, 1.5f, 30, 0);
+        logger.log(Logger.Event.SweepPoint, 0, 1.5f, 30);
+        logger.log(Logger.Event.SweepReading, 200, 2.5f, 55, 0);
+        logger.log(Logger.Event.SweepLabel, 1, 40, 25);
+        logger.log(Logger.Event.SweepStart, 45, 90, 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Logger.writeHeader(out);
+        logger.drain(out);
+
+        List<RecordedSweep> sweeps = new ArrayList<RecordedSweep>();
+        assertEquals(2, LogDecoder.readSweeps(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), sweeps));
+        RecordedSweep sweep = sweeps.get(0);
+        assertEquals(90f, sweep.getWidth(), 0);
+        assertEquals(2, sweep.size());
+        assertEquals(200, sweep.getTime(1));
+        assertEquals(2.5f, sweep.getAngle(1), 0);
+        assertEquals(55f, sweep.getDistance(1), 0);
+        assertEquals(RecordedSweep.Label.Block, sweep.getLabel());
+        assertEquals(40f, sweep.getBlockAngle(), 0);
+        assertEquals(RecordedSweep.Label.Unknown, sweeps.get(1).getLabel());
+        assertEquals(45f, sweeps.get(1).getStartAngle(), 0);
+    }
+
+    /**
+     * Writes a record laid out as the logger does.
+     */
+    private static void writeRecord(DataOutputStream out, int event, long time, float value0, float value1) throws IOException
+    {
+        out.writeByte(event);
+        out.writeLong(time);
+        out.writeFloat(value0);
+        out.writeFloat(value1);
+        out.writeFloat(0);
+    }
+}
@@ -0,0 +1,107 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class LoggerTest
+{
+    // the size in bytes of each record in a log file
+    private static final int RECORD_SIZE = 21;
+    // the number of points in a search sweep
+    static final int SWEEP_POINTS = 181;
+
+    /**
+     * Tests that logged records are written in order and decoded to text.
+     * <br>
+     * Test method for {@link main.Logger#drain(java.io.DataOutput)}.
+     */
+    @Test
+    public void testDrain() throws IOException
+    {
+        Logger logger = new Logger("unused", 8);
+        assertTrue(logger.log(Logger.Event.SweepPoint, 3, 45.5f, 30));
+        assertTrue(logger.log(Logger.Event.Destination, 25, 85, 0));
+        assertEquals(2, logger.size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Logger.writeHeader(out);
+        assertEquals(2, logger.drain(out));
+        assertEquals(0, logger.size());
+        assertEquals(0, logger.drain(out));
+        assertEquals(8 + 2 * RECORD_SIZE, bytes.size());
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        int count = LogDecoder.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), new PrintStream(text));
+        assertEquals(2, count);
+        String[] lines = text.toString().trim().split("\n");
+        assertTrue(lines[0].endsWith("sweep point 3: angle 45.5 distance 30.0"));
+        assertTrue(lines[1].endsWith("planning on traveling: 25.0 at angle 85.0"));
+    }
+
+    /**
+     * Tests that records are dropped rather than waiting once full. <br>
+     * Test method for {@link main.Logger#log(Logger.Event, float, float, float)}.
+     */
+    @Test
+    public void testFull() throws IOException
+    {
+        Logger logger = new Logger("unused", 4);
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(logger.log(Logger.Event.Destination, i));
+        }
+        assertFalse(logger.log(Logger.Event.Destination, 4));
+        assertEquals(1, logger.getDroppedCount());
+
+        logger.drain(new DataOutputStream(new ByteArrayOutputStream()));
+        assertTrue(logger.log(Logger.Event.Destination, 5));
+    }
+
+    /**
+     * Tests that a whole search sweep fits in a logger of the default
+     * capacity without dropping records. <br>
+     * Test method for {@link main.Logger#log(Logger.Event, float, float, float)}.
+     */
+    @Test
+    public void testSweepFits() throws IOException
+    {
+        Logger logger = new Logger("unused", Logger.DEFAULT_CAPACITY);
+        DataOutputStream out = new DataOutputStream(new ByteArrayOutputStream());
+        for (int i = 0; i < 2; i++)
+        {
+            logSweep(logger);
+            assertEquals(2 * SWEEP_POINTS + 3, logger.drain(out));
+        }
+        assertEquals(0, logger.getDroppedCount());
+    }
+
+    /**
+     * Logs a sweep as the search does.
+     */
+    static void logSweep(Logger logger)
+    {
+        for (int i = 0; i < SWEEP_POINTS; i++)
+        {
+            logger.log(Logger.Event.SweepPoint, i, i * 0.5f, 55);
+        }
+        for (int i = 0; i < SWEEP_POINTS; i++)
+        {
+            logger.log(Logger.Event.SanitizedPoint, i, i * 0.5f, 55);
+        }
+        logger.log(Logger.Event.Discontinuity, 0, 40, 25);
+        logger.log(Logger.Event.Discontinuity, 1, 55, 55);
+        logger.log(Logger.Event.Destination, 25, 47.5f, 0);
+    }
+}
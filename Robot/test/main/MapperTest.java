@@ -0,0 +1,33 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class MapperTest
+{
+    /**
+     * Tests that a reading is traced from the sensor's position and direction
+     * at the robot's pose. <br>
+     * Test method for {@link main.Mapper#addReading(OccupancyGrid, float[], float, float, float, float)}.
+     */
+    @Test
+    public void testAddReading()
+    {
+        OccupancyGrid grid = new OccupancyGrid(Board.WALL_LOWER, Board.WALL_LOWER, Board.WALL_UPPER - Board.WALL_LOWER, Mapper.RESOLUTION);
+        // facing up the board, with a sensor 9 cm to the left facing left
+        float[] pose = { 100, 100, 90 };
+        for (int i = 0; i < 6; i++)
+        {
+            Mapper.addReading(grid, pose, -1, 9, 90, 30);
+        }
+        // the sensor is at (91, 99) facing -x
+        assertTrue(grid.isOccupied(61, 99));
+        assertTrue(grid.isFree(80, 99));
+        assertFalse(grid.isOccupied(100, 130));
+    }
+}
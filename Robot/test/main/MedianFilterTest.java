@@ -0,0 +1,60 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class MedianFilterTest
+{
+    /**
+     * Test method for {@link main.MedianFilter#add(float)}.
+     */
+    @Test
+    public void testAdd()
+    {
+        MedianFilter filter = new MedianFilter(3);
+        assertEquals(0f, filter.getMedian(), 0);
+        assertEquals(5f, filter.add(5), 0);
+        assertEquals(3f, filter.add(1), 0);
+        assertEquals(5f, filter.add(200), 0);
+        // a single spike is rejected
+        assertEquals(6f, filter.add(6), 0);
+        assertEquals(7f, filter.add(7), 0);
+    }
+
+    /**
+     * Checks the median against one found by sorting the window. <br>
+     * Test method for {@link main.MedianFilter#add(float)}.
+     */
+    @Test
+    public void testAgainstSort()
+    {
+        Random random = new Random(1);
+        for (int size = 1; size <= 8; size++)
+        {
+            MedianFilter filter = new MedianFilter(size);
+            for (int i = 0; i < 500; i++)
+            {
+                // repeated values test removing the right copy
+                float median = filter.add(random.nextInt(10));
+
+                RingBuffer window = filter.getWindow();
+                float[] sorted = new float[window.size()];
+                for (int j = 0; j < sorted.length; j++)
+                {
+                    sorted[j] = window.get(j);
+                }
+                Arrays.sort(sorted);
+                int middle = sorted.length / 2;
+                float expected = sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+                assertEquals(expected, median, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.security.InvalidParameterException;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class OccupancyGridTest
+{
+    // the size of the board the grid covers
+    static final float MIN = Board.WALL_LOWER;
+    static final float SIZE = Board.WALL_UPPER - Board.WALL_LOWER;
+    static final float RESOLUTION = 2;
+    static final float MAX_RANGE = 80;
+
+    /**
+     * Tests that the cells a reading passes through become free and the cell
+     * it hits becomes occupied. <br>
+     * Test method for {@link main.OccupancyGrid#update(float, float, float, float, float)}.
+     */
+    @Test
+    public void testUpdate()
+    {
+        OccupancyGrid grid = new OccupancyGrid(MIN, MIN, SIZE, RESOLUTION);
+        for (int i = 0; i < 6; i++)
+        {
+            grid.update(10, 10, 45, 40, MAX_RANGE);
+        }
+        float hitX = 10 + 40 * (float) Math.cos(Math.PI / 4);
+        float hitY = 10 + 40 * (float) Math.sin(Math.PI / 4);
+        assertTrue(grid.isOccupied(hitX, hitY));
+        assertTrue(grid.getProbability(hitX, hitY) > 0.9f);
+        assertTrue(grid.isFree(10, 10));
+        assertTrue(grid.isFree(20, 20));
+        assertFalse(grid.isFree(40, 10));
+        assertEquals(0.5f, grid.getProbability(40, 10), 0.0001f);
+
+        // a wall is cleared once seen through enough times
+        for (int i = 0; i < 20; i++)
+        {
+            grid.update(hitX - 10, hitY, 0, 40, MAX_RANGE);
+        }
+        assertFalse(grid.isOccupied(hitX, hitY));
+
+        grid.clear();
+        assertEquals(0, grid.getLogOdds(hitX, hitY));
+    }
+
+    /**
+     * Tests that readings beyond the trusted range only clear cells up to it,
+     * in each direction. <br>
+     * Test method for {@link main.OccupancyGrid#update(float, float, float, float, float)}.
+     */
+    @Test
+    public void testUpdateMaxRange()
+    {
+        OccupancyGrid grid = new OccupancyGrid(MIN, MIN, SIZE, RESOLUTION);
+        for (int angle = 0; angle < 360; angle += 90)
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                grid.update(150, 150, angle, UltrasonicPoller.MAX_RANGE, MAX_RANGE);
+            }
+            double radians = Math.toRadians(angle);
+            float x = 150 + (float) Math.cos(radians) * (MAX_RANGE - 1);
+            float y = 150 + (float) Math.sin(radians) * (MAX_RANGE - 1);
+            assertTrue(grid.isFree(x, y));
+            x = 150 + (float) Math.cos(radians) * (MAX_RANGE + 3);
+            y = 150 + (float) Math.sin(radians) * (MAX_RANGE + 3);
+            assertEquals(0, grid.getLogOdds(x, y));
+        }
+    }
+
+    /**
+     * Tests that readings leaving the board are safely cut off. <br>
+     * Test method for {@link main.OccupancyGrid#update(float, float, float, float, float)}.
+     */
+    @Test
+    public void testUpdateOutside()
+    {
+        OccupancyGrid grid = new OccupancyGrid(MIN, MIN, SIZE, RESOLUTION);
+        grid.update(MIN + 5, MIN + 5, 225, 40, MAX_RANGE);
+        grid.update(MIN - 50, MIN - 50, 45, 40, MAX_RANGE);
+        assertTrue(grid.getLogOdds(MIN + 5, MIN + 5) < 0);
+        assertEquals(0, grid.getLogOdds(MIN - 5, MIN - 5));
+    }
+
+    /**
+     * Test method for {@link main.OccupancyGrid#OccupancyGrid(float, float, float, float)}.
+     */
+    @Test(expected = InvalidParameterException.class)
+    public void testConstructor()
+    {
+        new OccupancyGrid(0, 0, SIZE, 0);
+    }
+
+    /**
+     * Tests that the grid has a cell for each step of the resolution across
+     * the board, including both walls. <br>
+     * Test method for {@link main.OccupancyGrid#getWidth()}.
+     */
+    @Test
+    public void testSize()
+    {
+        OccupancyGrid grid = new OccupancyGrid(MIN, MIN, SIZE, RESOLUTION);
+        assertEquals(183, grid.getWidth());
+        assertEquals(183, grid.getHeight());
+    }
+}
@@ -0,0 +1,532 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class OdometerTest
+{
+    // number of updates made by the writer thread in the stress test
+    private static final int UPDATE_COUNT = 200000;
+    // number of ticks run while counting allocations
+    private static final int ALLOCATION_TICKS = 100000;
+
+    /**
+     * Tests that wheel movements are integrated into the pose. <br>
+     * Test method for {@link main.Odometer#integrate(double, double)}.
+     */
+    @Test
+    public void testIntegrate()
+    {
+        Odometer odometer = new Odometer();
+        odometer.setTheta(90);
+        odometer.integrate(10, 10);
+
+        Pose pose = odometer.getPose();
+        assertEquals(0f, pose.getX(), 0.0001f);
+        assertEquals(10f, pose.getY(), 0.0001f);
+        assertEquals(90f, pose.getTheta(), 0f);
+    }
+
+    /**
+     * Tests that every change publishes a pose with a larger sequence number.
+     * <br>
+     * Test method for {@link main.Odometer#getPose()}.
+     */
+    @Test
+    public void testSequence()
+    {
+        Odometer odometer = new Odometer();
+        Pose first = odometer.getPose();
+        odometer.integrate(1, 1);
+        odometer.setPosition(new Vector2(3, 4));
+        odometer.translate(new Vector2(1, -1));
+        Pose last = odometer.getPose();
+
+        assertEquals(first.getSequence() + 3, last.getSequence());
+        assertTrue(last.getTimestamp() >= first.getTimestamp());
+        assertEquals(4f, last.getX(), 0f);
+        assertEquals(3f, last.getY(), 0f);
+    }
+
+    /**
+     * Tests that a constant speed arc ends at the exact position when using
+     * arc integration. <br>
+     * Test method for {@link main.Odometer#integrate(double, double)}.
+     */
+    @Test
+    public void testExactArc()
+    {
+        Odometer odometer = new Odometer();
+        odometer.setIntegration(Odometer.Integration.ExactArc);
+
+        // a quarter circle of radius equal to the wheel track
+        double radius = Robot.WHEEL_TRACK;
+        double distL = (radius - Robot.WHEEL_TRACK / 2) * Math.PI / 2;
+        double distR = (radius + Robot.WHEEL_TRACK / 2) * Math.PI / 2;
+        odometer.integrate(distL, distR);
+
+        Pose pose = odometer.getPose();
+        assertEquals(radius, pose.getX(), 0.001f);
+        assertEquals(radius, pose.getY(), 0.001f);
+        assertEquals(90f, pose.getTheta(), 0.001f);
+    }
+
+    /**
+     * Simulates a differential drive following a winding path at several
+     * speeds, and tests that the higher order integration methods drift less
+     * from the true position. <br>
+     * Test method for {@link main.Odometer#integrate(double, double)}.
+     */
+    @Test
+    public void testIntegrationDrift()
+    {
+        int[] speeds = { 150, 300, 450, 600 };
+        Odometer.Integration[] methods = Odometer.Integration.values();
+        float[][] errors = new float[methods.length][speeds.length];
+        float[] drift = new float[2];
+
+        for (int s = 0; s < speeds.length; s++)
+        {
+            for (int m = 0; m < methods.length; m++)
+            {
+                simulateDrift(methods[m], speeds[s], Odometer.UPDATE_PERIOD, drift);
+                errors[m][s] = drift[0];
+            }
+        }
+
+        // the higher order methods must drift less at speed
+        int fastest = speeds.length - 1;
+        assertTrue(errors[Odometer.Integration.Midpoint.ordinal()][fastest] < errors[Odometer.Integration.SmallAngle.ordinal()][fastest]);
+        assertTrue(errors[Odometer.Integration.ExactArc.ordinal()][fastest] < errors[Odometer.Integration.SmallAngle.ordinal()][fastest]);
+    }
+
+    /**
+     * Drives a simulated robot along a winding path for 20 s and integrates
+     * its tachometer readings.
+     * 
+     * @param method
+     *            the integration method the odometer uses.
+     * @param speed
+     *            the speed of the faster wheel in deg/s.
+     * @param period
+     *            the odometer update period in ms.
+     * @param drift
+     *            returns the distance between the true and odometer positions
+     *            in cm, then the difference in heading in degrees.
+     */
+    static void simulateDrift(Odometer.Integration method, int speed, int period, float[] drift)
+    {
+        Odometer odometer = new Odometer();
+        odometer.setIntegration(method);
+
+        // the true transform, integrated in small steps
+        double x = 0;
+        double y = 0;
+        double theta = 0;
+        double wheelL = 0;
+        double wheelR = 0;
+        int lastTachoL = 0;
+        int lastTachoR = 0;
+
+        double step = 0.0001;
+        int stepsPerUpdate = (int) Math.round(period / 1000.0 / step);
+        for (int i = 0; i < 20 * 1000 / period; i++)
+        {
+            for (int j = 0; j < stepsPerUpdate; j++)
+            {
+                // the right wheel speed varies so the robot keeps turning
+                double time = (i * stepsPerUpdate + j) * step;
+                double speedL = speed;
+                double speedR = speed * (0.6 + 0.4 * Math.cos(time * Math.PI / 2));
+
+                double distL = Math.toRadians(speedL * step) * Robot.WHEEL_RADIUS;
+                double distR = Math.toRadians(speedR * step) * Robot.WHEEL_RADIUS;
+                double deltaTheta = (distR - distL) / Robot.WHEEL_TRACK;
+                x += 0.5 * (distL + distR) * Math.cos(theta + deltaTheta / 2);
+                y += 0.5 * (distL + distR) * Math.sin(theta + deltaTheta / 2);
+                theta += deltaTheta;
+                wheelL += speedL * step;
+                wheelR += speedR * step;
+            }
+
+            // tachometers only count whole degrees
+            int tachoL = (int) Math.floor(wheelL);
+            int tachoR = (int) Math.floor(wheelR);
+            odometer.integrate(
+                    Math.PI * Robot.WHEEL_RADIUS * (tachoL - lastTachoL) / 180,
+                    Math.PI * Robot.WHEEL_RADIUS * (tachoR - lastTachoR) / 180);
+            lastTachoL = tachoL;
+            lastTachoR = tachoR;
+        }
+
+        Pose pose = odometer.getPose();
+        drift[0] = (float) Math.hypot(pose.getX() - x, pose.getY() - y);
+        drift[1] = Math.abs(Utils.toBearing(pose.getTheta() - (float) Math.toDegrees(theta)));
+    }
+
+    /**
+     * Tests that the update period is shortened while the wheels turn
+     * quickly, on the odometer's own timer and when sampled by a hub. <br>
+     * Test method for {@link main.Odometer#setAdaptivePeriod(boolean)}.
+     */
+    @Test
+    public void testAdaptivePeriod()
+    {
+        Odometer odometer = new Odometer();
+        odometer.setAdaptivePeriod(true);
+        // the wheel travel in 10 ms at 300 and 100 deg/s
+        double fast = Math.toRadians(3) * Robot.WHEEL_RADIUS;
+        double slow = Math.toRadians(1) * Robot.WHEEL_RADIUS;
+        long period = 10000000L;
+
+        odometer.adaptPeriod(0, 0, 0);
+        odometer.adaptPeriod(fast, fast, period);
+        assertEquals(Odometer.FAST_UPDATE_PERIOD, odometer.getTimer().getPeriod());
+        odometer.adaptPeriod(slow, -slow, period * 2);
+        assertEquals(Odometer.UPDATE_PERIOD, odometer.getTimer().getPeriod());
+
+        SensorHub hub = new SensorHub();
+        hub.add(odometer, 5);
+        odometer.setSensorHub(hub);
+        assertEquals(5 * SensorHub.BASE_PERIOD, odometer.getTimer().getPeriod());
+        odometer.adaptPeriod(slow, slow, period * 3);
+        assertEquals(Odometer.UPDATE_PERIOD / SensorHub.BASE_PERIOD, hub.getDivisor(odometer));
+        odometer.adaptPeriod(-fast, fast, period * 4);
+        assertEquals(Odometer.FAST_UPDATE_PERIOD / SensorHub.BASE_PERIOD, hub.getDivisor(odometer));
+
+        odometer.setAdaptivePeriod(false);
+        assertEquals(Odometer.UPDATE_PERIOD / SensorHub.BASE_PERIOD, hub.getDivisor(odometer));
+    }
+
+    /**
+     * Tests the allocation free transforms against the vector versions. <br>
+     * Test method for {@link main.Odometer#toWorldSpace(float, float, float[])}.
+     */
+    @Test
+    public void testTransforms()
+    {
+        Odometer odometer = new Odometer();
+        odometer.setPosition(new Vector2(12, -3));
+        odometer.setTheta(30);
+        float[] out = new float[3];
+
+        Vector2 world = odometer.toWorldSpace(new Vector2(5, 2));
+        odometer.toWorldSpace(5, 2, out);
+        assertEquals(world.getX(), out[0], 0.0001f);
+        assertEquals(world.getY(), out[1], 0.0001f);
+        assertEquals(30f, out[2], 0f);
+
+        Vector2 local = odometer.toLocalSpace(new Vector2(-7, 4));
+        odometer.toLocalSpace(-7, 4, out);
+        assertEquals(local.getX(), out[0], 0.0001f);
+        assertEquals(local.getY(), out[1], 0.0001f);
+    }
+
+    /**
+     * Counts the bytes allocated by the odometer update and the allocation
+     * free accessors used by the correction and display threads. <br>
+     * Test method for {@link main.Odometer#getPose(float[])}.
+     */
+    @Test
+    public void testNoAllocationPerTick()
+    {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+        {
+            // allocation counting is not supported by this JVM
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        Odometer odometer = new Odometer();
+        float[] out = new float[3];
+
+        // run the ticks once first, so that loading and compiling the classes
+        // involved is not counted
+        tick(odometer, out);
+
+        // the cost of measuring itself
+        long overhead = threads.getThreadAllocatedBytes(threadId);
+        overhead = threads.getThreadAllocatedBytes(threadId) - overhead;
+
+        long start = threads.getThreadAllocatedBytes(threadId);
+        tick(odometer, out);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - start - overhead;
+
+        // even the smallest object allocated each tick would be several bytes
+        // per tick, so anything less is from the JVM rather than the odometer
+        assertTrue("allocated " + allocated + " bytes", allocated < ALLOCATION_TICKS);
+    }
+
+    /**
+     * Runs the odometer update and the allocation free accessors for a number
+     * of ticks.
+     */
+    private static void tick(Odometer odometer, float[] out)
+    {
+        for (int i = 0; i < ALLOCATION_TICKS; i++)
+        {
+            odometer.integrate(0.1, 0.12);
+            odometer.getPose(out);
+            odometer.toWorldSpace(Robot.WHEEL_TRACK, 0, out);
+            odometer.toLocalSpace(out[0], out[1], out);
+            odometer.translate(0.01f, -0.01f);
+        }
+    }
+
+    /**
+     * Tests that poses between updates are interpolated, and that corrections
+     * are applied to past poses. <br>
+     * Test method for {@link main.Odometer#poseAt(long, float[])}.
+     */
+    @Test
+    public void testPoseAt()
+    {
+        Odometer odometer = new Odometer();
+        float[] out = new float[3];
+
+        assertFalse(odometer.poseAt(System.nanoTime(), out));
+
+        odometer.integrate(10, 10);
+        long time1 = odometer.getPose().getTimestamp();
+        Utils.sleep(2);
+        odometer.integrate(10, 10);
+        long time2 = odometer.getPose().getTimestamp();
+
+        long midTime = time1 + (time2 - time1) / 4;
+        float expectedX = 10 + 10 * ((float) (midTime - time1) / (time2 - time1));
+        assertTrue(odometer.poseAt(midTime, out));
+        assertEquals(expectedX, out[0], 0.0001f);
+        assertEquals(0f, out[1], 0.0001f);
+
+        // after the latest update the current pose is used
+        assertTrue(odometer.poseAt(time2 + 1000000000L, out));
+        assertEquals(20f, out[0], 0.0001f);
+
+        // before the oldest update the oldest pose is used
+        assertFalse(odometer.poseAt(time1 - 1, out));
+        assertEquals(10f, out[0], 0.0001f);
+
+        // corrections move the history with the current pose
+        odometer.translate(0, 5);
+        odometer.poseAt(midTime, out);
+        assertEquals(expectedX, out[0], 0.0001f);
+        assertEquals(5f, out[1], 0.0001f);
+
+        odometer.setTheta(90);
+        odometer.poseAt(time1, out);
+        assertEquals(20f, out[0], 0.0001f);
+        assertEquals(-5f, out[1], 0.0001f);
+        assertEquals(90f, out[2], 0.0001f);
+    }
+
+    /**
+     * Tests that headings are interpolated the short way around. <br>
+     * Test method for {@link main.Odometer#poseAt(long, float[])}.
+     */
+    @Test
+    public void testPoseAtWrapsHeading()
+    {
+        Odometer odometer = new Odometer();
+        float[] out = new float[3];
+
+        odometer.setTheta(350);
+        odometer.integrate(0, 0);
+        long time1 = odometer.getPose().getTimestamp();
+        Utils.sleep(2);
+        odometer.integrate(-Math.toRadians(10) * Robot.WHEEL_TRACK, Math.toRadians(10) * Robot.WHEEL_TRACK);
+        long time2 = odometer.getPose().getTimestamp();
+
+        odometer.poseAt(time1 + (time2 - time1) / 2, out);
+        float bearing = Utils.toBearing(out[2]);
+        assertTrue(Math.abs(bearing) < 1f);
+    }
+
+    /**
+     * Tests that triggers fire once their condition is met and are then
+     * removed. <br>
+     * Test method for {@link main.Odometer#addTrigger(PoseTrigger)}.
+     */
+    @Test
+    public void testTriggers()
+    {
+        Odometer odometer = new Odometer();
+        odometer.setPosition(new Vector2(10, 0));
+        PoseTrigger moved = new PoseTrigger(PoseTrigger.Type.Moved, 15);
+        PoseTrigger turned = new PoseTrigger(PoseTrigger.Type.Turned, 45);
+        PoseTrigger entered = new PoseTrigger(Utils.toRect(new Vector2(28, -2), new Vector2(32, 2)));
+        assertTrue(odometer.addTrigger(moved));
+        assertTrue(odometer.addTrigger(turned));
+        assertTrue(odometer.addTrigger(entered));
+
+        odometer.integrate(10, 10);
+        assertFalse(moved.isTriggered());
+        assertFalse(entered.isTriggered());
+        odometer.integrate(10, 10);
+        assertTrue(moved.isTriggered());
+        assertTrue(entered.isTriggered());
+        assertFalse(turned.isTriggered());
+
+        // a fired trigger is no longer checked, so it can be added again
+        assertTrue(odometer.addTrigger(moved));
+        assertFalse(moved.isTriggered());
+
+        double turn = Math.toRadians(30) * Robot.WHEEL_TRACK;
+        odometer.integrate(-turn, turn);
+        assertTrue(turned.isTriggered());
+        assertFalse(moved.isTriggered());
+        odometer.removeTrigger(moved);
+
+        // there is room for a fixed number of triggers only
+        int added = 0;
+        while (odometer.addTrigger(new PoseTrigger(PoseTrigger.Type.Moved, 100)))
+        {
+            added++;
+        }
+        assertTrue(added > 0);
+    }
+
+    /**
+     * Tests that a waiting thread is woken by the update that meets its
+     * condition. <br>
+     * Test method for {@link main.Odometer#waitFor(PoseTrigger, long)}.
+     */
+    @Test
+    public void testWaitFor() throws InterruptedException
+    {
+        final Odometer odometer = new Odometer();
+        final PoseTrigger trigger = new PoseTrigger(PoseTrigger.Type.Moved, 5);
+        final long[] wokenAt = new long[1];
+
+        Thread waiter = new Thread()
+        {
+            public void run()
+            {
+                if (odometer.waitFor(trigger, 5000))
+                {
+                    wokenAt[0] = System.nanoTime();
+                }
+            }
+        };
+        waiter.start();
+
+        // wait for the trigger to be added, then move in small steps
+        while (!waiter.getState().equals(Thread.State.TIMED_WAITING))
+        {
+            Thread.yield();
+        }
+        long triggeredAt = 0;
+        for (int i = 0; i < 10 && !trigger.isTriggered(); i++)
+        {
+            Utils.sleep(5);
+            triggeredAt = System.nanoTime();
+            odometer.integrate(1, 1);
+        }
+        waiter.join(1000);
+
+        assertTrue(trigger.isTriggered());
+        assertTrue(wokenAt[0] != 0);
+        assertTrue(wokenAt[0] >= triggeredAt);
+        assertEquals(6f, odometer.getPose().getX(), 0.0001f);
+    }
+
+    /**
+     * Tests that a wait gives up after its timeout. <br>
+     * Test method for {@link main.Odometer#waitFor(PoseTrigger, long)}.
+     */
+    @Test
+    public void testWaitForTimeout()
+    {
+        Odometer odometer = new Odometer();
+        long start = System.currentTimeMillis();
+        assertFalse(odometer.waitFor(new PoseTrigger(PoseTrigger.Type.Turned, 10), 50));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+    }
+
+    /**
+     * Has one thread integrate while others read, and checks that every pose
+     * read matches exactly what was published for its sequence number. <br>
+     * Test method for {@link main.Odometer#getPose()}.
+     */
+    @Test
+    public void testNoTornReads() throws InterruptedException
+    {
+        final Odometer odometer = new Odometer();
+        final long firstSequence = odometer.getPose().getSequence();
+
+        // what the writer published, indexed by sequence
+        final float[] publishedX = new float[UPDATE_COUNT + 1];
+        final float[] publishedY = new float[UPDATE_COUNT + 1];
+        final float[] publishedTheta = new float[UPDATE_COUNT + 1];
+
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                for (int i = 1; i <= UPDATE_COUNT; i++)
+                {
+                    // drive along a curve so that x, y and theta all change
+                    odometer.integrate(0.1 + (i % 7) * 0.01, 0.1 + (i % 5) * 0.01);
+                    Pose pose = odometer.getPose();
+                    int index = (int) (pose.getSequence() - firstSequence);
+                    publishedX[index] = pose.getX();
+                    publishedY[index] = pose.getY();
+                    publishedTheta[index] = pose.getTheta();
+                }
+            }
+        };
+
+        final int readerCount = 3;
+        final int samplesPerReader = 100000;
+        final Pose[][] samples = new Pose[readerCount][samplesPerReader];
+        Thread[] readers = new Thread[readerCount];
+        for (int r = 0; r < readerCount; r++)
+        {
+            final Pose[] readerSamples = samples[r];
+            readers[r] = new Thread()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < readerSamples.length; i++)
+                    {
+                        readerSamples[i] = odometer.getPose();
+                    }
+                }
+            };
+        }
+
+        writer.start();
+        for (Thread reader : readers)
+        {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers)
+        {
+            reader.join();
+        }
+
+        for (Pose[] readerSamples : samples)
+        {
+            long lastSequence = -1;
+            for (Pose pose : readerSamples)
+            {
+                int index = (int) (pose.getSequence() - firstSequence);
+                assertTrue("sequence went backwards", pose.getSequence() >= lastSequence);
+                lastSequence = pose.getSequence();
+                if (index > 0)
+                {
+                    assertEquals(publishedX[index], pose.getX(), 0f);
+                    assertEquals(publishedY[index], pose.getY(), 0f);
+                    assertEquals(publishedTheta[index], pose.getTheta(), 0f);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class OdometryCorrectionTest
+{
+    // sensors either side of the robot, behind the wheels
+    private static final Vector2 LEFT = new Vector2(-5, 6);
+    private static final Vector2 RIGHT = new Vector2(-5, -6);
+
+    /**
+     * Tests finding the heading from a pair of crossings of a line along the
+     * y-axis while driving along the x-axis. <br>
+     * Test method for {@link main.OdometryCorrection#getPairedHeading(float[], Vector2, float[], Vector2)}.
+     */
+    @Test
+    public void testPairedHeading()
+    {
+        // turned 3 degrees to the left, so the right sensor crosses x = 30
+        // first
+        float heading = 3;
+        float[] first = poseCrossing(RIGHT, heading, 30, 45);
+        float[] second = poseCrossing(LEFT, heading, 30, 45);
+        assertTrue(second[0] > first[0]);
+
+        // the odometer believes the robot is driving straight
+        first[2] = 0;
+        second[2] = 0;
+        assertEquals(heading, OdometryCorrection.getPairedHeading(first, RIGHT, second, LEFT), 0.01f);
+    }
+
+    /**
+     * Tests crossings while driving backwards along the y-axis. <br>
+     * Test method for {@link main.OdometryCorrection#getPairedHeading(float[], Vector2, float[], Vector2)}.
+     */
+    @Test
+    public void testPairedHeadingBackwards()
+    {
+        float heading = 272;
+        float[] first = poseCrossingY(RIGHT, heading, 60, 30);
+        float[] second = poseCrossingY(LEFT, heading, 60, 30);
+        first[2] = 268;
+        second[2] = 268;
+        float result = OdometryCorrection.getPairedHeading(first, RIGHT, second, LEFT);
+        assertEquals(0f, Utils.toBearing(result - heading), 0.01f);
+    }
+
+    /**
+     * Tests that crossings of different lines, while turning, or too far apart
+     * are not paired. <br>
+     * Test method for {@link main.OdometryCorrection#getPairedHeading(float[], Vector2, float[], Vector2)}.
+     */
+    @Test
+    public void testPairedHeadingRejected()
+    {
+        float[] first = poseCrossing(LEFT, 0, 30, 45);
+        float[] second = poseCrossing(RIGHT, 0, 30, 45);
+
+        // turning between the crossings
+        float[] turned = second.clone();
+        turned[2] = 5;
+        assertTrue(Float.isNaN(OdometryCorrection.getPairedHeading(first, LEFT, turned, RIGHT)));
+
+        // driven a tile between the crossings
+        float[] far = second.clone();
+        far[0] += Board.TILE_SIZE;
+        assertTrue(Float.isNaN(OdometryCorrection.getPairedHeading(first, LEFT, far, RIGHT)));
+
+        // the line implied is far from any board line direction
+        float[] skewed = second.clone();
+        skewed[0] += 8;
+        assertTrue(Float.isNaN(OdometryCorrection.getPairedHeading(first, LEFT, skewed, RIGHT)));
+    }
+
+    /**
+     * Gets the pose at which a sensor is on a line along the y-axis while
+     * driving along the x-axis.
+     */
+    private static float[] poseCrossing(Vector2 sensor, float heading, float lineX, float y)
+    {
+        double radians = Math.toRadians(heading);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float x = lineX - (cos * sensor.getX() - sin * sensor.getY());
+        return new float[] { x, y, heading };
+    }
+
+    /**
+     * Gets the pose at which a sensor is on a line along the x-axis while
+     * driving along the y-axis.
+     */
+    private static float[] poseCrossingY(Vector2 sensor, float heading, float x, float lineY)
+    {
+        double radians = Math.toRadians(heading);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float y = lineY - (sin * sensor.getX() + cos * sensor.getY());
+        return new float[] { x, y, heading };
+    }
+}
@@ -0,0 +1,119 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class ParticleFilterTest
+{
+    // the main and upper ultrasonic sensor mounts as forward, left and angle
+    private static final float[] US_MAIN = { 5, 0, 0 };
+    private static final float[] US_UPPER = { -1, 9, 90 };
+    // degrees turned between ranges in the simulated sweeps
+    static final float SWEEP_STEP = 4;
+
+    /**
+     * Test method for {@link main.ParticleFilter#castRay(float, float, float)}.
+     */
+    @Test
+    public void testCastRay()
+    {
+        ParticleFilter filter = new ParticleFilter(createBoard(), 10, new Random(1), false);
+
+        assertEquals(Board.WALL_UPPER - 100, filter.castRay(100, 50, 0), 0.001f);
+        assertEquals(50 - Board.WALL_LOWER, filter.castRay(100, 50, 270), 0.001f);
+        assertEquals((float) Math.sqrt(2) * (Board.WALL_UPPER - 100), filter.castRay(100, 100, 45), 0.01f);
+
+        // the build zone spans tiles 2 to 4 along both axes
+        assertEquals(Board.WALL_UPPER, filter.castRay(0, 3 * Board.TILE_SIZE, 0), 0.001f);
+        filter.setZonesVisible(true);
+        assertEquals(2 * Board.TILE_SIZE, filter.castRay(0, 3 * Board.TILE_SIZE, 0), 0.001f);
+    }
+
+    /**
+     * Tests relocalizing from a poor guess by turning once in place. <br>
+     * Test method for {@link main.ParticleFilter#measure(float, float, float, float)}.
+     */
+    @Test
+    public void testPartialSweep()
+    {
+        float[] truth = { 120, 200, 35 };
+        ParticleFilter filter = new ParticleFilter(createBoard(), ParticleFilter.DEFAULT_PARTICLE_COUNT, new Random(2), false);
+        filter.initialize(truth[0] + 25, truth[1] - 20, truth[2] + 20, 40, 30);
+
+        sweep(filter, truth, 360, new Random(3));
+
+        float[] estimate = new float[3];
+        filter.getEstimate(estimate);
+        assertTrue(filter.isConverged());
+        assertEquals(truth[0], estimate[0], 3);
+        assertEquals(truth[1], estimate[1], 3);
+        assertEquals(0, Utils.toBearing(estimate[2] - truth[2]), 3);
+    }
+
+    /**
+     * Tests that weighing particles in parallel gives the same result as
+     * weighing them on one thread. <br>
+     * Test method for {@link main.ParticleFilter#measure(float, float, float, float)}.
+     */
+    @Test
+    public void testParallel()
+    {
+        float[] truth = { 250, 60, 160 };
+        int[] counts = { ParticleFilter.DEFAULT_PARTICLE_COUNT, 5000 };
+
+        for (int count : counts)
+        {
+            ParticleFilter sequential = new ParticleFilter(createBoard(), count, new Random(4), false);
+            ParticleFilter parallel = new ParticleFilter(createBoard(), count, new Random(4), true);
+
+            sweep(sequential, truth.clone(), 360, new Random(5));
+            sweep(parallel, truth.clone(), 360, new Random(5));
+
+            for (int i = 0; i < count; i++)
+            {
+                assertEquals(sequential.getWeight(i), parallel.getWeight(i), 0);
+            }
+        }
+    }
+
+    /**
+     * Simulates the robot turning in place while both ultrasonic sensors
+     * read the walls.
+     */
+    static void sweep(ParticleFilter filter, float[] truth, float sweepAngle, Random noise)
+    {
+        float theta = truth[2];
+        for (float turned = 0; turned < sweepAngle; turned += SWEEP_STEP)
+        {
+            filter.move(0, SWEEP_STEP + (float) noise.nextGaussian() * 0.2f);
+            theta += SWEEP_STEP;
+            filter.measure(US_MAIN[0], US_MAIN[1], US_MAIN[2], read(filter, truth[0], truth[1], theta, US_MAIN, noise));
+            filter.measure(US_UPPER[0], US_UPPER[1], US_UPPER[2], read(filter, truth[0], truth[1], theta, US_UPPER, noise));
+        }
+        truth[2] = Utils.normalizeAngle(theta);
+    }
+
+    /**
+     * Simulates a noisy range read by a sensor.
+     */
+    private static float read(ParticleFilter filter, float x, float y, float theta, float[] sensor, Random noise)
+    {
+        Vector2 position = new Vector2(sensor[0], sensor[1]).rotate(theta).add(new Vector2(x, y));
+        float range = filter.castRay(position.getX(), position.getY(), theta + sensor[2]);
+        return Math.min(range + (float) noise.nextGaussian(), UltrasonicPoller.MAX_RANGE);
+    }
+
+    /**
+     * @return a board with the build zone over tiles 2 to 4.
+     */
+    static Board createBoard()
+    {
+        return new Board(7, 7, 9, 9, 2, 2, 4, 4, 1);
+    }
+}
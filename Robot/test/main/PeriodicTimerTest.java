@@ -0,0 +1,108 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class PeriodicTimerTest
+{
+    // extra time in ms allowed for a late wake up. Generous, so that a loaded
+    // machine does not fail the tests, but less than the drift being checked.
+    private static final int TOLERANCE = 100;
+
+    /**
+     * Tests that the loop never wakes early, and that its period does not
+     * drift when the loop body takes time. <br>
+     * Test method for {@link main.PeriodicTimer#waitForNextPeriod()}.
+     */
+    @Test
+    public void testNoDrift()
+    {
+        int period = 5;
+        int periods = 100;
+        PeriodicTimer timer = new PeriodicTimer("test", period);
+
+        long start = System.nanoTime();
+        timer.start();
+        for (int i = 0; i < periods; i++)
+        {
+            // a loop body that uses most of the period
+            Utils.sleep(3);
+            timer.waitForNextPeriod();
+
+            // every period passed, run or skipped, has fully elapsed
+            int slots = timer.getPeriodCount() + timer.getOverrunCount();
+            assertTrue(System.nanoTime() - start >= slots * period * 1000000L);
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        assertEquals(periods, timer.getPeriodCount());
+        // sleeping a whole period after each loop body would take 300 ms
+        // longer. Any period missed due to the scheduler is skipped rather
+        // than delaying the rest.
+        int slots = periods + timer.getOverrunCount();
+        assertTrue("took " + elapsed + "ms", elapsed < period * slots + TOLERANCE);
+    }
+
+    /**
+     * Tests that periods missed by a long loop body are counted and skipped,
+     * keeping the loop in phase. <br>
+     * Test method for {@link main.PeriodicTimer#waitForNextPeriod()}.
+     */
+    @Test
+    public void testOverrun()
+    {
+        int period = 100;
+        PeriodicTimer timer = new PeriodicTimer("test", period);
+
+        long start = System.nanoTime();
+        timer.start();
+        Utils.sleep(250);
+        timer.waitForNextPeriod();
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        int overruns = timer.getOverrunCount();
+        assertTrue(overruns >= 2);
+        assertEquals(1, timer.getPeriodCount());
+        // wakes on the next period boundary rather than a full period later
+        int slots = overruns + 1;
+        assertTrue("took " + elapsed + "ms", elapsed >= period * slots && elapsed < period * (slots + 1));
+        assertTrue(timer.getMaxExecution() >= 250 * 1000000L);
+
+        int count = 0;
+        for (int bin : timer.getExecutionHistogram())
+        {
+            count += bin;
+        }
+        assertEquals(1, count);
+    }
+
+    /**
+     * Tests changing the period of a running loop. <br>
+     * Test method for {@link main.PeriodicTimer#setPeriod(int)}.
+     */
+    @Test
+    public void testSetPeriod()
+    {
+        PeriodicTimer timer = new PeriodicTimer("test", 20);
+        timer.setPeriod(4);
+        assertEquals(4, timer.getPeriod());
+
+        long start = System.nanoTime();
+        timer.start();
+        for (int i = 0; i < 10; i++)
+        {
+            timer.waitForNextPeriod();
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        // the old period would take 160 ms longer
+        int slots = timer.getPeriodCount() + timer.getOverrunCount();
+        assertEquals(10, timer.getPeriodCount());
+        assertTrue("took " + elapsed + "ms", elapsed >= 4 * slots && elapsed < 4 * slots + TOLERANCE);
+    }
+}
@@ -0,0 +1,254 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.security.InvalidParameterException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class PolarScanTest
+{
+    // the sweep used when searching for blocks
+    static final float WIDTH = 90;
+    static final float BIN_SIZE = 0.5f;
+    // the number of readings taken in a simulated sweep
+    static final int READINGS = 400;
+
+    /**
+     * Tests that readings in the same bin are averaged, that empty bins are
+     * left out, and that a sweep through 0 degrees stays in order. <br>
+     * Test method for {@link main.PolarScan#add(float, float)}.
+     */
+    @Test
+    public void testAdd()
+    {
+        PolarScan scan = new PolarScan(WIDTH, BIN_SIZE);
+        scan.reset(350);
+        assertTrue(scan.add(350.1f, 20));
+        assertTrue(scan.add(349.9f, 30));
+        assertTrue(scan.add(10, 40));
+        assertTrue(scan.add(80, 50));
+        assertFalse(scan.add(345, 10));
+        assertFalse(scan.add(90, 10));
+
+        assertEquals(3, scan.process());
+        assertEquals(350f, scan.getAngle(0), 0.0001f);
+        assertEquals(25f, scan.getDistance(0), 0.0001f);
+        assertEquals(2, scan.getHitCount(0));
+        assertEquals(10f, scan.getAngle(1), 0.0001f);
+        assertEquals(20f, scan.getAngleOffset(1), 0.0001f);
+        assertEquals(80f, scan.getAngle(2), 0.0001f);
+
+        scan.reset(0);
+        assertEquals(0, scan.process());
+    }
+
+    /**
+     * Test method for {@link main.PolarScan#PolarScan(float, float)}.
+     */
+    @Test(expected = InvalidParameterException.class)
+    public void testConstructor()
+    {
+        new PolarScan(WIDTH, 0);
+    }
+
+    /**
+     * Tests that objects seen over a small angle are removed, while wider
+     * objects are kept. <br>
+     * Test method for {@link main.PolarScan#sanitize(float, float)}.
+     */
+    @Test
+    public void testSanitize()
+    {
+        PolarScan scan = new PolarScan(WIDTH, BIN_SIZE);
+        scan.reset(0);
+        for (int i = 0; i <= 60; i++)
+        {
+            // a narrow object from 10 to 14 degrees, a wide one from 30 to 50
+            float distance = SearchParameters.DEFAULT_NO_OBJECT;
+            if (i >= 10 && i < 14)
+            {
+                distance = 20;
+            }
+            else if (i >= 30 && i < 50)
+            {
+                distance = 25;
+            }
+            scan.add(i, distance);
+        }
+        scan.process();
+        scan.sanitize(SearchParameters.DEFAULT_NO_OBJECT, SearchParameters.DEFAULT_MIN_OBJECT_ANGLE);
+
+        for (int i = 0; i < scan.size(); i++)
+        {
+            boolean wideObject = scan.getAngle(i) >= 30 && scan.getAngle(i) < 50;
+            assertEquals(wideObject ? 25f : SearchParameters.DEFAULT_NO_OBJECT, scan.getDistance(i), 0.0001f);
+        }
+
+        assertEquals(2, scan.findDiscontinuities(SearchParameters.DEFAULT_DISCONTINUITY_DISTANCE));
+        assertEquals(30f, scan.getAngle(scan.getDiscontinuity(0)), 0.0001f);
+        assertEquals(50f, scan.getAngle(scan.getDiscontinuity(1)), 0.0001f);
+    }
+
+    /**
+     * Tests that an object seen up to the end of the sweep still has a
+     * discontinuity on both sides. <br>
+     * Test method for {@link main.PolarScan#findDiscontinuities(float)}.
+     */
+    @Test
+    public void testFindDiscontinuities()
+    {
+        PolarScan scan = new PolarScan(WIDTH, BIN_SIZE);
+        scan.reset(0);
+        for (int i = 0; i <= 40; i++)
+        {
+            scan.add(i, i < 20 ? SearchParameters.DEFAULT_NO_OBJECT : 25);
+        }
+        scan.process();
+        scan.sanitize(SearchParameters.DEFAULT_NO_OBJECT, SearchParameters.DEFAULT_MIN_OBJECT_ANGLE);
+        assertEquals(2, scan.findDiscontinuities(SearchParameters.DEFAULT_DISCONTINUITY_DISTANCE));
+        assertEquals(20f, scan.getAngle(scan.getDiscontinuity(0)), 0.0001f);
+        assertEquals(scan.size() - 1, scan.getDiscontinuity(1));
+    }
+
+    /**
+     * Tests the means either side of a discontinuity, including through 0
+     * degrees. <br>
+     * Test method for {@link main.PolarScan#getMeans(int, int, float[])}.
+     */
+    @Test
+    public void testGetMeans()
+    {
+        PolarScan scan = new PolarScan(WIDTH, BIN_SIZE);
+        scan.reset(340);
+        for (int i = 0; i <= 40; i++)
+        {
+            scan.add(340 + i, i < 20 ? 50 : 30);
+        }
+        scan.process();
+
+        float[] means = new float[2];
+        scan.getMeans(0, 20, means);
+        assertEquals(349.5f, means[0], 0.001f);
+        assertEquals(50f, means[1], 0.001f);
+        scan.getMeans(20, scan.size(), means);
+        assertEquals(10f, means[0], 0.001f);
+        assertEquals(30f, means[1], 0.001f);
+        scan.getMeans(5, 5, means);
+        assertEquals(0f, means[1], 0);
+    }
+
+    /**
+     * Tests that a sweep processed with a polar scan finds the same edges as
+     * the sorted maps previously used. <br>
+     * Test method for {@link main.PolarScan#findDiscontinuities(float)}.
+     */
+    @Test
+    public void testMatchesSortedMaps()
+    {
+        float[] angles = new float[READINGS];
+        float[] distances = new float[READINGS];
+        simulateSweep(angles, distances);
+
+        // both find the edges of the one object
+        int scanCount = processScan(new PolarScan(WIDTH, BIN_SIZE), angles, distances, new float[2]);
+        assertEquals(processMap(angles, distances), scanCount);
+        assertEquals(2, scanCount);
+    }
+
+    /**
+     * Fills in a sweep with one object in front of nothing.
+     */
+    static void simulateSweep(float[] angles, float[] distances)
+    {
+        Random random = new Random(1);
+        for (int i = 0; i < angles.length; i++)
+        {
+            angles[i] = i * WIDTH / angles.length + random.nextFloat() * 0.1f;
+            distances[i] = (angles[i] > 40 && angles[i] < 55) ? 25 : SearchParameters.DEFAULT_NO_OBJECT;
+        }
+    }
+
+    /**
+     * Processes a sweep as the search does with a polar scan.
+     * 
+     * @return the number of discontinuities found.
+     */
+    static int processScan(PolarScan scan, float[] angles, float[] distances, float[] means)
+    {
+        scan.reset(0);
+        for (int i = 0; i < angles.length; i++)
+        {
+            scan.add(angles[i], distances[i]);
+        }
+        scan.process();
+        scan.sanitize(SearchParameters.DEFAULT_NO_OBJECT, SearchParameters.DEFAULT_MIN_OBJECT_ANGLE);
+        int count = scan.findDiscontinuities(SearchParameters.DEFAULT_DISCONTINUITY_DISTANCE);
+        scan.getMeans(0, scan.getDiscontinuity(0), means);
+        scan.getMeans(scan.getDiscontinuity(0), scan.size(), means);
+        return count;
+    }
+
+    /**
+     * Processes a sweep as the search previously did with sorted maps.
+     * 
+     * @return the number of discontinuities found.
+     */
+    static int processMap(float[] angles, float[] distances)
+    {
+        Map<Float,Float> angleDistanceMap = new HashMap<Float,Float>();
+        for (int i = 0; i < angles.length; i++)
+        {
+            angleDistanceMap.put(angles[i], distances[i]);
+        }
+        Map<Float,Float> sortedData = new TreeMap<Float,Float>(angleDistanceMap);
+
+        // the ends were set to see nothing
+        Iterator<Map.Entry<Float,Float>> entries = sortedData.entrySet().iterator();
+        Map.Entry<Float,Float> entry = entries.next();
+        entry.setValue(SearchParameters.DEFAULT_NO_OBJECT);
+        float previousDistance = entry.getValue();
+        Map<Float,Float> discontinuitiesMap = new HashMap<Float,Float>();
+        while (entries.hasNext())
+        {
+            entry = entries.next();
+            if (!entries.hasNext())
+            {
+                entry.setValue(SearchParameters.DEFAULT_NO_OBJECT);
+            }
+            if (Math.abs(entry.getValue() - previousDistance) > 10)
+            {
+                discontinuitiesMap.put(entry.getKey(), entry.getValue());
+            }
+            previousDistance = entry.getValue();
+        }
+        Map<Float,Float> sortedDiscontinuities = new TreeMap<Float,Float>(discontinuitiesMap);
+
+        // partition and take the means either side of the first
+        float dividingAngle = sortedDiscontinuities.keySet().iterator().next();
+        Map<Float,Float> partitionOne = new HashMap<Float,Float>();
+        Map<Float,Float> partitionTwo = new HashMap<Float,Float>();
+        for (Map.Entry<Float,Float> point : sortedData.entrySet())
+        {
+            (point.getKey() < dividingAngle ? partitionOne : partitionTwo).put(point.getKey(), point.getValue());
+        }
+        float sum = 0;
+        for (Map.Entry<Float,Float> point : partitionOne.entrySet())
+        {
+            sum += point.getKey() + point.getValue();
+        }
+        for (Map.Entry<Float,Float> point : partitionTwo.entrySet())
+        {
+            sum += point.getKey() + point.getValue();
+        }
+        return sum > 0 ? sortedDiscontinuities.size() : 0;
+    }
+}
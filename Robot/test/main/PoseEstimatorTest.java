@@ -0,0 +1,195 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class PoseEstimatorTest
+{
+    // number of updates run while counting allocations
+    private static final int UPDATE_COUNT = 100000;
+
+    /**
+     * Tests that driving moves the estimate and grows its uncertainty. <br>
+     * Test method for {@link main.PoseEstimator#predict(double, double)}.
+     */
+    @Test
+    public void testPredict()
+    {
+        PoseEstimator estimator = new PoseEstimator(1, 1);
+        double[] before = new double[9];
+        double[] after = new double[9];
+        estimator.getCovariance(before);
+
+        estimator.setPose(0, 0, 90);
+        estimator.predict(10, 10);
+        estimator.getCovariance(after);
+
+        assertEquals(0f, estimator.getX(), 0.0001f);
+        assertEquals(10f, estimator.getY(), 0.0001f);
+        assertEquals(90f, estimator.getTheta(), 0.0001f);
+        // heading uncertainty spreads sideways, which is along x
+        assertTrue(after[0] > before[0]);
+        assertTrue(after[4] > before[4]);
+        assertTrue(after[8] > before[8]);
+        assertEquals(after[1], after[3], 0);
+    }
+
+    /**
+     * Tests that a line crossing pulls the estimate towards the line and
+     * reduces its uncertainty. <br>
+     * Test method for {@link main.PoseEstimator#updateLine(float, float, float[])}.
+     */
+    @Test
+    public void testUpdateLine()
+    {
+        PoseEstimator estimator = new PoseEstimator(3, 1);
+        estimator.setPose(Board.TILE_SIZE + 2, 45, 0);
+        double[] before = new double[9];
+        double[] after = new double[9];
+        estimator.getCovariance(before);
+
+        assertTrue(estimator.updateLine(0, 0, new float[] { Board.TILE_SIZE + 2, 45, 0 }));
+        estimator.getCovariance(after);
+
+        assertTrue(estimator.getX() < Board.TILE_SIZE + 2);
+        assertTrue(estimator.getX() > Board.TILE_SIZE);
+        assertEquals(45f, estimator.getY(), 0.0001f);
+        assertTrue(after[0] < before[0]);
+        assertEquals(before[4], after[4], 1e-9);
+    }
+
+    /**
+     * Tests that a line crossing too far from the estimate is rejected when the
+     * estimate is certain. <br>
+     * Test method for {@link main.PoseEstimator#updateLine(float, float, float[])}.
+     */
+    @Test
+    public void testUpdateLineGate()
+    {
+        PoseEstimator estimator = new PoseEstimator(0.1f, 0.1f);
+        estimator.setPose(Board.TILE_SIZE + 10, Board.TILE_SIZE + 12, 0);
+
+        assertFalse(estimator.updateLine(0, 0, new float[] { Board.TILE_SIZE + 10, Board.TILE_SIZE + 12, 0 }));
+        assertEquals(Board.TILE_SIZE + 10, estimator.getX(), 0f);
+    }
+
+    /**
+     * Tests ranges to the board walls, including ignoring ranges shortened by
+     * obstacles. <br>
+     * Test method for {@link main.PoseEstimator#updateRange(float, float, float, float, float[])}.
+     */
+    @Test
+    public void testUpdateRange()
+    {
+        PoseEstimator estimator = new PoseEstimator(5, 1);
+        float[] pose = { 250, 100, 0 };
+        estimator.setPose(pose[0], pose[1], pose[2]);
+
+        // the wall is expected 4 cm further than it is seen
+        float expected = Board.WALL_UPPER - (pose[0] + 5);
+        assertFalse(estimator.updateRange(5, 0, 0, 30, pose));
+        assertTrue(estimator.updateRange(5, 0, 0, expected - 4, pose));
+        assertTrue(estimator.getX() > pose[0] + 2);
+        assertTrue(estimator.getX() < pose[0] + 4);
+        assertEquals(pose[1], estimator.getY(), 0.0001f);
+
+        // too far to be trusted
+        estimator.setPose(50, 100, 0);
+        assertFalse(estimator.updateRange(5, 0, 0, 250, new float[] { 50, 100, 0 }));
+    }
+
+    /**
+     * Tests that a measured heading pulls the orientation towards it. <br>
+     * Test method for {@link main.PoseEstimator#updateHeading(float, float[])}.
+     */
+    @Test
+    public void testUpdateHeading()
+    {
+        PoseEstimator estimator = new PoseEstimator(1, 3);
+        estimator.setPose(50, 50, 4);
+
+        assertTrue(estimator.updateHeading(0, new float[] { 50, 50, 4 }));
+        assertTrue(estimator.getTheta() < 2);
+        assertTrue(estimator.getTheta() >= 0);
+        assertEquals(50f, estimator.getX(), 0.0001f);
+
+        // headings either side of zero are close
+        estimator.setPose(50, 50, 358);
+        assertTrue(estimator.updateHeading(1, new float[] { 50, 50, 358 }));
+        float error = Utils.toBearing(estimator.getTheta() - 1);
+        assertTrue(Math.abs(error) < 2);
+    }
+
+    /**
+     * Tests that the odometer applies estimator corrections to its pose. <br>
+     * Test method for {@link main.Odometer#fuseLineCrossing(float, float, long)}.
+     */
+    @Test
+    public void testOdometerFusion()
+    {
+        Odometer odometer = new Odometer();
+        odometer.setPosition(new Vector2(Board.TILE_SIZE - 2, 45));
+        assertFalse(odometer.fuseLineCrossing(0, 0, System.nanoTime()));
+
+        odometer.setEstimator(new PoseEstimator(3, 1));
+        odometer.integrate(1, 1);
+        assertTrue(odometer.fuseLineCrossing(0, 0, odometer.getPose().getTimestamp()));
+
+        Pose pose = odometer.getPose();
+        assertTrue(Math.abs(pose.getX() - Board.TILE_SIZE) < 1);
+        assertEquals(45f, pose.getY(), 0.0001f);
+    }
+
+    /**
+     * Tests that a predict and update cycle allocates nothing. <br>
+     * Test method for {@link main.PoseEstimator#predict(double, double)}.
+     */
+    @Test
+    public void testNoAllocationPerUpdate()
+    {
+        PoseEstimator estimator = new PoseEstimator(2, 2);
+        float[] pose = { Board.TILE_SIZE + 1, 100, 0 };
+
+        long allocated = countAllocations(estimator, pose);
+        if (allocated >= 0)
+        {
+            assertTrue(allocated < UPDATE_COUNT);
+        }
+    }
+
+    /**
+     * Runs predict and update cycles.
+     * 
+     * @return the number of bytes allocated, or -1 if not supported.
+     */
+    private long countAllocations(PoseEstimator estimator, float[] pose)
+    {
+        boolean supported = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean;
+        com.sun.management.ThreadMXBean threads = supported ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+        long threadId = Thread.currentThread().getId();
+        long start = supported ? threads.getThreadAllocatedBytes(threadId) : 0;
+        update(estimator, pose, UPDATE_COUNT);
+        return supported ? threads.getThreadAllocatedBytes(threadId) - start : -1;
+    }
+
+    /**
+     * Runs a number of predict cycles, each followed by a line and a range
+     * update.
+     */
+    static void update(PoseEstimator estimator, float[] pose, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            estimator.setPose(pose[0], pose[1], pose[2]);
+            estimator.predict(1, 1.01);
+            estimator.updateLine(0, 0, pose);
+            estimator.updateRange(5, 0, 90, 50, pose);
+        }
+    }
+}
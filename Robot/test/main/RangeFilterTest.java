@@ -0,0 +1,101 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class RangeFilterTest
+{
+    // the filter sizes used by the ultrasonic pollers
+    private static final int MEDIAN_SIZE = 5;
+    private static final int MEAN_SIZE = 2;
+    // the size of the harmonic mean previously used alone
+    private static final int OLD_SIZE = 10;
+
+    /**
+     * Tests that isolated maximum range and zero glitches don't reach the
+     * filtered distance. <br>
+     * Test method for {@link main.RangeFilter#add(float)}.
+     */
+    @Test
+    public void testGlitches()
+    {
+        RangeFilter filter = new RangeFilter(MEDIAN_SIZE, MEAN_SIZE);
+        for (int i = 0; i < 10; i++)
+        {
+            filter.add(40);
+        }
+        assertEquals(40f, filter.add(UltrasonicPoller.MAX_RANGE), 0.0001f);
+        assertEquals(40f, filter.add(0), 0.0001f);
+        for (int i = 0; i < 3; i++)
+        {
+            filter.add(40);
+        }
+        // two glitches in a row are also rejected
+        assertEquals(40f, filter.add(0), 0.0001f);
+        assertEquals(40f, filter.add(0), 0.0001f);
+
+        filter.clear();
+        assertEquals(0f, filter.getDistance(), 0);
+    }
+
+    /**
+     * Compares how quickly an obstacle is reported, and how much glitches
+     * disturb the result, against the harmonic mean alone. <br>
+     * Test method for {@link main.RangeFilter#add(float)}.
+     */
+    @Test
+    public void testStepResponse()
+    {
+        RangeFilter filter = new RangeFilter(MEDIAN_SIZE, MEAN_SIZE);
+        RingBuffer old = new RingBuffer(OLD_SIZE);
+        Random random = new Random(1);
+
+        int settled = -1;
+        int oldSettled = -1;
+        float error = 0;
+        float oldError = 0;
+        for (int i = 0; i < 200; i++)
+        {
+            // an obstacle appears at 30 cm after 20 samples
+            float distance = (i < 20 ? 60 : 30) + 0.5f * (float) random.nextGaussian();
+            if (i % 40 == 10)
+            {
+                distance = UltrasonicPoller.MAX_RANGE;
+            }
+            else if (i % 40 == 30)
+            {
+                distance = 0;
+            }
+
+            float filtered = filter.add(distance);
+            old.add(distance);
+            float oldFiltered = old.getHarmonicMean();
+
+            if (i >= 20)
+            {
+                if (settled < 0 && Math.abs(filtered - 30) < 3)
+                {
+                    settled = i - 20;
+                }
+                if (oldSettled < 0 && Math.abs(oldFiltered - 30) < 3)
+                {
+                    oldSettled = i - 20;
+                }
+            }
+            if (i >= 40)
+            {
+                error = Math.max(error, Math.abs(filtered - 30));
+                oldError = Math.max(oldError, Math.abs(oldFiltered - 30));
+            }
+        }
+        assertTrue(settled >= 0 && settled < oldSettled);
+        assertTrue(error < 3);
+        assertTrue(oldError > 10);
+    }
+}
@@ -0,0 +1,60 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class RangeThresholdTest
+{
+    /**
+     * Test method for {@link main.RangeThreshold#check(float, long)}.
+     */
+    @Test
+    public void testCheck()
+    {
+        RangeThreshold threshold = new RangeThreshold(20, null);
+        assertFalse(threshold.check(25, 0));
+        assertFalse(threshold.check(Float.NaN, 0));
+        assertFalse(threshold.isTriggered());
+        assertEquals(0, threshold.getLatency());
+
+        long sampleTime = System.nanoTime();
+        assertTrue(threshold.check(19, sampleTime));
+        assertTrue(threshold.isTriggered());
+        assertTrue(threshold.getLatency() >= 0);
+        assertTrue(threshold.getLatency() < 1000000000L);
+    }
+
+    /**
+     * Tests that a waiting thread is woken by the reading that crosses the
+     * threshold. <br>
+     * Test method for {@link main.RangeThreshold#await(long)}.
+     */
+    @Test
+    public void testAwait() throws InterruptedException
+    {
+        final RangeThreshold threshold = new RangeThreshold(20, null);
+        assertFalse(threshold.await(10));
+
+        final long[] sampleTime = new long[1];
+        Thread sensor = new Thread()
+        {
+            public void run()
+            {
+                Utils.sleep(20);
+                sampleTime[0] = System.nanoTime();
+                threshold.check(10, sampleTime[0]);
+            }
+        };
+        sensor.start();
+        assertTrue(threshold.await(0));
+        long wokenAt = System.nanoTime();
+        sensor.join();
+
+        assertTrue(wokenAt >= sampleTime[0]);
+    }
+}
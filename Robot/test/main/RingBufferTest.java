@@ -0,0 +1,168 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class RingBufferTest
+{
+    // number of ticks run while counting allocations
+    private static final int ALLOCATION_TICKS = 1000000;
+    // the ultrasonic poller buffer size
+    static final int POLLER_BUFFER_SIZE = 10;
+
+    /**
+     * Test method for {@link main.RingBuffer#add(float)}.
+     */
+    @Test
+    public void testAdd()
+    {
+        RingBuffer buffer = new RingBuffer(3);
+        assertEquals(0, buffer.size());
+        assertEquals(0f, buffer.getMean(), 0);
+
+        buffer.add(1);
+        buffer.add(2);
+        assertEquals(2, buffer.size());
+        assertFalse(buffer.isFull());
+        assertEquals(1f, buffer.get(0), 0);
+        assertEquals(2f, buffer.getNewest(), 0);
+
+        buffer.add(3);
+        buffer.add(4);
+        assertTrue(buffer.isFull());
+        assertEquals(3, buffer.size());
+        assertEquals(2f, buffer.get(0), 0);
+        assertEquals(4f, buffer.getNewest(), 0);
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(3, buffer.capacity());
+    }
+
+    /**
+     * Checks the running statistics against ones computed from the values.
+     * <br>
+     * Test method for {@link main.RingBuffer#getMean()}.
+     */
+    @Test
+    public void testStatistics()
+    {
+        RingBuffer buffer = new RingBuffer(POLLER_BUFFER_SIZE);
+        Random random = new Random(1);
+
+        // long enough for the sums to be recomputed several times
+        for (int i = 0; i < 5000; i++)
+        {
+            buffer.add(1 + random.nextFloat() * 200);
+
+            double sum = 0;
+            double reciprocalSum = 0;
+            for (int j = 0; j < buffer.size(); j++)
+            {
+                sum += buffer.get(j);
+                reciprocalSum += 1.0 / buffer.get(j);
+            }
+            double mean = sum / buffer.size();
+            double variance = 0;
+            for (int j = 0; j < buffer.size(); j++)
+            {
+                variance += (buffer.get(j) - mean) * (buffer.get(j) - mean);
+            }
+            variance /= buffer.size();
+
+            assertEquals(mean, buffer.getMean(), 0.001);
+            assertEquals(variance, buffer.getVariance(), 0.01);
+            assertEquals(buffer.size() / reciprocalSum, buffer.getHarmonicMean(), 0.001);
+        }
+    }
+
+    /**
+     * Tests that a zero value gives a harmonic mean of zero only while it is
+     * in the buffer. <br>
+     * Test method for {@link main.RingBuffer#getHarmonicMean()}.
+     */
+    @Test
+    public void testHarmonicMeanZero()
+    {
+        RingBuffer buffer = new RingBuffer(2);
+        buffer.add(0);
+        buffer.add(4);
+        assertEquals(0f, buffer.getHarmonicMean(), 0);
+        buffer.add(4);
+        assertEquals(4f, buffer.getHarmonicMean(), 0.0001f);
+    }
+
+    /**
+     * Tests that the ultrasonic poller filter allocates nothing per tick on a
+     * ring buffer. <br>
+     * Test method for {@link main.RingBuffer#add(float)}.
+     */
+    @Test
+    public void testNoAllocationPerTick()
+    {
+        float[] values = randomDistances();
+        float check = runRingBuffer(values, ALLOCATION_TICKS / 10);
+
+        long allocated = allocatedBytes();
+        check += runRingBuffer(values, ALLOCATION_TICKS);
+        allocated = allocatedBytes() - allocated;
+
+        assertTrue(check > 0);
+        if (allocated >= 0)
+        {
+            assertTrue("allocated " + allocated + " bytes", allocated < ALLOCATION_TICKS);
+        }
+    }
+
+    /**
+     * @return distances to filter, the same on every call.
+     */
+    static float[] randomDistances()
+    {
+        float[] values = new float[1024];
+        Random random = new Random(2);
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = 5 + random.nextFloat() * 100;
+        }
+        return values;
+    }
+
+    /**
+     * The ultrasonic poller filter on a ring buffer.
+     */
+    static float runRingBuffer(float[] values, int ticks)
+    {
+        RingBuffer buffer = new RingBuffer(POLLER_BUFFER_SIZE);
+        float[] sample = new float[1];
+        float filtered = 0;
+        for (int i = 0; i < ticks; i++)
+        {
+            sample[0] = values[i % values.length];
+            buffer.add(sample[0]);
+            filtered += buffer.getHarmonicMean();
+        }
+        return filtered;
+    }
+
+    /**
+     * @return the number of bytes allocated by this thread, or -1 if not
+     *         supported.
+     */
+    static long allocatedBytes()
+    {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,74 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class SampleRingTest
+{
+    /**
+     * Test method for {@link main.SampleRing#publish(long, float)}.
+     */
+    @Test
+    public void testPublish()
+    {
+        SampleRing ring = new SampleRing(3);
+        assertEquals(4, ring.capacity());
+        assertEquals(-1, ring.getNewestSequence());
+        assertTrue(Float.isNaN(ring.getValue(0)));
+
+        for (int i = 0; i < 6; i++)
+        {
+            ring.publish(i * 10, i * 0.5f);
+        }
+        assertEquals(5, ring.getNewestSequence());
+        assertEquals(2.5f, ring.getValue(5), 0);
+        assertEquals(50, ring.getTime(5));
+        assertEquals(1.0f, ring.getValue(2), 0);
+
+        // overwritten and not yet published readings
+        assertTrue(Float.isNaN(ring.getValue(1)));
+        assertEquals(-1, ring.getTime(1));
+        assertTrue(Float.isNaN(ring.getValue(6)));
+        assertEquals(-1, ring.getTime(6));
+    }
+
+    /**
+     * Tests that a waiting thread wakes for a new reading, and gives up after
+     * the timeout. <br>
+     * Test method for {@link main.SampleRing#awaitNext(long, long)}.
+     */
+    @Test
+    public void testAwaitNext() throws InterruptedException
+    {
+        final SampleRing ring = new SampleRing(8);
+        ring.publish(0, 1);
+        assertEquals(0, ring.awaitNext(-1, 0));
+
+        long start = System.nanoTime();
+        assertEquals(-1, ring.awaitNext(0, 20000000L));
+        assertTrue(System.nanoTime() - start >= 20000000L);
+
+        Thread publisher = new Thread()
+        {
+            public void run()
+            {
+                Utils.sleep(20);
+                ring.publish(System.nanoTime(), 2);
+            }
+        };
+        publisher.start();
+        long sequence = ring.awaitNext(0, 1000000000L);
+        long latency = System.nanoTime() - ring.getTime(sequence);
+        publisher.join();
+
+        assertEquals(1, sequence);
+        assertEquals(2f, ring.getValue(sequence), 0);
+        // woken by the reading, well before the timeout
+        assertTrue(latency < 500000000L);
+    }
+}
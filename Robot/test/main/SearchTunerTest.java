@@ -0,0 +1,161 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class SearchTunerTest
+{
+    // the sweep used when searching for blocks
+    private static final float WIDTH = 90;
+    // the number of simulated sweeps replayed
+    private static final int SWEEP_COUNT = 400;
+    // the chance of each reading being a glitch
+    private static final float GLITCH_CHANCE = 0.03f;
+    // the fewest threads scored with in parallel, so that scores are
+    // compared across threads even on a single processor
+    static final int MIN_THREADS = 4;
+
+    /**
+     * Tests that every combination of parameters is made. <br>
+     * Test method for {@link main.SearchTuner#makeGrid(float[], float[], float[], float[], float[])}.
+     */
+    @Test
+    public void testMakeGrid()
+    {
+        List<SearchParameters> grid = SearchTuner.makeGrid(new float[] { 50, 55 }, new float[] { 4, 8, 12 }, new float[] { 10 },
+                new float[] { 80 }, new float[] { 60, 120 });
+        assertEquals(12, grid.size());
+        assertEquals(50f, grid.get(0).getNoObject(), 0);
+        assertEquals(120f, grid.get(1).getMaxBlockWidth(), 0);
+        assertEquals(8f, grid.get(2).getMinObjectAngle(), 0);
+    }
+
+    /**
+     * Tests that detections are scored against the labels. <br>
+     * Test method for {@link main.SearchTuner#evaluate(SearchParameters, List)}.
+     */
+    @Test
+    public void testEvaluate()
+    {
+        List<RecordedSweep> sweeps = new ArrayList<RecordedSweep>();
+        // a block found where labeled
+        sweeps.add(makeSweep(30, 50, 25, RecordedSweep.Label.Block, 40));
+        // a block found away from where labeled
+        sweeps.add(makeSweep(30, 50, 25, RecordedSweep.Label.Block, 80));
+        // a block found where there was none
+        sweeps.add(makeSweep(30, 50, 25, RecordedSweep.Label.NoBlock, 0));
+        // nothing found where there was nothing
+        sweeps.add(makeSweep(0, 0, 25, RecordedSweep.Label.NoBlock, 0));
+        // not scored
+        sweeps.add(makeSweep(30, 50, 25, RecordedSweep.Label.Unknown, 0));
+
+        SearchTuner.Score score = SearchTuner.evaluate(new SearchParameters(), sweeps);
+        assertEquals(1, score.getTruePositives());
+        assertEquals(2, score.getFalsePositives());
+        assertEquals(1, score.getFalseNegatives());
+        assertEquals(1, score.getTrueNegatives());
+        assertEquals(1 / 3f, score.getPrecision(), 0.0001f);
+        assertEquals(0.5f, score.getRecall(), 0.0001f);
+    }
+
+    /**
+     * Tests that scoring on several threads gives the same scores in the same
+     * order as on one thread. <br>
+     * Test method for {@link main.SearchTuner#tune(List, List, int)}.
+     */
+    @Test
+    public void testTune() throws InterruptedException
+    {
+        List<RecordedSweep> sweeps = simulateSweeps(new Random(1));
+        List<SearchParameters> grid = makeGrid();
+
+        List<SearchTuner.Score> serial = SearchTuner.tune(grid, sweeps, 1);
+        int threads = Math.max(MIN_THREADS, Runtime.getRuntime().availableProcessors());
+        List<SearchTuner.Score> parallel = SearchTuner.tune(grid, sweeps, threads);
+
+        assertEquals(grid.size(), parallel.size());
+        for (int i = 0; i < grid.size(); i++)
+        {
+            assertSame(grid.get(i), parallel.get(i).getParameters());
+            assertEquals(serial.get(i).getTruePositives(), parallel.get(i).getTruePositives());
+            assertEquals(serial.get(i).getFalsePositives(), parallel.get(i).getFalsePositives());
+        }
+
+        SearchTuner.Score current = SearchTuner.evaluate(new SearchParameters(), sweeps);
+        SearchTuner.sortByF1(parallel);
+        SearchTuner.Score best = parallel.get(0);
+        assertTrue(best.getF1() >= current.getF1());
+        assertTrue(best.getF1() >= parallel.get(parallel.size() - 1).getF1());
+    }
+
+    /**
+     * @return the grid of search parameters tuned over.
+     */
+    static List<SearchParameters> makeGrid()
+    {
+        return SearchTuner.makeGrid(new float[] { 50, 55 }, new float[] { 2, 4, 8, 12 }, new float[] { 5, 10, 15 },
+                new float[] { 60, 80 }, new float[] { 30, 60, 120 });
+    }
+
+    /**
+     * Simulates labeled sweeps, half of which see a block, with noise and
+     * glitches.
+     */
+    static List<RecordedSweep> simulateSweeps(Random random)
+    {
+        List<RecordedSweep> sweeps = new ArrayList<RecordedSweep>();
+        for (int n = 0; n < SWEEP_COUNT; n++)
+        {
+            boolean hasBlock = n % 2 == 0;
+            float blockStart = 10 + random.nextFloat() * 50;
+            float blockEnd = blockStart + 10 + random.nextFloat() * 15;
+            float blockDistance = 15 + random.nextFloat() * 25;
+
+            RecordedSweep sweep = new RecordedSweep(0, WIDTH);
+            for (float angle = 0; angle <= WIDTH; angle += 0.7f)
+            {
+                float distance = hasBlock && angle >= blockStart && angle < blockEnd
+                        ? blockDistance + (float) random.nextGaussian()
+                        : 60 + 40 * random.nextFloat();
+                if (random.nextFloat() < GLITCH_CHANCE)
+                {
+                    distance = 10 + 30 * random.nextFloat();
+                }
+                sweep.add(0, angle, distance);
+            }
+            if (hasBlock)
+            {
+                sweep.setLabel(RecordedSweep.Label.Block, (blockStart + blockEnd) / 2, blockDistance);
+            }
+            else
+            {
+                sweep.setLabel(RecordedSweep.Label.NoBlock, 0, 0);
+            }
+            sweeps.add(sweep);
+        }
+        return sweeps;
+    }
+
+    /**
+     * @return a labeled sweep from 0 to 90 degrees seeing a block between two
+     *         angles.
+     */
+    private static RecordedSweep makeSweep(float blockStart, float blockEnd, float blockDistance, RecordedSweep.Label label, float labelAngle)
+    {
+        RecordedSweep sweep = new RecordedSweep(0, WIDTH);
+        for (int i = 0; i <= WIDTH; i++)
+        {
+            sweep.add(0, i, i >= blockStart && i < blockEnd ? blockDistance : 100);
+        }
+        sweep.setLabel(label, labelAngle, blockDistance);
+        return sweep;
+    }
+}
@@ -0,0 +1,147 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class SensorHubTest
+{
+    /**
+     * Tests that each device is sampled on its divisor, and that devices with
+     * the same divisor are sampled on different ticks. <br>
+     * Test method for {@link main.SensorHub#tick(long)}.
+     */
+    @Test
+    public void testTick()
+    {
+        final int[] lastTick = new int[3];
+        final int[] counts = new int[3];
+        final int[] tick = new int[1];
+        SensorHub hub = new SensorHub();
+        for (int i = 0; i < 3; i++)
+        {
+            final int index = i;
+            hub.add(new SensorTask()
+            {
+                public void sample()
+                {
+                    counts[index]++;
+                    lastTick[index] = tick[0];
+                }
+            }, i == 0 ? 1 : 4);
+        }
+        assertEquals(3, hub.getTaskCount());
+
+        for (tick[0] = 0; tick[0] < 40; tick[0]++)
+        {
+            hub.tick(tick[0]);
+        }
+        assertEquals(40, counts[0]);
+        assertEquals(10, counts[1]);
+        assertEquals(10, counts[2]);
+        assertEquals(36, lastTick[1]);
+        assertEquals(37, lastTick[2]);
+
+        // a skipped tick delays the devices due on it to the next tick, then
+        // they keep their phase
+        tick[0] = 41;
+        hub.tick(tick[0]);
+        assertEquals(41, lastTick[1]);
+        assertEquals(41, lastTick[2]);
+        for (tick[0] = 42; tick[0] < 46; tick[0]++)
+        {
+            hub.tick(tick[0]);
+        }
+        assertEquals(44, lastTick[1]);
+        assertEquals(45, lastTick[2]);
+    }
+
+    /**
+     * Tests that a device can change how often it is sampled from its own
+     * sample method. <br>
+     * Test method for {@link main.SensorHub#setDivisor(SensorTask, int)}.
+     */
+    @Test
+    public void testSetDivisor()
+    {
+        final int[] ticks = new int[8];
+        final int[] count = new int[1];
+        final int[] tick = new int[1];
+        final SensorHub hub = new SensorHub();
+        SensorTask task = new SensorTask()
+        {
+            public void sample()
+            {
+                ticks[count[0]++] = tick[0];
+                if (count[0] == 2)
+                {
+                    hub.setDivisor(this, 5);
+                }
+            }
+        };
+        hub.add(task, 2);
+
+        for (tick[0] = 0; tick[0] < 20; tick[0]++)
+        {
+            hub.tick(tick[0]);
+        }
+        assertEquals(5, hub.getDivisor(task));
+        assertEquals(5, count[0]);
+        assertEquals(2, ticks[1]);
+        assertEquals(7, ticks[2]);
+        assertEquals(17, ticks[4]);
+    }
+
+    /**
+     * Tests that a divisor changed from another thread is used by a running
+     * hub. <br>
+     * Test method for {@link main.SensorHub#setDivisor(SensorTask, int)}.
+     */
+    @Test
+    public void testSetDivisorWhileRunning() throws InterruptedException
+    {
+        final AtomicInteger count = new AtomicInteger();
+        SensorTask task = new SensorTask()
+        {
+            public void sample()
+            {
+                count.incrementAndGet();
+            }
+        };
+        SensorHub hub = new SensorHub();
+        hub.add(task, 1);
+        hub.setDaemon(true);
+        hub.start();
+        while (count.get() == 0)
+        {
+            Thread.sleep(1);
+        }
+
+        // once a second, so at most two more samples in the next 500 ms
+        hub.setDivisor(task, 1000 / SensorHub.BASE_PERIOD);
+        Thread.sleep(2 * SensorHub.BASE_PERIOD);
+        int before = count.get();
+        Thread.sleep(500);
+        assertTrue(count.get() - before <= 2);
+    }
+
+    /**
+     * Test method for {@link main.SensorHub#add(SensorTask, int)}.
+     */
+    @Test(expected = InvalidParameterException.class)
+    public void testAddDivisor()
+    {
+        new SensorHub().add(new SensorTask()
+        {
+            public void sample()
+            {
+            }
+        }, 0);
+    }
+}
@@ -0,0 +1,69 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ * 
+ */
+public class SignalTest
+{
+    /**
+     * Tests that a wait gives up after its timeout, and that a triggered
+     * signal stays triggered until reset. <br>
+     * Test method for {@link main.Signal#await(long)}.
+     */
+    @Test
+    public void testAwait()
+    {
+        Signal signal = new Signal();
+        long start = System.currentTimeMillis();
+        assertFalse(signal.await(20));
+        assertTrue(System.currentTimeMillis() - start >= 20);
+
+        signal.trigger();
+        assertTrue(signal.isTriggered());
+        assertTrue(signal.await(0));
+
+        signal.reset();
+        assertFalse(signal.isTriggered());
+    }
+
+    /**
+     * Tests that one thread can wait for whichever of a pose trigger and a
+     * range threshold fires first. <br>
+     * Test method for {@link main.Signal#forwardTo(Signal)}.
+     */
+    @Test
+    public void testForwardTo() throws InterruptedException
+    {
+        final Signal stopped = new Signal();
+        PoseTrigger arrival = new PoseTrigger(PoseTrigger.Type.Moved, 5);
+        final RangeThreshold obstacle = new RangeThreshold(20, null);
+        arrival.forwardTo(stopped);
+        obstacle.forwardTo(stopped);
+
+        Thread sensor = new Thread()
+        {
+            public void run()
+            {
+                Utils.sleep(20);
+                obstacle.check(10, System.nanoTime());
+            }
+        };
+        sensor.start();
+        assertTrue(stopped.await(0));
+        sensor.join();
+        assertTrue(obstacle.isTriggered());
+        assertFalse(arrival.isTriggered());
+
+        // a cleared forward no longer triggers the shared signal
+        stopped.reset();
+        arrival.forwardTo(null);
+        arrival.arm(0, 0, 0);
+        assertTrue(arrival.check(10, 0, 0));
+        assertFalse(stopped.isTriggered());
+    }
+}
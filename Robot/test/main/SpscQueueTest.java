@@ -0,0 +1,120 @@
+package main;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.locks.LockSupport;
+import org.junit.Test;
+
+/**
+ * @author Scott Sewell
+ *
+ */
+public class SpscQueueTest
+{
+    // number of values passed between threads
+    private static final int TRANSFER_COUNT = 1000000;
+    // how long the consumer parks for in ms, far longer than a wake takes
+    private static final int PARK_TIMEOUT = 5000;
+
+    /**
+     * Test method for {@link main.SpscQueue#offer(Object)}.
+     */
+    @Test
+    public void testOfferPoll()
+    {
+        SpscQueue<Integer> queue = new SpscQueue<Integer>(3);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        // capacity rounds up to 4
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(4, queue.size());
+
+        assertEquals(Integer.valueOf(0), queue.peek());
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(5));
+        for (int expected : new int[] { 1, 2, 3, 5 })
+        {
+            assertEquals(Integer.valueOf(expected), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Passes values between two threads and checks none are lost or
+     * reordered. <br>
+     * Test method for {@link main.SpscQueue#poll()}.
+     */
+    @Test
+    public void testTransfer() throws InterruptedException
+    {
+        final SpscQueue<Integer> queue = new SpscQueue<Integer>(16);
+        Thread producer = new Thread()
+        {
+            public void run()
+            {
+                for (int i = 0; i < TRANSFER_COUNT; i++)
+                {
+                    while (!queue.offer(i))
+                    {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        producer.start();
+
+        for (int i = 0; i < TRANSFER_COUNT; i++)
+        {
+            Integer value;
+            while ((value = queue.poll()) == null)
+            {
+                Thread.yield();
+            }
+            assertEquals(i, value.intValue());
+        }
+        producer.join();
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Tests that offering a value wakes a parked consumer rather than leaving
+     * it to its park timeout. <br>
+     * Test method for {@link main.SpscQueue#setConsumer(Thread)}.
+     */
+    @Test
+    public void testWakeConsumer() throws InterruptedException
+    {
+        final SpscQueue<Integer> queue = new SpscQueue<Integer>(4);
+        final Integer[] received = new Integer[1];
+        Thread consumer = new Thread()
+        {
+            public void run()
+            {
+                while ((received[0] = queue.poll()) == null)
+                {
+                    LockSupport.parkNanos(this, PARK_TIMEOUT * 1000000L);
+                }
+            }
+        };
+        queue.setConsumer(consumer);
+        consumer.start();
+
+        // wait for the consumer to park
+        while (!consumer.getState().equals(Thread.State.TIMED_WAITING))
+        {
+            Thread.yield();
+        }
+        long start = System.currentTimeMillis();
+        queue.offer(7);
+        consumer.join(PARK_TIMEOUT * 2);
+
+        assertEquals(Integer.valueOf(7), received[0]);
+        assertTrue(System.currentTimeMillis() - start < PARK_TIMEOUT);
+    }
+}